@@ -0,0 +1,77 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.JavaToProto;
+
+// End-to-end generation: discovery of the whole graph plus rendering of the .proto document,
+// as done by every GenerateProtoFile run. Run with -prof gc to get the allocation rate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+    @Param({"WIDE", "DEEP", "CYCLIC", "COLLECTION_HEAVY", "ARRAY_HEAVY"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"100", "2000"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private SyntheticGraph graph;
+    private GeneratorOptions options;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticGraph.generate(shape, size);
+        options = new GeneratorOptions().setParallelism(parallelism);
+        if (options.isParallel()) {
+            // One pool for the whole trial, so pool start-up is not measured
+            pool = new ForkJoinPool(parallelism);
+            options.setDiscoveryPool(pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public String generateToString() {
+        return new JavaToProto(graph.getRoots(), graph, options).toString();
+    }
+
+    // Streaming path, without building the document in memory
+    @Benchmark
+    public JavaToProto generateToStream() throws IOException {
+        JavaToProto generator = new JavaToProto(graph.getRoots(), graph, options);
+        generator.writeTo(OutputStream.nullOutputStream());
+        return generator;
+    }
+}
@@ -0,0 +1,83 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.ProtoEmitter;
+import fr.bl.pojo2proto.SchemaDiscovery;
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// The generator phases one by one, on an already discovered model where relevant:
+// discovery (enums and referenced classes, in a single walk), enum emission, message emission,
+// and rendering of the full document into a String as JavaToProto.toString() does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+    private static final String JAVA_PACKAGE = "synthetic.dto";
+
+    @Param({"WIDE", "DEEP", "CYCLIC", "COLLECTION_HEAVY", "ARRAY_HEAVY"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"100", "2000"})
+    public int size;
+
+    private SyntheticGraph graph;
+    private SchemaModel model;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticGraph.generate(shape, size);
+        model = new SchemaDiscovery(new GeneratorOptions(), graph).discover(graph.getRoots());
+    }
+
+    @Benchmark
+    public SchemaModel discover() {
+        return new SchemaDiscovery(new GeneratorOptions(), graph).discover(graph.getRoots());
+    }
+
+    @Benchmark
+    public Writer emitEnums() throws IOException {
+        Writer writer = Writer.nullWriter();
+        new ProtoEmitter(writer).emit(model.getEnums(), Collections.<MessageDefinition>emptyList());
+        return writer;
+    }
+
+    @Benchmark
+    public Writer emitMessages() throws IOException {
+        Writer writer = Writer.nullWriter();
+        new ProtoEmitter(writer).emit(Collections.<EnumDefinition>emptyList(), model.getMessages());
+        return writer;
+    }
+
+    @Benchmark
+    public String renderToString() throws IOException {
+        StringWriter writer = new StringWriter();
+        ProtoEmitter emitter = new ProtoEmitter(writer);
+        emitter.emitHeader(JAVA_PACKAGE, ProtoEmitter.wellKnownImports(model.getMessages()));
+        emitter.emit(model);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,359 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import fr.bl.pojo2proto.ProtoSubtypes;
+
+// Sample DTO instances filled through reflection with values drawn from a Distribution, so that wire
+// sizes and codec costs can be measured on data shaped like production data. Every non-static field is
+// filled: scalars, enums, strings, Date and the JDK value types of the built-in type adapters,
+// collections, maps, Optional and arrays of any dimension (rectangular), nested DTOs up to MAX_DEPTH,
+// and fields of Object or abstract types with one of their @ProtoSubtypes. Generation is deterministic: the same class,
+// distribution, count and seed always give the same instances.
+public final class SampleData {
+    private static final int MAX_DEPTH = 4;
+    private static final long EPOCH_2020 = 1577836800000L;
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    public enum Distribution {
+        // Mostly default values (zero, empty, null), which proto3 does not write
+        SPARSE(0.8, 0, 0.0, 0, 4, 0, 2),
+        // Small non-negative integers, short strings, few elements
+        SMALL(0.05, 100, 0.0, 4, 12, 1, 4),
+        // Integers up to a million with a few negative ones, medium strings and collections
+        TYPICAL(0.1, 1_000_000, 0.05, 8, 32, 2, 12),
+        // Integers over their whole range, long strings, large collections
+        WIDE(0.0, -1, 0.5, 32, 128, 16, 64);
+
+        // share of values left at their default; bound of integer magnitudes (-1: the full range);
+        // share of negative integers; string length and collection size ranges
+        private final double defaultRate;
+        private final long maxMagnitude;
+        private final double negativeRate;
+        private final int minLength;
+        private final int maxLength;
+        private final int minElements;
+        private final int maxElements;
+
+        Distribution(double defaultRate, long maxMagnitude, double negativeRate, int minLength, int maxLength,
+                     int minElements, int maxElements) {
+            this.defaultRate = defaultRate;
+            this.maxMagnitude = maxMagnitude;
+            this.negativeRate = negativeRate;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.minElements = minElements;
+            this.maxElements = maxElements;
+        }
+    }
+
+    private final Distribution distribution;
+    private final Random random;
+
+    private SampleData(Distribution distribution, long seed) {
+        this.distribution = distribution;
+        this.random = new Random(seed);
+    }
+
+    public static <T> List<T> generate(Class<T> type, Distribution distribution, int count, long seed) {
+        SampleData data = new SampleData(distribution, seed);
+        List<T> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            samples.add(type.cast(data.newInstance(type, 0)));
+        }
+        return samples;
+    }
+
+    private Object newInstance(Class<?> type, int depth) {
+        Class<?> concrete = concreteClass(type);
+        if (concrete == null) {
+            return null;
+        }
+        Object instance;
+        try {
+            instance = concrete.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("No usable no-arg constructor in " + concrete.getName(), e);
+        }
+        for (Class<?> current = concrete; current != null && current != Object.class;
+             current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    ProtoSubtypes subtypes = field.getAnnotation(ProtoSubtypes.class);
+                    Object value = subtypes != null && !isDefault() && depth < MAX_DEPTH
+                            ? newInstance(subtype(subtypes), depth + 1)
+                            : value(field.getType(), field.getGenericType(), depth);
+                    if (value != null) {
+                        field.set(instance, value);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException("Cannot fill " + current.getName() + "." + field.getName(), e);
+                }
+            }
+        }
+        return instance;
+    }
+
+    // The class itself, or for abstract classes and interfaces one of their @ProtoSubtypes; null when
+    // there is none
+    private Class<?> concreteClass(Class<?> type) {
+        if (type == null || !Modifier.isAbstract(type.getModifiers())) {
+            return type;
+        }
+        ProtoSubtypes subtypes = type.getAnnotation(ProtoSubtypes.class);
+        return subtypes == null ? null : concreteClass(subtype(subtypes));
+    }
+
+    private Class<?> subtype(ProtoSubtypes subtypes) {
+        Class<?>[] classes = subtypes.value();
+        return classes.length == 0 ? null : classes[random.nextInt(classes.length)];
+    }
+
+    private boolean isDefault() {
+        return random.nextDouble() < distribution.defaultRate;
+    }
+
+    // Value of a field, element or map entry; null leaves it out
+    private Object value(Class<?> type, Type genericType, int depth) {
+        if (type.isPrimitive()) {
+            return isDefault() ? defaultValue(type) : scalar(type);
+        }
+        if (isDefault()) {
+            return type == Optional.class ? Optional.empty() : null;
+        }
+        Object scalar = scalar(type);
+        if (scalar != null) {
+            return scalar;
+        }
+        if (type.isEnum()) {
+            Object[] constants = type.getEnumConstants();
+            return constants.length == 0 ? null : constants[random.nextInt(constants.length)];
+        }
+        if (type == Optional.class) {
+            Type argument = typeArgument(genericType, 0);
+            return Optional.ofNullable(value(rawClass(argument), argument, depth));
+        }
+        if (type.isArray()) {
+            return array(type, genericType, depth, elementCount(), elementCount());
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            Type argument = typeArgument(genericType, 0);
+            Collection<Object> collection = newCollection(type);
+            int count = elementCount();
+            for (int i = 0; i < count; i++) {
+                Object element = value(rawClass(argument), argument, depth + 1);
+                if (element != null) {
+                    collection.add(element);
+                }
+            }
+            return collection;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            Type keyType = typeArgument(genericType, 0);
+            Type valueType = typeArgument(genericType, 1);
+            Map<Object, Object> map = SortedMap.class.isAssignableFrom(type) ? new TreeMap<>() : new HashMap<>();
+            int count = elementCount();
+            for (int i = 0; i < count; i++) {
+                Object key = key(rawClass(keyType));
+                Object value = value(rawClass(valueType), valueType, depth + 1);
+                if (key != null && value != null) {
+                    map.put(key, value);
+                }
+            }
+            return map;
+        }
+        if (type.getName().startsWith("java.") || type.getName().startsWith("javax.") || depth >= MAX_DEPTH) {
+            return null;
+        }
+        return newInstance(type, depth + 1);
+    }
+
+    // Arrays of several dimensions are filled row by row, every row of the same length
+    private Object array(Class<?> type, Type genericType, int depth, int length, int rowLength) {
+        Class<?> component = type.getComponentType();
+        Type genericComponent = genericType instanceof GenericArrayType
+                ? ((GenericArrayType) genericType).getGenericComponentType() : component;
+        Object array = Array.newInstance(component, length);
+        for (int i = 0; i < length; i++) {
+            Object element;
+            if (component.isArray()) {
+                element = array(component, genericComponent, depth, rowLength, rowLength);
+            } else if (component.isPrimitive()) {
+                element = scalar(component);
+            } else {
+                element = value(component, genericComponent, depth + 1);
+            }
+            if (element != null) {
+                Array.set(array, i, element);
+            }
+        }
+        return array;
+    }
+
+    // Value of a scalar or JDK value type, null for any other type
+    private Object scalar(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return (int) integer(Integer.MAX_VALUE);
+        }
+        if (type == long.class || type == Long.class) {
+            return integer(Long.MAX_VALUE);
+        }
+        if (type == short.class || type == Short.class) {
+            return (short) integer(Short.MAX_VALUE);
+        }
+        if (type == byte.class || type == Byte.class) {
+            return (byte) integer(Byte.MAX_VALUE);
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return random.nextBoolean();
+        }
+        if (type == double.class || type == Double.class) {
+            return (random.nextDouble() - distribution.negativeRate) * magnitude(Long.MAX_VALUE);
+        }
+        if (type == float.class || type == Float.class) {
+            return (float) ((random.nextDouble() - distribution.negativeRate) * magnitude(Integer.MAX_VALUE));
+        }
+        if (type == char.class || type == Character.class) {
+            return ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        if (type == String.class) {
+            return string();
+        }
+        if (type == Date.class) {
+            return new Date(timestamp());
+        }
+        if (type == Instant.class) {
+            return Instant.ofEpochMilli(timestamp());
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp()), ZoneOffset.UTC);
+        }
+        if (type == LocalDate.class) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp()), ZoneOffset.UTC).toLocalDate();
+        }
+        if (type == Duration.class) {
+            return Duration.ofMillis(Math.abs(integer(Long.MAX_VALUE / 1000)));
+        }
+        if (type == UUID.class) {
+            return new UUID(random.nextLong(), random.nextLong());
+        }
+        if (type == BigDecimal.class) {
+            return BigDecimal.valueOf(integer(Long.MAX_VALUE), 2);
+        }
+        if (type == BigInteger.class) {
+            return BigInteger.valueOf(integer(Long.MAX_VALUE));
+        }
+        return null;
+    }
+
+    // Map key: a scalar or an enum constant
+    private Object key(Class<?> type) {
+        if (type.isEnum()) {
+            Object[] constants = type.getEnumConstants();
+            return constants.length == 0 ? null : constants[random.nextInt(constants.length)];
+        }
+        return scalar(type);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+
+    private long magnitude(long typeMax) {
+        return distribution.maxMagnitude < 0 ? typeMax : Math.min(distribution.maxMagnitude, typeMax);
+    }
+
+    private long integer(long typeMax) {
+        long magnitude = magnitude(typeMax);
+        long value = magnitude == Long.MAX_VALUE ? random.nextLong() & Long.MAX_VALUE
+                : (long) (random.nextDouble() * (magnitude + 1));
+        return random.nextDouble() < distribution.negativeRate ? -value : value;
+    }
+
+    // Milliseconds around 2020, further apart as the distribution widens
+    private long timestamp() {
+        return EPOCH_2020 + integer(Math.min(magnitude(Long.MAX_VALUE), 1L << 40)) * 1000;
+    }
+
+    private String string() {
+        int length = distribution.minLength + random.nextInt(distribution.maxLength - distribution.minLength + 1);
+        StringBuilder string = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            string.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return string.toString();
+    }
+
+    private int elementCount() {
+        return distribution.minElements + random.nextInt(distribution.maxElements - distribution.minElements + 1);
+    }
+
+    private static Collection<Object> newCollection(Class<?> type) {
+        if (SortedSet.class.isAssignableFrom(type)) {
+            return new TreeSet<>();
+        }
+        return Set.class.isAssignableFrom(type) ? new LinkedHashSet<>() : new ArrayList<>();
+    }
+
+    private static Type typeArgument(Type genericType, int index) {
+        if (genericType instanceof ParameterizedType) {
+            return ((ParameterizedType) genericType).getActualTypeArguments()[index];
+        }
+        return Object.class;
+    }
+
+    private static Class<?> rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return rawClass(((ParameterizedType) type).getRawType());
+        }
+        if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        return Object.class;
+    }
+}
@@ -0,0 +1,78 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.JavaToProto;
+import fr.bl.pojo2proto.ProtoGenerator;
+import fr.bl.pojo2proto.TypeRef;
+
+// Concurrent on-demand requests, as a schema registry service makes them: one shared ProtoGenerator
+// (class descriptions and rendered fragments kept) against a fresh one-shot JavaToProto per request,
+// for the whole graph and for the schema of a single root.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ServiceBenchmark {
+    @Param({"WIDE", "CYCLIC", "COLLECTION_HEAVY"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"100", "2000"})
+    public int size;
+
+    private SyntheticGraph graph;
+    private GeneratorOptions options;
+    private ProtoGenerator generator;
+    private TypeRef root;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticGraph.generate(shape, size);
+        options = new GeneratorOptions();
+        generator = new ProtoGenerator(options, graph);
+        root = graph.getRoots().get(0);
+    }
+
+    @Benchmark
+    public String sharedGenerator() throws IOException {
+        StringWriter writer = new StringWriter();
+        generator.writeTo(generator.discover(graph.getRoots()), writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String generatorPerRequest() {
+        return new JavaToProto(graph.getRoots(), graph, options).toString();
+    }
+
+    @Benchmark
+    public String sharedQuery() {
+        return generator.query(root);
+    }
+
+    @Benchmark
+    public String queryPerRequest() {
+        return new JavaToProto(Collections.singletonList(root), graph, options).toString();
+    }
+}
@@ -0,0 +1,203 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.bl.pojo2proto.ClassMetadata;
+import fr.bl.pojo2proto.ClassMetadataCache;
+import fr.bl.pojo2proto.ClassResolver;
+import fr.bl.pojo2proto.FieldMetadata;
+import fr.bl.pojo2proto.ReflectionClassResolver;
+import fr.bl.pojo2proto.TypeRef;
+
+// Generated DTO graph of a given shape and size, served through the ClassResolver API so that
+// benchmarks can build schemas of thousands of classes without compiling or loading any of them.
+// Generation is deterministic: the same shape and size always give the same graph.
+public final class SyntheticGraph implements ClassResolver {
+    private static final String PACKAGE = "synthetic.dto";
+    private static final int PACKAGE_COUNT = 8;
+    private static final int ENUM_COUNT = 16;
+    private static final int ENUM_CONSTANTS = 12;
+
+    private static final TypeRef STRING = TypeRef.ofClass(String.class.getName());
+    private static final TypeRef LONG = TypeRef.ofClass(Long.class.getName());
+    private static final TypeRef DATE = TypeRef.ofClass("java.util.Date");
+    private static final TypeRef LIST = TypeRef.ofClass("java.util.List");
+    private static final TypeRef INT = TypeRef.ofPrimitive("int");
+    private static final TypeRef DOUBLE = TypeRef.ofPrimitive("double");
+    private static final TypeRef[] SCALARS = {
+            INT, TypeRef.ofPrimitive("long"), TypeRef.ofPrimitive("boolean"), DOUBLE, STRING, LONG, DATE,
+            TypeRef.ofClass(Integer.class.getName())
+    };
+
+    public enum Shape {
+        // One root holding a field per class, each class made of scalars
+        WIDE,
+        // A single chain root -> dto1 -> ... -> dtoN
+        DEEP,
+        // Every class points to the next one and back to its parent, closing cycles everywhere
+        CYCLIC,
+        // Lists, sets and maps of messages, enums and scalars, plus List<?> as Any
+        COLLECTION_HEAVY,
+        // One- to four-dimensional arrays of primitives, strings and messages
+        ARRAY_HEAVY
+    }
+
+    private final Map<String, ClassMetadata> classes = new HashMap<>();
+    private final List<TypeRef> roots = new ArrayList<>();
+    // JDK lookups are memoized so that benchmarks measure the generator, not Class.forName
+    private final Map<String, Optional<Class<?>>> jdkClasses = new ConcurrentHashMap<>();
+
+    private SyntheticGraph() {
+    }
+
+    // size: number of message classes (enums come on top)
+    public static SyntheticGraph generate(Shape shape, int size) {
+        if (size < 1) {
+            throw new RuntimeException("Synthetic graph size must be at least 1");
+        }
+        SyntheticGraph graph = new SyntheticGraph();
+        for (int i = 0; i < ENUM_COUNT; i++) {
+            graph.addEnum(i);
+        }
+        for (int i = 0; i < size; i++) {
+            graph.addMessage(shape, i, size);
+        }
+        graph.roots.add(dto(0));
+        if (shape == Shape.CYCLIC || shape == Shape.COLLECTION_HEAVY) {
+            // Several roots that are also reached from elsewhere, as in real-world root lists
+            for (int i = 1; i < size; i += Math.max(1, size / 8)) {
+                graph.roots.add(dto(i));
+            }
+        }
+        return graph;
+    }
+
+    private static TypeRef dto(int index) {
+        return TypeRef.ofClass(PACKAGE + ".p" + (index % PACKAGE_COUNT) + ".Dto" + index);
+    }
+
+    private static TypeRef enumType(int index) {
+        return TypeRef.ofClass(PACKAGE + ".enums.Status" + (index % ENUM_COUNT));
+    }
+
+    private static TypeRef generic(String rawName, TypeRef... arguments) {
+        return TypeRef.ofClass(rawName, Arrays.asList(arguments));
+    }
+
+    private static TypeRef array(TypeRef component, int dimensions) {
+        TypeRef type = component;
+        for (int i = 0; i < dimensions; i++) {
+            type = TypeRef.arrayOf(type);
+        }
+        return type;
+    }
+
+    private void addEnum(int index) {
+        TypeRef type = enumType(index);
+        List<String> constants = new ArrayList<>();
+        for (int i = 0; i < ENUM_CONSTANTS; i++) {
+            constants.add("VALUE_" + i);
+        }
+        classes.put(type.getName(), new ClassMetadata(type, Modifier.PUBLIC | Modifier.FINAL, true,
+                Collections.<FieldMetadata>emptyList(), Collections.<TypeRef>emptyList(), constants));
+    }
+
+    private void addMessage(Shape shape, int index, int size) {
+        TypeRef type = dto(index);
+        List<FieldMetadata> fields = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            field(fields, type, "value" + i, SCALARS[(index + i) % SCALARS.length]);
+        }
+        if (index % 4 == 0) {
+            field(fields, type, "status", enumType(index));
+        }
+
+        switch (shape) {
+            case WIDE:
+                if (index == 0) {
+                    for (int i = 1; i < size; i++) {
+                        field(fields, type, "child" + i, dto(i));
+                    }
+                }
+                break;
+            case DEEP:
+                if (index + 1 < size) {
+                    field(fields, type, "next", dto(index + 1));
+                }
+                break;
+            case CYCLIC:
+                field(fields, type, "next", dto((index + 1) % size));
+                field(fields, type, "parent", dto(index / 2));
+                field(fields, type, "siblings", generic(LIST.getName(), dto((index + size / 2) % size)));
+                break;
+            case COLLECTION_HEAVY:
+                field(fields, type, "children", generic(LIST.getName(), dto((index + 1) % size)));
+                field(fields, type, "tags", generic("java.util.Set", STRING));
+                field(fields, type, "statuses", generic(LIST.getName(), enumType(index + 1)));
+                field(fields, type, "byName", generic("java.util.Map", STRING, dto((index * 7 + 3) % size)));
+                field(fields, type, "statusById", generic("java.util.Map", LONG, enumType(index + 2)));
+                field(fields, type, "counters", generic("java.util.HashMap", STRING, LONG));
+                field(fields, type, "anything", generic(LIST.getName(), TypeRef.wildcard()));
+                break;
+            case ARRAY_HEAVY:
+                field(fields, type, "samples", array(DOUBLE, 1));
+                field(fields, type, "matrix", array(INT, 2));
+                field(fields, type, "cube", array(DOUBLE, 3));
+                field(fields, type, "hyperCube", array(TypeRef.ofPrimitive("long"), 4));
+                field(fields, type, "labels", array(STRING, 2));
+                if (index + 1 < size) {
+                    field(fields, type, "grid", array(dto(index + 1), 2));
+                }
+                break;
+            default:
+                throw new RuntimeException("Unknown shape " + shape);
+        }
+        classes.put(type.getName(), new ClassMetadata(type, Modifier.PUBLIC, false, fields,
+                Collections.<TypeRef>emptyList(), Collections.<String>emptyList()));
+    }
+
+    private static void field(List<FieldMetadata> fields, TypeRef declaringType, String name, TypeRef type) {
+        fields.add(new FieldMetadata(name, Modifier.PRIVATE, type, declaringType, null));
+    }
+
+    public List<TypeRef> getRoots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    public int getClassCount() {
+        return classes.size();
+    }
+
+    @Override
+    public ClassMetadata resolve(TypeRef type) {
+        if (!type.isClass()) {
+            return null;
+        }
+        ClassMetadata metadata = classes.get(type.getName());
+        if (metadata != null) {
+            return metadata;
+        }
+        Class<?> jdkClass = jdkClass(type.getName());
+        return jdkClass == null ? null : ClassMetadataCache.get(jdkClass);
+    }
+
+    @Override
+    public boolean isAssignableTo(TypeRef type, Class<?> jdkType) {
+        // Synthetic classes only extend Object
+        Class<?> jdkClass = jdkClass(type.getName());
+        return jdkClass != null && jdkType.isAssignableFrom(jdkClass);
+    }
+
+    private Class<?> jdkClass(String name) {
+        return jdkClasses.computeIfAbsent(name,
+                key -> Optional.<Class<?>>ofNullable(ReflectionClassResolver.loadJdkClass(key))).orElse(null);
+    }
+}
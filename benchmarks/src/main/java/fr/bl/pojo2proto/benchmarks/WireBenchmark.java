@@ -0,0 +1,96 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import fr.bl.pojo2proto.wire.WireCodec;
+import fr.bl.pojo2proto.wire.WireEncoder;
+
+// Encode and decode throughput of sample DTOs under the schema generated for them (see WireFixture),
+// one message per operation, cycling through the samples: WireEncoder into its reused buffer,
+// WireCodec back to DTOs, and protobuf-java DynamicMessage parsing of the same bytes for reference.
+// Any DTO class on the class path can be measured, e.g. -p dto=com.acme.Invoice; run with -prof gc
+// for the allocation per message (gc.alloc.rate.norm), see WireReport for the payload sizes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireBenchmark {
+    static final int SAMPLES = 256;
+    static final long SEED = 42;
+
+    @Param({"fr.bl.pojo2proto.benchmarks.dto.Order", "fr.bl.pojo2proto.benchmarks.dto.Telemetry"})
+    public String dto;
+
+    @Param({"DEFAULT", "VARINT", "PROFILED", "FLAT_ARRAYS", "ONEOF_SUBTYPES"})
+    public WireFixture.GeneratorMode mode;
+
+    @Param({"SPARSE", "SMALL", "TYPICAL", "WIDE"})
+    public SampleData.Distribution distribution;
+
+    private Class<?> type;
+    private Object[] samples;
+    private ByteBuffer[] encoded;
+    private byte[][] bytes;
+    private WireCodec codec;
+    private WireEncoder encoder;
+    private Descriptor descriptor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WireFixture fixture = WireFixture.create(dto, mode, distribution, SAMPLES, SEED);
+        type = fixture.getType();
+        samples = fixture.getSamples().toArray();
+        bytes = fixture.getEncoded();
+        encoded = new ByteBuffer[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            encoded[i] = ByteBuffer.wrap(bytes[i]);
+        }
+        codec = fixture.getCodec();
+        encoder = codec.newEncoder();
+        descriptor = fixture.getDescriptor();
+    }
+
+    private int nextSample() {
+        int sample = next;
+        next = sample + 1 == SAMPLES ? 0 : sample + 1;
+        return sample;
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return encoder.encode(samples[nextSample()]);
+    }
+
+    @Benchmark
+    public Object decode() {
+        ByteBuffer in = encoded[nextSample()];
+        in.rewind();
+        return codec.decode(type, in);
+    }
+
+    @Benchmark
+    public DynamicMessage parseDynamic() throws InvalidProtocolBufferException {
+        return DynamicMessage.parseFrom(descriptor, bytes[nextSample()]);
+    }
+}
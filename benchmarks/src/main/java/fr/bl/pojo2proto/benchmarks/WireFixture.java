@@ -0,0 +1,189 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.IntegerEncoding;
+import fr.bl.pojo2proto.JavaToProto;
+import fr.bl.pojo2proto.ScalarTypeProfiler;
+import fr.bl.pojo2proto.ScalarTypeSelector;
+import fr.bl.pojo2proto.SubtypeResolver;
+import fr.bl.pojo2proto.descriptor.DescriptorBuilder;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+import fr.bl.pojo2proto.wire.WireCodec;
+import fr.bl.pojo2proto.wire.WireEncoder;
+
+// Samples of a DTO class and everything needed to put them on the wire, all compiled in-process: the
+// schema generated for the class in a given generator mode, its WireCodec, the descriptor of its
+// message (as protoc would build it) and the encoded samples. Building a fixture checks that every
+// sample survives a round trip through the codec and parses as that message with no unknown field,
+// so that sizes are only ever reported for payloads the schema really describes.
+public final class WireFixture {
+    private static final String FILE_NAME = "wire_benchmark.proto";
+
+    public enum GeneratorMode {
+        // GeneratorOptions defaults: zigzag integers, array rows, built-in type adapters
+        DEFAULT,
+        // Plain varints (int32/int64) for every integer and Date field
+        VARINT,
+        // Integer encodings picked by a ScalarTypeProfiler fed with the samples themselves
+        PROFILED,
+        // Rectangular primitive arrays flattened into FlatArray_ messages
+        FLAT_ARRAYS,
+        // Polymorphic fields mapped to oneof wrappers of their sealed classes or @ProtoSubtypes
+        ONEOF_SUBTYPES;
+
+        GeneratorOptions options(List<?> samples) {
+            GeneratorOptions options = new GeneratorOptions();
+            switch (this) {
+                case VARINT:
+                    return options.setScalarTypeSelector(field -> IntegerEncoding.VARINT);
+                case PROFILED:
+                    return options.setScalarTypeSelector(ScalarTypeSelector.ANNOTATIONS.orElse(
+                            new ScalarTypeProfiler().sampleAll(samples)));
+                case FLAT_ARRAYS:
+                    return options.setFlattenArrays(true);
+                case ONEOF_SUBTYPES:
+                    return options.setSubtypeResolver(SubtypeResolver.SEALED.orElse(SubtypeResolver.ANNOTATIONS));
+                default:
+                    return options;
+            }
+        }
+    }
+
+    private final Class<?> type;
+    private final List<?> samples;
+    private final SchemaModel schema;
+    private final WireCodec codec;
+    private final Descriptor descriptor;
+    private final byte[][] encoded;
+
+    private WireFixture(Class<?> type, List<?> samples, SchemaModel schema, WireCodec codec, Descriptor descriptor,
+                        byte[][] encoded) {
+        this.type = type;
+        this.samples = samples;
+        this.schema = schema;
+        this.codec = codec;
+        this.descriptor = descriptor;
+        this.encoded = encoded;
+    }
+
+    public static WireFixture create(String className, GeneratorMode mode, SampleData.Distribution distribution,
+                                     int count, long seed) {
+        Class<?> type;
+        try {
+            type = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("DTO class not found: " + className, e);
+        }
+        List<?> samples = SampleData.generate(type, distribution, count, seed);
+        GeneratorOptions options = mode.options(samples);
+        JavaToProto generator = new JavaToProto(Collections.<Class<?>>singleton(type), options);
+        SchemaModel schema = generator.getSchema();
+        WireCodec codec = WireCodec.compile(schema, options.getTypeAdapters());
+        if (!codec.canEncode(type)) {
+            throw new RuntimeException("No message codec for " + className);
+        }
+        Descriptor descriptor = descriptorOf(generator, schema, type);
+
+        WireEncoder encoder = codec.newEncoder();
+        byte[][] encoded = new byte[samples.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = encoder.toByteArray(samples.get(i));
+            check(i, encoded[i], codec, encoder, descriptor, type);
+        }
+        return new WireFixture(type, samples, schema, codec, descriptor, encoded);
+    }
+
+    private static Descriptor descriptorOf(JavaToProto generator, SchemaModel schema, Class<?> type) {
+        String messageName = null;
+        for (MessageDefinition message : schema.getMessages()) {
+            if (message.getJavaName().equals(type.getName())) {
+                messageName = message.getName();
+            }
+        }
+        List<FileDescriptor> files = DescriptorBuilder.link(generator.toDescriptorSet(FILE_NAME));
+        Descriptor descriptor = messageName == null ? null
+                : files.get(files.size() - 1).findMessageTypeByName(messageName);
+        if (descriptor == null) {
+            throw new RuntimeException("No message generated for " + type.getName());
+        }
+        return descriptor;
+    }
+
+    // Decoding then encoding again must give as many bytes (unordered sets and maps may come back in
+    // another order), and protobuf must know every field. Protobuf sizes are not compared: it drops the
+    // default values type adapters write in google.protobuf messages (a zero Timestamp.nanos...)
+    private static void check(int index, byte[] bytes, WireCodec codec, WireEncoder encoder, Descriptor descriptor,
+                              Class<?> type) {
+        Object decoded = codec.decode(type, ByteBuffer.wrap(bytes));
+        if (encoder.sizeOf(decoded) != bytes.length) {
+            throw new RuntimeException("Sample " + index + " of " + type.getName() + " does not survive a round trip");
+        }
+        try {
+            DynamicMessage message = DynamicMessage.parseFrom(descriptor, bytes);
+            if (hasUnknownFields(message)) {
+                throw new RuntimeException("Sample " + index + " of " + type.getName()
+                        + " does not match message " + descriptor.getFullName());
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException("Sample " + index + " of " + type.getName() + " is not a valid "
+                    + descriptor.getFullName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean hasUnknownFields(Message message) {
+        if (!message.getUnknownFields().asMap().isEmpty()) {
+            return true;
+        }
+        for (Map.Entry<FieldDescriptor, Object> field : message.getAllFields().entrySet()) {
+            if (field.getKey().getJavaType() != FieldDescriptor.JavaType.MESSAGE) {
+                continue;
+            }
+            List<?> values = field.getKey().isRepeated() ? (List<?>) field.getValue()
+                    : Collections.singletonList(field.getValue());
+            for (Object value : values) {
+                if (hasUnknownFields((Message) value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public List<?> getSamples() {
+        return samples;
+    }
+
+    public SchemaModel getSchema() {
+        return schema;
+    }
+
+    public WireCodec getCodec() {
+        return codec;
+    }
+
+    public Descriptor getDescriptor() {
+        return descriptor;
+    }
+
+    // Encoded samples, in sample order
+    public byte[][] getEncoded() {
+        return encoded;
+    }
+}
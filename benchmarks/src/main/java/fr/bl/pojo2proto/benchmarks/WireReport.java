@@ -0,0 +1,262 @@
+package fr.bl.pojo2proto.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Machine-readable wire report: for every DTO class, generator mode and data distribution, the encoded
+// size of the samples (total, mean and percentiles, in bytes) and the size of the generated schema, plus
+// with --throughput the WireBenchmark scores, in messages per second and bytes allocated per message.
+// Written as JSON, one result per line, to compare modes and to diff between commits:
+//     java -cp target/benchmarks.jar fr.bl.pojo2proto.benchmarks.WireReport --out=wire.json
+//     java -cp target/benchmarks.jar fr.bl.pojo2proto.benchmarks.WireReport --baseline=wire.json
+// With --baseline, results whose mean size grew by more than --tolerance (a fraction, 0 by default) of
+// the baseline are listed on stderr and the exit status is 1, e.g. to fail a CI job.
+public final class WireReport {
+    private static final String DTO_OPTION = "--dto=";
+    private static final String MODES_OPTION = "--modes=";
+    private static final String DISTRIBUTIONS_OPTION = "--distributions=";
+    private static final String SAMPLES_OPTION = "--samples=";
+    private static final String SEED_OPTION = "--seed=";
+    private static final String OUT_OPTION = "--out=";
+    private static final String BASELINE_OPTION = "--baseline=";
+    private static final String TOLERANCE_OPTION = "--tolerance=";
+    private static final String ITERATIONS_OPTION = "--iterations=";
+    private static final String THROUGHPUT_FLAG = "--throughput";
+    private static final String[] BENCHMARKS = {"encode", "decode", "parseDynamic"};
+    private static final Pattern KEY = Pattern.compile(
+            "\"dto\": \"([^\"]*)\", \"mode\": \"([^\"]*)\", \"distribution\": \"([^\"]*)\"");
+    private static final Pattern MEAN_BYTES = Pattern.compile("\"meanBytes\": ([0-9.]+)");
+
+    // Measures of one DTO class, generator mode and distribution
+    private static final class Entry {
+        final String dto;
+        final WireFixture.GeneratorMode mode;
+        final SampleData.Distribution distribution;
+        final int schemaMessages;
+        final int[] sizes;
+        // benchmark -> {messages per second, bytes allocated per message}
+        final Map<String, double[]> throughput = new LinkedHashMap<>();
+
+        Entry(String dto, WireFixture.GeneratorMode mode, SampleData.Distribution distribution, WireFixture fixture) {
+            this.dto = dto;
+            this.mode = mode;
+            this.distribution = distribution;
+            this.schemaMessages = fixture.getSchema().getMessages().size()
+                    + fixture.getSchema().getSharedMessages().size();
+            byte[][] encoded = fixture.getEncoded();
+            sizes = new int[encoded.length];
+            for (int i = 0; i < encoded.length; i++) {
+                sizes[i] = encoded[i].length;
+            }
+            Arrays.sort(sizes);
+        }
+
+        String key() {
+            return key(dto, mode.name(), distribution.name());
+        }
+
+        static String key(String dto, String mode, String distribution) {
+            return dto + "/" + mode + "/" + distribution;
+        }
+
+        long totalBytes() {
+            long total = 0;
+            for (int size : sizes) {
+                total += size;
+            }
+            return total;
+        }
+
+        double meanBytes() {
+            return sizes.length == 0 ? 0 : (double) totalBytes() / sizes.length;
+        }
+
+        int percentile(int percent) {
+            return sizes.length == 0 ? 0 : sizes[Math.min(sizes.length - 1, sizes.length * percent / 100)];
+        }
+    }
+
+    private WireReport() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        List<String> dtos = split(getOption(args, DTO_OPTION,
+                "fr.bl.pojo2proto.benchmarks.dto.Order,fr.bl.pojo2proto.benchmarks.dto.Telemetry"));
+        List<WireFixture.GeneratorMode> modes = new ArrayList<>();
+        for (String mode : split(getOption(args, MODES_OPTION, join(WireFixture.GeneratorMode.values())))) {
+            modes.add(WireFixture.GeneratorMode.valueOf(mode));
+        }
+        List<SampleData.Distribution> distributions = new ArrayList<>();
+        for (String distribution : split(getOption(args, DISTRIBUTIONS_OPTION,
+                join(SampleData.Distribution.values())))) {
+            distributions.add(SampleData.Distribution.valueOf(distribution));
+        }
+        int samples = Integer.parseInt(getOption(args, SAMPLES_OPTION, String.valueOf(WireBenchmark.SAMPLES)));
+        long seed = Long.parseLong(getOption(args, SEED_OPTION, String.valueOf(WireBenchmark.SEED)));
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (String dto : dtos) {
+            for (WireFixture.GeneratorMode mode : modes) {
+                for (SampleData.Distribution distribution : distributions) {
+                    WireFixture fixture = WireFixture.create(dto, mode, distribution, samples, seed);
+                    Entry entry = new Entry(dto, mode, distribution, fixture);
+                    entries.put(entry.key(), entry);
+                }
+            }
+        }
+        if (Arrays.asList(args).contains(THROUGHPUT_FLAG)) {
+            // The benchmark always runs on its own SAMPLES samples drawn with SEED
+            int iterations = Integer.parseInt(getOption(args, ITERATIONS_OPTION, "5"));
+            measureThroughput(entries, dtos, modes, distributions, iterations);
+        }
+
+        String report = render(entries.values(), samples, seed);
+        Path out = Paths.get(getOption(args, OUT_OPTION, "target/wire-report.json"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.write(out, report.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Wire report of " + entries.size() + " results written to " + out);
+
+        String baseline = getOption(args, BASELINE_OPTION, null);
+        if (baseline != null) {
+            double tolerance = Double.parseDouble(getOption(args, TOLERANCE_OPTION, "0"));
+            int regressions = compare(entries, Paths.get(baseline), tolerance);
+            if (regressions > 0) {
+                System.err.println(regressions + " payload size regression(s) against " + baseline);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void measureThroughput(Map<String, Entry> entries, List<String> dtos,
+                                          List<WireFixture.GeneratorMode> modes,
+                                          List<SampleData.Distribution> distributions, int iterations)
+            throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(WireBenchmark.class.getName() + "\\.")
+                .param("dto", dtos.toArray(new String[0]))
+                .param("mode", split(join(modes.toArray())).toArray(new String[0]))
+                .param("distribution", split(join(distributions.toArray())).toArray(new String[0]))
+                .warmupIterations(iterations)
+                .measurementIterations(iterations)
+                .addProfiler(GCProfiler.class);
+        for (RunResult result : new Runner(options.build()).run()) {
+            Entry entry = entries.get(Entry.key(result.getParams().getParam("dto"),
+                    result.getParams().getParam("mode"), result.getParams().getParam("distribution")));
+            if (entry == null) {
+                continue;
+            }
+            String benchmark = result.getParams().getBenchmark();
+            benchmark = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            entry.throughput.put(benchmark, new double[] {
+                    result.getPrimaryResult().getScore(), allocation == null ? Double.NaN : allocation.getScore()
+            });
+        }
+    }
+
+    private static String render(Collection<Entry> entries, int samples, long seed) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"samples\": ").append(samples).append(",\n  \"seed\": ").append(seed)
+            .append(",\n  \"results\": [\n");
+        int i = 0;
+        for (Entry entry : entries) {
+            json.append("    {\"dto\": \"").append(entry.dto).append("\", \"mode\": \"").append(entry.mode)
+                .append("\", \"distribution\": \"").append(entry.distribution)
+                .append("\", \"schemaMessages\": ").append(entry.schemaMessages)
+                .append(", \"messages\": ").append(entry.sizes.length)
+                .append(", \"totalBytes\": ").append(entry.totalBytes())
+                .append(", \"meanBytes\": ").append(number(entry.meanBytes()))
+                .append(", \"minBytes\": ").append(entry.percentile(0))
+                .append(", \"p50Bytes\": ").append(entry.percentile(50))
+                .append(", \"p99Bytes\": ").append(entry.percentile(99))
+                .append(", \"maxBytes\": ").append(entry.percentile(100));
+            for (String benchmark : BENCHMARKS) {
+                double[] scores = entry.throughput.get(benchmark);
+                if (scores != null) {
+                    json.append(", \"").append(benchmark).append("OpsPerSecond\": ").append(number(scores[0]))
+                        .append(", \"").append(benchmark).append("BytesPerOp\": ").append(number(scores[1]));
+                }
+            }
+            json.append(++i < entries.size() ? "},\n" : "}\n");
+        }
+        return json.append("  ]\n}\n").toString();
+    }
+
+    // Reads the mean sizes of a report written by this class (one result per line) and lists the
+    // results that grew; results missing on either side are not compared
+    private static int compare(Map<String, Entry> entries, Path baseline, double tolerance) throws IOException {
+        int regressions = 0;
+        for (String line : Files.readAllLines(baseline, StandardCharsets.UTF_8)) {
+            Matcher key = KEY.matcher(line);
+            Matcher meanBytes = MEAN_BYTES.matcher(line);
+            if (!key.find() || !meanBytes.find()) {
+                continue;
+            }
+            Entry entry = entries.get(Entry.key(key.group(1), key.group(2), key.group(3)));
+            if (entry == null) {
+                continue;
+            }
+            // Compared as written, both rounded the same way
+            double before = Double.parseDouble(meanBytes.group(1));
+            double after = Double.parseDouble(number(entry.meanBytes()));
+            if (after > before * (1 + tolerance)) {
+                regressions++;
+                System.err.println(entry.key() + ": " + number(before) + " -> " + number(after) + " bytes per message");
+            }
+        }
+        return regressions;
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String getOption(String[] args, String prefix, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String join(Object[] values) {
+        StringBuilder joined = new StringBuilder();
+        for (Object value : values) {
+            joined.append(joined.length() == 0 ? "" : ",").append(value);
+        }
+        return joined.toString();
+    }
+
+    private static List<String> split(String values) {
+        List<String> split = new ArrayList<>();
+        for (String value : values.split(",")) {
+            if (!value.trim().isEmpty()) {
+                split.add(value.trim());
+            }
+        }
+        return split;
+    }
+}
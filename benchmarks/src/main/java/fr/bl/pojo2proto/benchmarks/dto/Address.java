@@ -0,0 +1,8 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+public class Address {
+    public String street;
+    public String city;
+    public String postalCode;
+    public String country;
+}
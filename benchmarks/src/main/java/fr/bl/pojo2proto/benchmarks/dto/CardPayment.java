@@ -0,0 +1,7 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+public class CardPayment extends Payment {
+    public String lastDigits;
+    public int expiryMonth;
+    public int expiryYear;
+}
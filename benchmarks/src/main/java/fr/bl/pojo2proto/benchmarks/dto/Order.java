@@ -0,0 +1,30 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+// Order event of a typical business payload: scalars of every width, an enum, adapted JDK value types,
+// a list of nested messages, a map, a set, an Optional and a polymorphic field (see Payment)
+public class Order {
+    public long id;
+    public int version;
+    public String reference;
+    public OrderStatus status;
+    public boolean priority;
+    public double weight;
+    public Date createdAt;
+    public Instant updatedAt;
+    public UUID customerId;
+    public BigDecimal total;
+    public List<OrderLine> lines;
+    public Map<String, String> attributes;
+    public Set<Integer> tags;
+    public Optional<Address> shippingAddress;
+    public Payment payment;
+}
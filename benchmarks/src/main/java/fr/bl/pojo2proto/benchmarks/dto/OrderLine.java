@@ -0,0 +1,8 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+public class OrderLine {
+    public String sku;
+    public int quantity;
+    public long unitPriceCents;
+    public float discount;
+}
@@ -0,0 +1,5 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+public enum OrderStatus {
+    CREATED, PAID, SHIPPED, DELIVERED, CANCELLED
+}
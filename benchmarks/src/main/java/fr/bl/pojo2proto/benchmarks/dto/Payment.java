@@ -0,0 +1,10 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+import fr.bl.pojo2proto.ProtoSubtypes;
+
+// Fields of this type are left out of the schema unless subtypes are resolved
+// (GeneratorOptions.setSubtypeResolver)
+@ProtoSubtypes({CardPayment.class, TransferPayment.class})
+public abstract class Payment {
+    public long amountCents;
+}
@@ -0,0 +1,17 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// Numeric payload of a device: packed primitive arrays, a rectangular 2-D array (row messages, or a
+// FlatArray_ message with GeneratorOptions.setFlattenArrays) and integer-keyed maps
+public class Telemetry {
+    public String deviceId;
+    public long timestamp;
+    public int sequence;
+    public int[] counters;
+    public float[] vector;
+    public double[][] readings;
+    public List<Long> offsets;
+    public Map<Integer, Double> gauges;
+}
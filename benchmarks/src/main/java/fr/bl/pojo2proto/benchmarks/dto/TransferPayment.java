@@ -0,0 +1,6 @@
+package fr.bl.pojo2proto.benchmarks.dto;
+
+public class TransferPayment extends Payment {
+    public String iban;
+    public long transferId;
+}
@@ -0,0 +1,25 @@
+package fr.bl.pojo2proto;
+
+import java.nio.ByteBuffer;
+
+// Bulk binary Java types, mapped to a single proto bytes value instead of a repeated field (one
+// length-delimited element per byte) or a message: byte[] as is, java.nio.ByteBuffer as its remaining
+// bytes and char[] UTF-8 encoded, like a String
+public final class BinaryTypes {
+    private static final String BYTE_BUFFER = "java.nio.ByteBuffer";
+
+    private BinaryTypes() {
+    }
+
+    public static boolean isBinary(TypeRef type) {
+        if (type.isArray()) {
+            TypeRef component = type.getComponent();
+            return component.isPrimitive() && (component.getName().equals("byte") || component.getName().equals("char"));
+        }
+        return type.isClass() && type.getName().equals(BYTE_BUFFER);
+    }
+
+    public static boolean isBinary(Class<?> type) {
+        return type == byte[].class || type == char[].class || type == ByteBuffer.class;
+    }
+}
@@ -0,0 +1,460 @@
+package fr.bl.pojo2proto;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.bl.pojo2proto.schema.FieldDefinition;
+
+// Adapters of TypeAdapterRegistry.builtIn: JDK value types as the fewest bytes that keep their value.
+// UUID as Uuid { fixed64 high; fixed64 low; }, BigDecimal as Decimal { bytes unscaled; sint32 scale; }
+// (the two's complement of the unscaled value), BigInteger as its two's complement bytes, Instant and
+// Duration as the google.protobuf types, LocalDateTime as a Timestamp read at UTC, LocalDate as its
+// epoch day, LocalTime as its nanosecond of day, atomics as their value, and Currency, Locale and URI
+// as their code, language tag and text.
+final class BuiltInTypeAdapters {
+    private static final String BYTE_STRING = "com.google.protobuf.ByteString";
+
+    private BuiltInTypeAdapters() {
+    }
+
+    static List<TypeAdapter> all() {
+        List<TypeAdapter> adapters = new ArrayList<>();
+        adapters.add(new UuidAdapter());
+        adapters.add(new DecimalAdapter());
+        adapters.add(new BigIntegerAdapter());
+        adapters.add(new InstantAdapter());
+        adapters.add(new LocalDateTimeAdapter());
+        adapters.add(new DurationAdapter());
+        adapters.add(new LocalDateAdapter());
+        adapters.add(new LocalTimeAdapter());
+        adapters.add(new AtomicLongAdapter());
+        adapters.add(new AtomicIntegerAdapter());
+        adapters.add(new AtomicBooleanAdapter());
+        adapters.add(new CurrencyAdapter());
+        adapters.add(new LocaleAdapter());
+        adapters.add(new UriAdapter());
+        return adapters;
+    }
+
+    // Seconds and nanoseconds, the fields of google.protobuf.Timestamp and google.protobuf.Duration
+    private static List<FieldDefinition> secondsAndNanos() {
+        return Arrays.asList(TypeAdapter.field("seconds", 1, "int64"), TypeAdapter.field("nanos", 2, "int32"));
+    }
+
+    private static final class UuidAdapter extends TypeAdapter {
+        UuidAdapter() {
+            super(UUID.class.getName(), "Uuid", Arrays.asList(field("high", 1, "fixed64"), field("low", 2, "fixed64")));
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            UUID uuid = (UUID) value;
+            return new Object[] {uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()};
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            Object[] fields = (Object[]) proto;
+            return new UUID((Long) fields[0], (Long) fields[1]);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return protoClass + ".newBuilder().setHigh(" + expression + ".getMostSignificantBits()).setLow("
+                    + expression + ".getLeastSignificantBits()).build()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "new java.util.UUID(" + expression + ".getHigh(), " + expression + ".getLow())";
+        }
+    }
+
+    private static final class DecimalAdapter extends TypeAdapter {
+        DecimalAdapter() {
+            super(BigDecimal.class.getName(), "Decimal",
+                    Arrays.asList(field("unscaled", 1, "bytes"), field("scale", 2, "sint32")));
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            BigDecimal decimal = (BigDecimal) value;
+            return new Object[] {decimal.unscaledValue().toByteArray(), decimal.scale()};
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            Object[] fields = (Object[]) proto;
+            return new BigDecimal(toBigInteger((byte[]) fields[0]), (Integer) fields[1]);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return protoClass + ".newBuilder().setUnscaled(" + BYTE_STRING + ".copyFrom(" + expression
+                    + ".unscaledValue().toByteArray())).setScale(" + expression + ".scale()).build()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "new java.math.BigDecimal(" + bigIntegerSource(expression + ".getUnscaled()") + ", "
+                    + expression + ".getScale())";
+        }
+    }
+
+    // An empty payload (the proto3 default) is zero
+    private static BigInteger toBigInteger(byte[] bytes) {
+        return bytes.length == 0 ? BigInteger.ZERO : new BigInteger(bytes);
+    }
+
+    private static String bigIntegerSource(String byteString) {
+        return "(" + byteString + ".isEmpty() ? java.math.BigInteger.ZERO : new java.math.BigInteger("
+                + byteString + ".toByteArray()))";
+    }
+
+    private static final class BigIntegerAdapter extends TypeAdapter {
+        BigIntegerAdapter() {
+            super(BigInteger.class.getName(), "bytes");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((BigInteger) value).toByteArray();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return toBigInteger((byte[]) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return BYTE_STRING + ".copyFrom(" + expression + ".toByteArray())";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return bigIntegerSource(expression);
+        }
+    }
+
+    private static final class InstantAdapter extends TypeAdapter {
+        InstantAdapter() {
+            super(Instant.class.getName(), "google.protobuf.Timestamp", secondsAndNanos());
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            Instant instant = (Instant) value;
+            return new Object[] {instant.getEpochSecond(), instant.getNano()};
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            Object[] fields = (Object[]) proto;
+            return Instant.ofEpochSecond((Long) fields[0], (Integer) fields[1]);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return protoClass + ".newBuilder().setSeconds(" + expression + ".getEpochSecond()).setNanos("
+                    + expression + ".getNano()).build()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.time.Instant.ofEpochSecond(" + expression + ".getSeconds(), " + expression + ".getNanos())";
+        }
+    }
+
+    private static final class LocalDateTimeAdapter extends TypeAdapter {
+        LocalDateTimeAdapter() {
+            super(LocalDateTime.class.getName(), "google.protobuf.Timestamp", secondsAndNanos());
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            return new Object[] {dateTime.toEpochSecond(ZoneOffset.UTC), dateTime.getNano()};
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            Object[] fields = (Object[]) proto;
+            return LocalDateTime.ofEpochSecond((Long) fields[0], (Integer) fields[1], ZoneOffset.UTC);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return protoClass + ".newBuilder().setSeconds(" + expression + ".toEpochSecond(java.time.ZoneOffset.UTC))"
+                    + ".setNanos(" + expression + ".getNano()).build()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.time.LocalDateTime.ofEpochSecond(" + expression + ".getSeconds(), " + expression
+                    + ".getNanos(), java.time.ZoneOffset.UTC)";
+        }
+    }
+
+    private static final class DurationAdapter extends TypeAdapter {
+        DurationAdapter() {
+            super(Duration.class.getName(), "google.protobuf.Duration", secondsAndNanos());
+        }
+
+        // google.protobuf.Duration gives negative durations a negative nanos, Java a positive one
+        @Override
+        public Object toProto(Object value) {
+            Duration duration = (Duration) value;
+            long seconds = duration.getSeconds();
+            int nanos = duration.getNano();
+            if (seconds < 0 && nanos > 0) {
+                seconds++;
+                nanos -= 1_000_000_000;
+            }
+            return new Object[] {seconds, nanos};
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            Object[] fields = (Object[]) proto;
+            return Duration.ofSeconds((Long) fields[0], (Integer) fields[1]);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return protoClass + ".newBuilder().setSeconds(" + expression + ".getSeconds() + (" + expression
+                    + ".isNegative() && " + expression + ".getNano() > 0 ? 1 : 0)).setNanos(" + expression
+                    + ".isNegative() && " + expression + ".getNano() > 0 ? " + expression
+                    + ".getNano() - 1_000_000_000 : " + expression + ".getNano()).build()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.time.Duration.ofSeconds(" + expression + ".getSeconds(), " + expression + ".getNanos())";
+        }
+    }
+
+    private static final class LocalDateAdapter extends TypeAdapter {
+        LocalDateAdapter() {
+            super(LocalDate.class.getName(), "sint64");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((LocalDate) value).toEpochDay();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return LocalDate.ofEpochDay((Long) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".toEpochDay()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.time.LocalDate.ofEpochDay(" + expression + ")";
+        }
+    }
+
+    private static final class LocalTimeAdapter extends TypeAdapter {
+        LocalTimeAdapter() {
+            super(LocalTime.class.getName(), "sint64");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((LocalTime) value).toNanoOfDay();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return LocalTime.ofNanoOfDay((Long) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".toNanoOfDay()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.time.LocalTime.ofNanoOfDay(" + expression + ")";
+        }
+    }
+
+    private static final class AtomicLongAdapter extends TypeAdapter {
+        AtomicLongAdapter() {
+            super(AtomicLong.class.getName(), "sint64");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((AtomicLong) value).get();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return new AtomicLong((Long) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".get()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "new java.util.concurrent.atomic.AtomicLong(" + expression + ")";
+        }
+    }
+
+    private static final class AtomicIntegerAdapter extends TypeAdapter {
+        AtomicIntegerAdapter() {
+            super(AtomicInteger.class.getName(), "sint32");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((AtomicInteger) value).get();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return new AtomicInteger((Integer) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".get()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "new java.util.concurrent.atomic.AtomicInteger(" + expression + ")";
+        }
+    }
+
+    private static final class AtomicBooleanAdapter extends TypeAdapter {
+        AtomicBooleanAdapter() {
+            super(AtomicBoolean.class.getName(), "bool");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((AtomicBoolean) value).get();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return new AtomicBoolean((Boolean) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".get()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "new java.util.concurrent.atomic.AtomicBoolean(" + expression + ")";
+        }
+    }
+
+    private static final class CurrencyAdapter extends TypeAdapter {
+        CurrencyAdapter() {
+            super(Currency.class.getName(), "string");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((Currency) value).getCurrencyCode();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return Currency.getInstance((String) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".getCurrencyCode()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.util.Currency.getInstance(" + expression + ")";
+        }
+    }
+
+    private static final class LocaleAdapter extends TypeAdapter {
+        LocaleAdapter() {
+            super(Locale.class.getName(), "string");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return ((Locale) value).toLanguageTag();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return Locale.forLanguageTag((String) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".toLanguageTag()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.util.Locale.forLanguageTag(" + expression + ")";
+        }
+    }
+
+    private static final class UriAdapter extends TypeAdapter {
+        UriAdapter() {
+            super(URI.class.getName(), "string");
+        }
+
+        @Override
+        public Object toProto(Object value) {
+            return value.toString();
+        }
+
+        @Override
+        public Object fromProto(Object proto) {
+            return URI.create((String) proto);
+        }
+
+        @Override
+        public String toProtoSource(String expression, String protoClass) {
+            return expression + ".toString()";
+        }
+
+        @Override
+        public String fromProtoSource(String expression, String protoClass) {
+            return "java.net.URI.create(" + expression + ")";
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package fr.bl.pojo2proto;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// JFR event for one class described during discovery; only slow classes are recorded by default
+@Name("fr.bl.pojo2proto.ClassDescription")
+@Label("Class Description")
+@Category("Pojo2Proto")
+@Description("Resolution of one class into its enum or message definition")
+@Threshold("1 ms")
+class ClassDescriptionEvent extends jdk.jfr.Event {
+    @Label("Class Name")
+    String className;
+
+    @Label("Fields")
+    int fields;
+}
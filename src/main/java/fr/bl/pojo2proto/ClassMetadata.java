@@ -0,0 +1,246 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Structure of one class, resolved once. Reflection-backed instances are shared through
+// ClassMetadataCache; other ClassResolvers build their own from class files or sources.
+public final class ClassMetadata {
+    private final TypeRef type;
+    private final int modifiers;
+    private final boolean enumType;
+    private final List<FieldMetadata> fields;
+    private final List<TypeRef> innerClasses;
+    private final List<String> enumConstants;
+    private final Set<String> methods;
+    private final boolean noArgConstructor;
+    private volatile String fingerprint;
+
+    // modifiers use the java.lang.reflect.Modifier bits (same as class file access flags). The methods
+    // and constructors are not known: every accessor and a no-argument constructor are assumed
+    public ClassMetadata(TypeRef type, int modifiers, boolean enumType, List<FieldMetadata> fields,
+                         List<TypeRef> innerClasses, List<String> enumConstants) {
+        this(type, modifiers, enumType, fields, innerClasses, enumConstants, null, true);
+    }
+
+    // methods: keys (see getMethodKey) of the instance methods code of the package of the class can call,
+    // inherited ones included; noArgConstructor: whether that code can call new X()
+    public ClassMetadata(TypeRef type, int modifiers, boolean enumType, List<FieldMetadata> fields,
+                         List<TypeRef> innerClasses, List<String> enumConstants, Set<String> methods,
+                         boolean noArgConstructor) {
+        this.type = type;
+        this.modifiers = modifiers;
+        this.enumType = enumType;
+        this.fields = Collections.unmodifiableList(fields);
+        List<TypeRef> sortedInnerClasses = new ArrayList<>(innerClasses);
+        // getDeclaredClasses() order is unspecified, keep the output deterministic
+        sortedInnerClasses.sort(Comparator.comparing(TypeRef::getName));
+        this.innerClasses = Collections.unmodifiableList(sortedInnerClasses);
+        this.enumConstants = Collections.unmodifiableList(enumConstants);
+        this.methods = methods == null ? null : Collections.unmodifiableSet(new TreeSet<>(methods));
+        this.noArgConstructor = noArgConstructor;
+    }
+
+    static ClassMetadata of(Class<?> type) {
+        return new ClassMetadata(TypeRef.of(type), type.getModifiers(), type.isEnum(), collectFields(type),
+                collectInnerClasses(type), collectEnumConstants(type), collectMethods(type),
+                hasNoArgConstructor(type));
+    }
+
+    // getName/0, setName/1
+    public static String getMethodKey(String name, int parameterCount) {
+        return name + "/" + parameterCount;
+    }
+
+    // Keys of the public instance methods of a class, inherited ones included
+    public static Set<String> getPublicMethods(Class<?> clazz) {
+        Set<String> methods = new TreeSet<>();
+        for (Method method : clazz.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.add(getMethodKey(method.getName(), method.getParameterCount()));
+            }
+        }
+        return methods;
+    }
+
+    // Public methods, and the non-private ones declared in the package of the class
+    private static Set<String> collectMethods(Class<?> clazz) {
+        Set<String> methods = getPublicMethods(clazz);
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            if (!current.getPackageName().equals(clazz.getPackageName())) {
+                continue;
+            }
+            for (Method method : current.getDeclaredMethods()) {
+                int modifiers = method.getModifiers();
+                if (!Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers) && !method.isSynthetic()) {
+                    methods.add(getMethodKey(method.getName(), method.getParameterCount()));
+                }
+            }
+        }
+        return methods;
+    }
+
+    // Non-static inner classes have no such constructor: theirs take the outer instance
+    private static boolean hasNoArgConstructor(Class<?> clazz) {
+        if (clazz.isInterface() || clazz.isEnum() || clazz.isArray() || clazz.isPrimitive()
+                || Modifier.isAbstract(clazz.getModifiers())) {
+            return false;
+        }
+        try {
+            return !Modifier.isPrivate(clazz.getDeclaredConstructor().getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static List<FieldMetadata> collectFields(Class<?> clazz) {
+        List<FieldMetadata> allFields = new ArrayList<>();
+        Class<?> currentClass = clazz;
+
+        // Get fields from all super-classes
+        while (currentClass != null && !currentClass.equals(Object.class)) {
+            // Add all non-synthetic, non-static fields (private ones included)
+            for (Field field : currentClass.getDeclaredFields()) {
+                if (!field.isSynthetic() && !Modifier.isStatic(field.getModifiers())) {
+                    allFields.add(FieldMetadata.of(field));
+                }
+            }
+            currentClass = currentClass.getSuperclass();
+        }
+        return allFields;
+    }
+
+    private static List<TypeRef> collectInnerClasses(Class<?> clazz) {
+        List<TypeRef> inner = new ArrayList<>();
+        if (clazz.isPrimitive() || clazz.isArray()) {
+            return inner;
+        }
+        for (Class<?> innerClass : clazz.getDeclaredClasses()) {
+            if (!Modifier.isPrivate(innerClass.getModifiers())) {
+                inner.add(TypeRef.of(innerClass));
+            }
+        }
+        return inner;
+    }
+
+    private static List<String> collectEnumConstants(Class<?> clazz) {
+        List<String> constants = new ArrayList<>();
+        if (!clazz.isEnum()) {
+            return constants;
+        }
+        for (Object constant : clazz.getEnumConstants()) {
+            constants.add(((Enum<?>) constant).name());
+        }
+        return constants;
+    }
+
+    public TypeRef getType() {
+        return type;
+    }
+
+    // Binary class name
+    public String getName() {
+        return type.getName();
+    }
+
+    public String getSimpleName() {
+        return type.getSimpleName();
+    }
+
+    // The reflected Class, null when the metadata was not read through reflection
+    public Class<?> getJavaClass() {
+        return type.getResolvedClass();
+    }
+
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    public boolean isEnum() {
+        return enumType;
+    }
+
+    // Interfaces and abstract classes never get a message of their own (enums excluded)
+    public boolean isAbstract() {
+        return !enumType && (Modifier.isInterface(modifiers) || Modifier.isAbstract(modifiers));
+    }
+
+    // Instance fields of the class and all its super-classes (static and synthetic ones excluded)
+    public List<FieldMetadata> getFields() {
+        return fields;
+    }
+
+    // Non-private declared inner classes
+    public List<TypeRef> getInnerClasses() {
+        return innerClasses;
+    }
+
+    // Enum constant names in ordinal order, empty for non-enum classes
+    public List<String> getEnumConstants() {
+        return enumConstants;
+    }
+
+    // Keys (see getMethodKey) of the instance methods code of the package of the class can call, null
+    // when the resolver did not read the methods
+    public Set<String> getMethods() {
+        return methods;
+    }
+
+    // Whether code of the package of the class can call the instance method; assumed when the methods
+    // are not known
+    public boolean hasMethod(String name, int parameterCount) {
+        return methods == null || methods.contains(getMethodKey(name, parameterCount));
+    }
+
+    // Whether code of the package of the class can create instances with new X()
+    public boolean hasNoArgConstructor() {
+        return noArgConstructor;
+    }
+
+    // Hash of everything the generated definition depends on: name, kind, fields (name, modifiers,
+    // declared generic type), inner classes and enum constants. Stable across JVM runs.
+    public String getFingerprint() {
+        String result = fingerprint;
+        if (result == null) {
+            StringBuilder structure = new StringBuilder();
+            structure.append(type.getName()).append('|').append(modifiers).append('|').append(enumType).append('\n');
+            for (FieldMetadata field : fields) {
+                structure.append(field.getDeclaringType().getName()).append('.').append(field.getName())
+                         .append('|').append(field.getModifiers())
+                         .append('|').append(field.getType().getTypeName()).append('\n');
+            }
+            for (TypeRef innerClass : innerClasses) {
+                structure.append("inner|").append(innerClass.getName()).append('\n');
+            }
+            for (String constant : enumConstants) {
+                structure.append("constant|").append(constant).append('\n');
+            }
+            result = sha256(structure.toString());
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
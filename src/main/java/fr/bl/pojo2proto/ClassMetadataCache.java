@@ -0,0 +1,47 @@
+package fr.bl.pojo2proto;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide, thread-safe cache of ClassMetadata.
+// Backed by a ClassValue: entries live on the Class object itself, so a redeployed
+// class loader (and its classes) stays collectable and is never pinned by this cache.
+public final class ClassMetadataCache {
+    private static final LongAdder LOOKUPS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            MISSES.increment();
+            return ClassMetadata.of(type);
+        }
+    };
+
+    private ClassMetadataCache() {
+    }
+
+    public static ClassMetadata get(Class<?> type) {
+        if (type == null) {
+            throw new RuntimeException("Null class provided for metadata lookup");
+        }
+        LOOKUPS.increment();
+        return METADATA.get(type);
+    }
+
+    public static long getHits() {
+        return Math.max(0, LOOKUPS.sum() - MISSES.sum());
+    }
+
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    public static void resetStatistics() {
+        LOOKUPS.reset();
+        MISSES.reset();
+    }
+
+    public static String statistics() {
+        return "ClassMetadataCache[hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+}
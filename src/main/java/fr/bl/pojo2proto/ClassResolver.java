@@ -0,0 +1,22 @@
+package fr.bl.pojo2proto;
+
+import java.util.Collection;
+import java.util.Collections;
+
+// Gives discovery access to class structure. Implementations read it from reflection
+// (ReflectionClassResolver) or from class files without loading them (scan.ClassPathScanner).
+// Implementations must be thread-safe: parallel discovery calls them concurrently.
+public interface ClassResolver {
+
+    // Metadata of the class behind a class type, null when it is not available
+    ClassMetadata resolve(TypeRef type);
+
+    // true when the class type is, extends or implements the given JDK type (Collection, Map, Date, ...)
+    boolean isAssignableTo(TypeRef type, Class<?> jdkType);
+
+    // Problems met so far while reading classes (unreadable class files...), whose classes were left
+    // out; discovery reports them to its GenerationListener after each run
+    default Collection<String> getWarnings() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,42 @@
+package fr.bl.pojo2proto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Implementations used when a collection or map declared through an interface (or abstract class)
+// has to be instantiated, e.g. by generated mappers and the wire decoder
+public final class CollectionTypes {
+    private static final Map<String, String> IMPLEMENTATIONS = getImplementations();
+
+    private CollectionTypes() {
+    }
+
+    private static Map<String, String> getImplementations() {
+        Map<String, String> implementations = new HashMap<>();
+        implementations.put("java.lang.Iterable", "java.util.ArrayList");
+        implementations.put("java.util.Collection", "java.util.ArrayList");
+        implementations.put("java.util.List", "java.util.ArrayList");
+        implementations.put("java.util.AbstractList", "java.util.ArrayList");
+        implementations.put("java.util.Set", "java.util.LinkedHashSet");
+        implementations.put("java.util.AbstractSet", "java.util.LinkedHashSet");
+        implementations.put("java.util.SortedSet", "java.util.TreeSet");
+        implementations.put("java.util.NavigableSet", "java.util.TreeSet");
+        implementations.put("java.util.Queue", "java.util.ArrayDeque");
+        implementations.put("java.util.Deque", "java.util.ArrayDeque");
+        implementations.put("java.util.Map", "java.util.LinkedHashMap");
+        implementations.put("java.util.AbstractMap", "java.util.LinkedHashMap");
+        implementations.put("java.util.SortedMap", "java.util.TreeMap");
+        implementations.put("java.util.NavigableMap", "java.util.TreeMap");
+        implementations.put("java.util.concurrent.ConcurrentMap", "java.util.concurrent.ConcurrentHashMap");
+        implementations.put("java.util.concurrent.ConcurrentNavigableMap",
+                "java.util.concurrent.ConcurrentSkipListMap");
+        return implementations;
+    }
+
+    // Binary name of the class to instantiate for a declared collection/map type: the declared
+    // type itself when it is not one of the JDK interfaces/abstract classes above
+    public static String getImplementation(String declaredType) {
+        String implementation = IMPLEMENTATIONS.get(declaredType);
+        return implementation != null ? implementation : declaredType;
+    }
+}
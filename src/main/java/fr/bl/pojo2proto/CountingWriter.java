@@ -0,0 +1,36 @@
+package fr.bl.pojo2proto;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+// Counts the characters going through to the underlying writer
+final class CountingWriter extends FilterWriter {
+    private long count;
+
+    CountingWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        count++;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        count += length;
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        out.write(text, offset, length);
+        count += length;
+    }
+
+    long getCount() {
+        return count;
+    }
+}
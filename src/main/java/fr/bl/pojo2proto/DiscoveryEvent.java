@@ -0,0 +1,28 @@
+package fr.bl.pojo2proto;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event spanning one SchemaDiscovery.discover call
+@Name("fr.bl.pojo2proto.Discovery")
+@Label("Schema Discovery")
+@Category("Pojo2Proto")
+@Description("Walk of the type graph from the root classes")
+class DiscoveryEvent extends jdk.jfr.Event {
+    @Label("Roots")
+    int roots;
+
+    @Label("Parallelism")
+    int parallelism;
+
+    @Label("Enums")
+    int enums;
+
+    @Label("Messages")
+    int messages;
+
+    @Label("Resolver Calls")
+    long resolverCalls;
+}
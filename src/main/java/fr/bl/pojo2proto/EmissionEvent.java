@@ -0,0 +1,30 @@
+package fr.bl.pojo2proto;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event spanning the rendering of one .proto document
+@Name("fr.bl.pojo2proto.Emission")
+@Label("Proto Emission")
+@Category("Pojo2Proto")
+@Description("Rendering of definitions into .proto text")
+class EmissionEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file;
+
+    @Label("Enums")
+    int enums;
+
+    @Label("Messages")
+    int messages;
+
+    @Label("Characters")
+    @DataAmount(DataAmount.BYTES)
+    long characters;
+
+    @Label("Cache Hits")
+    long cacheHits;
+}
@@ -0,0 +1,66 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+// Structure of one field, resolved once and kept by ClassMetadata
+public final class FieldMetadata {
+    private final String name;
+    private final int modifiers;
+    private final TypeRef type;
+    private final TypeRef declaringType;
+    private final Field field;
+
+    // field is the reflective handle when the metadata comes from reflection, null otherwise
+    public FieldMetadata(String name, int modifiers, TypeRef type, TypeRef declaringType, Field field) {
+        this.name = name;
+        this.modifiers = modifiers;
+        this.type = type;
+        this.declaringType = declaringType;
+        this.field = field;
+    }
+
+    static FieldMetadata of(Field field) {
+        return new FieldMetadata(field.getName(), field.getModifiers(), TypeRef.of(field.getGenericType()),
+                TypeRef.of(field.getDeclaringClass()), field);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    public boolean isTransient() {
+        return Modifier.isTransient(modifiers);
+    }
+
+    // Declared type, including generic arguments
+    public TypeRef getType() {
+        return type;
+    }
+
+    public TypeRef getDeclaringType() {
+        return declaringType;
+    }
+
+    // Reflective handle, null when the metadata was not read through reflection
+    public Field getField() {
+        return field;
+    }
+
+    // true when the declared type is parameterized (List<Foo>, Map<K, V>, ...)
+    public boolean isParameterized() {
+        return type.isParameterized();
+    }
+
+    public int getTypeArgumentCount() {
+        return type.getArguments().size();
+    }
+
+    public TypeRef getTypeArgument(int index) {
+        return type.getArguments().get(index);
+    }
+}
@@ -0,0 +1,166 @@
+package fr.bl.pojo2proto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Field numbers of every generated message, kept across runs so that the wire format does not depend
+// on the order reflection or the class file happen to list the fields in. A number, once given, is
+// never reused: when a field disappears its number and name become reserved, and only a field
+// coming back under the same name gets the number back. New fields take the smallest free numbers,
+// hottest first (see HotFieldSelector), so they land in 1-15, the tags encoded in a single byte,
+// while that range has room. Existing fields are never renumbered.
+// File format (sorted properties): com.acme.Order.id=1, com.acme.Order.legacyCode=reserved:4
+public class FieldNumberRegistry {
+    private static final String RESERVED_PREFIX = "reserved:";
+    // Numbers reserved by protobuf itself
+    private static final int FIRST_PROTOBUF_RESERVED = 19000;
+    private static final int LAST_PROTOBUF_RESERVED = 19999;
+
+    private final Path file;
+    private final Map<String, ClassNumbers> classes = new TreeMap<>();
+    private boolean dirty;
+
+    // Numbers of one class: live fields and reserved (deleted) ones, by field name
+    private static final class ClassNumbers {
+        final Map<String, Integer> live = new TreeMap<>();
+        final Map<String, Integer> reserved = new TreeMap<>();
+
+        boolean isTaken(int number) {
+            return live.containsValue(number) || reserved.containsValue(number)
+                    || (number >= FIRST_PROTOBUF_RESERVED && number <= LAST_PROTOBUF_RESERVED);
+        }
+    }
+
+    private FieldNumberRegistry(Path file) {
+        this.file = file;
+    }
+
+    // Registry that lives as long as the object, e.g. for one-off generations
+    public static FieldNumberRegistry inMemory() {
+        return new FieldNumberRegistry(null);
+    }
+
+    // Loads the registry file, a missing file being an empty registry. An unreadable file is an error:
+    // starting over would silently renumber every message.
+    public static FieldNumberRegistry load(Path file) throws IOException {
+        FieldNumberRegistry registry = new FieldNumberRegistry(file);
+        if (!Files.isRegularFile(file)) {
+            return registry;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            int separator = key.lastIndexOf('.');
+            String value = properties.getProperty(key).trim();
+            try {
+                ClassNumbers numbers = registry.classes.computeIfAbsent(key.substring(0, separator),
+                        name -> new ClassNumbers());
+                if (value.startsWith(RESERVED_PREFIX)) {
+                    numbers.reserved.put(key.substring(separator + 1),
+                            Integer.parseInt(value.substring(RESERVED_PREFIX.length())));
+                } else {
+                    numbers.live.put(key.substring(separator + 1), Integer.parseInt(value));
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid field number entry " + key + "=" + value + " in " + file, e);
+            }
+        }
+        return registry;
+    }
+
+    // Numbers of the current fields of a class. Fields known from previous runs keep their number,
+    // fields gone since are reserved, and new fields get the smallest free numbers by decreasing heat
+    // (fields absent from the heat map are cold), then in the given order.
+    public synchronized Map<String, Integer> assign(String className, List<String> fieldNames,
+                                                    Map<String, Long> heat) {
+        ClassNumbers numbers = classes.computeIfAbsent(className, name -> new ClassNumbers());
+        Set<String> current = new HashSet<>(fieldNames);
+        for (String name : new ArrayList<>(numbers.live.keySet())) {
+            if (!current.contains(name)) {
+                numbers.reserved.put(name, numbers.live.remove(name));
+                dirty = true;
+            }
+        }
+
+        List<String> newFields = new ArrayList<>();
+        for (String name : fieldNames) {
+            if (numbers.live.containsKey(name) || newFields.contains(name)) {
+                continue;
+            }
+            Integer previous = numbers.reserved.remove(name);
+            if (previous != null) {
+                numbers.live.put(name, previous);
+                dirty = true;
+            } else {
+                newFields.add(name);
+            }
+        }
+        // Stable sort: equally hot fields stay in declaration order
+        newFields.sort(Comparator.comparingLong((String name) -> heat.getOrDefault(name, 0L)).reversed());
+        int candidate = 1;
+        for (String name : newFields) {
+            while (numbers.isTaken(candidate)) {
+                candidate++;
+            }
+            numbers.live.put(name, candidate);
+            dirty = true;
+        }
+
+        Map<String, Integer> assigned = new LinkedHashMap<>();
+        for (String name : fieldNames) {
+            assigned.put(name, numbers.live.get(name));
+        }
+        return assigned;
+    }
+
+    // Reserved numbers of a class by former field name
+    public synchronized Map<String, Integer> getReserved(String className) {
+        ClassNumbers numbers = classes.get(className);
+        return numbers == null ? Collections.<String, Integer>emptyMap() : new TreeMap<>(numbers.reserved);
+    }
+
+    // Writes the file back (atomically) when numbers were given or reserved; no-op in memory
+    public synchronized void save() throws IOException {
+        if (file == null || !dirty) {
+            return;
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write("# Field numbers of the generated messages: edit with care, numbers must never be reused\n");
+            for (Map.Entry<String, ClassNumbers> entry : classes.entrySet()) {
+                Map<String, String> sorted = new TreeMap<>();
+                for (Map.Entry<String, Integer> live : entry.getValue().live.entrySet()) {
+                    sorted.put(live.getKey(), String.valueOf(live.getValue()));
+                }
+                for (Map.Entry<String, Integer> reserved : entry.getValue().reserved.entrySet()) {
+                    sorted.put(reserved.getKey(), RESERVED_PREFIX + reserved.getValue());
+                }
+                for (Map.Entry<String, String> field : sorted.entrySet()) {
+                    writer.write(entry.getKey() + "." + field.getKey() + "=" + field.getValue() + "\n");
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+}
@@ -0,0 +1,113 @@
+package fr.bl.pojo2proto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded in-memory FragmentStore shared by the requests of a ProtoGenerator: the least recently used
+// fragments are evicted beyond the capacity. Split into independently locked segments, so concurrent
+// requests rarely wait for each other; eviction is least recently used within a segment.
+public final class FragmentCache implements FragmentStore {
+    private static final int SEGMENTS = 16;
+
+    private static final class Segment extends LinkedHashMap<String, String[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private long evictions;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            if (size() > capacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FragmentCache(int capacity) {
+        if (capacity < 1) {
+            throw new RuntimeException("Fragment cache capacity must be at least 1, got " + capacity);
+        }
+        int segmentCount = Math.min(SEGMENTS, capacity);
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // The first segments take the remainder, so the capacities add up exactly
+            segments[i] = new Segment(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+        }
+    }
+
+    private Segment segment(String javaName) {
+        int hash = javaName.hashCode();
+        return segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % segments.length];
+    }
+
+    @Override
+    public String getFragment(String javaName, String fingerprint) {
+        Segment segment = segment(javaName);
+        String[] entry;
+        synchronized (segment) {
+            entry = segment.get(javaName);
+        }
+        if (entry != null && entry[0].equals(fingerprint)) {
+            hits.increment();
+            return entry[1];
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void putFragment(String javaName, String fingerprint, String fragment) {
+        Segment segment = segment(javaName);
+        synchronized (segment) {
+            segment.put(javaName, new String[] {fingerprint, fragment});
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package fr.bl.pojo2proto;
+
+// Rendered top-level definitions (messages, enums) reused by ProtoEmitter, keyed by Java class name
+// and structural fingerprint, e.g. the in-memory FragmentCache of a ProtoGenerator. Only rendering is
+// reused: discovery still describes every class
+public interface FragmentStore {
+    // Rendered fragment for the class, or null when it is unknown or its fingerprint changed
+    String getFragment(String javaName, String fingerprint);
+
+    void putFragment(String javaName, String fingerprint, String fragment);
+}
@@ -1,39 +1,284 @@
 package fr.bl.pojo2proto;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import fr.bl.pojo2proto.scan.ClassPathScanner;
+import fr.bl.pojo2proto.source.SourceTreeScanner;
+
 public class GenerateProtoFile {
 	public static List<String> allClasses;
 	private static final String PROTO_OUTPUT_DIR = "src/main/proto/";
+	private static final String SINGLE_FILE_NAME = "K.proto";
+	// Field numbers are kept here across runs; commit it with the .proto files
+	private static final String FIELD_NUMBERS_FILE = "field-numbers.properties";
+	private static final String PER_PACKAGE_FLAG = "--per-package";
+	// Bytecode scanning mode: --classpath=<dirs and jars> [--packages=com.acme.dto,...] [--mmap]
+	private static final String CLASSPATH_OPTION = "--classpath=";
+	private static final String PACKAGES_OPTION = "--packages=";
+	private static final String MMAP_FLAG = "--mmap";
+	// Source mode: --sources=<source roots> [--packages=com.acme.dto,...]
+	private static final String SOURCES_OPTION = "--sources=";
+	// Prints phase timings, counters and the slowest classes once done
+	private static final String METRICS_FLAG = "--metrics";
+	private static final int SLOWEST_CLASSES = 10;
+	// Also writes the DTO <-> proto mapper sources; without --per-package, --java-package is required
+	private static final String MAPPERS_FLAG = "--mappers";
+	// java_package of K.proto, the package protoc generates its classes (and the mappers use) in
+	private static final String JAVA_PACKAGE_OPTION = "--java-package=";
+	private static final String MAPPER_OUTPUT_DIR = "target/generated-sources/pojo2proto/";
+	// Also writes the binary FileDescriptorSet of the generated files, no protoc needed
+	private static final String DESCRIPTOR_SET_FLAG = "--descriptor-set";
+	private static final String DESCRIPTOR_SET_FILE = "target/generated-resources/pojo2proto/schema.desc";
+	// Keeps the JVM warm and serves many runs, see GenerationDaemon: --daemon (stdin) or --daemon=<port>
+	// [--daemon-token=<file>, default ~/.pojo2proto/daemon.token]
+	private static final String DAEMON_FLAG = "--daemon";
+	// Socket mode: file the request token is written to, readable by the daemon's owner only
+	private static final String DAEMON_TOKEN_OPTION = "--daemon-token=";
+	private static final String DEFAULT_DAEMON_TOKEN = ".pojo2proto/daemon.token";
+	// Rectangular primitive int[][]/double[][][]... fields as packed FlatArray_ messages, see GeneratorOptions
+	private static final String FLATTEN_ARRAYS_FLAG = "--flatten-arrays";
+	// Interface, abstract class and annotated Object fields as oneofs of their subtypes, see SubtypeResolver:
+	// sealed permits and @ProtoSubtypes, or the scanned subclasses in bytecode scanning mode
+	private static final String ONEOF_SUBTYPES_FLAG = "--oneof-subtypes";
 
     public static void main(String[] args) {
-         // Put all founded DTO classes here to be processed
-    	Set<Class<?>> classesToConvert = new HashSet<>(Arrays.asList(
-    		    Object.class,
-    		    Integer.class
-    		));
-         JavaToProto jpt = new JavaToProto(classesToConvert);
-         writeProtoFile("K.proto",jpt.toString());
-    }
-
-    private static void writeProtoFile(String fileName, String content) {
-        File protoDir = new File(PROTO_OUTPUT_DIR);
-        if (!protoDir.exists()) {
-            protoDir.mkdirs();
-        }
-        File protoFile = new File(protoDir, fileName);
-        try (FileWriter writer = new FileWriter(protoFile)) {
-            writer.write(content);
+         String daemon = getDaemonOption(args);
+         if (daemon != null) {
+             runDaemon(daemon, args);
+             return;
+         }
+         generate(Paths.get(""), args, WarmResolvers.cold(), System.out, System.err);
+    }
+
+    // --daemon serves requests on stdin, --daemon=<port> on a loopback socket
+    private static String getDaemonOption(String[] args) {
+        for (String arg : args) {
+            if (arg.equals(DAEMON_FLAG)) {
+                return "";
+            }
+        }
+        return getOption(args, DAEMON_FLAG + "=");
+    }
+
+    private static void runDaemon(String port, String[] args) {
+        GenerationDaemon daemon = new GenerationDaemon(Runtime.getRuntime().availableProcessors(),
+                GenerationListener.STDERR);
+        try {
+            if (port.isEmpty()) {
+                daemon.serve(System.in, System.out);
+            } else {
+                String tokenFile = getOption(args, DAEMON_TOKEN_OPTION);
+                daemon.serve(Integer.parseInt(port), tokenFile != null ? Paths.get(tokenFile)
+                        : Paths.get(System.getProperty("user.home")).resolve(DEFAULT_DAEMON_TOKEN));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error running daemon: " + e.getMessage());
+        } finally {
+            daemon.close();
+        }
+    }
+
+    // One run with the given arguments, paths resolved against baseDir; what the run prints goes to
+    // out and err. Returns false when an error was reported
+    static boolean generate(Path baseDir, String[] args, WarmResolvers resolvers, PrintStream out,
+            PrintStream err) {
+         GeneratorOptions options = new GeneratorOptions()
+                 .setFlattenArrays(Arrays.asList(args).contains(FLATTEN_ARRAYS_FLAG));
+         if (Arrays.asList(args).contains(ONEOF_SUBTYPES_FLAG)) {
+             options.setSubtypeResolver(SubtypeResolver.SEALED.orElse(SubtypeResolver.ANNOTATIONS));
+         }
+         String javaPackage = getOption(args, JAVA_PACKAGE_OPTION);
+         if (javaPackage == null && Arrays.asList(args).contains(MAPPERS_FLAG)
+                 && !Arrays.asList(args).contains(PER_PACKAGE_FLAG)) {
+             err.println(MAPPERS_FLAG + " needs " + JAVA_PACKAGE_OPTION + "<package> (or " + PER_PACKAGE_FLAG
+                     + "): the mappers are compiled against the classes protoc generates in that package");
+             return false;
+         }
+         try {
+             options.setJavaPackage(javaPackage);
+         } catch (RuntimeException e) {
+             err.println(e.getMessage());
+             return false;
+         }
+         Path fieldNumbersFile = baseDir.resolve(PROTO_OUTPUT_DIR).resolve(FIELD_NUMBERS_FILE);
+         try {
+             options.setFieldNumberRegistry(FieldNumberRegistry.load(fieldNumbersFile));
+         } catch (IOException e) {
+             err.println("Error reading field numbers " + fieldNumbersFile + ": " + e.getMessage());
+             return false;
+         }
+         GenerationMetrics metrics = null;
+         if (Arrays.asList(args).contains(METRICS_FLAG)) {
+             metrics = new GenerationMetrics();
+             options.setListener(metrics);
+         } else {
+             options.setListener(new GenerationListener() {
+                 @Override
+                 public void onWarning(String message) {
+                     err.println(message);
+                 }
+             });
+         }
+
+         Run run = new Run(baseDir, args, err);
+         String classPath = getOption(args, CLASSPATH_OPTION);
+         String sources = getOption(args, SOURCES_OPTION);
+         if (classPath != null) {
+             generateFromClassPath(run, classPath, options, resolvers);
+         } else if (sources != null) {
+             generateFromSources(run, sources, options, resolvers);
+         } else {
+             // Put all founded DTO classes here to be processed
+    	    Set<Class<?>> classesToConvert = new HashSet<>(Arrays.asList(
+    		        Object.class,
+    		        Integer.class
+    		    ));
+             JavaToProto jpt = new JavaToProto(classesToConvert, options);
+             write(run, jpt);
+         }
+
+         if (metrics != null) {
+             out.println(metrics.report(SLOWEST_CLASSES));
+         }
+         return !run.failed;
+    }
+
+    // Reads the DTOs from class directories/JARs without loading them
+    private static void generateFromClassPath(Run run, String classPath, GeneratorOptions options,
+            WarmResolvers resolvers) {
+        List<Path> entries = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            entries.add(run.baseDir.resolve(entry).toAbsolutePath().normalize());
+        }
+        List<String> packageFilters = getPackageFilters(run.args);
+        boolean memoryMapped = Arrays.asList(run.args).contains(MMAP_FLAG);
+
+        String key = CLASSPATH_OPTION + entries + PACKAGES_OPTION + packageFilters + memoryMapped;
+        try (WarmResolvers.Lease<ClassPathScanner> scanner = resolvers.get(key, entries, ".class",
+                () -> new ClassPathScanner(entries, packageFilters, memoryMapped))) {
+            if (options.getSubtypeResolver() != SubtypeResolver.NONE) {
+                options.setSubtypeResolver(scanner.get().getSubtypeResolver());
+            }
+            write(run, new JavaToProto(scanner.get().getRoots(), scanner.get(), options));
+        } catch (IOException e) {
+            run.error("Error scanning class path " + classPath + ": " + e.getMessage());
+        }
+    }
+
+    // Parses the DTOs from .java source roots, before any compilation
+    private static void generateFromSources(Run run, String sources, GeneratorOptions options,
+            WarmResolvers resolvers) {
+        List<Path> roots = new ArrayList<>();
+        for (String root : sources.split(File.pathSeparator)) {
+            roots.add(run.baseDir.resolve(root).toAbsolutePath().normalize());
+        }
+        List<String> packageFilters = getPackageFilters(run.args);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String key = SOURCES_OPTION + roots + PACKAGES_OPTION + packageFilters;
+        try (WarmResolvers.Lease<SourceTreeScanner> scanner = resolvers.get(key, roots, ".java",
+                () -> new SourceTreeScanner(roots, packageFilters, parallelism))) {
+            write(run, new JavaToProto(scanner.get().getRoots(), scanner.get(), options));
+        } catch (IOException e) {
+            run.error("Error parsing sources " + sources + ": " + e.getMessage());
+        }
+    }
+
+    private static List<String> getPackageFilters(String[] args) {
+        String packages = getOption(args, PACKAGES_OPTION);
+        return packages == null ? new ArrayList<>() : Arrays.asList(packages.split(","));
+    }
+
+    private static void write(Run run, JavaToProto jpt) {
+        boolean perPackage = Arrays.asList(run.args).contains(PER_PACKAGE_FLAG);
+        if (perPackage) {
+            writeProtoFilesPerPackage(run, jpt);
+        } else {
+            writeProtoFile(run, SINGLE_FILE_NAME, jpt);
+        }
+        if (Arrays.asList(run.args).contains(MAPPERS_FLAG)) {
+            writeMappers(run, jpt, perPackage);
+        }
+        if (Arrays.asList(run.args).contains(DESCRIPTOR_SET_FLAG)) {
+            writeDescriptorSet(run, jpt, perPackage);
+        }
+    }
+
+    private static void writeDescriptorSet(Run run, JavaToProto jpt, boolean perPackage) {
+        try {
+            jpt.writeDescriptorSet(run.baseDir.resolve(DESCRIPTOR_SET_FILE),
+                    perPackage ? jpt.toPerPackageDescriptorSet() : jpt.toDescriptorSet(SINGLE_FILE_NAME));
+        } catch (IOException e) {
+            run.error("Error writing descriptor set: " + e.getMessage());
+        }
+    }
+
+    private static void writeMappers(Run run, JavaToProto jpt, boolean perPackage) {
+        Path sourceDir = run.baseDir.resolve(MAPPER_OUTPUT_DIR);
+        try {
+            if (perPackage) {
+                jpt.writePerPackageMappers(sourceDir);
+            } else {
+                jpt.writeMappers(sourceDir, getOption(run.args, JAVA_PACKAGE_OPTION));
+            }
+        } catch (IOException e) {
+            run.error("Error writing mappers: " + e.getMessage());
+        }
+    }
+
+    private static String getOption(String[] args, String prefix) {
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
+    // One .proto per Java package, with cross-file imports, written concurrently
+    private static void writeProtoFilesPerPackage(Run run, JavaToProto jpt) {
+        try {
+            jpt.writePerPackage(run.baseDir.resolve(PROTO_OUTPUT_DIR));
+        } catch (IOException e) {
+            run.error("Error writing proto files: " + e.getMessage());
+        }
+    }
+
+    private static void writeProtoFile(Run run, String fileName, JavaToProto jpt) {
+        Path protoDir = run.baseDir.resolve(PROTO_OUTPUT_DIR);
+        // Stream the schema straight into a buffered temp file, never holding the whole document;
+        // an unchanged file is left untouched
+        try {
+            ProtoFiles.writeIfChanged(protoDir.resolve(fileName), jpt::writeTo);
         } catch (IOException e) {
-            System.err.println("Error writing proto file " + fileName + ": " + e.getMessage());
+            run.error("Error writing proto file " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    // Arguments and error reporting of one generate call
+    private static final class Run {
+        final Path baseDir;
+        final String[] args;
+        final PrintStream err;
+        boolean failed;
+
+        Run(Path baseDir, String[] args, PrintStream err) {
+            this.baseDir = baseDir;
+            this.args = args;
+            this.err = err;
+        }
+
+        void error(String message) {
+            err.println(message);
+            failed = true;
         }
     }
 }
\ No newline at end of file
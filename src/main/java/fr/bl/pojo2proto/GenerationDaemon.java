@@ -0,0 +1,355 @@
+package fr.bl.pojo2proto;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Long-running generator: the JVM, its JIT-compiled code, the reflective class metadata
+// (ClassMetadataCache) and the class-path/source scanners (WarmResolvers) stay warm between runs, so
+// a build with many modules pays the start-up once. Scanners are rebuilt when their files change.
+// Started by GenerateProtoFile --daemon (stdin/stdout) or --daemon=<port> (loopback socket, any
+// number of clients). One request per line, tab separated:
+//     <id> TAB <working directory> TAB <GenerateProtoFile arguments, one per field>
+// A request writes under its working directory with the daemon owner's rights, so on a socket every
+// line, commands included, starts with "<token> TAB": a random token written at start-up to a token
+// file only the owner can read (0600). A line without it gets "unauthorized" and the connection is
+// closed. The stdin mode needs no token, only the process that started the daemon can write to it.
+// A request runs like GenerateProtoFile started in that directory; independent requests run
+// concurrently, requests for the same directory one after the other since they write the same files.
+// The response is the lines the run printed, prefixed with "<id> ", then "<id> ok <ms>" or
+// "<id> failed <ms>". Commands: "stats" (latencies and scanner reuse), "shutdown". Problems outside
+// any request (a broken connection, scanners failing to close) go to the daemon's GenerationListener.
+public class GenerationDaemon implements Closeable {
+    private static final String STATS_COMMAND = "stats";
+    private static final String SHUTDOWN_COMMAND = "shutdown";
+    private static final String UNAUTHORIZED = "unauthorized";
+    private static final int TOKEN_BYTES = 32;
+    // Latency percentiles are computed over the last LATENCY_WINDOW requests
+    private static final int LATENCY_WINDOW = 1024;
+
+    private final ExecutorService executor;
+    private final GenerationListener listener;
+    private final WarmResolvers resolvers = WarmResolvers.warm();
+    private final Map<Path, Object> directoryLocks = new ConcurrentHashMap<>();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long requests;
+    private long failures;
+    private volatile boolean shutdown;
+    private ServerSocket server;
+    // Socket mode only: the token every request line starts with, and the file it is written to
+    private byte[] token;
+    private Path tokenFile;
+
+    public GenerationDaemon(int threads) {
+        this(threads, GenerationListener.NONE);
+    }
+
+    public GenerationDaemon(int threads, GenerationListener listener) {
+        if (threads < 1) {
+            throw new RuntimeException("Daemon threads must be at least 1, got " + threads);
+        }
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pojo2proto-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.listener = listener;
+    }
+
+    // Serves the requests read from in until end of input or shutdown; returns once they are answered
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        serveConnection(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), writer, false);
+        awaitRequests();
+    }
+
+    // Serves clients on 127.0.0.1:port until a shutdown request; port 0 picks a free port, printed to
+    // stdout. The token clients must send is written to tokenFile (replaced if it exists)
+    public void serve(int port, Path tokenFile) throws IOException {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        String secret = HexFormat.of().formatHex(bytes);
+        writeToken(tokenFile, secret);
+        synchronized (this) {
+            this.token = secret.getBytes(StandardCharsets.UTF_8);
+            this.tokenFile = tokenFile;
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+        System.out.println("pojo2proto daemon listening on port " + server.getLocalPort() + ", token in "
+                + tokenFile.toAbsolutePath());
+        try {
+            while (!shutdown) {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> serveSocket(socket), "pojo2proto-daemon-connection");
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } catch (IOException e) {
+            // accept() fails once the server socket is closed by shutdown
+            if (!shutdown) {
+                throw e;
+            }
+        }
+        awaitRequests();
+    }
+
+    // Created empty with owner-only permissions before the token is written, so it is never readable by others
+    private static void writeToken(Path tokenFile, String secret) throws IOException {
+        Path parent = tokenFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.deleteIfExists(tokenFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tokenFile);
+            File file = tokenFile.toFile();
+            if (!file.setReadable(false, false) || !file.setReadable(true, true)
+                    || !file.setWritable(false, false) || !file.setWritable(true, true)) {
+                throw new IOException("Cannot restrict the permissions of " + tokenFile);
+            }
+        }
+        Files.write(tokenFile, secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Port the socket is bound to, -1 before serve(int, Path) has bound it
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getLocalPort();
+    }
+
+    private void serveSocket(Socket socket) {
+        try (socket) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            serveConnection(new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8)), writer, true);
+        } catch (IOException e) {
+            listener.onWarning("Daemon connection closed: " + e.getMessage());
+        }
+    }
+
+    // Reads the requests of one client; responses may come back out of order, each one is written at
+    // once. Returns when every request of the client is answered
+    private void serveConnection(BufferedReader reader, Writer writer, boolean tokenRequired) throws IOException {
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            readRequests(reader, writer, pending, tokenRequired);
+        } finally {
+            for (Future<?> response : pending) {
+                try {
+                    response.get();
+                } catch (ExecutionException e) {
+                    // handle() reports its own failures
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readRequests(BufferedReader reader, Writer writer, List<Future<?>> pending,
+            boolean tokenRequired) throws IOException {
+        String line;
+        while (!shutdown && (line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (tokenRequired) {
+                int tab = line.indexOf('\t');
+                if (tab < 0 || !isToken(line.substring(0, tab))) {
+                    respond(writer, UNAUTHORIZED + "\n");
+                    return;
+                }
+                line = line.substring(tab + 1);
+            }
+            String request = line.trim();
+            if (request.isEmpty()) {
+                continue;
+            }
+            if (request.equals(STATS_COMMAND)) {
+                respond(writer, report());
+            } else if (request.equals(SHUTDOWN_COMMAND)) {
+                shutdown();
+                respond(writer, SHUTDOWN_COMMAND + "\n");
+            } else {
+                try {
+                    pending.removeIf(Future::isDone);
+                    pending.add(executor.submit(() -> respond(writer, handle(request))));
+                } catch (RejectedExecutionException e) {
+                    respond(writer, request.split("\t")[0] + " failed 0 (shutting down)\n");
+                }
+            }
+        }
+    }
+
+    // Constant-time comparison, the time taken does not tell how much of a guess was right
+    private synchronized boolean isToken(String candidate) {
+        return token != null && MessageDigest.isEqual(token, candidate.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(Writer writer, String response) {
+        synchronized (writer) {
+            try {
+                writer.write(response);
+                writer.flush();
+            } catch (IOException e) {
+                // The client is gone, nothing to answer to
+            }
+        }
+    }
+
+    // Runs one request and renders its response
+    String handle(String request) {
+        String[] fields = request.split("\t");
+        String id = fields[0];
+        if (fields.length < 2) {
+            return id + " failed 0 (expected: <id> TAB <working directory> TAB <arguments...>)\n";
+        }
+        Path baseDir = Paths.get(fields[1]).toAbsolutePath().normalize();
+        String[] args = Arrays.copyOfRange(fields, 2, fields.length);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean succeeded;
+        long start = System.nanoTime();
+        try (PrintStream printer = new PrintStream(output, true, StandardCharsets.UTF_8)) {
+            synchronized (directoryLocks.computeIfAbsent(baseDir, dir -> new Object())) {
+                succeeded = GenerateProtoFile.generate(baseDir, args, resolvers, printer, printer);
+            }
+        } catch (RuntimeException e) {
+            succeeded = false;
+            output.writeBytes(("Error: " + e + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        long nanos = System.nanoTime() - start;
+        record(nanos, succeeded);
+
+        StringBuilder response = new StringBuilder();
+        for (String printed : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!printed.isEmpty()) {
+                response.append(id).append(' ').append(printed).append('\n');
+            }
+        }
+        response.append(id).append(succeeded ? " ok " : " failed ").append(toMillis(nanos)).append('\n');
+        return response.toString();
+    }
+
+    private synchronized void record(long nanos, boolean succeeded) {
+        latencies[(int) (requests % LATENCY_WINDOW)] = nanos;
+        requests++;
+        if (!succeeded) {
+            failures++;
+        }
+    }
+
+    // Request count and latency percentiles, e.g. "requests: 42 (1 failed)\nlatency ms: p50=..."
+    public String report() {
+        long[] window;
+        long count;
+        long failed;
+        synchronized (this) {
+            count = requests;
+            failed = failures;
+            window = Arrays.copyOf(latencies, (int) Math.min(requests, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+        StringBuilder report = new StringBuilder("Daemon stats\n");
+        report.append("  requests: ").append(count).append(" (").append(failed).append(" failed)\n");
+        if (window.length > 0) {
+            report.append("  latency: p50 ").append(toMillis(percentile(window, 50)))
+                    .append(" ms, p90 ").append(toMillis(percentile(window, 90)))
+                    .append(" ms, p99 ").append(toMillis(percentile(window, 99)))
+                    .append(" ms, max ").append(toMillis(window[window.length - 1])).append(" ms\n");
+        }
+        report.append("  scanners: ").append(resolvers.getReused()).append(" reused, ")
+                .append(resolvers.getBuilt()).append(" built\n");
+        report.append("  ").append(ClassMetadataCache.statistics()).append('\n');
+        return report.toString();
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * percent / 100.0) - 1)];
+    }
+
+    // Stops reading new requests; the running ones are still answered
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            if (server != null) {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+
+    private void awaitRequests() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+        executor.shutdownNow();
+        try {
+            resolvers.clear();
+        } catch (IOException e) {
+            listener.onWarning("Error closing scanners: " + e.getMessage());
+        }
+        Path written;
+        synchronized (this) {
+            written = tokenFile;
+            tokenFile = null;
+        }
+        if (written != null) {
+            try {
+                Files.deleteIfExists(written);
+            } catch (IOException e) {
+                listener.onWarning("Error deleting the daemon token " + written + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,46 @@
+package fr.bl.pojo2proto;
+
+// Receives what happens during generation: phase timings, per-class discovery time, resolver and
+// cache counters, emitted definitions and warnings. Set through GeneratorOptions.setListener.
+// In parallel mode onClassDescribed is called from the discovery threads, so implementations must
+// be thread-safe. All methods do nothing by default.
+public interface GenerationListener {
+    // Default listener: ignores everything, warnings included
+    GenerationListener NONE = new GenerationListener() {
+    };
+
+    // Ignores everything but warnings, printed to stderr; for command-line use (GenerateProtoFile,
+    // GenerationDaemon)
+    GenerationListener STDERR = new GenerationListener() {
+        @Override
+        public void onWarning(String message) {
+            System.err.println(message);
+        }
+    };
+
+    // Wall time of one phase of the run
+    default void onPhase(GenerationPhase phase, long nanos) {
+    }
+
+    // One class described (resolved and turned into a definition) during discovery
+    default void onClassDescribed(String className, long nanos) {
+    }
+
+    // Resolver calls made by discovery, and how many of them had to read a class through reflection
+    // (ClassMetadataCache misses; process-wide, so concurrent runs are counted together)
+    default void onResolverCalls(long calls, long reflectiveLoads) {
+    }
+
+    // Lookups of the rendered definitions emission reuses (see FragmentStore); only rendering is
+    // skipped on a hit, discovery is never cached
+    default void onCacheLookups(long hits, long misses) {
+    }
+
+    // Top-level definitions and characters written by emission (equal to UTF-8 bytes for ASCII schemas)
+    default void onEmitted(int enums, int messages, long characters) {
+    }
+
+    // Field or type that could not be mapped and was left out
+    default void onWarning(String message) {
+    }
+}
@@ -0,0 +1,150 @@
+package fr.bl.pojo2proto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Thread-safe GenerationListener that accumulates the counters of one or more runs and renders them
+// as a short report, e.g. for CI logs:
+//     GenerationMetrics metrics = new GenerationMetrics();
+//     new JavaToProto(classes, new GeneratorOptions().setListener(metrics)).toString();
+//     System.out.println(metrics.report(10));
+public class GenerationMetrics implements GenerationListener {
+    private final Map<GenerationPhase, LongAdder> phaseNanos = new EnumMap<>(GenerationPhase.class);
+    private final Map<String, Long> classNanos = new ConcurrentHashMap<>();
+    private final LongAdder classesVisited = new LongAdder();
+    private final LongAdder resolverCalls = new LongAdder();
+    private final LongAdder reflectiveLoads = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder enumsEmitted = new LongAdder();
+    private final LongAdder messagesEmitted = new LongAdder();
+    private final LongAdder charactersWritten = new LongAdder();
+    private final ConcurrentLinkedQueue<String> warnings = new ConcurrentLinkedQueue<>();
+
+    public GenerationMetrics() {
+        // Filled once so that the map is only read afterwards
+        for (GenerationPhase phase : GenerationPhase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+    }
+
+    @Override
+    public void onPhase(GenerationPhase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+    }
+
+    // A class described by several runs keeps its slowest time
+    @Override
+    public void onClassDescribed(String className, long nanos) {
+        classesVisited.increment();
+        classNanos.merge(className, nanos, Math::max);
+    }
+
+    @Override
+    public void onResolverCalls(long calls, long loads) {
+        resolverCalls.add(calls);
+        reflectiveLoads.add(loads);
+    }
+
+    @Override
+    public void onCacheLookups(long hits, long misses) {
+        cacheHits.add(hits);
+        cacheMisses.add(misses);
+    }
+
+    @Override
+    public void onEmitted(int enums, int messages, long characters) {
+        enumsEmitted.add(enums);
+        messagesEmitted.add(messages);
+        charactersWritten.add(characters);
+    }
+
+    @Override
+    public void onWarning(String message) {
+        warnings.add(message);
+    }
+
+    public long getPhaseNanos(GenerationPhase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    public long getClassesVisited() {
+        return classesVisited.sum();
+    }
+
+    public long getResolverCalls() {
+        return resolverCalls.sum();
+    }
+
+    public long getReflectiveLoads() {
+        return reflectiveLoads.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long getEnumsEmitted() {
+        return enumsEmitted.sum();
+    }
+
+    public long getMessagesEmitted() {
+        return messagesEmitted.sum();
+    }
+
+    public long getCharactersWritten() {
+        return charactersWritten.sum();
+    }
+
+    public List<String> getWarnings() {
+        return new ArrayList<>(warnings);
+    }
+
+    // Class names with their discovery time in nanoseconds, slowest first
+    public List<Map.Entry<String, Long>> getSlowestClasses(int limit) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(classNanos.entrySet());
+        entries.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    public String report(int slowestClasses) {
+        StringBuilder report = new StringBuilder("Generation metrics\n");
+        for (GenerationPhase phase : GenerationPhase.values()) {
+            report.append("  ").append(phase.name().toLowerCase()).append(": ")
+                    .append(toMillis(getPhaseNanos(phase))).append(" ms\n");
+        }
+        report.append("  classes visited: ").append(getClassesVisited()).append('\n');
+        report.append("  resolver calls: ").append(getResolverCalls())
+                .append(" (reflective loads: ").append(getReflectiveLoads()).append(")\n");
+        report.append("  cache: ").append(getCacheHits()).append(" hits, ").append(getCacheMisses()).append(" misses\n");
+        report.append("  emitted: ").append(getMessagesEmitted()).append(" messages, ").append(getEnumsEmitted())
+                .append(" enums, ").append(getCharactersWritten()).append(" characters\n");
+        List<Map.Entry<String, Long>> slowest = getSlowestClasses(slowestClasses);
+        if (!slowest.isEmpty()) {
+            report.append("  slowest classes:\n");
+            for (Map.Entry<String, Long> entry : slowest) {
+                report.append("    ").append(entry.getKey()).append(": ").append(toMillis(entry.getValue()))
+                        .append(" ms\n");
+            }
+        }
+        for (String warning : warnings) {
+            report.append("  warning: ").append(warning).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
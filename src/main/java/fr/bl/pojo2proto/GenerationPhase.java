@@ -0,0 +1,9 @@
+package fr.bl.pojo2proto;
+
+// Timed steps of a generation run, reported to GenerationListener
+public enum GenerationPhase {
+    // Walk of the type graph into the SchemaModel
+    DISCOVERY,
+    // Rendering of the model into .proto text, writing included
+    EMISSION
+}
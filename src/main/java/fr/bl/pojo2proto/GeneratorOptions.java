@@ -0,0 +1,157 @@
+package fr.bl.pojo2proto;
+
+import java.util.concurrent.ForkJoinPool;
+
+import javax.lang.model.SourceVersion;
+
+// Settings shared by the generation phases; setters return this so they can be chained
+public class GeneratorOptions {
+    private int parallelism = 1;
+    private ForkJoinPool discoveryPool;
+    private GenerationListener listener = GenerationListener.NONE;
+    private ScalarTypeSelector scalarTypeSelector = ScalarTypeSelector.ANNOTATIONS;
+    private FieldNumberRegistry fieldNumberRegistry;
+    private HotFieldSelector hotFieldSelector = HotFieldSelector.ANNOTATIONS;
+    private boolean flattenArrays;
+    private TypeAdapterRegistry typeAdapters = TypeAdapterRegistry.builtIn();
+    private SubtypeResolver subtypeResolver = SubtypeResolver.NONE;
+    private String javaPackage = JavaToProto.JAVA_PACKAGE;
+
+    // Number of threads used to walk the type graph, 1 means sequential discovery
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public GeneratorOptions setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new RuntimeException("Parallelism must be at least 1, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // Optional caller-owned pool for parallel discovery; when null a pool of getParallelism() threads is created per run
+    public ForkJoinPool getDiscoveryPool() {
+        return discoveryPool;
+    }
+
+    public GeneratorOptions setDiscoveryPool(ForkJoinPool discoveryPool) {
+        this.discoveryPool = discoveryPool;
+        return this;
+    }
+
+    public boolean isParallel() {
+        return parallelism > 1 || discoveryPool != null;
+    }
+
+    // Receives timings, counters and warnings of the runs, see GenerationMetrics; GenerationListener.NONE
+    // (nothing reported) by default
+    public GenerationListener getListener() {
+        return listener;
+    }
+
+    public GeneratorOptions setListener(GenerationListener listener) {
+        this.listener = listener == null ? GenerationListener.NONE : listener;
+        return this;
+    }
+
+    // Encodings of integer and Date fields; by default @ProtoEncoding annotations, zigzag otherwise
+    public ScalarTypeSelector getScalarTypeSelector() {
+        return scalarTypeSelector;
+    }
+
+    public GeneratorOptions setScalarTypeSelector(ScalarTypeSelector scalarTypeSelector) {
+        this.scalarTypeSelector = scalarTypeSelector == null ? ScalarTypeSelector.DEFAULT : scalarTypeSelector;
+        return this;
+    }
+
+    // Field numbers kept across runs; when null, each discovery numbers fields from scratch
+    public FieldNumberRegistry getFieldNumberRegistry() {
+        return fieldNumberRegistry;
+    }
+
+    public GeneratorOptions setFieldNumberRegistry(FieldNumberRegistry fieldNumberRegistry) {
+        this.fieldNumberRegistry = fieldNumberRegistry;
+        return this;
+    }
+
+    // Which new fields get the one-byte tags first; by default @HotField annotations
+    public HotFieldSelector getHotFieldSelector() {
+        return hotFieldSelector;
+    }
+
+    public GeneratorOptions setHotFieldSelector(HotFieldSelector hotFieldSelector) {
+        this.hotFieldSelector = hotFieldSelector == null ? HotFieldSelector.NONE : hotFieldSelector;
+        return this;
+    }
+
+    // Rectangular multi-dimensional primitive arrays (int[][], double[][][]) as one FlatArray_<type>
+    // message { repeated uint32 dimensions; repeated <type> values; } shared by the whole schema,
+    // instead of a chain of row messages per field. Jagged arrays and null rows then cannot be encoded.
+    public boolean isFlattenArrays() {
+        return flattenArrays;
+    }
+
+    public GeneratorOptions setFlattenArrays(boolean flattenArrays) {
+        this.flattenArrays = flattenArrays;
+        return this;
+    }
+
+    // Compact mappings of value classes (UUID, Instant, BigDecimal...) that discovery does not reflect
+    // into; by default the built-in adapters, an empty registry reflects into every class
+    public TypeAdapterRegistry getTypeAdapters() {
+        return typeAdapters;
+    }
+
+    public GeneratorOptions setTypeAdapters(TypeAdapterRegistry typeAdapters) {
+        this.typeAdapters = typeAdapters == null ? new TypeAdapterRegistry() : typeAdapters;
+        return this;
+    }
+
+    // Subtypes of interface, abstract class, Object and wildcard fields, which then map to a oneof
+    // wrapper message of their subtypes. By default none: such fields are left out like Object fields,
+    // and such elements, map values and Optional values are google.protobuf.Any
+    public SubtypeResolver getSubtypeResolver() {
+        return subtypeResolver;
+    }
+
+    public GeneratorOptions setSubtypeResolver(SubtypeResolver subtypeResolver) {
+        this.subtypeResolver = subtypeResolver == null ? SubtypeResolver.NONE : subtypeResolver;
+        return this;
+    }
+
+    // java_package of the single-file output (JavaToProto.writeTo, toDescriptorSet): the package of the
+    // classes protoc generates from it. By default a placeholder to replace, which is not a valid Java
+    // package; per-package files take the package of their classes instead
+    public String getJavaPackage() {
+        return javaPackage;
+    }
+
+    public GeneratorOptions setJavaPackage(String javaPackage) {
+        if (javaPackage == null) {
+            this.javaPackage = JavaToProto.JAVA_PACKAGE;
+            return this;
+        }
+        if (!SourceVersion.isName(javaPackage)) {
+            throw new RuntimeException("Invalid Java package: " + javaPackage);
+        }
+        this.javaPackage = javaPackage;
+        return this;
+    }
+
+    // Independent copy sharing the listener, pool, selectors, subtype resolver and field number registry; see ProtoGenerator
+    public GeneratorOptions copy() {
+        GeneratorOptions copy = new GeneratorOptions();
+        copy.parallelism = parallelism;
+        copy.discoveryPool = discoveryPool;
+        copy.listener = listener;
+        copy.scalarTypeSelector = scalarTypeSelector;
+        copy.fieldNumberRegistry = fieldNumberRegistry;
+        copy.hotFieldSelector = hotFieldSelector;
+        copy.flattenArrays = flattenArrays;
+        copy.typeAdapters = typeAdapters.copy();
+        copy.subtypeResolver = subtypeResolver;
+        copy.javaPackage = javaPackage;
+        return copy;
+    }
+}
@@ -0,0 +1,13 @@
+package fr.bl.pojo2proto;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Field set on most messages: when it is new, it gets one of the one-byte tags (1-15) before
+// the other new fields of its class. Read by HotFieldSelector.ANNOTATIONS, through reflection only.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface HotField {
+}
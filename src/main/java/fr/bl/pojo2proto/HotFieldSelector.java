@@ -0,0 +1,35 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+// Ranks the new fields of a class for the smallest free field numbers (see FieldNumberRegistry):
+// the higher the heat, the earlier the number, 0 being cold. Set through
+// GeneratorOptions.setHotFieldSelector; must be thread-safe for parallel discovery.
+public interface HotFieldSelector {
+    HotFieldSelector NONE = field -> 0;
+
+    // @HotField fields come first
+    HotFieldSelector ANNOTATIONS = field -> {
+        Field javaField = field.getField();
+        return javaField != null && javaField.isAnnotationPresent(HotField.class) ? Long.MAX_VALUE : 0;
+    };
+
+    long getHeat(FieldMetadata field);
+
+    // Heat from an access-frequency profile, e.g. how often each field is set in production
+    // messages, keyed by declaring class binary name and field name (com.acme.Order.id)
+    static HotFieldSelector fromProfile(Map<String, Long> accessCounts) {
+        Map<String, Long> counts = new HashMap<>(accessCounts);
+        return field -> counts.getOrDefault(field.getDeclaringType().getName() + "." + field.getName(), 0L);
+    }
+
+    // This selector, falling back to next for the fields it finds cold
+    default HotFieldSelector orElse(HotFieldSelector next) {
+        return field -> {
+            long heat = getHeat(field);
+            return heat != 0 ? heat : next.getHeat(field);
+        };
+    }
+}
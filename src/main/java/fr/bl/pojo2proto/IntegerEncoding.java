@@ -0,0 +1,62 @@
+package fr.bl.pojo2proto;
+
+// How an integer or Date field is written on the wire. The width (32 or 64 bits) follows the Java
+// type: int/short/Integer/Short are 32 bits, long/Long/Date 64 bits.
+public enum IntegerEncoding {
+    // int32/int64: varint, negative values always take 10 bytes
+    VARINT("int32", "int64"),
+    // uint32/uint64: varint of the unsigned value, for values that are never negative (ids, counts)
+    UNSIGNED("uint32", "uint64"),
+    // sint32/sint64: zigzag varint, short for small values of either sign; the default
+    ZIGZAG("sint32", "sint64"),
+    // sfixed32/sfixed64 and fixed32/fixed64: 4 or 8 bytes, for large and evenly spread values
+    SIGNED_FIXED("sfixed32", "sfixed64"),
+    FIXED("fixed32", "fixed64");
+
+    private final String protoType32;
+    private final String protoType64;
+
+    IntegerEncoding(String protoType32, String protoType64) {
+        this.protoType32 = protoType32;
+        this.protoType64 = protoType64;
+    }
+
+    public String getProtoType(boolean wide) {
+        return wide ? protoType64 : protoType32;
+    }
+
+    // Encoding of an integer proto type, null for any other type
+    public static IntegerEncoding of(String protoType) {
+        for (IntegerEncoding encoding : values()) {
+            if (encoding.protoType32.equals(protoType) || encoding.protoType64.equals(protoType)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    // Whether an integer proto type is 64 bits wide
+    public static boolean isWide(String protoType) {
+        return protoType.endsWith("64");
+    }
+
+    // Bytes taken by one value, tag excluded
+    public int size(long value, boolean wide) {
+        switch (this) {
+            case VARINT:
+                return varintSize(wide ? value : (int) value);
+            case UNSIGNED:
+                return varintSize(wide ? value : value & 0xFFFFFFFFL);
+            case ZIGZAG:
+                // 32-bit zigzag values are unsigned: not sign-extended, at most 5 bytes
+                return varintSize(wide ? (value << 1) ^ (value >> 63)
+                        : (((int) value << 1) ^ ((int) value >> 31)) & 0xFFFFFFFFL);
+            default:
+                return wide ? 8 : 4;
+        }
+    }
+
+    private static int varintSize(long value) {
+        return value == 0 ? 1 : (63 - Long.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+}
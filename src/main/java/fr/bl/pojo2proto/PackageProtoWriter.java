@@ -0,0 +1,375 @@
+package fr.bl.pojo2proto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Splits a SchemaModel by Java package into one .proto file per package (e.g. com/acme/dto.proto for
+// com.acme.dto), each importing the files of the packages it references, and writes them concurrently.
+// Every file has the proto package of its Java package (none for the default package), so classes of
+// the same simple name in different packages do not clash; references to the types of other files are
+// fully qualified (.com.acme.dto.GrpcOrder).
+public class PackageProtoWriter {
+    private static final String DEFAULT_PACKAGE_FILE = "default.proto";
+    private static final String PROTO_EXTENSION = ".proto";
+    // Holds the shared messages (SchemaModel.getSharedMessages), imported by the files using them
+    public static final String SHARED_FILE = "pojo2proto/shared.proto";
+    // Proto package and java_package of the shared file, whichever packages use it
+    public static final String SHARED_PACKAGE = "pojo2proto";
+
+    private final SchemaModel model;
+    private final GeneratorOptions options;
+    private final GenerationListener listener;
+
+    public PackageProtoWriter(SchemaModel model, GeneratorOptions options) {
+        this.model = model;
+        this.options = options;
+        this.listener = options.getListener();
+    }
+
+    // Definitions of one package, in discovery order
+    public static final class PackageFile {
+        private final String protoPackage;
+        private final String javaPackage;
+        private final String fileName;
+        private final List<EnumDefinition> enums = new ArrayList<>();
+        private final List<MessageDefinition> messages = new ArrayList<>();
+        private final Set<String> imports = new TreeSet<>();
+
+        PackageFile(String javaPackage) {
+            this(javaPackage, javaPackage, PackageProtoWriter.getFileName(javaPackage));
+        }
+
+        PackageFile(String protoPackage, String javaPackage, String fileName) {
+            this.protoPackage = protoPackage;
+            this.javaPackage = javaPackage;
+            this.fileName = fileName;
+        }
+
+        // Empty for the default package; packages sharing a file (see partition) have the package of
+        // the first one
+        public String getProtoPackage() {
+            return protoPackage;
+        }
+
+        public String getJavaPackage() {
+            return javaPackage;
+        }
+
+        // Path relative to the output directory, also used as import path
+        public String getFileName() {
+            return fileName;
+        }
+
+        public List<EnumDefinition> getEnums() {
+            return enums;
+        }
+
+        public List<MessageDefinition> getMessages() {
+            return messages;
+        }
+
+        // Imports of other package files and of google.protobuf types
+        public Set<String> getImports() {
+            return imports;
+        }
+    }
+
+    public static String getFileName(String javaPackage) {
+        if (javaPackage.isEmpty()) {
+            return DEFAULT_PACKAGE_FILE;
+        }
+        return javaPackage.replace('.', '/') + PROTO_EXTENSION;
+    }
+
+    static String getPackage(String javaName) {
+        int lastDot = javaName.lastIndexOf('.');
+        return lastDot < 0 ? "" : javaName.substring(0, lastDot);
+    }
+
+    // Package files sorted by package name, then the shared file if any. protoc rejects import
+    // cycles, so packages that reference each other (directly or transitively) share the file of
+    // the first one. The shared file only holds scalars, it never imports anything.
+    public List<PackageFile> partition() {
+        Map<String, List<EnumDefinition>> enumsByPackage = new TreeMap<>();
+        Map<String, List<MessageDefinition>> messagesByPackage = new TreeMap<>();
+        Map<String, String> packageOfType = new LinkedHashMap<>();
+        Set<String> packages = new TreeSet<>();
+        for (EnumDefinition enumDefinition : model.getEnums()) {
+            String javaPackage = getPackage(enumDefinition.getJavaName());
+            enumsByPackage.computeIfAbsent(javaPackage, key -> new ArrayList<>()).add(enumDefinition);
+            packageOfType.put(enumDefinition.getJavaName(), javaPackage);
+            packages.add(javaPackage);
+        }
+        for (MessageDefinition message : model.getMessages()) {
+            String javaPackage = getPackage(message.getJavaName());
+            messagesByPackage.computeIfAbsent(javaPackage, key -> new ArrayList<>()).add(message);
+            packageOfType.put(message.getJavaName(), javaPackage);
+            packages.add(javaPackage);
+        }
+
+        Map<String, Set<String>> dependencies = new TreeMap<>();
+        for (String javaPackage : packages) {
+            Set<String> referenced = new TreeSet<>();
+            for (MessageDefinition message : messagesByPackage.getOrDefault(javaPackage, new ArrayList<>())) {
+                collectReferencedPackages(message, packageOfType, referenced);
+            }
+            referenced.remove(javaPackage);
+            dependencies.put(javaPackage, referenced);
+        }
+
+        Map<String, String> fileOwner = new PackageCycles(dependencies).getRepresentatives();
+        Map<String, String> fileOfType = new HashMap<>();
+        for (Map.Entry<String, String> type : packageOfType.entrySet()) {
+            fileOfType.put(type.getKey(), fileOwner.get(type.getValue()));
+        }
+        Map<String, PackageFile> files = new TreeMap<>();
+        for (String javaPackage : packages) {
+            PackageFile file = files.computeIfAbsent(fileOwner.get(javaPackage), PackageFile::new);
+            file.enums.addAll(enumsByPackage.getOrDefault(javaPackage, new ArrayList<>()));
+            file.messages.addAll(messagesByPackage.getOrDefault(javaPackage, new ArrayList<>()));
+            for (String dependency : dependencies.get(javaPackage)) {
+                String owner = fileOwner.get(dependency);
+                if (!owner.equals(file.javaPackage)) {
+                    file.imports.add(getFileName(owner));
+                }
+            }
+        }
+        PackageFile shared = null;
+        for (PackageFile file : files.values()) {
+            file.imports.addAll(ProtoEmitter.wellKnownImports(file.messages));
+            if (usesSharedMessages(file.messages)) {
+                if (shared == null) {
+                    shared = new PackageFile(SHARED_PACKAGE, SHARED_PACKAGE, SHARED_FILE);
+                    shared.messages.addAll(model.getSharedMessages());
+                }
+                file.imports.add(SHARED_FILE);
+            }
+            file.messages.replaceAll(message -> qualify(message, file.javaPackage, fileOfType, new StringBuilder()));
+        }
+        List<PackageFile> partition = new ArrayList<>(files.values());
+        if (shared != null) {
+            partition.add(shared);
+        }
+        return partition;
+    }
+
+    // Row messages of arrays of adapted types (UUID[][]) use them too
+    private boolean usesSharedMessages(List<MessageDefinition> messages) {
+        for (MessageDefinition message : messages) {
+            for (FieldDefinition field : message.getFields()) {
+                if (model.getSharedMessage(field.getType()) != null) {
+                    return true;
+                }
+            }
+            if (usesSharedMessages(message.getNestedMessages())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Copy of the message (the message itself when nothing changes) whose references to the types of
+    // other files are fully qualified. Its fingerprint covers the qualified names: the rendered message
+    // depends on the files its references live in, not only on its class
+    private MessageDefinition qualify(MessageDefinition message, String owner, Map<String, String> fileOfType,
+                                      StringBuilder qualified) {
+        int qualifiedLength = qualified.length();
+        List<FieldDefinition> fields = new ArrayList<>();
+        for (FieldDefinition field : message.getFields()) {
+            String type = getQualifiedType(field, owner, fileOfType);
+            if (type.equals(field.getType())) {
+                fields.add(field);
+            } else {
+                qualified.append(' ').append(type);
+                fields.add(new FieldDefinition(field.getName(), field.getNumber(), field.getLabel(), field.getKind(),
+                        type, field.getKeyType(), field.getJavaType(), field.getReferencedType()));
+            }
+        }
+        List<MessageDefinition> nestedMessages = new ArrayList<>();
+        for (MessageDefinition nested : message.getNestedMessages()) {
+            nestedMessages.add(qualify(nested, owner, fileOfType, qualified));
+        }
+        if (qualified.length() == qualifiedLength) {
+            return message;
+        }
+        String fingerprint = message.getFingerprint() == null ? null
+                : message.getFingerprint() + qualified.substring(qualifiedLength);
+        return new MessageDefinition(message.getJavaName(), message.getName(), fields, nestedMessages,
+                message.getReferences(), fingerprint, message.getReserved(), message.getOneof());
+    }
+
+    // Row messages and oneof wrappers also have a referenced type, but they are nested in the message
+    // using them: only fields typed with the definition of their referenced type are qualified
+    private String getQualifiedType(FieldDefinition field, String owner, Map<String, String> fileOfType) {
+        if (model.getSharedMessage(field.getType()) != null) {
+            return "." + SHARED_PACKAGE + "." + field.getType();
+        }
+        String referenced = field.getReferencedType();
+        String file = referenced == null ? null : fileOfType.get(referenced);
+        if (file == null || file.equals(owner) || !field.getType().equals(getProtoName(referenced))) {
+            return field.getType();
+        }
+        return "." + (file.isEmpty() ? "" : file + ".") + field.getType();
+    }
+
+    private String getProtoName(String javaName) {
+        EnumDefinition enumDefinition = model.getEnum(javaName);
+        if (enumDefinition != null) {
+            return enumDefinition.getName();
+        }
+        MessageDefinition message = model.getMessage(javaName);
+        return message == null ? null : message.getName();
+    }
+
+    private void collectReferencedPackages(MessageDefinition message, Map<String, String> packageOfType,
+                                           Set<String> referenced) {
+        for (FieldDefinition field : message.getFields()) {
+            String referencedPackage = field.getReferencedType() == null ? null
+                    : packageOfType.get(field.getReferencedType());
+            if (referencedPackage != null) {
+                referenced.add(referencedPackage);
+            }
+        }
+        for (MessageDefinition nested : message.getNestedMessages()) {
+            collectReferencedPackages(nested, packageOfType, referenced);
+        }
+    }
+
+    // Tarjan's strongly connected components over the package dependency graph; every package
+    // is mapped to the smallest package name of its component
+    private static final class PackageCycles {
+        private final Map<String, Set<String>> dependencies;
+        private final Map<String, Integer> index = new LinkedHashMap<>();
+        private final Map<String, Integer> lowLink = new LinkedHashMap<>();
+        private final Deque<String> stack = new ArrayDeque<>();
+        private final Set<String> onStack = new TreeSet<>();
+        private final Map<String, String> representatives = new TreeMap<>();
+        private int counter = 0;
+
+        PackageCycles(Map<String, Set<String>> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        Map<String, String> getRepresentatives() {
+            for (String javaPackage : dependencies.keySet()) {
+                if (!index.containsKey(javaPackage)) {
+                    connect(javaPackage);
+                }
+            }
+            return representatives;
+        }
+
+        private void connect(String javaPackage) {
+            index.put(javaPackage, counter);
+            lowLink.put(javaPackage, counter);
+            counter++;
+            stack.push(javaPackage);
+            onStack.add(javaPackage);
+
+            for (String dependency : dependencies.get(javaPackage)) {
+                if (!index.containsKey(dependency)) {
+                    connect(dependency);
+                    lowLink.put(javaPackage, Math.min(lowLink.get(javaPackage), lowLink.get(dependency)));
+                } else if (onStack.contains(dependency)) {
+                    lowLink.put(javaPackage, Math.min(lowLink.get(javaPackage), index.get(dependency)));
+                }
+            }
+
+            if (lowLink.get(javaPackage).equals(index.get(javaPackage))) {
+                List<String> component = new ArrayList<>();
+                String member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(javaPackage));
+                String representative = new TreeSet<>(component).first();
+                for (String componentMember : component) {
+                    representatives.put(componentMember, representative);
+                }
+            }
+        }
+    }
+
+    // Writes every package file under outputDir in parallel; unchanged files are left untouched
+    public List<Path> writeTo(Path outputDir) throws IOException {
+        List<PackageFile> files = partition();
+        List<Path> written = new ArrayList<>();
+        if (files.isEmpty()) {
+            return written;
+        }
+
+        long start = System.nanoTime();
+        int threads = Math.min(files.size(), Math.max(options.getParallelism(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (PackageFile file : files) {
+                Path target = outputDir.resolve(file.getFileName());
+                futures.add(executor.submit(() -> {
+                    writeFile(file, target);
+                    return target;
+                }));
+            }
+            for (Future<Path> future : futures) {
+                written.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing proto files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error writing proto files", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        listener.onPhase(GenerationPhase.EMISSION, System.nanoTime() - start);
+        return written;
+    }
+
+    private void writeFile(PackageFile file, Path target) throws IOException {
+        EmissionEvent event = new EmissionEvent();
+        event.begin();
+        long[] characters = new long[1];
+        ProtoFiles.writeIfChanged(target, writer -> {
+            CountingWriter counting = new CountingWriter(writer);
+            ProtoEmitter emitter = new ProtoEmitter(counting);
+            emitter.emitHeader(file.getProtoPackage(), file.getJavaPackage(), file.getImports());
+            emitter.emit(file.getEnums(), file.getMessages());
+            counting.write("\n");
+            characters[0] = counting.getCount();
+        });
+        listener.onEmitted(file.getEnums().size(), file.getMessages().size(), characters[0]);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getFileName();
+            event.enums = file.getEnums().size();
+            event.messages = file.getMessages().size();
+            event.characters = characters[0];
+            event.commit();
+        }
+    }
+}
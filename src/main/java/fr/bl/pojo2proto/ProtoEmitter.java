@@ -0,0 +1,249 @@
+package fr.bl.pojo2proto;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.FieldLabel;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Renders a SchemaModel as proto3 text straight into a Writer. Pure emission: no reflection
+// happens here and nothing but the current line is buffered on our side.
+public class ProtoEmitter {
+    // constants for message string builder
+    private static final String OPEN_BLOCK = "{";
+    private static final String CLOSE_BLOCK = "}";
+    private static final String MESSAGE = "message";
+    private static final String ENUM = "enum";
+    private static final String RESERVED = "reserved";
+    private static final String ONEOF = "oneof";
+    private static final String NEWLINE = "\n";
+    private static final String TAB = "\t";
+    private static final String SPACE = " ";
+    private static final String LINE_END = ";";
+    // Files of the google.protobuf types fields can use: Any fallbacks and type adapters (TypeAdapter)
+    private static final Map<String, String> WELL_KNOWN_IMPORTS = getWellKnownImports();
+
+    // Indentation strings are shared, index = depth
+    private static volatile String[] indents = {"", TAB, TAB + TAB, TAB + TAB + TAB};
+
+    private final Writer builder;
+    private final FragmentStore cache;
+    private int tabDepth = 0;
+    private long fragmentHits;
+    private long fragmentMisses;
+
+    public ProtoEmitter(Writer builder) {
+        this(builder, null);
+    }
+
+    // With a cache, unchanged top-level definitions are copied from it instead of being rendered; the
+    // model still comes from a full discovery
+    public ProtoEmitter(Writer builder, FragmentStore cache) {
+        this.builder = builder;
+        this.cache = cache;
+    }
+
+    // Lookups of this emitter in its cache: definitions copied from it / rendered and stored
+    public long getFragmentHits() {
+        return fragmentHits;
+    }
+
+    public long getFragmentMisses() {
+        return fragmentMisses;
+    }
+
+    private String getTabs() {
+        String[] current = indents;
+        if (tabDepth < current.length) {
+            return current[tabDepth];
+        }
+        String[] grown = new String[tabDepth + 1];
+        grown[0] = "";
+        for (int i = 1; i < grown.length; i++) {
+            grown[i] = grown[i - 1] + TAB;
+        }
+        indents = grown;
+        return grown[tabDepth];
+    }
+
+    public void emitHeader(String javaPackage, Collection<String> imports) throws IOException {
+        emitHeader("", javaPackage, imports);
+    }
+
+    // An empty protoPackage leaves the definitions in the default proto package
+    public void emitHeader(String protoPackage, String javaPackage, Collection<String> imports) throws IOException {
+        builder.write("syntax = \"proto3\";\n");
+        if (!protoPackage.isEmpty()) {
+            builder.write("package " + protoPackage + ";\n");
+        }
+        builder.write("import \"protogen/options.proto\";\n");
+        builder.write("import \"google/protobuf/wrappers.proto\";\n");
+        for (String protoImport : imports) {
+            builder.write("import \"" + protoImport + "\";\n");
+        }
+        builder.write("option java_package = \"" + javaPackage + "\";\n");
+        builder.write("option optimize_for = SPEED;\n");
+        builder.write("option (protogen.enable) = true;\n");
+        builder.write("option java_multiple_files = true;\n");
+    }
+
+    private static Map<String, String> getWellKnownImports() {
+        Map<String, String> imports = new HashMap<>();
+        imports.put("google.protobuf.Any", "google/protobuf/any.proto");
+        imports.put("google.protobuf.Timestamp", "google/protobuf/timestamp.proto");
+        imports.put("google.protobuf.Duration", "google/protobuf/duration.proto");
+        return imports;
+    }
+
+    // File declaring a google.protobuf type, null for other types
+    public static String getWellKnownImport(String protoType) {
+        return WELL_KNOWN_IMPORTS.get(protoType);
+    }
+
+    // Imports of the google.protobuf types used by the messages (sorted)
+    public static Set<String> wellKnownImports(Collection<MessageDefinition> messages) {
+        Set<String> imports = new TreeSet<>();
+        for (MessageDefinition message : messages) {
+            collectWellKnownImports(message, imports);
+        }
+        return imports;
+    }
+
+    private static void collectWellKnownImports(MessageDefinition message, Set<String> imports) {
+        for (FieldDefinition field : message.getFields()) {
+            String wellKnownImport = WELL_KNOWN_IMPORTS.get(field.getType());
+            if (wellKnownImport != null) {
+                imports.add(wellKnownImport);
+            }
+        }
+        for (MessageDefinition nested : message.getNestedMessages()) {
+            collectWellKnownImports(nested, imports);
+        }
+    }
+
+    // Enums first, then messages, both in discovery order, then the shared messages
+    public void emit(SchemaModel model) throws IOException {
+        emit(model.getEnums(), model.getMessages());
+        emit(Collections.<EnumDefinition>emptyList(), model.getSharedMessages());
+    }
+
+    public void emit(List<EnumDefinition> enums, List<MessageDefinition> messages) throws IOException {
+        for (EnumDefinition enumDefinition : enums) {
+            if (cache == null || enumDefinition.getFingerprint() == null) {
+                emitEnum(enumDefinition);
+                continue;
+            }
+            String fragment = cache.getFragment(enumDefinition.getJavaName(), enumDefinition.getFingerprint());
+            if (fragment != null) {
+                fragmentHits++;
+            } else {
+                fragmentMisses++;
+                StringWriter rendered = new StringWriter();
+                new ProtoEmitter(rendered).emitEnum(enumDefinition);
+                fragment = rendered.toString();
+                cache.putFragment(enumDefinition.getJavaName(), enumDefinition.getFingerprint(), fragment);
+            }
+            builder.write(fragment);
+        }
+        for (MessageDefinition message : messages) {
+            if (cache == null || message.getFingerprint() == null) {
+                emitMessage(message);
+                continue;
+            }
+            String fragment = cache.getFragment(message.getJavaName(), message.getFingerprint());
+            if (fragment != null) {
+                fragmentHits++;
+            } else {
+                fragmentMisses++;
+                StringWriter rendered = new StringWriter();
+                new ProtoEmitter(rendered).emitMessage(message);
+                fragment = rendered.toString();
+                cache.putFragment(message.getJavaName(), message.getFingerprint(), fragment);
+            }
+            builder.write(fragment);
+        }
+    }
+
+    public void emitEnum(EnumDefinition enumDefinition) throws IOException {
+        builder.append(NEWLINE).append(ENUM).append(SPACE).append(enumDefinition.getName()).append(SPACE)
+               .append(OPEN_BLOCK).append(NEWLINE);
+
+        tabDepth++;
+        for (int i = 0; i < enumDefinition.getConstants().size(); i++) {
+            builder.append(getTabs()).append(enumDefinition.getConstants().get(i)).append(" = ").append(String.valueOf(i))
+                   .append(LINE_END).append(NEWLINE);
+        }
+        tabDepth--;
+
+        builder.append(CLOSE_BLOCK).append(NEWLINE);
+    }
+
+    public void emitMessage(MessageDefinition message) throws IOException {
+        builder.append(NEWLINE).append(getTabs()).append(MESSAGE).append(SPACE)
+               .append(message.getName()).append(SPACE).append(OPEN_BLOCK).append(NEWLINE);
+
+        tabDepth++;
+        if (!message.getReserved().isEmpty()) {
+            emitReserved(message.getReserved());
+        }
+        if (message.getOneof() != null) {
+            // Oneof wrapper of a polymorphic field: its fields take no label
+            builder.append(getTabs()).append(ONEOF).append(SPACE).append(message.getOneof()).append(SPACE)
+                   .append(OPEN_BLOCK).append(NEWLINE);
+            tabDepth++;
+            for (FieldDefinition field : message.getFields()) {
+                emitField(field, false);
+            }
+            tabDepth--;
+            builder.append(getTabs()).append(CLOSE_BLOCK).append(NEWLINE);
+        } else {
+            for (FieldDefinition field : message.getFields()) {
+                emitField(field, true);
+            }
+        }
+        // Helper messages (array rows, oneof wrappers) are nested in the message that uses them
+        for (MessageDefinition nested : message.getNestedMessages()) {
+            emitMessage(nested);
+        }
+        tabDepth--;
+
+        builder.append(getTabs()).append(CLOSE_BLOCK).append(NEWLINE);
+    }
+
+    // reserved 4, 7;
+    // reserved "legacyCode", "oldName";
+    private void emitReserved(Map<String, Integer> reserved) throws IOException {
+        StringBuilder numbers = new StringBuilder();
+        StringBuilder names = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : reserved.entrySet()) {
+            numbers.append(numbers.length() == 0 ? "" : ", ").append(entry.getValue());
+            names.append(names.length() == 0 ? "" : ", ").append('"').append(entry.getKey()).append('"');
+        }
+        builder.append(getTabs()).append(RESERVED).append(SPACE).append(numbers).append(LINE_END).append(NEWLINE);
+        builder.append(getTabs()).append(RESERVED).append(SPACE).append(names).append(LINE_END).append(NEWLINE);
+    }
+
+    private void emitField(FieldDefinition field, boolean labeled) throws IOException {
+        builder.append(getTabs());
+        if (field.getLabel() == FieldLabel.MAP) {
+            builder.append("map<").append(field.getKeyType()).append(", ").append(field.getType()).append(">");
+        } else if (labeled) {
+            builder.append(field.getLabel().getKeyword()).append(SPACE).append(field.getType());
+        } else {
+            builder.append(field.getType());
+        }
+        builder.append(SPACE).append(field.getName()).append(SPACE).append("=").append(SPACE)
+               .append(String.valueOf(field.getNumber())).append(LINE_END).append(NEWLINE);
+    }
+}
@@ -0,0 +1,15 @@
+package fr.bl.pojo2proto;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Encoding of an integer or Date field, or of the elements of a collection/array field, e.g.
+//     @ProtoEncoding(IntegerEncoding.UNSIGNED) private long id;   // uint64 instead of sint64
+// Read by ScalarTypeSelector.ANNOTATIONS, so only when classes are resolved through reflection.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ProtoEncoding {
+    IntegerEncoding value();
+}
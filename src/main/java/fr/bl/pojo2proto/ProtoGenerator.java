@@ -0,0 +1,173 @@
+package fr.bl.pojo2proto;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Immutable, thread-safe generator for services that generate schemas on demand: one instance takes any
+// number of concurrent requests. Each class is described (reflection, field numbers, proto types) once
+// and the description is shared lock-free by every later request; the SchemaModel and the output of a
+// request are its own. The options are copied at construction, later changes are not seen.
+// Rendered messages and enums are kept in a bounded FragmentCache: a query for a root already seen,
+// or overlapping one, only walks the descriptions and copies fragments.
+// Shared descriptions reference the described classes, drop the generator to release their class loader.
+public final class ProtoGenerator {
+    private static final int DEFAULT_FRAGMENT_CAPACITY = 4096;
+
+    private final GeneratorOptions options;
+    private final ClassResolver resolver;
+    private final SchemaDiscovery discovery;
+    private final FragmentCache fragments;
+
+    public ProtoGenerator(GeneratorOptions options) {
+        this(options, ReflectionClassResolver.INSTANCE);
+    }
+
+    // resolver: classes are described by name, one generator serves one set of classes
+    public ProtoGenerator(GeneratorOptions options, ClassResolver resolver) {
+        this(options, resolver, DEFAULT_FRAGMENT_CAPACITY);
+    }
+
+    // fragmentCapacity: rendered messages and enums kept, least recently used ones are evicted beyond
+    public ProtoGenerator(GeneratorOptions options, ClassResolver resolver, int fragmentCapacity) {
+        if (options == null || resolver == null) {
+            throw new RuntimeException("Null generator options or class resolver provided");
+        }
+        this.options = options.copy();
+        this.resolver = resolver;
+        this.discovery = new SchemaDiscovery(this.options, resolver,
+                new ConcurrentHashMap<String, SchemaDiscovery.DiscoveredClass>());
+        this.fragments = new FragmentCache(fragmentCapacity);
+    }
+
+    GeneratorOptions getOptions() {
+        return options;
+    }
+
+    ClassResolver getResolver() {
+        return resolver;
+    }
+
+    public FragmentCache getFragmentCache() {
+        return fragments;
+    }
+
+    // Model of everything reachable from the roots; the roots are sorted, so their order does not matter
+    public SchemaModel discover(Collection<TypeRef> roots) {
+        if (roots == null || roots.isEmpty()) {
+            throw new RuntimeException("NUll or Empty class set provided for processing");
+        }
+        List<TypeRef> sorted = new ArrayList<>(roots);
+        sorted.sort(Comparator.comparing(TypeRef::getName));
+        SchemaModel model = discovery.discover(sorted);
+        saveFieldNumbers();
+        return model;
+    }
+
+    public SchemaModel discoverClasses(Collection<Class<?>> roots) {
+        return discover(toTypes(roots));
+    }
+
+    private static List<TypeRef> toTypes(Collection<Class<?>> classes) {
+        if (classes == null || classes.isEmpty()) {
+            throw new RuntimeException("NUll or Empty class set provided for processing");
+        }
+        List<TypeRef> types = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            types.add(TypeRef.of(clazz));
+        }
+        return types;
+    }
+
+    // New and reserved field numbers are persisted as soon as they are given, before anything is written
+    private void saveFieldNumbers() {
+        FieldNumberRegistry registry = options.getFieldNumberRegistry();
+        if (registry == null) {
+            return;
+        }
+        try {
+            registry.save();
+        } catch (IOException e) {
+            options.getListener().onWarning("Cannot save field numbers: " + e.getMessage());
+        }
+    }
+
+    // The .proto document of the classes reachable from the roots, as JavaToProto renders it
+    public String generate(Collection<Class<?>> roots) {
+        return render(discoverClasses(roots));
+    }
+
+    // The schema of one root: the document of the root message (or enum) and of the classes it reaches
+    public String query(Class<?> root) {
+        if (root == null) {
+            throw new RuntimeException("Null class provided for processing");
+        }
+        return query(TypeRef.of(root));
+    }
+
+    public String query(TypeRef root) {
+        return render(discover(Collections.singletonList(root)));
+    }
+
+    public void query(TypeRef root, Writer writer) throws IOException {
+        writeTo(discover(Collections.singletonList(root)), writer);
+    }
+
+    private String render(SchemaModel model) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(model, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    // Streams the .proto document of a model into the writer; the caller owns (and closes) it
+    public void writeTo(SchemaModel model, Writer writer) throws IOException {
+        writeTo(model, writer, fragments);
+    }
+
+    // cache: where rendered definitions are reused from, null to render everything
+    void writeTo(SchemaModel model, Writer writer, FragmentStore cache) throws IOException {
+        EmissionEvent event = new EmissionEvent();
+        event.begin();
+        long start = System.nanoTime();
+        CountingWriter counting = new CountingWriter(writer);
+        ProtoEmitter emitter = new ProtoEmitter(counting, cache);
+        emitter.emitHeader(options.getJavaPackage(), ProtoEmitter.wellKnownImports(model.getMessages()));
+        emitter.emit(model);
+        counting.write("\n");
+        counting.flush();
+
+        GenerationListener listener = options.getListener();
+        listener.onPhase(GenerationPhase.EMISSION, System.nanoTime() - start);
+        listener.onEmitted(model.getEnums().size(), model.getMessages().size(), counting.getCount());
+        if (cache != null) {
+            listener.onCacheLookups(emitter.getFragmentHits(), emitter.getFragmentMisses());
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.enums = model.getEnums().size();
+            event.messages = model.getMessages().size();
+            event.characters = counting.getCount();
+            event.cacheHits = emitter.getFragmentHits();
+            event.commit();
+        }
+    }
+
+    // One request for the other outputs (per-package files, mappers, descriptor sets), sharing the
+    // descriptions of this generator; the returned JavaToProto belongs to the calling thread
+    public JavaToProto newRequest(Collection<Class<?>> roots) {
+        return new JavaToProto(this, toTypes(roots));
+    }
+}
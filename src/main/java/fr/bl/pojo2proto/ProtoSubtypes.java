@@ -0,0 +1,15 @@
+package fr.bl.pojo2proto;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Classes the values of a polymorphic type can be: on an interface or abstract class, for every field
+// of that type; on a field, for its own values (elements, map values), e.g. an Object or List<?> field.
+// Read by SubtypeResolver.ANNOTATIONS, through reflection only.
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.FIELD})
+public @interface ProtoSubtypes {
+    Class<?>[] value();
+}
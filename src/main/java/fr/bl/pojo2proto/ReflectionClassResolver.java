@@ -0,0 +1,49 @@
+package fr.bl.pojo2proto;
+
+// Resolves types through java.lang.reflect and the shared ClassMetadataCache
+public final class ReflectionClassResolver implements ClassResolver {
+    public static final ReflectionClassResolver INSTANCE = new ReflectionClassResolver();
+
+    private ReflectionClassResolver() {
+    }
+
+    @Override
+    public ClassMetadata resolve(TypeRef type) {
+        Class<?> clazz = classOf(type);
+        return clazz == null || !type.isClass() ? null : ClassMetadataCache.get(clazz);
+    }
+
+    @Override
+    public boolean isAssignableTo(TypeRef type, Class<?> jdkType) {
+        Class<?> clazz = classOf(type);
+        return clazz != null && jdkType.isAssignableFrom(clazz);
+    }
+
+    // References rebuilt from a name (e.g. from the SchemaModel) are loaded through the context class loader
+    private static Class<?> classOf(TypeRef type) {
+        Class<?> clazz = type.getResolvedClass();
+        if (clazz != null || !type.isClass()) {
+            return clazz;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            return Class.forName(type.getName(), false,
+                    loader != null ? loader : ReflectionClassResolver.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // Loads a JDK class (java.*, javax.*) by binary name without initializing it; null for other
+    // or unknown names. Lets non-reflective resolvers understand the JDK types DTOs refer to.
+    public static Class<?> loadJdkClass(String name) {
+        if (!name.startsWith("java.") && !name.startsWith("javax.")) {
+            return null;
+        }
+        try {
+            return Class.forName(name, false, ClassLoader.getPlatformClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
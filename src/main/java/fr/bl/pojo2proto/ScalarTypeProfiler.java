@@ -0,0 +1,237 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ScalarTypeSelector that picks integer encodings from real data: sample instances are walked
+// (nested objects, collections, map keys/values and arrays included) and every integer or Date value
+// met in a field adds the bytes each encoding would take to that field's profile. select() returns
+// the smallest encoding when it beats zigzag, report() lists the expected savings per field:
+//     ScalarTypeProfiler profiler = new ScalarTypeProfiler().sampleAll(recentOrders);
+//     System.out.println(profiler.report());
+//     options.setScalarTypeSelector(ScalarTypeSelector.ANNOTATIONS.orElse(profiler));
+// Only classes outside java.* and javax.* are walked; sampling is done before generation.
+public class ScalarTypeProfiler implements ScalarTypeSelector {
+    private final Map<String, FieldProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<Class<?>, List<Field>> fieldsByClass = new ConcurrentHashMap<>();
+
+    // Sizes accumulated by one field, per encoding
+    private static final class FieldProfile {
+        final boolean wide;
+        final long[] bytes = new long[IntegerEncoding.values().length];
+        long values;
+
+        FieldProfile(boolean wide) {
+            this.wide = wide;
+        }
+
+        void record(long value) {
+            values++;
+            for (IntegerEncoding encoding : IntegerEncoding.values()) {
+                bytes[encoding.ordinal()] += encoding.size(value, wide);
+            }
+        }
+
+        IntegerEncoding best() {
+            IntegerEncoding best = IntegerEncoding.ZIGZAG;
+            for (IntegerEncoding encoding : IntegerEncoding.values()) {
+                if (bytes[encoding.ordinal()] < bytes[best.ordinal()]) {
+                    best = encoding;
+                }
+            }
+            return best;
+        }
+    }
+
+    // Adds the values reachable from the instances; an object reached several times is counted once
+    public synchronized ScalarTypeProfiler sampleAll(Collection<?> instances) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> queue = new ArrayDeque<>();
+        for (Object instance : instances) {
+            enqueue(instance, queue);
+        }
+        while (!queue.isEmpty()) {
+            Object current = queue.poll();
+            if (!visited.add(current)) {
+                continue;
+            }
+            if (current instanceof Collection) {
+                for (Object element : (Collection<?>) current) {
+                    enqueue(element, queue);
+                }
+            } else if (current instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) current).entrySet()) {
+                    enqueue(entry.getKey(), queue);
+                    enqueue(entry.getValue(), queue);
+                }
+            } else if (current instanceof Object[]) {
+                for (Object element : (Object[]) current) {
+                    enqueue(element, queue);
+                }
+            } else {
+                sampleFields(current, queue);
+            }
+        }
+        return this;
+    }
+
+    public ScalarTypeProfiler sample(Object instance) {
+        return sampleAll(Collections.singletonList(instance));
+    }
+
+    private static void enqueue(Object value, Deque<Object> queue) {
+        if (value == null) {
+            return;
+        }
+        String typeName = value.getClass().getName();
+        if (value instanceof Collection || value instanceof Map || value instanceof Object[]
+                || !(typeName.startsWith("java.") || typeName.startsWith("javax.") || value.getClass().isArray())) {
+            queue.add(value);
+        }
+    }
+
+    private void sampleFields(Object instance, Deque<Object> queue) {
+        for (Field field : fieldsOf(instance.getClass())) {
+            Object value;
+            try {
+                value = field.get(instance);
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+            if (value == null) {
+                continue;
+            }
+            String key = key(field.getDeclaringClass().getName(), field.getName());
+            if (!record(key, value)) {
+                if (value instanceof int[] || value instanceof long[] || value instanceof short[]) {
+                    for (int i = 0; i < Array.getLength(value); i++) {
+                        record(key, Array.get(value, i));
+                    }
+                } else if (value instanceof Collection || value instanceof Object[]) {
+                    Collection<?> elements = value instanceof Collection ? (Collection<?>) value
+                            : Arrays.asList((Object[]) value);
+                    for (Object element : elements) {
+                        if (!record(key, element)) {
+                            enqueue(element, queue);
+                        }
+                    }
+                } else {
+                    enqueue(value, queue);
+                }
+            }
+        }
+    }
+
+    // Records an integer or Date value; false for any other value
+    private boolean record(String key, Object value) {
+        long number;
+        boolean wide;
+        if (value instanceof Integer || value instanceof Short) {
+            number = ((Number) value).longValue();
+            wide = false;
+        } else if (value instanceof Long) {
+            number = (Long) value;
+            wide = true;
+        } else if (value instanceof Date) {
+            number = ((Date) value).getTime();
+            wide = true;
+        } else {
+            return false;
+        }
+        profiles.computeIfAbsent(key, k -> new FieldProfile(wide)).record(number);
+        return true;
+    }
+
+    // Instance fields of the class and its super classes; fields that cannot be made accessible
+    // (e.g. in non-open modules) are left out
+    private List<Field> fieldsOf(Class<?> type) {
+        return fieldsByClass.computeIfAbsent(type, key -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = key; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException e) {
+                        // InaccessibleObjectException, SecurityException
+                    }
+                }
+            }
+            return fields;
+        });
+    }
+
+    private static String key(String className, String fieldName) {
+        return className + "." + fieldName;
+    }
+
+    @Override
+    public IntegerEncoding select(FieldMetadata field) {
+        FieldProfile profile = profiles.get(key(field.getDeclaringType().getName(), field.getName()));
+        if (profile == null) {
+            return null;
+        }
+        IntegerEncoding best = profile.best();
+        return best == IntegerEncoding.ZIGZAG ? null : best;
+    }
+
+    // Fields profiled so far, by declaring class binary name and field name (com.acme.Order.id)
+    public Set<String> getProfiledFields() {
+        return Collections.unmodifiableSet(profiles.keySet());
+    }
+
+    // Bytes the sampled values of a field take with an encoding (tags excluded), -1 if not profiled
+    public long getSampledBytes(String field, IntegerEncoding encoding) {
+        FieldProfile profile = profiles.get(field);
+        return profile == null ? -1 : profile.bytes[encoding.ordinal()];
+    }
+
+    // Per-field wire size of the sampled values with the default zigzag encoding and with the
+    // selected one, biggest savings first
+    public String report() {
+        List<Map.Entry<String, FieldProfile>> entries = new ArrayList<>(profiles.entrySet());
+        entries.sort((left, right) -> Long.compare(savings(right.getValue()), savings(left.getValue())));
+        long totalDefault = 0;
+        long totalSelected = 0;
+        StringBuilder report = new StringBuilder("Integer encodings\n");
+        for (Map.Entry<String, FieldProfile> entry : entries) {
+            FieldProfile profile = entry.getValue();
+            IntegerEncoding best = profile.best();
+            long defaultBytes = profile.bytes[IntegerEncoding.ZIGZAG.ordinal()];
+            long selectedBytes = profile.bytes[best.ordinal()];
+            totalDefault += defaultBytes;
+            totalSelected += selectedBytes;
+            report.append(String.format(Locale.ROOT, "  %s: %s -> %s, %d -> %d bytes (%s) over %d values\n",
+                    entry.getKey(), IntegerEncoding.ZIGZAG.getProtoType(profile.wide), best.getProtoType(profile.wide),
+                    defaultBytes, selectedBytes, percent(defaultBytes, selectedBytes), profile.values));
+        }
+        report.append(String.format(Locale.ROOT, "  total: %d -> %d bytes (%s)\n", totalDefault, totalSelected,
+                percent(totalDefault, totalSelected)));
+        return report.toString();
+    }
+
+    private static long savings(FieldProfile profile) {
+        return profile.bytes[IntegerEncoding.ZIGZAG.ordinal()] - profile.bytes[profile.best().ordinal()];
+    }
+
+    private static String percent(long before, long after) {
+        return before == 0 ? "0.0%" : String.format(Locale.ROOT, "%+.1f%%", (after - before) * 100.0 / before);
+    }
+}
@@ -0,0 +1,29 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.Field;
+
+// Chooses the wire encoding of integer and Date fields (of their elements for collections and
+// one-dimensional arrays), which are zigzag encoded (sint32/sint64) unless a selector says otherwise.
+// Set through GeneratorOptions.setScalarTypeSelector; must be thread-safe for parallel discovery.
+public interface ScalarTypeSelector {
+    // Keeps the zigzag defaults
+    ScalarTypeSelector DEFAULT = field -> null;
+
+    // @ProtoEncoding of the field; resolvers that give no java.lang.reflect.Field have no annotations
+    ScalarTypeSelector ANNOTATIONS = field -> {
+        Field javaField = field.getField();
+        ProtoEncoding annotation = javaField == null ? null : javaField.getAnnotation(ProtoEncoding.class);
+        return annotation == null ? null : annotation.value();
+    };
+
+    // Encoding of the field, null to keep the default
+    IntegerEncoding select(FieldMetadata field);
+
+    // This selector, falling back to next for the fields it has no preference for
+    default ScalarTypeSelector orElse(ScalarTypeSelector next) {
+        return field -> {
+            IntegerEncoding encoding = select(field);
+            return encoding != null ? encoding : next.select(field);
+        };
+    }
+}
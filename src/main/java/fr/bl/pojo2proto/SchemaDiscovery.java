@@ -0,0 +1,798 @@
+package fr.bl.pojo2proto;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.FieldKind;
+import fr.bl.pojo2proto.schema.FieldLabel;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Walks the type graph once, starting from the root classes, and builds the SchemaModel.
+// Class structure comes from a ClassResolver, so the same walk serves reflection and class files.
+// In parallel mode classes are described concurrently, then ordered by the same breadth-first
+// walk as sequential mode so both produce the exact same model.
+public class SchemaDiscovery {
+    private static final String MESSAGE_PREFIX = "Grpc";
+    private static final String ANY = "google.protobuf.Any";
+    private static final String ARRAY_PREFIX = "Array_";
+    private static final String ROW_SUFFIX = "_Row";
+    private static final String FLAT_ARRAY_PREFIX = "FlatArray_";
+    private static final String ITEMS = "items";
+    private static final String ONEOF_PREFIX = "Oneof_";
+    private static final String ONEOF = "value";
+
+    // Scalar mappings keyed by primitive keyword / binary class name
+    private final Map<String, String> typeMap = getPrimitivesMap();
+
+    // Set to track types that should be skipped
+    private final Set<String> skipTypes = getSkipTypesSet();
+
+    private final GeneratorOptions options;
+    private final TypeAdapterRegistry adapters;
+    private final SubtypeResolver subtypeResolver;
+    private final ClassResolver resolver;
+    private final GenerationListener listener;
+    private final LongAdder resolverCalls = new LongAdder();
+    private final FieldNumberRegistry fieldNumbers;
+    // Descriptions shared by every discovery of a ProtoGenerator, by class name; null when not shared
+    private final Map<String, DiscoveredClass> descriptions;
+
+    public SchemaDiscovery() {
+        this(new GeneratorOptions());
+    }
+
+    public SchemaDiscovery(GeneratorOptions options) {
+        this(options, ReflectionClassResolver.INSTANCE);
+    }
+
+    public SchemaDiscovery(GeneratorOptions options, ClassResolver resolver) {
+        this(options, resolver, null);
+    }
+
+    SchemaDiscovery(GeneratorOptions options, ClassResolver resolver, Map<String, DiscoveredClass> descriptions) {
+        this.options = options;
+        this.adapters = options.getTypeAdapters();
+        this.subtypeResolver = options.getSubtypeResolver();
+        this.descriptions = descriptions;
+        this.resolver = resolver;
+        this.listener = options.getListener();
+        this.fieldNumbers = options.getFieldNumberRegistry() != null ? options.getFieldNumberRegistry()
+                : FieldNumberRegistry.inMemory();
+    }
+
+    private static Map<String, String> getPrimitivesMap() {
+        Map<String, String> results = new HashMap<>();
+        results.put("double", "double");
+        results.put("float", "float");
+        results.put("int", "sint32");
+        results.put("long", "sint64");
+        results.put("boolean", "bool");
+        results.put(Double.class.getName(), "double");
+        results.put(Float.class.getName(), "float");
+        results.put(Integer.class.getName(), "sint32");
+        results.put(Long.class.getName(), "sint64");
+        results.put(Boolean.class.getName(), "bool");
+        results.put(String.class.getName(), "string");
+        results.put("byte", "bytes");
+        results.put(Byte.class.getName(), "bytes");
+        results.put("short", "sint32");
+        results.put(Short.class.getName(), "sint32");
+        results.put(Date.class.getName(), "sint64"); // Treating Date as sint64 (Long)
+        return results;
+    }
+
+    private static Set<String> getSkipTypesSet() {
+        Set<String> skipSet = new HashSet<>();
+        skipSet.add(Class.class.getName());
+        skipSet.add(Object.class.getName());
+        return skipSet;
+    }
+
+    public SchemaModel discover(Collection<TypeRef> roots) {
+        DiscoveryEvent event = new DiscoveryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long callsBefore = resolverCalls.sum();
+        long loadsBefore = ClassMetadataCache.getMisses();
+
+        SchemaModel model;
+        if (!options.isParallel()) {
+            model = order(roots, this::describeOnce);
+        } else {
+            Map<String, DiscoveredClass> described = describeInParallel(roots);
+            model = order(roots, type -> described.get(type.getName()));
+        }
+
+        // A resolver kept between runs reports its problems to every run, they concern all of them
+        for (String warning : resolver.getWarnings()) {
+            listener.onWarning(warning);
+        }
+        long calls = resolverCalls.sum() - callsBefore;
+        listener.onPhase(GenerationPhase.DISCOVERY, System.nanoTime() - start);
+        listener.onResolverCalls(calls, ClassMetadataCache.getMisses() - loadsBefore);
+        event.end();
+        if (event.shouldCommit()) {
+            event.roots = roots.size();
+            event.parallelism = options.getParallelism();
+            event.enums = model.getEnums().size();
+            event.messages = model.getMessages().size();
+            event.resolverCalls = calls;
+            event.commit();
+        }
+        return model;
+    }
+
+    // Breadth-first walk from the roots; lookup supplies the description of each class
+    private SchemaModel order(Collection<TypeRef> roots, Function<TypeRef, DiscoveredClass> lookup) {
+        List<EnumDefinition> enums = new ArrayList<>();
+        List<MessageDefinition> messages = new ArrayList<>();
+        Queue<TypeRef> queue = new ArrayDeque<>(roots);
+        Set<String> visited = new HashSet<>();
+
+        while (!queue.isEmpty()) {
+            TypeRef currentClass = queue.poll();
+            // Classes described by an earlier discovery of the same generator are known to be discoverable
+            if (!visited.add(currentClass.getName()) || (!isDescribed(currentClass) && !isDiscoverable(currentClass))) {
+                continue;
+            }
+
+            DiscoveredClass discovered = lookup.apply(currentClass);
+            if (discovered.enumDefinition != null) {
+                enums.add(discovered.enumDefinition);
+            } else {
+                messages.add(discovered.message);
+            }
+            for (TypeRef referenced : discovered.references) {
+                if (!visited.contains(referenced.getName())) {
+                    queue.add(referenced);
+                }
+            }
+        }
+        return new SchemaModel(enums, messages, createSharedMessages(messages));
+    }
+
+    // The messages of the type adapters used by the fields, and one FlatArray_<type> message per leaf
+    // type used by flattened array fields, sorted by name
+    private List<MessageDefinition> createSharedMessages(List<MessageDefinition> messages) {
+        Set<String> names = new TreeSet<>();
+        collectSharedMessageNames(messages, names);
+        List<MessageDefinition> shared = new ArrayList<>();
+        for (String name : names) {
+            MessageDefinition adapted = adapters.getSharedMessage(name);
+            if (adapted != null) {
+                shared.add(adapted);
+                continue;
+            }
+            // The sizes of each dimension, then the values in row-major order, both packed
+            List<FieldDefinition> fields = new ArrayList<>();
+            fields.add(new FieldDefinition("dimensions", 1, FieldLabel.REPEATED, FieldKind.SCALAR, "uint32",
+                    null, "int", null));
+            fields.add(new FieldDefinition("values", 2, FieldLabel.REPEATED, FieldKind.SCALAR,
+                    name.substring(FLAT_ARRAY_PREFIX.length()), null, null, null));
+            shared.add(new MessageDefinition(null, name, fields, new ArrayList<MessageDefinition>(),
+                    new LinkedHashSet<String>(), null));
+        }
+        return shared;
+    }
+
+    // Array rows and map values may hold adapted types too
+    private void collectSharedMessageNames(List<MessageDefinition> messages, Set<String> names) {
+        for (MessageDefinition message : messages) {
+            for (FieldDefinition field : message.getFields()) {
+                if (field.getKind() == FieldKind.MESSAGE && (field.getType().startsWith(FLAT_ARRAY_PREFIX)
+                        || adapters.getSharedMessage(field.getType()) != null)) {
+                    names.add(field.getType());
+                }
+            }
+            collectSharedMessageNames(message.getNestedMessages(), names);
+        }
+    }
+
+    private Map<String, DiscoveredClass> describeInParallel(Collection<TypeRef> roots) {
+        Map<String, DiscoveredClass> described = new ConcurrentHashMap<>();
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = options.getDiscoveryPool();
+        boolean ownPool = pool == null;
+        if (ownPool) {
+            pool = new ForkJoinPool(options.getParallelism());
+        }
+        try {
+            pool.invoke(new DescribeTask(null, roots, described, visited));
+        } finally {
+            if (ownPool) {
+                pool.shutdown();
+            }
+        }
+        return described;
+    }
+
+    // Claims every not yet visited class of a batch and forks one task per class; each class task
+    // describes its class and forks a batch for its references. Completes once the whole
+    // reachable graph is described.
+    private final class DescribeTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Collection<TypeRef> batch;
+        private final TypeRef type;
+        private final Map<String, DiscoveredClass> described;
+        private final Set<String> visited;
+
+        DescribeTask(CountedCompleter<?> parent, Collection<TypeRef> batch,
+                     Map<String, DiscoveredClass> described, Set<String> visited) {
+            this(parent, batch, null, described, visited);
+        }
+
+        private DescribeTask(CountedCompleter<?> parent, Collection<TypeRef> batch, TypeRef type,
+                             Map<String, DiscoveredClass> described, Set<String> visited) {
+            super(parent);
+            this.batch = batch;
+            this.type = type;
+            this.described = described;
+            this.visited = visited;
+        }
+
+        @Override
+        public void compute() {
+            if (type == null) {
+                for (TypeRef candidate : batch) {
+                    if (isDiscoverable(candidate) && visited.add(candidate.getName())) {
+                        addToPendingCount(1);
+                        new DescribeTask(this, null, candidate, described, visited).fork();
+                    }
+                }
+            } else {
+                DiscoveredClass discovered = describeOnce(type);
+                described.put(type.getName(), discovered);
+                if (!discovered.references.isEmpty()) {
+                    addToPendingCount(1);
+                    new DescribeTask(this, discovered.references, described, visited).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    // Enums and concrete classes get a definition; scalars, adapted types, arrays, skip-listed,
+    // unresolvable, interfaces and abstract classes do not
+    boolean isDiscoverable(TypeRef type) {
+        if (!type.isClass() || skipTypes.contains(type.getName()) || isScalar(type) || isAdapted(type)) {
+            return false;
+        }
+        ClassMetadata metadata = resolve(type);
+        return metadata != null && (metadata.isEnum() || !metadata.isAbstract());
+    }
+
+    private boolean isDescribed(TypeRef type) {
+        return descriptions != null && descriptions.containsKey(type.getName());
+    }
+
+    // Shared description of a class, described on first use. Lock-free: two discoveries racing on a
+    // new class both describe it (descriptions are deterministic) and the first one published wins
+    private DiscoveredClass describeOnce(TypeRef type) {
+        if (descriptions == null) {
+            return describe(type);
+        }
+        DiscoveredClass discovered = descriptions.get(type.getName());
+        if (discovered == null) {
+            discovered = describe(type);
+            DiscoveredClass published = descriptions.putIfAbsent(type.getName(), discovered);
+            if (published != null) {
+                discovered = published;
+            }
+        }
+        return discovered;
+    }
+
+    // Resolves one class into its definition and outgoing edges, without looking at any other class
+    DiscoveredClass describe(TypeRef type) {
+        ClassDescriptionEvent event = new ClassDescriptionEvent();
+        event.begin();
+        long start = System.nanoTime();
+        ClassMetadata metadata = resolve(type);
+        DiscoveredClass discovered = describe(type, metadata);
+        listener.onClassDescribed(type.getName(), System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = type.getName();
+            event.fields = metadata.getFields().size();
+            event.commit();
+        }
+        return discovered;
+    }
+
+    private DiscoveredClass describe(TypeRef type, ClassMetadata metadata) {
+        if (metadata.isEnum()) {
+            EnumDefinition enumDefinition = new EnumDefinition(metadata.getName(), getMessageTypeName(type),
+                    new ArrayList<>(metadata.getEnumConstants()), metadata.getFingerprint());
+            return new DiscoveredClass(enumDefinition, null, new LinkedHashSet<TypeRef>());
+        }
+
+        Set<TypeRef> references = new LinkedHashSet<>();
+        List<FieldDefinition> fields = new ArrayList<>();
+        List<MessageDefinition> nestedMessages = new ArrayList<>();
+        List<FieldMetadata> numberedFields = getNumberedFields(metadata);
+        Map<String, Integer> numbers = assignNumbers(metadata, numberedFields);
+        for (FieldMetadata field : numberedFields) {
+            TypeRef fieldType = field.getType();
+            int fieldIndex = numbers.get(field.getName());
+
+            FieldDefinition definition;
+            if (isScalar(fieldType) || isAdapted(fieldType)) {
+                definition = new FieldDefinition(field.getName(), fieldIndex, FieldLabel.OPTIONAL, getKind(fieldType),
+                        getProtoType(field, fieldType), null, fieldType.getTypeName(), null);
+            } else if (fieldType.isClass() && Optional.class.getName().equals(fieldType.getName())) {
+                definition = processOptionalField(field, fieldIndex, references, nestedMessages);
+            } else if (isAssignableTo(fieldType, Collection.class)) {
+                definition = processCollectionField(field, fieldIndex, references, nestedMessages);
+            } else if (isAssignableTo(fieldType, Map.class)) {
+                definition = processMapField(field, fieldIndex, references, nestedMessages);
+            } else if (fieldType.isArray()) {
+                definition = processArrayField(field, fieldIndex, references, nestedMessages);
+            } else {
+                // Complex types are only referenced here, their message is built when discovery reaches them
+                definition = elementField(field, fieldIndex, FieldLabel.OPTIONAL, fieldType.getRaw(), references,
+                        nestedMessages);
+            }
+            if (definition != null) {
+                fields.add(definition);
+            }
+        }
+
+        // Inner classes are part of the schema even when no field uses them
+        for (TypeRef innerClass : metadata.getInnerClasses()) {
+            addReference(innerClass, references);
+        }
+
+        Set<String> referenceNames = new LinkedHashSet<>();
+        for (TypeRef referenced : references) {
+            referenceNames.add(referenced.getName());
+        }
+        Map<String, Integer> reserved = fieldNumbers.getReserved(metadata.getName());
+        MessageDefinition message = new MessageDefinition(metadata.getName(), getMessageTypeName(type), fields,
+                nestedMessages, referenceNames, getFingerprint(metadata, fields, nestedMessages, reserved), reserved);
+        return new DiscoveredClass(null, message, references);
+    }
+
+    // Fields that get a number: all but transient fields, Class and type variable fields, and Object
+    // fields without known subtypes
+    private List<FieldMetadata> getNumberedFields(ClassMetadata metadata) {
+        List<FieldMetadata> numbered = new ArrayList<>();
+        for (FieldMetadata field : metadata.getFields()) {
+            if (field.isTransient()) {
+                continue;
+            }
+            TypeRef fieldType = field.getType();
+
+            // Skip Predefined Class Types (Class, Object) fields, type variables (erased to Object), and
+            // like Object the interfaces and abstract classes without known subtypes: they get no message
+            if (fieldType.isWildcard() || fieldType.isVariable()
+                    || ((skipTypes.contains(fieldType.getName()) || isAbstractType(fieldType))
+                        && getSubtypes(field, fieldType).isEmpty())) {
+                continue;
+            }
+            numbered.add(field);
+        }
+        return numbered;
+    }
+
+    private Map<String, Integer> assignNumbers(ClassMetadata metadata, List<FieldMetadata> numberedFields) {
+        List<String> names = new ArrayList<>();
+        Map<String, Long> heat = new HashMap<>();
+        for (FieldMetadata field : numberedFields) {
+            names.add(field.getName());
+            long fieldHeat = options.getHotFieldSelector().getHeat(field);
+            if (fieldHeat != 0) {
+                heat.put(field.getName(), fieldHeat);
+            }
+        }
+        return fieldNumbers.assign(metadata.getName(), names, heat);
+    }
+
+    // The class fingerprint, plus what the rendered message depends on besides the class: field
+    // numbers, reserved numbers, the integer encodings chosen by the ScalarTypeSelector and the
+    // subtypes of the oneof wrappers
+    private static String getFingerprint(ClassMetadata metadata, List<FieldDefinition> fields,
+                                         List<MessageDefinition> nestedMessages, Map<String, Integer> reserved) {
+        StringBuilder fingerprint = new StringBuilder(metadata.getFingerprint()).append('|');
+        for (FieldDefinition field : fields) {
+            fingerprint.append(field.getNumber()).append(',');
+            IntegerEncoding encoding = IntegerEncoding.of(field.getType());
+            if ((encoding != null && encoding != IntegerEncoding.ZIGZAG)
+                    || field.getType().startsWith(FLAT_ARRAY_PREFIX) || field.getType().startsWith(ONEOF_PREFIX)) {
+                fingerprint.append(field.getType()).append(',');
+            }
+        }
+        for (MessageDefinition nested : nestedMessages) {
+            if (nested.getOneof() == null) {
+                continue;
+            }
+            fingerprint.append('|').append(nested.getName()).append(':');
+            for (FieldDefinition variant : nested.getFields()) {
+                fingerprint.append(variant.getNumber()).append('=').append(variant.getReferencedType()).append(',');
+            }
+            if (!nested.getReserved().isEmpty()) {
+                fingerprint.append(nested.getReserved());
+            }
+        }
+        if (!reserved.isEmpty()) {
+            fingerprint.append('|').append(reserved);
+        }
+        return fingerprint.toString();
+    }
+
+    // Plain (non-parameterized) class or primitive: the only element types a field can map to
+    private static boolean isSimpleType(TypeRef type) {
+        return type.isPrimitive() || (type.isClass() && !type.isParameterized());
+    }
+
+    // Types a repeated field or map value can hold: simple types and bulk binary types (byte[], ...)
+    private static boolean isElementType(TypeRef type) {
+        return isSimpleType(type) || BinaryTypes.isBinary(type);
+    }
+
+    private FieldDefinition processCollectionField(FieldMetadata field, int index, Set<TypeRef> references,
+                                                   List<MessageDefinition> nestedMessages) {
+        if (!field.isParameterized()) {
+            return null;
+        }
+        if (field.getTypeArgumentCount() != 1) {
+            listener.onWarning("Unsupported number of generic type arguments: " + field.getTypeArgumentCount());
+            return null;
+        }
+
+        TypeRef componentType = field.getTypeArgument(0);
+        if (isElementType(componentType) || componentType.isWildcard()) {
+            return elementField(field, index, FieldLabel.REPEATED, componentType, references, nestedMessages);
+        }
+        listener.onWarning("Unsupported generic type: " + componentType.getTypeName());
+        return null;
+    }
+
+    // Optional<T> is a T field: an empty Optional is an unset field
+    private FieldDefinition processOptionalField(FieldMetadata field, int index, Set<TypeRef> references,
+                                                 List<MessageDefinition> nestedMessages) {
+        if (!field.isParameterized() || field.getTypeArgumentCount() != 1) {
+            return null;
+        }
+        return elementField(field, index, FieldLabel.OPTIONAL, field.getTypeArgument(0), references, nestedMessages);
+    }
+
+    private FieldDefinition processMapField(FieldMetadata field, int index, Set<TypeRef> references,
+                                            List<MessageDefinition> nestedMessages) {
+        if (!field.isParameterized() || field.getTypeArgumentCount() != 2) {
+            return null;
+        }
+        TypeRef keyType = field.getTypeArgument(0);
+        TypeRef valueType = field.getTypeArgument(1);
+
+        if (isSimpleType(keyType) && isMapKey(keyType) && !skipTypes.contains(keyType.getName())) {
+            List<TypeRef> subtypes = getSubtypes(field, valueType);
+            if (!subtypes.isEmpty()) {
+                addReference(keyType, references);
+                return oneofField(field, index, FieldLabel.MAP, getProtoType(keyType), valueType, subtypes,
+                        references, nestedMessages);
+            }
+        }
+
+        // Unresolvable or skip-listed key/value types, interface and abstract class values, and types
+        // adapted to a message or bytes as keys, fall back to Any
+        if (!isSimpleType(keyType) || !isElementType(valueType) || !isMapKey(keyType)
+                || skipTypes.contains(keyType.getName()) || skipTypes.contains(valueType.getName())
+                || isAbstractType(valueType)) {
+            return anyField(field, index, FieldLabel.OPTIONAL);
+        }
+
+        addReference(keyType, references);
+        addReference(valueType, references);
+        // In proto3, maps are represented as: map<key_type, value_type> field_name = field_number;
+        return new FieldDefinition(field.getName(), index, FieldLabel.MAP, getKind(valueType), getProtoType(valueType),
+                getProtoType(keyType), field.getType().getTypeName(), getReferencedName(valueType));
+    }
+
+    private FieldDefinition processArrayField(FieldMetadata field, int index, Set<TypeRef> references,
+                                              List<MessageDefinition> nestedMessages) {
+        TypeRef componentType = field.getType().getComponent();
+
+        // For multi-dimensional arrays, create a separate message type for the rows
+        if (componentType.isArray() && !BinaryTypes.isBinary(componentType)) {
+            TypeRef elementType = componentType;
+            while (elementType.isArray() && !BinaryTypes.isBinary(elementType)) {
+                elementType = elementType.getComponent();
+            }
+            if (!isElementType(elementType) || skipTypes.contains(elementType.getName())
+                    || isAbstractType(elementType)) {
+                return anyField(field, index, FieldLabel.REPEATED);
+            }
+            addReference(elementType, references);
+
+            // Rectangular primitive arrays can share one packed message instead of a row chain
+            if (options.isFlattenArrays() && elementType.isPrimitive()) {
+                return new FieldDefinition(field.getName(), index, FieldLabel.OPTIONAL, FieldKind.MESSAGE,
+                        FLAT_ARRAY_PREFIX + getProtoType(field, elementType), null, field.getType().getTypeName(),
+                        null);
+            }
+
+            String rowMessageName = ARRAY_PREFIX + field.getDeclaringType().getSimpleName() + "_" + field.getName();
+            nestedMessages.add(createArrayRowMessage(rowMessageName, componentType));
+            return new FieldDefinition(field.getName(), index, FieldLabel.REPEATED, FieldKind.MESSAGE, rowMessageName,
+                    null, field.getType().getTypeName(), getReferencedName(elementType));
+        }
+
+        // Simple array - just use repeated
+        return elementField(field, index, FieldLabel.REPEATED, componentType, references, nestedMessages);
+    }
+
+    private MessageDefinition createArrayRowMessage(String messageName, TypeRef arrayType) {
+        TypeRef componentType = arrayType.getComponent();
+        List<FieldDefinition> fields = new ArrayList<>();
+        List<MessageDefinition> nestedMessages = new ArrayList<>();
+
+        if (componentType.isArray() && !BinaryTypes.isBinary(componentType)) {
+            // For nested arrays, create another message type
+            String nestedRowMessageName = messageName + ROW_SUFFIX;
+            nestedMessages.add(createArrayRowMessage(nestedRowMessageName, componentType));
+            fields.add(new FieldDefinition(ITEMS, 1, FieldLabel.REPEATED, FieldKind.MESSAGE, nestedRowMessageName,
+                    null, componentType.getTypeName(), null));
+        } else {
+            // For simple arrays, use the component type
+            fields.add(new FieldDefinition(ITEMS, 1, FieldLabel.REPEATED, getKind(componentType),
+                    getProtoType(componentType), null, componentType.getTypeName(), getReferencedName(componentType)));
+        }
+        return new MessageDefinition(null, messageName, fields, nestedMessages, new LinkedHashSet<String>(), null);
+    }
+
+    private FieldDefinition elementField(FieldMetadata field, int index, FieldLabel label, TypeRef elementType,
+                                         Set<TypeRef> references, List<MessageDefinition> nestedMessages) {
+        List<TypeRef> subtypes = getSubtypes(field, elementType);
+        if (!subtypes.isEmpty()) {
+            return oneofField(field, index, label, null, elementType, subtypes, references, nestedMessages);
+        }
+        if (!isElementType(elementType) || skipTypes.contains(elementType.getName()) || isAbstractType(elementType)) {
+            return anyField(field, index, label);
+        }
+        addReference(elementType, references);
+        return new FieldDefinition(field.getName(), index, label, getKind(elementType), getProtoType(field, elementType),
+                null, field.getType().getTypeName(), getReferencedName(elementType));
+    }
+
+    // Values of a polymorphic type as a nested Oneof_<Class>_<field> message holding one field per
+    // subtype in a oneof: { oneof value { GrpcCircle circle = 1; GrpcSquare square = 2; } }. The subtype
+    // fields are numbered like class fields, so subtypes keep their number across runs
+    private FieldDefinition oneofField(FieldMetadata field, int index, FieldLabel label, String keyType,
+                                       TypeRef valueType, List<TypeRef> subtypes, Set<TypeRef> references,
+                                       List<MessageDefinition> nestedMessages) {
+        String messageName = ONEOF_PREFIX + field.getDeclaringType().getSimpleName() + "_" + field.getName();
+        // Binary names never hold a '/': no class can have the same key
+        String numbersKey = field.getDeclaringType().getName() + "/" + field.getName();
+        List<String> names = new ArrayList<>();
+        for (TypeRef subtype : subtypes) {
+            names.add(getVariantName(subtype, names));
+        }
+        Map<String, Integer> numbers = fieldNumbers.assign(numbersKey, names, Collections.<String, Long>emptyMap());
+
+        List<FieldDefinition> variants = new ArrayList<>();
+        for (int i = 0; i < subtypes.size(); i++) {
+            TypeRef subtype = subtypes.get(i);
+            addReference(subtype, references);
+            variants.add(new FieldDefinition(names.get(i), numbers.get(names.get(i)), FieldLabel.OPTIONAL,
+                    getKind(subtype), getProtoType(subtype), null, subtype.getTypeName(), subtype.getName()));
+        }
+        nestedMessages.add(new MessageDefinition(null, messageName, variants, new ArrayList<MessageDefinition>(),
+                new LinkedHashSet<String>(), null, fieldNumbers.getReserved(numbersKey), ONEOF));
+        String baseType = valueType.isWildcard() ? Object.class.getName() : valueType.getName();
+        return new FieldDefinition(field.getName(), index, label, FieldKind.MESSAGE, messageName, keyType,
+                field.getType().getTypeName(), baseType);
+    }
+
+    // circle for com.acme.Circle; a number is appended to names already taken, and to the oneof name
+    private static String getVariantName(TypeRef subtype, List<String> taken) {
+        String simpleName = subtype.getSimpleName();
+        String name = Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+        String candidate = name;
+        for (int suffix = 2; taken.contains(candidate) || candidate.equals(ONEOF); suffix++) {
+            candidate = name + suffix;
+        }
+        return candidate;
+    }
+
+    // Classes and enums the values of a polymorphic type (interface, abstract class, Object or
+    // wildcard) can be, sorted by name: the discoverable ones among the subtypes the SubtypeResolver
+    // finds, abstract subtypes being expanded in turn. Empty for other types
+    private List<TypeRef> getSubtypes(FieldMetadata field, TypeRef valueType) {
+        if (subtypeResolver == SubtypeResolver.NONE) {
+            return Collections.emptyList();
+        }
+        TypeRef baseType = valueType.isWildcard() ? TypeRef.of(Object.class) : valueType;
+        if (!baseType.isClass() || (!Object.class.getName().equals(baseType.getName())
+                && (skipTypes.contains(baseType.getName()) || isScalar(baseType) || isAdapted(baseType)
+                || isAssignableTo(baseType, Collection.class) || isAssignableTo(baseType, Map.class)))) {
+            return Collections.emptyList();
+        }
+        ClassMetadata metadata = resolve(baseType.getRaw());
+        if (metadata == null || (!metadata.isAbstract() && !Object.class.getName().equals(metadata.getName()))) {
+            return Collections.emptyList();
+        }
+        Map<String, TypeRef> subtypes = new TreeMap<>();
+        collectSubtypes(field, metadata, subtypes, new HashSet<String>());
+        return new ArrayList<>(subtypes.values());
+    }
+
+    private void collectSubtypes(FieldMetadata field, ClassMetadata type, Map<String, TypeRef> subtypes,
+                                 Set<String> visited) {
+        if (!visited.add(type.getName())) {
+            return;
+        }
+        for (TypeRef subtype : subtypeResolver.getSubtypes(field, type)) {
+            if (!subtype.isClass()) {
+                continue;
+            }
+            if (isDiscoverable(subtype)) {
+                subtypes.put(subtype.getName(), subtype.getRaw());
+                continue;
+            }
+            ClassMetadata metadata = resolve(subtype.getRaw());
+            if (metadata != null && metadata.isAbstract()) {
+                collectSubtypes(field, metadata, subtypes, visited);
+            }
+        }
+    }
+
+    private FieldDefinition anyField(FieldMetadata field, int index, FieldLabel label) {
+        return new FieldDefinition(field.getName(), index, label, FieldKind.ANY, ANY, null,
+                field.getType().getTypeName(), null);
+    }
+
+    private void addReference(TypeRef type, Set<TypeRef> references) {
+        if (type.isClass() && !skipTypes.contains(type.getName()) && !isScalar(type) && !isAdapted(type)) {
+            references.add(type.getRaw());
+        }
+    }
+
+    private ClassMetadata resolve(TypeRef type) {
+        resolverCalls.increment();
+        return resolver.resolve(type);
+    }
+
+    private boolean isAssignableTo(TypeRef type, Class<?> jdkType) {
+        if (!type.isClass()) {
+            return false;
+        }
+        resolverCalls.increment();
+        return resolver.isAssignableTo(type, jdkType);
+    }
+
+    // Interfaces and abstract classes other than collections and maps: no message is generated for
+    // them (see isDiscoverable), so their values are only encoded through the oneof of their subtypes
+    private boolean isAbstractType(TypeRef type) {
+        if (!type.isClass() || isScalar(type) || isAdapted(type) || isAssignableTo(type, Collection.class)
+                || isAssignableTo(type, Map.class)) {
+            return false;
+        }
+        ClassMetadata metadata = resolve(type.getRaw());
+        return metadata != null && metadata.isAbstract();
+    }
+
+    private boolean isScalar(TypeRef type) {
+        return BinaryTypes.isBinary(type) || typeMap.containsKey(type.getName()) || isAssignableTo(type, Date.class);
+    }
+
+    // Classes with a type adapter, see TypeAdapterRegistry
+    private TypeAdapter getAdapter(TypeRef type) {
+        return type.isClass() ? adapters.get(type.getName()) : null;
+    }
+
+    private boolean isAdapted(TypeRef type) {
+        return getAdapter(type) != null;
+    }
+
+    private boolean isMapKey(TypeRef type) {
+        TypeAdapter adapter = getAdapter(type);
+        return adapter == null || (!adapter.isMessage() && !adapter.getProtoType().equals("bytes")
+                && !adapter.getProtoType().equals("float") && !adapter.getProtoType().equals("double"));
+    }
+
+    private FieldKind getKind(TypeRef type) {
+        if (skipTypes.contains(type.getName())) {
+            return FieldKind.ANY;
+        }
+        TypeAdapter adapter = getAdapter(type);
+        if (adapter != null) {
+            return adapter.isMessage() ? FieldKind.MESSAGE : FieldKind.SCALAR;
+        }
+        if (type.isPrimitive() || isScalar(type)) {
+            return FieldKind.SCALAR;
+        }
+        ClassMetadata metadata = resolve(type);
+        return metadata != null && metadata.isEnum() ? FieldKind.ENUM : FieldKind.MESSAGE;
+    }
+
+    // Adapted types map to a scalar or to a message without a Java class
+    private String getReferencedName(TypeRef type) {
+        if (isAdapted(type)) {
+            return null;
+        }
+        FieldKind kind = getKind(type);
+        return kind == FieldKind.ENUM || kind == FieldKind.MESSAGE ? type.getName() : null;
+    }
+
+    // Proto type of a field (or of its elements), integers and Dates encoded as the ScalarTypeSelector chooses
+    private String getProtoType(FieldMetadata field, TypeRef type) {
+        String protoType = getProtoType(type);
+        if (IntegerEncoding.of(protoType) != IntegerEncoding.ZIGZAG) {
+            return protoType;
+        }
+        IntegerEncoding encoding = options.getScalarTypeSelector().select(field);
+        return encoding == null ? protoType : encoding.getProtoType(IntegerEncoding.isWide(protoType));
+    }
+
+    private String getProtoType(TypeRef type) {
+        if (BinaryTypes.isBinary(type)) {
+            return "bytes";
+        }
+
+        TypeAdapter adapter = getAdapter(type);
+        if (adapter != null) {
+            return adapter.getProtoType();
+        }
+
+        // Handle Date types
+        if (isAssignableTo(type, Date.class)) {
+            return "sint64";
+        }
+
+        // Handle Class and Object types
+        if (skipTypes.contains(type.getName())) {
+            return ANY;
+        }
+
+        if (typeMap.containsKey(type.getName())) {
+            return typeMap.get(type.getName());
+        }
+
+        if (type.isPrimitive()) {
+            // This should be covered by typeMap but just in case
+            return "sint32"; // Default for unknown primitives
+        }
+
+        // For complex types, return the appropriate name reference
+        return getMessageTypeName(type);
+    }
+
+    private String getMessageTypeName(TypeRef type) {
+        return MESSAGE_PREFIX + type.getSimpleName();
+    }
+
+    // Definition of one class plus the classes it leads to
+    static final class DiscoveredClass {
+        final EnumDefinition enumDefinition;
+        final MessageDefinition message;
+        final Set<TypeRef> references;
+
+        DiscoveredClass(EnumDefinition enumDefinition, MessageDefinition message, Set<TypeRef> references) {
+            this.enumDefinition = enumDefinition;
+            this.message = message;
+            this.references = references;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Finds the classes behind a polymorphic type: an interface, an abstract class, or Object and
+// wildcards. Discovery then maps the values of that type to a wrapper message holding a oneof of
+// their messages, so each value carries a field tag instead of being left out (plain fields) or
+// written as a google.protobuf.Any with its type URL (elements, map and Optional values). Called with the field and the
+// declared type of its values (its elements, map values, Optional value); results may include
+// interfaces and abstract classes, whose own subtypes are looked up in turn. Set through
+// GeneratorOptions.setSubtypeResolver; must be thread-safe for parallel discovery.
+public interface SubtypeResolver {
+    SubtypeResolver NONE = (field, type) -> Collections.emptyList();
+
+    // Permitted subclasses of sealed classes and interfaces, through reflection only
+    SubtypeResolver SEALED = (field, type) -> {
+        List<TypeRef> subtypes = new ArrayList<>();
+        Class<?> javaClass = type.getJavaClass();
+        Class<?>[] permitted = javaClass == null ? null : javaClass.getPermittedSubclasses();
+        if (permitted != null) {
+            for (Class<?> subclass : permitted) {
+                subtypes.add(TypeRef.of(subclass));
+            }
+        }
+        return subtypes;
+    };
+
+    // @ProtoSubtypes of the field, else of the type
+    SubtypeResolver ANNOTATIONS = (field, type) -> {
+        Field javaField = field.getField();
+        ProtoSubtypes annotation = javaField == null ? null : javaField.getAnnotation(ProtoSubtypes.class);
+        if (annotation == null && type.getJavaClass() != null) {
+            annotation = type.getJavaClass().getAnnotation(ProtoSubtypes.class);
+        }
+        List<TypeRef> subtypes = new ArrayList<>();
+        if (annotation != null) {
+            for (Class<?> subtype : annotation.value()) {
+                subtypes.add(TypeRef.of(subtype));
+            }
+        }
+        return subtypes;
+    };
+
+    List<TypeRef> getSubtypes(FieldMetadata field, ClassMetadata type);
+
+    // Subtypes among known classes, e.g. the result of a class path scan; see also
+    // scan.ClassPathScanner.getSubtypeResolver. Object gets none: every class would be one
+    static SubtypeResolver fromClasses(Collection<Class<?>> classes) {
+        List<Class<?>> candidates = new ArrayList<>(classes);
+        return (field, type) -> {
+            List<TypeRef> subtypes = new ArrayList<>();
+            Class<?> base = type.getJavaClass();
+            if (base == null || base == Object.class) {
+                return subtypes;
+            }
+            for (Class<?> candidate : candidates) {
+                if (candidate != base && base.isAssignableFrom(candidate)) {
+                    subtypes.add(TypeRef.of(candidate));
+                }
+            }
+            return subtypes;
+        };
+    }
+
+    // This resolver, falling back to next for the types it finds no subtypes of
+    default SubtypeResolver orElse(SubtypeResolver next) {
+        return (field, type) -> {
+            List<TypeRef> subtypes = getSubtypes(field, type);
+            return !subtypes.isEmpty() ? subtypes : next.getSubtypes(field, type);
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package fr.bl.pojo2proto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.FieldKind;
+import fr.bl.pojo2proto.schema.FieldLabel;
+
+// Maps one Java value class (exact class, not its subclasses) to a compact proto representation, so
+// discovery stops at it instead of reflecting into its private fields: a scalar (AtomicLong as sint64)
+// or a small message of scalars, either defined once by the schema as a shared message (UUID as
+// Uuid { fixed64 high; fixed64 low; }) or a google.protobuf well-known type (Instant as Timestamp).
+// Proto values are exchanged as the Java type of their proto type: Integer for 32-bit integers, Long
+// for 64-bit ones, Float, Double, Boolean, String, and byte[] for bytes; a message as an Object[] of
+// its field values, indexed like the fields. Adapters are registered in a TypeAdapterRegistry.
+public abstract class TypeAdapter {
+    private static final String WELL_KNOWN_PREFIX = "google.protobuf.";
+    private static final Set<String> SCALAR_TYPES = new HashSet<>(Arrays.asList("double", "float", "int32",
+            "int64", "uint32", "uint64", "sint32", "sint64", "fixed32", "fixed64", "sfixed32", "sfixed64", "bool",
+            "string", "bytes"));
+
+    private final String javaType;
+    private final String protoType;
+    private final List<FieldDefinition> fields;
+
+    // Scalar representation: protoType is a proto scalar type (sint64, string, bytes...)
+    protected TypeAdapter(String javaType, String protoType) {
+        if (!SCALAR_TYPES.contains(protoType)) {
+            throw new RuntimeException("Not a proto scalar type for " + javaType + ": " + protoType);
+        }
+        this.javaType = javaType;
+        this.protoType = protoType;
+        this.fields = null;
+    }
+
+    // Message representation: fields are scalar fields (see field), numbered from 1. A google.protobuf
+    // name refers to the well-known type, whose fields must be listed as it declares them
+    protected TypeAdapter(String javaType, String messageName, List<FieldDefinition> fields) {
+        if (messageName.startsWith(WELL_KNOWN_PREFIX) && ProtoEmitter.getWellKnownImport(messageName) == null) {
+            throw new RuntimeException("Unsupported well-known type for " + javaType + ": " + messageName);
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            FieldDefinition field = fields.get(i);
+            if (field.getKind() != FieldKind.SCALAR || field.getNumber() != i + 1) {
+                throw new RuntimeException("Fields of " + messageName + " must be scalars numbered from 1");
+            }
+        }
+        this.javaType = javaType;
+        this.protoType = messageName;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+    }
+
+    protected static FieldDefinition field(String name, int number, String protoType) {
+        if (!SCALAR_TYPES.contains(protoType)) {
+            throw new RuntimeException("Not a proto scalar type for field " + name + ": " + protoType);
+        }
+        return new FieldDefinition(name, number, FieldLabel.OPTIONAL, FieldKind.SCALAR, protoType, null, null, null);
+    }
+
+    // Java class name, e.g. java.util.UUID or com.acme.Money$Amount
+    public String getJavaType() {
+        return javaType;
+    }
+
+    // The scalar type or the message name fields of the Java type get
+    public String getProtoType() {
+        return protoType;
+    }
+
+    public boolean isMessage() {
+        return fields != null;
+    }
+
+    // Message defined by the generated schema (a shared message), false for scalars and well-known types
+    public boolean isSharedMessage() {
+        return fields != null && !protoType.startsWith(WELL_KNOWN_PREFIX);
+    }
+
+    // Fields of the message representation, null for scalars
+    public List<FieldDefinition> getFields() {
+        return fields;
+    }
+
+    // Proto value of a non-null Java value, see above; message fields left null are not written
+    public abstract Object toProto(Object value);
+
+    // Java value of a proto value; message fields missing from the payload hold their proto3 default
+    public abstract Object fromProto(Object proto);
+
+    // Java source converting expression, of the adapted type, into the value the protoc-generated
+    // setter takes (a ByteString for bytes); protoClass is the generated class of a message
+    // representation. null (the default) leaves fields of this type out of the generated mappers.
+    public String toProtoSource(String expression, String protoClass) {
+        return null;
+    }
+
+    // Java source converting expression, as the protoc-generated getter returns it, back to the adapted type
+    public String fromProtoSource(String expression, String protoClass) {
+        return null;
+    }
+
+    // Field types and names of a message adapter, to compare two registrations
+    static String getSignature(List<FieldDefinition> fields) {
+        StringBuilder signature = new StringBuilder("{");
+        for (FieldDefinition field : fields) {
+            signature.append(field.getType()).append(' ').append(field.getName()).append(';');
+        }
+        return signature.append('}').toString();
+    }
+}
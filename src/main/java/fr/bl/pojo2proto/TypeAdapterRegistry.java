@@ -0,0 +1,85 @@
+package fr.bl.pojo2proto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import fr.bl.pojo2proto.schema.MessageDefinition;
+
+// Type adapters by Java class name, see TypeAdapter. The built-in registry covers the JDK value
+// types DTOs commonly hold (see BuiltInTypeAdapters); register adds or replaces adapters, e.g. for
+// high-volume value types of our own. Registries are read concurrently without locking: fill them
+// before generating (GeneratorOptions.copy copies the registry).
+public final class TypeAdapterRegistry {
+    private final Map<String, TypeAdapter> adapters = new TreeMap<>();
+    // Shared message definitions, by message name
+    private final Map<String, MessageDefinition> sharedMessages = new TreeMap<>();
+
+    // An empty registry: every JDK class is reflected into like a DTO
+    public TypeAdapterRegistry() {
+    }
+
+    public static TypeAdapterRegistry builtIn() {
+        TypeAdapterRegistry registry = new TypeAdapterRegistry();
+        for (TypeAdapter adapter : BuiltInTypeAdapters.all()) {
+            registry.register(adapter);
+        }
+        return registry;
+    }
+
+    public TypeAdapterRegistry register(TypeAdapter adapter) {
+        if (adapter == null) {
+            throw new RuntimeException("Null type adapter provided");
+        }
+        Map<String, TypeAdapter> updated = new TreeMap<>(adapters);
+        updated.put(adapter.getJavaType(), adapter);
+        Map<String, MessageDefinition> messages = getSharedMessages(updated.values());
+        adapters.put(adapter.getJavaType(), adapter);
+        sharedMessages.clear();
+        sharedMessages.putAll(messages);
+        return this;
+    }
+
+    // Adapters of different classes may share a message, as long as they define it the same way
+    private static Map<String, MessageDefinition> getSharedMessages(Collection<TypeAdapter> adapters) {
+        Map<String, MessageDefinition> messages = new TreeMap<>();
+        for (TypeAdapter adapter : adapters) {
+            if (!adapter.isSharedMessage()) {
+                continue;
+            }
+            MessageDefinition registered = messages.get(adapter.getProtoType());
+            if (registered == null) {
+                messages.put(adapter.getProtoType(), new MessageDefinition(null, adapter.getProtoType(),
+                        adapter.getFields(), Collections.<MessageDefinition>emptyList(),
+                        Collections.<String>emptySet(), null));
+            } else if (!TypeAdapter.getSignature(registered.getFields())
+                    .equals(TypeAdapter.getSignature(adapter.getFields()))) {
+                throw new RuntimeException("Shared message " + adapter.getProtoType()
+                        + " is defined with other fields by another adapter");
+            }
+        }
+        return messages;
+    }
+
+    // Adapter of a Java class, null when the class has none
+    public TypeAdapter get(String javaType) {
+        return adapters.get(javaType);
+    }
+
+    public Collection<TypeAdapter> getAdapters() {
+        return Collections.unmodifiableCollection(adapters.values());
+    }
+
+    // Definition of the shared message an adapter maps to, null for other names
+    public MessageDefinition getSharedMessage(String name) {
+        return sharedMessages.get(name);
+    }
+
+    public TypeAdapterRegistry copy() {
+        TypeAdapterRegistry copy = new TypeAdapterRegistry();
+        copy.adapters.putAll(adapters);
+        copy.sharedMessages.putAll(sharedMessages);
+        return copy;
+    }
+}
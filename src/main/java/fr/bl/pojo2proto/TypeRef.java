@@ -0,0 +1,195 @@
+package fr.bl.pojo2proto;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A (possibly generic) Java type as seen by discovery, independent of where it was read from:
+// reflection, class files or sources. Class types use binary names (com.acme.Outer$Inner),
+// primitives their keyword. Reflection-built references also keep the resolved Class.
+public final class TypeRef {
+    private enum Kind { CLASS, PRIMITIVE, ARRAY, WILDCARD, VARIABLE }
+
+    private final Kind kind;
+    private final String name;
+    private final TypeRef component;
+    private final List<TypeRef> arguments;
+    private final Class<?> resolvedClass;
+
+    private TypeRef(Kind kind, String name, TypeRef component, List<TypeRef> arguments, Class<?> resolvedClass) {
+        this.kind = kind;
+        this.name = name;
+        this.component = component;
+        this.arguments = Collections.unmodifiableList(arguments);
+        this.resolvedClass = resolvedClass;
+    }
+
+    public static TypeRef ofClass(String binaryName, List<TypeRef> arguments) {
+        return new TypeRef(Kind.CLASS, binaryName, null, arguments, null);
+    }
+
+    public static TypeRef ofClass(String binaryName) {
+        return ofClass(binaryName, Collections.<TypeRef>emptyList());
+    }
+
+    public static TypeRef ofPrimitive(String keyword) {
+        return new TypeRef(Kind.PRIMITIVE, keyword, null, Collections.<TypeRef>emptyList(), null);
+    }
+
+    public static TypeRef arrayOf(TypeRef component) {
+        return new TypeRef(Kind.ARRAY, null, component, Collections.<TypeRef>emptyList(), null);
+    }
+
+    public static TypeRef wildcard() {
+        return new TypeRef(Kind.WILDCARD, "?", null, Collections.<TypeRef>emptyList(), null);
+    }
+
+    public static TypeRef variable(String name) {
+        return new TypeRef(Kind.VARIABLE, name, null, Collections.<TypeRef>emptyList(), null);
+    }
+
+    public static TypeRef of(Class<?> clazz) {
+        if (clazz.isArray()) {
+            return new TypeRef(Kind.ARRAY, null, of(clazz.getComponentType()), Collections.<TypeRef>emptyList(), clazz);
+        }
+        Kind kind = clazz.isPrimitive() ? Kind.PRIMITIVE : Kind.CLASS;
+        return new TypeRef(kind, clazz.getName(), null, Collections.<TypeRef>emptyList(), clazz);
+    }
+
+    public static TypeRef of(Type type) {
+        if (type instanceof Class) {
+            return of((Class<?>) type);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            List<TypeRef> arguments = new ArrayList<>();
+            for (Type argument : parameterized.getActualTypeArguments()) {
+                arguments.add(of(argument));
+            }
+            return new TypeRef(Kind.CLASS, raw.getName(), null, arguments, raw);
+        }
+        if (type instanceof GenericArrayType) {
+            return arrayOf(of(((GenericArrayType) type).getGenericComponentType()));
+        }
+        if (type instanceof WildcardType) {
+            return wildcard();
+        }
+        if (type instanceof TypeVariable) {
+            return variable(((TypeVariable<?>) type).getName());
+        }
+        throw new RuntimeException("Unsupported type: " + type.getTypeName());
+    }
+
+    public boolean isClass() {
+        return kind == Kind.CLASS;
+    }
+
+    public boolean isPrimitive() {
+        return kind == Kind.PRIMITIVE;
+    }
+
+    public boolean isArray() {
+        return kind == Kind.ARRAY;
+    }
+
+    public boolean isWildcard() {
+        return kind == Kind.WILDCARD;
+    }
+
+    public boolean isVariable() {
+        return kind == Kind.VARIABLE;
+    }
+
+    // Binary class name or primitive keyword, null for arrays
+    public String getName() {
+        return name;
+    }
+
+    // Simple name of a class type (Inner for com.acme.Outer$Inner)
+    public String getSimpleName() {
+        if (kind == Kind.ARRAY) {
+            return component.getSimpleName() + "[]";
+        }
+        String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        return simpleName.substring(simpleName.lastIndexOf('$') + 1);
+    }
+
+    public TypeRef getComponent() {
+        return component;
+    }
+
+    // Innermost component of an array type, the type itself otherwise
+    public TypeRef getElement() {
+        TypeRef element = this;
+        while (element.isArray()) {
+            element = element.component;
+        }
+        return element;
+    }
+
+    public boolean isParameterized() {
+        return !arguments.isEmpty();
+    }
+
+    public List<TypeRef> getArguments() {
+        return arguments;
+    }
+
+    // Same type without generic arguments
+    public TypeRef getRaw() {
+        if (arguments.isEmpty()) {
+            return this;
+        }
+        return new TypeRef(kind, name, component, Collections.<TypeRef>emptyList(), resolvedClass);
+    }
+
+    // The Class behind this reference when it was built from reflection, null otherwise
+    public Class<?> getResolvedClass() {
+        return resolvedClass;
+    }
+
+    // Source-like rendering: java.util.Map<java.lang.String, com.acme.Foo>, int[][]
+    public String getTypeName() {
+        if (kind == Kind.ARRAY) {
+            return component.getTypeName() + "[]";
+        }
+        if (arguments.isEmpty()) {
+            return name;
+        }
+        StringBuilder typeName = new StringBuilder(name).append('<');
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i > 0) {
+                typeName.append(", ");
+            }
+            typeName.append(arguments.get(i).getTypeName());
+        }
+        return typeName.append('>').toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof TypeRef)) {
+            return false;
+        }
+        return getTypeName().equals(((TypeRef) other).getTypeName());
+    }
+
+    @Override
+    public int hashCode() {
+        return getTypeName().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getTypeName();
+    }
+}
@@ -0,0 +1,176 @@
+package fr.bl.pojo2proto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Scanning resolvers (scan.ClassPathScanner, source.SourceTreeScanner) kept between generation
+// requests, keyed by their inputs. Before each reuse the class/source files they were built from are
+// stamped again (names, sizes, modification times: a directory walk, far cheaper than re-parsing)
+// and the resolver is rebuilt when anything was added, removed or modified. A replaced resolver is
+// closed once the requests still using it are done. Thread-safe; requests with different keys never
+// wait for each other.
+final class WarmResolvers {
+    interface Factory<R extends ClassResolver> {
+        R create() throws IOException;
+    }
+
+    // A resolver borrowed for one request; closing the lease gives it back
+    static final class Lease<R extends ClassResolver> implements Closeable {
+        private final Slot slot;
+        private final Entry entry;
+
+        private Lease(Slot slot, Entry entry) {
+            this.slot = slot;
+            this.entry = entry;
+        }
+
+        @SuppressWarnings("unchecked")
+        R get() {
+            return (R) entry.resolver;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (slot) {
+                entry.users--;
+                if (entry.retired && entry.users == 0) {
+                    entry.close();
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        final ClassResolver resolver;
+        final long stamp;
+        int users;
+        boolean retired;
+
+        Entry(ClassResolver resolver, long stamp) {
+            this.resolver = resolver;
+            this.stamp = stamp;
+        }
+
+        void close() throws IOException {
+            if (resolver instanceof Closeable) {
+                ((Closeable) resolver).close();
+            }
+        }
+    }
+
+    // One per key; its lock guards the current entry and the user counts of every entry it created
+    private static final class Slot {
+        Entry current;
+    }
+
+    private final boolean warm;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder built = new LongAdder();
+
+    private WarmResolvers(boolean warm) {
+        this.warm = warm;
+    }
+
+    // Builds a new resolver for every lease and closes it when the lease is closed (one-shot runs)
+    static WarmResolvers cold() {
+        return new WarmResolvers(false);
+    }
+
+    static WarmResolvers warm() {
+        return new WarmResolvers(true);
+    }
+
+    // key: identifies the resolver inputs; roots: directories and files it reads, stamped on files
+    // ending with extension (plain files are always stamped)
+    <R extends ClassResolver> Lease<R> get(String key, List<Path> roots, String extension, Factory<R> factory)
+            throws IOException {
+        Slot slot = warm ? slots.computeIfAbsent(key, k -> new Slot()) : new Slot();
+        synchronized (slot) {
+            long stamp = warm ? stamp(roots, extension) : 0;
+            Entry entry = slot.current;
+            if (entry != null && entry.stamp == stamp) {
+                reused.increment();
+            } else {
+                if (entry != null) {
+                    entry.retired = true;
+                    if (entry.users == 0) {
+                        entry.close();
+                    }
+                }
+                entry = new Entry(factory.create(), stamp);
+                entry.retired = !warm;
+                slot.current = warm ? entry : null;
+                built.increment();
+            }
+            entry.users++;
+            return new Lease<>(slot, entry);
+        }
+    }
+
+    long getReused() {
+        return reused.sum();
+    }
+
+    long getBuilt() {
+        return built.sum();
+    }
+
+    // Closes the idle resolvers; the ones still leased are closed when given back
+    void clear() throws IOException {
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                Entry entry = slot.current;
+                if (entry != null) {
+                    entry.retired = true;
+                    if (entry.users == 0) {
+                        entry.close();
+                    }
+                    slot.current = null;
+                }
+            }
+        }
+    }
+
+    // Order-independent fingerprint of the matching files under the roots
+    static long stamp(List<Path> roots, String extension) throws IOException {
+        long[] stamp = {0, 0};
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (file.getFileName().toString().endsWith(extension)) {
+                            stamp[0] += mix(file, attributes);
+                            stamp[1]++;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else if (Files.isRegularFile(root)) {
+                stamp[0] += mix(root, Files.readAttributes(root, BasicFileAttributes.class));
+                stamp[1]++;
+            }
+        }
+        return stamp[0] * 31 + stamp[1];
+    }
+
+    private static long mix(Path file, BasicFileAttributes attributes) {
+        long hash = file.toString().hashCode();
+        hash = hash * 31 + attributes.size();
+        hash = hash * 31 + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        // Spreads the bits so that the sum of several files does not cancel out
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+}
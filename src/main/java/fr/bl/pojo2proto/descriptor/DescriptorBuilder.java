@@ -0,0 +1,323 @@
+package fr.bl.pojo2proto.descriptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.protobuf.AnyProto;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.DescriptorProtos.FileOptions;
+import com.google.protobuf.DescriptorProtos.MessageOptions;
+import com.google.protobuf.DescriptorProtos.OneofDescriptorProto;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DurationProto;
+import com.google.protobuf.TimestampProto;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.PackageProtoWriter;
+import fr.bl.pojo2proto.ProtoEmitter;
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.FieldKind;
+import fr.bl.pojo2proto.schema.FieldLabel;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Builds the descriptors protoc would produce from the generated .proto text, straight from a
+// SchemaModel: same file names, packages, imports, options, field numbers and types, proto3 optional fields
+// with their synthetic oneofs, the oneof wrappers of polymorphic fields and map fields with their
+// entry messages. The custom
+// (protogen.enable) option and the unused wrappers.proto import of the text header are left out,
+// they mean nothing to descriptor users. Sets are self-contained: the google/protobuf files of the
+// Any fallbacks and of the Timestamp and Duration type adapters are included, ahead of the files
+// importing them.
+public class DescriptorBuilder {
+    private static final String SYNTAX = "proto3";
+    private static final String ANY_TYPE = "google.protobuf.Any";
+    private static final String MAP_ENTRY_SUFFIX = "Entry";
+    private static final Map<String, FieldDescriptorProto.Type> SCALAR_TYPES = getScalarTypes();
+
+    private final SchemaModel model;
+
+    public DescriptorBuilder(SchemaModel model) {
+        this.model = model;
+    }
+
+    private static Map<String, FieldDescriptorProto.Type> getScalarTypes() {
+        Map<String, FieldDescriptorProto.Type> types = new HashMap<>();
+        types.put("double", FieldDescriptorProto.Type.TYPE_DOUBLE);
+        types.put("float", FieldDescriptorProto.Type.TYPE_FLOAT);
+        types.put("int32", FieldDescriptorProto.Type.TYPE_INT32);
+        types.put("int64", FieldDescriptorProto.Type.TYPE_INT64);
+        types.put("uint32", FieldDescriptorProto.Type.TYPE_UINT32);
+        types.put("uint64", FieldDescriptorProto.Type.TYPE_UINT64);
+        types.put("sint32", FieldDescriptorProto.Type.TYPE_SINT32);
+        types.put("sint64", FieldDescriptorProto.Type.TYPE_SINT64);
+        types.put("fixed32", FieldDescriptorProto.Type.TYPE_FIXED32);
+        types.put("fixed64", FieldDescriptorProto.Type.TYPE_FIXED64);
+        types.put("sfixed32", FieldDescriptorProto.Type.TYPE_SFIXED32);
+        types.put("sfixed64", FieldDescriptorProto.Type.TYPE_SFIXED64);
+        types.put("bool", FieldDescriptorProto.Type.TYPE_BOOL);
+        types.put("string", FieldDescriptorProto.Type.TYPE_STRING);
+        types.put("bytes", FieldDescriptorProto.Type.TYPE_BYTES);
+        return types;
+    }
+
+    // The whole model as one file, like JavaToProto.writeTo renders it
+    public FileDescriptorSet buildSet(String fileName, String javaPackage) {
+        Set<String> imports = ProtoEmitter.wellKnownImports(model.getMessages());
+        List<MessageDefinition> messages = new ArrayList<>(model.getMessages());
+        messages.addAll(model.getSharedMessages());
+        FileDescriptorSet.Builder set = FileDescriptorSet.newBuilder();
+        addWellKnownFiles(imports, set);
+        set.addFile(buildFile(fileName, javaPackage, model.getEnums(), messages, imports));
+        return set.build();
+    }
+
+    // One file per Java package, plus the shared file, laid out as PackageProtoWriter writes them
+    public FileDescriptorSet buildPerPackageSet(GeneratorOptions options) {
+        List<PackageProtoWriter.PackageFile> files = new PackageProtoWriter(model, options).partition();
+        FileDescriptorSet.Builder set = FileDescriptorSet.newBuilder();
+        for (PackageProtoWriter.PackageFile file : files) {
+            addWellKnownFiles(file.getImports(), set);
+        }
+        for (PackageProtoWriter.PackageFile file : files) {
+            set.addFile(buildFile(file.getFileName(), file.getProtoPackage(), file.getJavaPackage(), file.getEnums(),
+                    file.getMessages(), file.getImports()));
+        }
+        return set.build();
+    }
+
+    private static void addWellKnownFiles(Collection<String> imports, FileDescriptorSet.Builder set) {
+        for (FileDescriptor wellKnown : new FileDescriptor[] {AnyProto.getDescriptor(),
+                TimestampProto.getDescriptor(), DurationProto.getDescriptor()}) {
+            if (imports.contains(wellKnown.getName()) && !contains(set, wellKnown.getName())) {
+                set.addFile(wellKnown.toProto());
+            }
+        }
+    }
+
+    private static boolean contains(FileDescriptorSet.Builder set, String fileName) {
+        for (FileDescriptorProto file : set.getFileList()) {
+            if (file.getName().equals(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public FileDescriptorProto buildFile(String fileName, String javaPackage, List<EnumDefinition> enums,
+                                         List<MessageDefinition> messages, Collection<String> imports) {
+        return buildFile(fileName, "", javaPackage, enums, messages, imports);
+    }
+
+    // Field types starting with a dot are fully qualified (references to other files), the other ones
+    // are declared in the file, under protoPackage (empty for the default package)
+    public FileDescriptorProto buildFile(String fileName, String protoPackage, String javaPackage,
+                                         List<EnumDefinition> enums, List<MessageDefinition> messages,
+                                         Collection<String> imports) {
+        FileDescriptorProto.Builder file = FileDescriptorProto.newBuilder()
+                .setName(fileName)
+                .setSyntax(SYNTAX)
+                .addAllDependency(imports)
+                .setOptions(FileOptions.newBuilder()
+                        .setJavaPackage(javaPackage)
+                        .setOptimizeFor(FileOptions.OptimizeMode.SPEED)
+                        .setJavaMultipleFiles(true));
+        String scope = ".";
+        if (!protoPackage.isEmpty()) {
+            file.setPackage(protoPackage);
+            scope = "." + protoPackage + ".";
+        }
+        for (EnumDefinition enumDefinition : enums) {
+            file.addEnumType(buildEnum(enumDefinition));
+        }
+        for (MessageDefinition message : messages) {
+            Map<String, String> nestedTypes = new HashMap<>();
+            collectNestedTypes(message.getNestedMessages(), scope + message.getName(), nestedTypes);
+            file.addMessageType(buildMessage(message, scope + message.getName(), scope, nestedTypes));
+        }
+        return file.build();
+    }
+
+    private static EnumDescriptorProto buildEnum(EnumDefinition enumDefinition) {
+        EnumDescriptorProto.Builder builder = EnumDescriptorProto.newBuilder().setName(enumDefinition.getName());
+        for (int i = 0; i < enumDefinition.getConstants().size(); i++) {
+            builder.addValue(EnumValueDescriptorProto.newBuilder()
+                    .setName(enumDefinition.getConstants().get(i))
+                    .setNumber(i));
+        }
+        return builder.build();
+    }
+
+    // Full names of the row messages nested (at any depth) in a top-level message, by simple name
+    private static void collectNestedTypes(List<MessageDefinition> nestedMessages, String outerName,
+                                           Map<String, String> nestedTypes) {
+        for (MessageDefinition nested : nestedMessages) {
+            String fullName = outerName + "." + nested.getName();
+            nestedTypes.put(nested.getName(), fullName);
+            collectNestedTypes(nested.getNestedMessages(), fullName, nestedTypes);
+        }
+    }
+
+    private DescriptorProto buildMessage(MessageDefinition message, String fullName, String scope,
+                                         Map<String, String> nestedTypes) {
+        DescriptorProto.Builder builder = DescriptorProto.newBuilder().setName(message.getName());
+        for (Map.Entry<String, Integer> reserved : message.getReserved().entrySet()) {
+            builder.addReservedRange(DescriptorProto.ReservedRange.newBuilder()
+                    .setStart(reserved.getValue())
+                    .setEnd(reserved.getValue() + 1));
+            builder.addReservedName(reserved.getKey());
+        }
+
+        // Synthetic oneofs of the optional fields come after the fields, as protoc orders them
+        List<String> syntheticOneofs = new ArrayList<>();
+        List<DescriptorProto> mapEntries = new ArrayList<>();
+        for (FieldDefinition field : message.getFields()) {
+            FieldDescriptorProto.Builder descriptor = FieldDescriptorProto.newBuilder()
+                    .setName(field.getName())
+                    .setNumber(field.getNumber());
+            if (field.getLabel() == FieldLabel.MAP) {
+                String entryName = getMapEntryName(field.getName());
+                mapEntries.add(buildMapEntry(entryName, field, scope, nestedTypes));
+                descriptor.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED)
+                        .setType(FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName(fullName + "." + entryName);
+            } else {
+                setType(descriptor, field.getKind(), field.getType(), scope, nestedTypes);
+                if (field.getLabel() == FieldLabel.REPEATED) {
+                    descriptor.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED);
+                } else if (message.getOneof() != null) {
+                    // Fields of a oneof wrapper all belong to its one declared oneof
+                    descriptor.setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL).setOneofIndex(0);
+                } else {
+                    descriptor.setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL)
+                            .setProto3Optional(true)
+                            .setOneofIndex(syntheticOneofs.size());
+                    syntheticOneofs.add("_" + field.getName());
+                }
+            }
+            builder.addField(descriptor);
+        }
+        if (message.getOneof() != null) {
+            builder.addOneofDecl(OneofDescriptorProto.newBuilder().setName(message.getOneof()));
+        }
+        for (String oneof : syntheticOneofs) {
+            builder.addOneofDecl(OneofDescriptorProto.newBuilder().setName(oneof));
+        }
+        // Map entries first: protoc declares them where the map field is
+        builder.addAllNestedType(mapEntries);
+        for (MessageDefinition nested : message.getNestedMessages()) {
+            builder.addNestedType(buildMessage(nested, fullName + "." + nested.getName(), scope, nestedTypes));
+        }
+        return builder.build();
+    }
+
+    // map<K, V> name = n; is sugar for repeated NameEntry name = n; with a map_entry message
+    private DescriptorProto buildMapEntry(String entryName, FieldDefinition field, String scope,
+                                          Map<String, String> nestedTypes) {
+        FieldDescriptorProto.Builder key = FieldDescriptorProto.newBuilder()
+                .setName("key")
+                .setNumber(1)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+        setType(key, SCALAR_TYPES.containsKey(field.getKeyType()) ? FieldKind.SCALAR : FieldKind.MESSAGE,
+                field.getKeyType(), scope, nestedTypes);
+        FieldDescriptorProto.Builder value = FieldDescriptorProto.newBuilder()
+                .setName("value")
+                .setNumber(2)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+        setType(value, field.getKind(), field.getType(), scope, nestedTypes);
+        return DescriptorProto.newBuilder()
+                .setName(entryName)
+                .addField(key)
+                .addField(value)
+                .setOptions(MessageOptions.newBuilder().setMapEntry(true))
+                .build();
+    }
+
+    // scope: "." followed by the package of the file and a dot, if any
+    private void setType(FieldDescriptorProto.Builder descriptor, FieldKind kind, String protoType, String scope,
+                         Map<String, String> nestedTypes) {
+        if (kind == FieldKind.SCALAR) {
+            descriptor.setType(SCALAR_TYPES.get(protoType));
+        } else if (kind == FieldKind.ENUM) {
+            descriptor.setType(FieldDescriptorProto.Type.TYPE_ENUM).setTypeName(qualify(protoType, scope));
+        } else if (kind == FieldKind.ANY || ANY_TYPE.equals(protoType)) {
+            descriptor.setType(FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName("." + ANY_TYPE);
+        } else {
+            // Row messages are nested in the top-level message, other messages are top-level
+            descriptor.setType(FieldDescriptorProto.Type.TYPE_MESSAGE)
+                    .setTypeName(nestedTypes.getOrDefault(protoType, qualify(protoType, scope)));
+        }
+    }
+
+    private static String qualify(String protoType, String scope) {
+        return protoType.startsWith(".") ? protoType : scope + protoType;
+    }
+
+    // protoc naming of map entry messages: by_name / byName -> ByNameEntry
+    static String getMapEntryName(String fieldName) {
+        StringBuilder name = new StringBuilder(fieldName.length() + MAP_ENTRY_SUFFIX.length());
+        boolean capitalizeNext = true;
+        for (char c : fieldName.toCharArray()) {
+            if (c == '_') {
+                capitalizeNext = true;
+            } else if (capitalizeNext) {
+                name.append(c >= 'a' && c <= 'z' ? (char) (c - 'a' + 'A') : c);
+                capitalizeNext = false;
+            } else {
+                name.append(c);
+            }
+        }
+        return name.append(MAP_ENTRY_SUFFIX).toString();
+    }
+
+    // Links the files of a self-contained set (dependencies in any order) into the FileDescriptors
+    // that DynamicMessage and gRPC reflection work with, in set order
+    public static List<FileDescriptor> link(FileDescriptorSet set) {
+        Map<String, FileDescriptorProto> protos = new LinkedHashMap<>();
+        for (FileDescriptorProto file : set.getFileList()) {
+            protos.put(file.getName(), file);
+        }
+        Map<String, FileDescriptor> linked = new HashMap<>();
+        List<FileDescriptor> files = new ArrayList<>();
+        for (String name : protos.keySet()) {
+            files.add(link(name, protos, linked));
+        }
+        return files;
+    }
+
+    private static FileDescriptor link(String name, Map<String, FileDescriptorProto> protos,
+                                       Map<String, FileDescriptor> linked) {
+        FileDescriptor file = linked.get(name);
+        if (file != null) {
+            return file;
+        }
+        FileDescriptorProto proto = protos.get(name);
+        if (proto == null) {
+            throw new RuntimeException("Missing file in descriptor set: " + name);
+        }
+        // Package files never import each other in cycles, see PackageProtoWriter.partition
+        FileDescriptor[] dependencies = new FileDescriptor[proto.getDependencyCount()];
+        for (int i = 0; i < dependencies.length; i++) {
+            dependencies[i] = link(proto.getDependency(i), protos, linked);
+        }
+        try {
+            file = FileDescriptor.buildFrom(proto, dependencies);
+        } catch (DescriptorValidationException e) {
+            throw new RuntimeException("Invalid descriptor " + name + ": " + e.getMessage(), e);
+        }
+        linked.put(name, file);
+        return file;
+    }
+}
@@ -0,0 +1,990 @@
+package fr.bl.pojo2proto.mapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import fr.bl.pojo2proto.BinaryTypes;
+import fr.bl.pojo2proto.ClassMetadata;
+import fr.bl.pojo2proto.ClassResolver;
+import fr.bl.pojo2proto.CollectionTypes;
+import fr.bl.pojo2proto.FieldMetadata;
+import fr.bl.pojo2proto.TypeAdapter;
+import fr.bl.pojo2proto.TypeAdapterRegistry;
+import fr.bl.pojo2proto.TypeRef;
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.FieldKind;
+import fr.bl.pojo2proto.schema.FieldLabel;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Renders one Java mapper class per enum and message of a SchemaModel, e.g. com.acme.OrderProtoMapper
+// with static toProto(Order) and fromProto(GrpcOrder). Mappers are plain code against the classes protoc
+// generates from the same schema: public fields are read and written directly, other fields through
+// their JavaBeans getters/setters, so the JIT can inline the whole copy. Values of classes with a
+// TypeAdapter are converted by the source the adapter gives, Optional fields hold the field value,
+// polymorphic values go through their oneof wrapper. Fields the schema maps to google.protobuf.Any,
+// fields of adapted classes without source, wildcard polymorphic fields, non-public fields without
+// getter, and null collection elements are not copied; nor, on the way back, final fields, non-public
+// fields without setter and values of classes without a no-argument constructor. The fromProto of such
+// a class throws UnsupportedOperationException.
+public class MapperGenerator {
+    private static final String MAPPER_SUFFIX = "ProtoMapper";
+    private static final String BYTE_STRING = "com.google.protobuf.ByteString";
+    private static final String OPTIONAL = "java.util.Optional";
+    private static final String WELL_KNOWN_PREFIX = "google.protobuf.";
+
+    // Boxed Java types of the proto scalar types, as exposed by the generated map accessors
+    private static final Map<String, String> PROTO_JAVA_TYPES = getProtoJavaTypes();
+
+    private final SchemaModel model;
+    private final ClassResolver resolver;
+    private final Function<String, String> protoPackages;
+    private final TypeAdapterRegistry adapters;
+
+    // protoPackages gives, for a Java class name of the model, the java_package of the file its
+    // enum or message is generated in
+    public MapperGenerator(SchemaModel model, ClassResolver resolver, Function<String, String> protoPackages) {
+        this(model, resolver, protoPackages, TypeAdapterRegistry.builtIn());
+    }
+
+    // adapters: the registry of the GeneratorOptions the model was discovered with
+    public MapperGenerator(SchemaModel model, ClassResolver resolver, Function<String, String> protoPackages,
+                           TypeAdapterRegistry adapters) {
+        this.model = model;
+        this.resolver = resolver;
+        this.protoPackages = protoPackages;
+        this.adapters = adapters;
+    }
+
+    private static Map<String, String> getProtoJavaTypes() {
+        Map<String, String> types = new HashMap<>();
+        for (String intType : new String[] {"int32", "uint32", "sint32", "fixed32", "sfixed32"}) {
+            types.put(intType, "java.lang.Integer");
+        }
+        for (String longType : new String[] {"int64", "uint64", "sint64", "fixed64", "sfixed64"}) {
+            types.put(longType, "java.lang.Long");
+        }
+        types.put("double", "java.lang.Double");
+        types.put("float", "java.lang.Float");
+        types.put("bool", "java.lang.Boolean");
+        types.put("string", "java.lang.String");
+        types.put("bytes", BYTE_STRING);
+        return types;
+    }
+
+    // com.acme.Order -> com.acme.OrderProtoMapper, com.acme.Order$Line -> com.acme.Order_LineProtoMapper
+    public static String getMapperClassName(String javaName) {
+        int lastDot = javaName.lastIndexOf('.');
+        return javaName.substring(0, lastDot + 1) + javaName.substring(lastDot + 1).replace('$', '_') + MAPPER_SUFFIX;
+    }
+
+    // Java classes that get a mapper: every enum and message of the model, in model order, except
+    // JDK classes (no code can be added to their packages)
+    public List<String> getMappedClasses() {
+        List<String> mapped = new ArrayList<>();
+        for (EnumDefinition enumDefinition : model.getEnums()) {
+            if (isMappable(enumDefinition.getJavaName())) {
+                mapped.add(enumDefinition.getJavaName());
+            }
+        }
+        for (MessageDefinition message : model.getMessages()) {
+            if (isMappable(message.getJavaName())) {
+                mapped.add(message.getJavaName());
+            }
+        }
+        return mapped;
+    }
+
+    private static boolean isMappable(String javaName) {
+        return !javaName.startsWith("java.") && !javaName.startsWith("javax.");
+    }
+
+    // Writes the source of the mapper of one class of the model
+    public void writeMapper(String javaName, Writer writer) throws IOException {
+        EnumDefinition enumDefinition = model.getEnum(javaName);
+        if (enumDefinition != null) {
+            new SourceWriter(writer).enumMapper(enumDefinition);
+            return;
+        }
+        MessageDefinition message = model.getMessage(javaName);
+        if (message == null) {
+            throw new RuntimeException("No enum or message generated for " + javaName);
+        }
+        new SourceWriter(writer).messageMapper(message, resolver.resolve(TypeRef.ofClass(javaName)));
+    }
+
+    private String protoClassName(String javaName, String protoName) {
+        String protoPackage = protoPackages.apply(javaName);
+        return protoPackage == null || protoPackage.isEmpty() ? protoName : protoPackage + "." + protoName;
+    }
+
+    private TypeAdapter adapterOf(TypeRef javaType) {
+        return javaType.isClass() ? adapters.get(javaType.getName()) : null;
+    }
+
+    // Class protoc generates for the message of an adapter: shared messages are looked up by
+    // name, like FlatArray_ messages; null for scalar adapters
+    private String adaptedProtoClass(TypeAdapter adapter) {
+        if (!adapter.isMessage()) {
+            return null;
+        }
+        if (!adapter.isSharedMessage()) {
+            return "com.google.protobuf." + adapter.getProtoType().substring(WELL_KNOWN_PREFIX.length());
+        }
+        return protoClassName(adapter.getProtoType(), adapter.getProtoType());
+    }
+
+    // Source name of a Java type: com.acme.Order.Line, java.util.List<com.acme.Item>, int[][]
+    private static String sourceName(TypeRef type) {
+        if (type.isArray()) {
+            return sourceName(type.getComponent()) + "[]";
+        }
+        if (type.isWildcard() || type.isVariable()) {
+            return "?";
+        }
+        if (!type.isClass() || !type.isParameterized()) {
+            return type.getName().replace('$', '.');
+        }
+        StringBuilder name = new StringBuilder(type.getName().replace('$', '.')).append('<');
+        for (int i = 0; i < type.getArguments().size(); i++) {
+            if (i > 0) {
+                name.append(", ");
+            }
+            name.append(sourceName(type.getArguments().get(i)));
+        }
+        return name.append('>').toString();
+    }
+
+    // new int[n][] for int[][]
+    private static String newArray(TypeRef arrayType, String length) {
+        StringBuilder dimensions = new StringBuilder();
+        TypeRef element = arrayType.getComponent();
+        while (element.isArray()) {
+            dimensions.append("[]");
+            element = element.getComponent();
+        }
+        return "new " + sourceName(element.getRaw()) + "[" + length + "]" + dimensions;
+    }
+
+    // protoc accessor naming: my_field / myField -> MyField, value0x -> Value0X
+    static String toCamelCase(String fieldName) {
+        StringBuilder camelCase = new StringBuilder(fieldName.length());
+        boolean capitalizeNext = true;
+        for (char c : fieldName.toCharArray()) {
+            if (c == '_') {
+                capitalizeNext = true;
+            } else if (Character.isDigit(c)) {
+                camelCase.append(c);
+                capitalizeNext = true;
+            } else {
+                camelCase.append(capitalizeNext ? Character.toUpperCase(c) : c);
+                capitalizeNext = false;
+            }
+        }
+        return camelCase.toString();
+    }
+
+    // JavaBeans property suffix: name -> Name, but xValue stays xValue
+    private static String toPropertyName(String fieldName) {
+        if (fieldName.length() > 1 && Character.isUpperCase(fieldName.charAt(1))) {
+            return fieldName;
+        }
+        return Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+    }
+
+    // Writes one mapper class; holds the indentation state
+    private final class SourceWriter {
+        private final Writer out;
+        private int depth;
+        private String protoClass;
+        private final Map<String, MessageDefinition> rowMessages = new LinkedHashMap<>();
+        private final Map<String, String> rowClasses = new HashMap<>();
+        // Flattened array fields (see SchemaModel.getSharedMessages) with their Java array type
+        private final Map<FieldDefinition, TypeRef> flatArrays = new LinkedHashMap<>();
+        // Oneof wrappers of the polymorphic fields (see SubtypeResolver) with the Java type of their values
+        private final Map<String, String> oneofs = new LinkedHashMap<>();
+        // Names of the private helpers (toX/fromX of rows and oneofs, toFlatX/fromFlatX) the mapped
+        // fields call; only these are written
+        private final Set<String> helpers = new LinkedHashSet<>();
+        // Accessors and constructors of the mapped class
+        private ClassMetadata metadata;
+
+        SourceWriter(Writer out) {
+            this.out = out;
+        }
+
+        private void line(String text) throws IOException {
+            for (int i = 0; i < depth && !text.isEmpty(); i++) {
+                out.write("    ");
+            }
+            out.write(text);
+            out.write("\n");
+        }
+
+        private void open(String text) throws IOException {
+            line(text + " {");
+            depth++;
+        }
+
+        private void close() throws IOException {
+            depth--;
+            line("}");
+        }
+
+        private void classHeader(String javaName) throws IOException {
+            String mapperName = getMapperClassName(javaName);
+            int lastDot = mapperName.lastIndexOf('.');
+            if (lastDot > 0) {
+                line("package " + mapperName.substring(0, lastDot) + ";");
+                line("");
+            }
+            line("// Generated by pojo2proto from " + javaName.replace('$', '.') + ", do not edit");
+            open("public final class " + mapperName.substring(lastDot + 1));
+            open("private " + mapperName.substring(lastDot + 1) + "()");
+            close();
+        }
+
+        void enumMapper(EnumDefinition enumDefinition) throws IOException {
+            String javaType = enumDefinition.getJavaName().replace('$', '.');
+            String protoType = protoClassName(enumDefinition.getJavaName(), enumDefinition.getName());
+            classHeader(enumDefinition.getJavaName());
+
+            line("");
+            open("public static " + protoType + " toProto(" + javaType + " value)");
+            open("if (value == null)");
+            line("return null;");
+            close();
+            open("switch (value)");
+            for (String constant : enumDefinition.getConstants()) {
+                line("case " + constant + ": return " + protoType + "." + constant + ";");
+            }
+            line("default: throw new IllegalArgumentException(\"Unknown constant \" + value);");
+            close();
+            close();
+
+            line("");
+            line("// Unrecognized numbers (constants removed from the Java enum) map to null");
+            open("public static " + javaType + " fromProto(" + protoType + " proto)");
+            open("if (proto == null)");
+            line("return null;");
+            close();
+            open("switch (proto)");
+            for (String constant : enumDefinition.getConstants()) {
+                line("case " + constant + ": return " + javaType + "." + constant + ";");
+            }
+            line("default: return null;");
+            close();
+            close();
+            close();
+        }
+
+        void messageMapper(MessageDefinition message, ClassMetadata metadata) throws IOException {
+            String javaType = message.getJavaName().replace('$', '.');
+            protoClass = protoClassName(message.getJavaName(), message.getName());
+            this.metadata = metadata;
+            Map<String, FieldMetadata> javaFields = new HashMap<>();
+            for (FieldMetadata field : metadata.getFields()) {
+                javaFields.putIfAbsent(field.getName(), field);
+            }
+            collectRows(message.getNestedMessages(), protoClass);
+            classHeader(message.getJavaName());
+
+            line("");
+            open("public static " + protoClass + " toProto(" + javaType + " value)");
+            open("if (value == null)");
+            line("return null;");
+            close();
+            line(protoClass + ".Builder builder = " + protoClass + ".newBuilder();");
+            for (FieldDefinition field : message.getFields()) {
+                FieldMetadata javaField = javaFields.get(field.getName());
+                if (isMapped(field, javaField) && isReadable(javaField)) {
+                    toProtoField(field, javaField);
+                } else {
+                    line("// " + field.getName() + ": not mapped");
+                }
+            }
+            line("return builder.build();");
+            close();
+
+            line("");
+            open("public static " + javaType + " fromProto(" + protoClass + " proto)");
+            open("if (proto == null)");
+            line("return null;");
+            close();
+            if (metadata.hasNoArgConstructor()) {
+                line(javaType + " value = new " + javaType + "();");
+                for (FieldDefinition field : message.getFields()) {
+                    FieldMetadata javaField = javaFields.get(field.getName());
+                    if (isMapped(field, javaField) && isWritable(javaField) && isCreatable(field, javaField)) {
+                        fromProtoField(field, javaField);
+                    } else {
+                        line("// " + field.getName() + ": not mapped");
+                    }
+                }
+                line("return value;");
+            } else {
+                line("throw new UnsupportedOperationException(\"" + javaType
+                        + " has no accessible no-argument constructor\");");
+            }
+            close();
+
+            helperMappers();
+            close();
+        }
+
+        // Helpers are only known to be used once the code calling them is written, and a row helper
+        // calls those of the rows it holds: passes are repeated until every used helper is written
+        private void helperMappers() throws IOException {
+            Set<String> written = new HashSet<>();
+            while (written.size() < helpers.size()) {
+                int before = written.size();
+                for (MessageDefinition row : rowMessages.values()) {
+                    if (row.getOneof() != null) {
+                        continue;
+                    }
+                    if (helpers.contains("to" + row.getName()) && written.add("to" + row.getName())) {
+                        rowToProto(row);
+                    }
+                    if (helpers.contains("from" + row.getName()) && written.add("from" + row.getName())) {
+                        rowFromProto(row);
+                    }
+                }
+                for (Map.Entry<String, String> oneof : oneofs.entrySet()) {
+                    MessageDefinition wrapper = rowMessages.get(oneof.getKey());
+                    if (helpers.contains("to" + oneof.getKey()) && written.add("to" + oneof.getKey())) {
+                        oneofToProto(wrapper, oneof.getValue());
+                    }
+                    if (helpers.contains("from" + oneof.getKey()) && written.add("from" + oneof.getKey())) {
+                        oneofFromProto(wrapper, oneof.getValue());
+                    }
+                }
+                for (Map.Entry<FieldDefinition, TypeRef> flatArray : flatArrays.entrySet()) {
+                    String accessor = toCamelCase(flatArray.getKey().getName());
+                    if (helpers.contains("toFlat" + accessor) && written.add("toFlat" + accessor)) {
+                        flatArrayToProto(flatArray.getKey(), flatArray.getValue());
+                    }
+                    if (helpers.contains("fromFlat" + accessor) && written.add("fromFlat" + accessor)) {
+                        flatArrayFromProto(flatArray.getKey(), flatArray.getValue());
+                    }
+                }
+                if (written.size() == before) {
+                    throw new RuntimeException("No helper written for " + helpers + " in " + protoClass);
+                }
+            }
+        }
+
+        // Records a call to a private helper of the mapper; returns its name
+        private String use(String helper) {
+            helpers.add(helper);
+            return helper;
+        }
+
+        // Array row messages and oneof wrappers by name, with the Java class protoc generates for them
+        private void collectRows(List<MessageDefinition> nestedMessages, String outerClass) {
+            for (MessageDefinition nested : nestedMessages) {
+                rowMessages.put(nested.getName(), nested);
+                rowClasses.put(nested.getName(), outerClass + "." + nested.getName());
+                collectRows(nested.getNestedMessages(), outerClass + "." + nested.getName());
+            }
+        }
+
+        private boolean isMapped(FieldDefinition field, FieldMetadata javaField) {
+            if (javaField == null || field.getKind() == FieldKind.ANY) {
+                return false;
+            }
+            if (field.getLabel() == FieldLabel.MAP && !hasSource(adapterOf(javaField.getTypeArgument(0)))) {
+                return false;
+            }
+            MessageDefinition oneof = oneofOf(field);
+            if (oneof != null) {
+                // The generated code could not add to a List<?> or put into a Map<K, ?>
+                if (valueType(field, javaField).isWildcard()) {
+                    return false;
+                }
+                for (FieldDefinition variant : oneof.getFields()) {
+                    if (!isMappable(variant.getReferencedType()) || (variant.getKind() == FieldKind.ENUM
+                            ? model.getEnum(variant.getReferencedType()) == null
+                            : model.getMessage(variant.getReferencedType()) == null)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            TypeAdapter adapter = adapterOf(valueType(field, javaField));
+            if (adapter != null) {
+                return hasSource(adapter);
+            }
+            if (field.getReferencedType() != null && !isMappable(field.getReferencedType())) {
+                return false;
+            }
+            if (field.getKind() == FieldKind.ENUM) {
+                return model.getEnum(field.getReferencedType()) != null;
+            }
+            if (field.getKind() == FieldKind.MESSAGE && field.getReferencedType() != null) {
+                // References to classes without a message (interfaces, abstract classes) cannot be copied
+                return model.getMessage(field.getReferencedType()) != null;
+            }
+            return true;
+        }
+
+        // Oneof wrapper the values of a polymorphic field are held in, null for other fields
+        private MessageDefinition oneofOf(FieldDefinition field) {
+            MessageDefinition nested = field.getKind() == FieldKind.MESSAGE ? rowMessages.get(field.getType()) : null;
+            return nested != null && nested.getOneof() != null ? nested : null;
+        }
+
+        private boolean hasSource(TypeAdapter adapter) {
+            return adapter == null || adapter.toProtoSource("value", adaptedProtoClass(adapter)) != null;
+        }
+
+        // Java type of the values of a field: its type, or its elements, map values, innermost array
+        // elements or Optional value
+        private TypeRef valueType(FieldDefinition field, FieldMetadata javaField) {
+            TypeRef type = javaField.getType();
+            if (field.getLabel() == FieldLabel.MAP) {
+                return javaField.getTypeArgument(1);
+            }
+            if (type.isArray() && field.getLabel() == FieldLabel.REPEATED) {
+                type = type.getComponent();
+                while (isRow(type)) {
+                    type = type.getComponent();
+                }
+                return type;
+            }
+            if (field.getLabel() == FieldLabel.REPEATED || isOptional(type)) {
+                return javaField.getTypeArgument(0);
+            }
+            return type;
+        }
+
+        private boolean isOptional(TypeRef type) {
+            return type.isClass() && type.getName().equals(OPTIONAL);
+        }
+
+        // Rectangular primitive array flattened into a shared FlatArray_ message
+        private boolean isFlatArray(FieldDefinition field, TypeRef type) {
+            return field.getLabel() == FieldLabel.OPTIONAL && type.isArray()
+                    && model.getSharedMessage(field.getType()) != null;
+        }
+
+        private boolean isReadable(FieldMetadata javaField) {
+            return Modifier.isPublic(javaField.getModifiers()) || getterName(javaField) != null;
+        }
+
+        private boolean isWritable(FieldMetadata javaField) {
+            return !Modifier.isFinal(javaField.getModifiers()) && (Modifier.isPublic(javaField.getModifiers())
+                    || metadata.hasMethod("set" + toPropertyName(javaField.getName()), 1));
+        }
+
+        // isX() for boolean fields, else getX(); null when the class has neither
+        private String getterName(FieldMetadata field) {
+            String property = toPropertyName(field.getName());
+            if (field.getType().isPrimitive() && field.getType().getName().equals("boolean")
+                    && metadata.hasMethod("is" + property, 0)) {
+                return "is" + property;
+            }
+            return metadata.hasMethod("get" + property, 0) ? "get" + property : null;
+        }
+
+        // Values read back through the fromProto of another mapper need a class that mapper can create
+        private boolean isCreatable(FieldDefinition field, FieldMetadata javaField) {
+            MessageDefinition oneof = oneofOf(field);
+            if (oneof != null) {
+                for (FieldDefinition variant : oneof.getFields()) {
+                    if (variant.getKind() == FieldKind.MESSAGE && !hasNoArgConstructor(variant.getReferencedType())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (field.getKind() != FieldKind.MESSAGE || field.getReferencedType() == null
+                    || adapterOf(valueType(field, javaField)) != null) {
+                return true;
+            }
+            return hasNoArgConstructor(field.getReferencedType());
+        }
+
+        private boolean hasNoArgConstructor(String javaName) {
+            ClassMetadata referenced = resolver.resolve(TypeRef.ofClass(javaName));
+            return referenced != null && referenced.hasNoArgConstructor();
+        }
+
+        private String getter(FieldMetadata field) {
+            if (Modifier.isPublic(field.getModifiers())) {
+                return "value." + field.getName();
+            }
+            return "value." + getterName(field) + "()";
+        }
+
+        private void set(FieldMetadata field, String expression) throws IOException {
+            if (Modifier.isPublic(field.getModifiers())) {
+                line("value." + field.getName() + " = " + expression + ";");
+            } else {
+                line("value.set" + toPropertyName(field.getName()) + "(" + expression + ");");
+            }
+        }
+
+        private void toProtoField(FieldDefinition field, FieldMetadata javaField) throws IOException {
+            TypeRef type = javaField.getType();
+            String accessor = toCamelCase(field.getName());
+            String local = "field" + field.getNumber();
+            line(sourceName(type) + " " + local + " = " + getter(javaField) + ";");
+
+            if (isFlatArray(field, type)) {
+                flatArrays.put(field, type);
+                open("if (" + local + " != null)");
+                line("builder.set" + accessor + "(" + use("toFlat" + accessor) + "(" + local + "));");
+                close();
+                return;
+            }
+            if (field.getLabel() == FieldLabel.OPTIONAL && isOptional(type)) {
+                open("if (" + local + " != null && " + local + ".isPresent())");
+                line("builder.set" + accessor + "(" + toProto(field, javaField.getTypeArgument(0), local + ".get()")
+                        + ");");
+                close();
+                return;
+            }
+            if (field.getLabel() == FieldLabel.OPTIONAL) {
+                if (type.isPrimitive()) {
+                    line("builder.set" + accessor + "(" + toProto(field, type, local) + ");");
+                    return;
+                }
+                open("if (" + local + " != null)");
+                line("builder.set" + accessor + "(" + toProto(field, type, local) + ");");
+                close();
+                return;
+            }
+
+            open("if (" + local + " != null)");
+            if (field.getLabel() == FieldLabel.MAP) {
+                TypeRef keyType = javaField.getTypeArgument(0);
+                TypeRef valueType = javaField.getTypeArgument(1);
+                open("for (java.util.Map.Entry<" + sourceName(keyType) + ", " + sourceName(valueType) + "> entry : "
+                        + local + ".entrySet())");
+                open("if (entry.getKey() != null && entry.getValue() != null)");
+                line("builder.put" + accessor + "(" + scalarToProto(keyType, "entry.getKey()") + ", "
+                        + toProto(field, valueType, "entry.getValue()") + ");");
+                close();
+                close();
+            } else {
+                TypeRef elementType = type.isArray() ? type.getComponent() : javaField.getTypeArgument(0);
+                open("for (" + sourceName(elementType) + " element : " + local + ")");
+                if (type.isArray() && isRow(elementType)) {
+                    line("builder.add" + accessor + "(" + use("to" + field.getType()) + "(element));");
+                } else if (elementType.isPrimitive()) {
+                    line("builder.add" + accessor + "(" + toProto(field, elementType, "element") + ");");
+                } else {
+                    open("if (element != null)");
+                    line("builder.add" + accessor + "(" + toProto(field, elementType, "element") + ");");
+                    close();
+                }
+                close();
+            }
+            close();
+        }
+
+        private void fromProtoField(FieldDefinition field, FieldMetadata javaField) throws IOException {
+            TypeRef type = javaField.getType();
+            String accessor = toCamelCase(field.getName());
+            String local = "field" + field.getNumber();
+
+            if (isFlatArray(field, type)) {
+                flatArrays.put(field, type);
+                open("if (proto.has" + accessor + "())");
+                set(javaField, use("fromFlat" + accessor) + "(proto.get" + accessor + "())");
+                close();
+                return;
+            }
+            if (field.getLabel() == FieldLabel.OPTIONAL && isOptional(type)) {
+                // Empty when unset, never null
+                set(javaField, OPTIONAL + ".ofNullable(proto.has" + accessor + "() ? "
+                        + fromProto(field, javaField.getTypeArgument(0), "proto.get" + accessor + "()") + " : null)");
+                return;
+            }
+            if (field.getLabel() == FieldLabel.OPTIONAL) {
+                open("if (proto.has" + accessor + "())");
+                set(javaField, fromProto(field, type, "proto.get" + accessor + "()"));
+                close();
+                return;
+            }
+
+            if (field.getLabel() == FieldLabel.MAP) {
+                TypeRef keyType = javaField.getTypeArgument(0);
+                TypeRef valueType = javaField.getTypeArgument(1);
+                line(sourceName(type) + " " + local + " = new " + implementation(type) + "<>();");
+                open("for (java.util.Map.Entry<" + PROTO_JAVA_TYPES.get(field.getKeyType()) + ", "
+                        + protoJavaType(field) + "> entry : proto.get" + accessor + "Map().entrySet())");
+                line(local + ".put(" + scalarFromProto(keyType, "entry.getKey()") + ", "
+                        + fromProto(field, valueType, "entry.getValue()") + ");");
+                close();
+                set(javaField, local);
+                return;
+            }
+
+            String count = "proto.get" + accessor + "Count()";
+            if (type.isArray()) {
+                TypeRef elementType = type.getComponent();
+                line(sourceName(type) + " " + local + " = " + newArray(type, count) + ";");
+                open("for (int i = 0; i < " + local + ".length; i++)");
+                if (isRow(elementType)) {
+                    line(local + "[i] = " + use("from" + field.getType()) + "(proto.get" + accessor + "(i));");
+                } else {
+                    line(local + "[i] = " + fromProto(field, elementType, "proto.get" + accessor + "(i)") + ";");
+                }
+                close();
+            } else {
+                TypeRef elementType = javaField.getTypeArgument(0);
+                String implementation = implementation(type);
+                boolean sized = implementation.equals("java.util.ArrayList") || implementation.equals("java.util.ArrayDeque");
+                line(sourceName(type) + " " + local + " = new " + implementation + "<>(" + (sized ? count : "") + ");");
+                open("for (int i = 0; i < " + count + "; i++)");
+                line(local + ".add(" + fromProto(field, elementType, "proto.get" + accessor + "(i)") + ");");
+                close();
+            }
+            set(javaField, local);
+        }
+
+        // toX and fromX of an array row message convert one level of the array
+        private void rowToProto(MessageDefinition row) throws IOException {
+            FieldDefinition items = row.getFields().get(0);
+            String rowClass = rowClasses.get(row.getName());
+            TypeRef rowType = rowTypeOf(row);
+            TypeRef elementType = rowType.getComponent();
+
+            line("");
+            open("private static " + rowClass + " to" + row.getName() + "(" + sourceName(rowType) + " row)");
+            line(rowClass + ".Builder builder = " + rowClass + ".newBuilder();");
+            open("if (row != null)");
+            open("for (" + sourceName(elementType) + " element : row)");
+            if (isRow(elementType)) {
+                line("builder.addItems(" + use("to" + items.getType()) + "(element));");
+            } else if (elementType.isPrimitive()) {
+                line("builder.addItems(" + toProto(items, elementType, "element") + ");");
+            } else {
+                open("if (element != null)");
+                line("builder.addItems(" + toProto(items, elementType, "element") + ");");
+                close();
+            }
+            close();
+            close();
+            line("return builder.build();");
+            close();
+        }
+
+        private void rowFromProto(MessageDefinition row) throws IOException {
+            FieldDefinition items = row.getFields().get(0);
+            String rowClass = rowClasses.get(row.getName());
+            TypeRef rowType = rowTypeOf(row);
+            TypeRef elementType = rowType.getComponent();
+
+            line("");
+            open("private static " + sourceName(rowType) + " from" + row.getName() + "(" + rowClass + " proto)");
+            line(sourceName(rowType) + " row = " + newArray(rowType, "proto.getItemsCount()") + ";");
+            open("for (int i = 0; i < row.length; i++)");
+            if (isRow(elementType)) {
+                line("row[i] = " + use("from" + items.getType()) + "(proto.getItems(i));");
+            } else {
+                line("row[i] = " + fromProto(items, elementType, "proto.getItems(i)") + ";");
+            }
+            close();
+            line("return row;");
+            close();
+        }
+
+        // toX/fromX for the oneof wrapper of a polymorphic field: a value is set as the subtype field of
+        // its class, or of its nearest superclass with one, as the wire codec does
+        private void oneofToProto(MessageDefinition oneof, String baseType) throws IOException {
+            String oneofClass = rowClasses.get(oneof.getName());
+            String javaType = baseType.replace('$', '.');
+
+            line("");
+            open("private static " + oneofClass + " to" + oneof.getName() + "(" + javaType + " value)");
+            line(oneofClass + ".Builder builder = " + oneofClass + ".newBuilder();");
+            open("for (Class<?> type = value.getClass(); type != null; type = type.getSuperclass())");
+            for (FieldDefinition variant : oneof.getFields()) {
+                String subtype = variant.getReferencedType().replace('$', '.');
+                open("if (type == " + subtype + ".class)");
+                line("return builder.set" + toCamelCase(variant.getName()) + "("
+                        + getMapperClassName(variant.getReferencedType()) + ".toProto((" + subtype + ") value)).build();");
+                close();
+            }
+            close();
+            line("throw new IllegalArgumentException(\"No subtype field in " + oneof.getName()
+                    + " for \" + value.getClass().getName());");
+            close();
+        }
+
+        private void oneofFromProto(MessageDefinition oneof, String baseType) throws IOException {
+            String oneofClass = rowClasses.get(oneof.getName());
+            String javaType = baseType.replace('$', '.');
+
+            line("");
+            line("// null when the payload holds no subtype this side knows");
+            open("private static " + javaType + " from" + oneof.getName() + "(" + oneofClass + " proto)");
+            for (FieldDefinition variant : oneof.getFields()) {
+                String accessor = toCamelCase(variant.getName());
+                open("if (proto.has" + accessor + "())");
+                line("return " + getMapperClassName(variant.getReferencedType()) + ".fromProto(proto.get" + accessor
+                        + "());");
+                close();
+            }
+            line("return null;");
+            close();
+        }
+
+        // toFlatX/fromFlatX for a rectangular array field flattened into a FlatArray_ message: the sizes
+        // of the dimensions, read along the first rows, then the values in row-major order
+        private void flatArrayToProto(FieldDefinition field, TypeRef arrayType) throws IOException {
+            String flatClass = protoClassName(field.getType(), field.getType());
+            String accessor = toCamelCase(field.getName());
+            TypeRef leafType = arrayType;
+            int rank = 0;
+            while (leafType.isArray()) {
+                leafType = leafType.getComponent();
+                rank++;
+            }
+
+            line("");
+            open("private static " + flatClass + " toFlat" + accessor + "(" + sourceName(arrayType) + " array)");
+            line(flatClass + ".Builder builder = " + flatClass + ".newBuilder();");
+            line("int size0 = array.length;");
+            String first = "array";
+            for (int d = 1; d < rank; d++) {
+                first += "[0]";
+                line("int size" + d + " = size" + (d - 1) + " == 0 || " + first + " == null ? 0 : " + first
+                        + ".length;");
+            }
+            for (int d = 0; d < rank; d++) {
+                line("builder.addDimensions(size" + d + ");");
+            }
+            String row = "array";
+            TypeRef rowType = arrayType;
+            for (int d = 1; d < rank; d++) {
+                rowType = rowType.getComponent();
+                open("for (" + sourceName(rowType) + " row" + d + " : " + row + ")");
+                row = "row" + d;
+                open("if (" + row + " == null || " + row + ".length != size" + d + ")");
+                line("throw new IllegalArgumentException(\"Cannot flatten a jagged " + field.getName()
+                        + " or one with null rows\");");
+                close();
+            }
+            open("for (" + sourceName(leafType) + " element : " + row + ")");
+            line("builder.addValues(" + scalarToProto(leafType, "element") + ");");
+            close();
+            for (int d = 1; d < rank; d++) {
+                close();
+            }
+            line("return builder.build();");
+            close();
+        }
+
+        private void flatArrayFromProto(FieldDefinition field, TypeRef arrayType) throws IOException {
+            String flatClass = protoClassName(field.getType(), field.getType());
+            String accessor = toCamelCase(field.getName());
+            TypeRef leafType = arrayType;
+            int rank = 0;
+            while (leafType.isArray()) {
+                leafType = leafType.getComponent();
+                rank++;
+            }
+
+            line("");
+            open("private static " + sourceName(arrayType) + " fromFlat" + accessor + "(" + flatClass + " proto)");
+            StringBuilder product = new StringBuilder("(long) proto.getDimensions(0)");
+            StringBuilder dimensions = new StringBuilder("[proto.getDimensions(0)]");
+            for (int d = 1; d < rank; d++) {
+                product.append(" * proto.getDimensions(").append(d).append(")");
+                dimensions.append("[proto.getDimensions(").append(d).append(")]");
+            }
+            open("if (proto.getDimensionsCount() != " + rank + " || " + product + " != proto.getValuesCount())");
+            line("throw new IllegalArgumentException(\"Dimensions and values of " + field.getName()
+                    + " do not match\");");
+            close();
+            line(sourceName(arrayType) + " array = new " + sourceName(leafType) + dimensions + ";");
+            line("int index = 0;");
+            String row = "array";
+            TypeRef rowType = arrayType;
+            for (int d = 1; d < rank; d++) {
+                rowType = rowType.getComponent();
+                open("for (" + sourceName(rowType) + " row" + d + " : " + row + ")");
+                row = "row" + d;
+            }
+            open("for (int i = 0; i < " + row + ".length; i++)");
+            line(row + "[i] = " + scalarFromProto(leafType, "proto.getValues(index++)") + ";");
+            close();
+            for (int d = 1; d < rank; d++) {
+                close();
+            }
+            line("return array;");
+            close();
+        }
+
+        // The Java array type one row message stands for: its items have the javaType recorded by discovery
+        private TypeRef rowTypeOf(MessageDefinition row) {
+            String javaType = row.getFields().get(0).getJavaType();
+            int dimensions = 1;
+            while (javaType.endsWith("[]")) {
+                javaType = javaType.substring(0, javaType.length() - 2);
+                dimensions++;
+            }
+            TypeRef rowType = isPrimitiveName(javaType) ? TypeRef.ofPrimitive(javaType) : TypeRef.ofClass(javaType);
+            for (int i = 0; i < dimensions; i++) {
+                rowType = TypeRef.arrayOf(rowType);
+            }
+            return rowType;
+        }
+
+        // Array elements of a multi-dimensional array are row messages, except bulk binary ones (byte[], char[])
+        private boolean isRow(TypeRef elementType) {
+            return elementType.isArray() && !BinaryTypes.isBinary(elementType);
+        }
+
+        private String implementation(TypeRef type) {
+            return CollectionTypes.getImplementation(type.getName()).replace('$', '.');
+        }
+
+        // Boxed Java type protoc generates for the (map value) type of a field
+        private String protoJavaType(FieldDefinition field) {
+            if (field.getKind() == FieldKind.SCALAR) {
+                return PROTO_JAVA_TYPES.get(field.getType());
+            }
+            if (oneofOf(field) != null) {
+                return rowClasses.get(field.getType());
+            }
+            if (field.getReferencedType() == null) {
+                // Message of a type adapter
+                return field.getType().startsWith(WELL_KNOWN_PREFIX)
+                        ? "com.google.protobuf." + field.getType().substring(WELL_KNOWN_PREFIX.length())
+                        : protoClassName(field.getType(), field.getType());
+            }
+            return protoClassName(field.getReferencedType(), field.getType());
+        }
+
+        private String toProto(FieldDefinition field, TypeRef javaType, String expression) {
+            MessageDefinition oneof = oneofOf(field);
+            if (oneof != null) {
+                oneofs.put(oneof.getName(), field.getReferencedType());
+                return use("to" + oneof.getName()) + "(" + expression + ")";
+            }
+            TypeAdapter adapter = adapterOf(javaType);
+            if (adapter != null) {
+                return adapter.toProtoSource(expression, adaptedProtoClass(adapter));
+            }
+            switch (field.getKind()) {
+                case ENUM:
+                case MESSAGE:
+                    return getMapperClassName(field.getReferencedType()) + ".toProto(" + expression + ")";
+                default:
+                    return scalarToProto(javaType, expression);
+            }
+        }
+
+        private String fromProto(FieldDefinition field, TypeRef javaType, String expression) {
+            MessageDefinition oneof = oneofOf(field);
+            if (oneof != null) {
+                oneofs.put(oneof.getName(), field.getReferencedType());
+                return use("from" + oneof.getName()) + "(" + expression + ")";
+            }
+            TypeAdapter adapter = adapterOf(javaType);
+            if (adapter != null) {
+                return adapter.fromProtoSource(expression, adaptedProtoClass(adapter));
+            }
+            switch (field.getKind()) {
+                case ENUM:
+                case MESSAGE:
+                    return getMapperClassName(field.getReferencedType()) + ".fromProto(" + expression + ")";
+                default:
+                    return scalarFromProto(javaType, expression);
+            }
+        }
+
+        // Java scalar -> proto value, following the type mapping of SchemaDiscovery; bulk binary values
+        // are copied at once, a ByteBuffer from its position without moving it
+        private String scalarToProto(TypeRef javaType, String expression) {
+            TypeAdapter adapter = adapterOf(javaType);
+            if (adapter != null) {
+                return adapter.toProtoSource(expression, null);
+            }
+            String name = javaType.getName();
+            if (BinaryTypes.isBinary(javaType)) {
+                if (javaType.isClass()) {
+                    return BYTE_STRING + ".copyFrom(" + expression + ".duplicate())";
+                }
+                if (javaType.getComponent().getName().equals("char")) {
+                    return BYTE_STRING + ".copyFrom(java.nio.charset.StandardCharsets.UTF_8.encode("
+                            + "java.nio.CharBuffer.wrap(" + expression + ")))";
+                }
+                return BYTE_STRING + ".copyFrom(" + expression + ")";
+            }
+            if (isDate(javaType)) {
+                return expression + ".getTime()";
+            }
+            if (name.equals("byte") || name.equals(Byte.class.getName())) {
+                return BYTE_STRING + ".copyFrom(new byte[] {" + expression + "})";
+            }
+            return expression;
+        }
+
+        private String scalarFromProto(TypeRef javaType, String expression) {
+            TypeAdapter adapter = adapterOf(javaType);
+            if (adapter != null) {
+                return adapter.fromProtoSource(expression, null);
+            }
+            String name = javaType.getName();
+            if (BinaryTypes.isBinary(javaType)) {
+                if (javaType.isClass()) {
+                    return "java.nio.ByteBuffer.wrap(" + expression + ".toByteArray())";
+                }
+                if (javaType.getComponent().getName().equals("char")) {
+                    return expression + ".toStringUtf8().toCharArray()";
+                }
+                return expression + ".toByteArray()";
+            }
+            if (isDate(javaType)) {
+                return "new " + sourceName(javaType) + "(" + expression + ")";
+            }
+            if (name.equals("byte") || name.equals(Byte.class.getName())) {
+                return "(byte) (" + expression + ".isEmpty() ? 0 : " + expression + ".byteAt(0))";
+            }
+            if (name.equals("short") || name.equals(Short.class.getName())) {
+                return "(short) (int) " + expression;
+            }
+            if (name.equals("char")) {
+                return "(char) (int) " + expression;
+            }
+            return expression;
+        }
+
+        private boolean isDate(TypeRef javaType) {
+            return javaType.isClass() && resolver.isAssignableTo(javaType, Date.class);
+        }
+    }
+
+    private static boolean isPrimitiveName(String name) {
+        switch (name) {
+            case "boolean":
+            case "byte":
+            case "char":
+            case "short":
+            case "int":
+            case "long":
+            case "float":
+            case "double":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fr.bl.pojo2proto.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The parts of a class file that generation needs, as read by ClassFileReader
+final class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_SYNTHETIC = 0x1000;
+    static final int ACC_ENUM = 0x4000;
+
+    String name;
+    int access;
+    String superName;
+    final List<String> interfaces = new ArrayList<>();
+    final List<FieldInfo> fields = new ArrayList<>();
+    final List<MethodInfo> methods = new ArrayList<>();
+    final List<InnerClassInfo> innerClasses = new ArrayList<>();
+
+    boolean isEnum() {
+        return (access & ACC_ENUM) != 0;
+    }
+
+    // Access flags as declared in the source: nested classes keep theirs in the InnerClasses attribute
+    int getDeclaredAccess() {
+        for (InnerClassInfo inner : innerClasses) {
+            if (name.equals(inner.name)) {
+                return inner.access;
+            }
+        }
+        return access;
+    }
+
+    static final class FieldInfo {
+        final String name;
+        final int access;
+        final String descriptor;
+        String signature;
+
+        FieldInfo(String name, int access, String descriptor) {
+            this.name = name;
+            this.access = access;
+            this.descriptor = descriptor;
+        }
+    }
+
+    // Methods and constructors (<init>), without their code
+    static final class MethodInfo {
+        final String name;
+        final int access;
+        final String descriptor;
+
+        MethodInfo(String name, int access, String descriptor) {
+            this.name = name;
+            this.access = access;
+            this.descriptor = descriptor;
+        }
+
+        // (ILjava/lang/String;[J)V -> 3
+        int getParameterCount() {
+            int count = 0;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+                count++;
+            }
+            return count;
+        }
+    }
+
+    static final class InnerClassInfo {
+        final String name;
+        final String outerName;
+        final String simpleName;
+        final int access;
+
+        InnerClassInfo(String name, String outerName, String simpleName, int access) {
+            this.name = name;
+            this.outerName = outerName;
+            this.simpleName = simpleName;
+            this.access = access;
+        }
+    }
+}
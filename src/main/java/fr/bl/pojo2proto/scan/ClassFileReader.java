@@ -0,0 +1,189 @@
+package fr.bl.pojo2proto.scan;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Minimal class file parser (JVMS chapter 4): reads names, access flags, super types, fields with
+// their generic signatures, the names and descriptors of the methods and the InnerClasses attribute.
+// Code is skipped. Nothing is defined in a class loader.
+final class ClassFileReader {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final ByteBuffer buffer;
+    private String[] utf8;
+    private int[] classNameIndex;
+
+    private ClassFileReader(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    static ClassFile read(ByteBuffer bytes) {
+        return new ClassFileReader(bytes).read();
+    }
+
+    private ClassFile read() {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        buffer.getShort(); // minor version
+        buffer.getShort(); // major version
+        readConstantPool();
+
+        ClassFile classFile = new ClassFile();
+        classFile.access = u2();
+        classFile.name = className(u2());
+        int superIndex = u2();
+        classFile.superName = superIndex == 0 ? null : className(superIndex);
+        int interfaceCount = u2();
+        for (int i = 0; i < interfaceCount; i++) {
+            classFile.interfaces.add(className(u2()));
+        }
+
+        int fieldCount = u2();
+        for (int i = 0; i < fieldCount; i++) {
+            int access = u2();
+            ClassFile.FieldInfo field = new ClassFile.FieldInfo(utf8[u2()], access, utf8[u2()]);
+            int attributeCount = u2();
+            for (int a = 0; a < attributeCount; a++) {
+                String attributeName = utf8[u2()];
+                int length = buffer.getInt();
+                if ("Signature".equals(attributeName)) {
+                    field.signature = utf8[u2()];
+                } else {
+                    skip(length);
+                }
+            }
+            classFile.fields.add(field);
+        }
+
+        int methodCount = u2();
+        for (int i = 0; i < methodCount; i++) {
+            int access = u2();
+            classFile.methods.add(new ClassFile.MethodInfo(utf8[u2()], access, utf8[u2()]));
+            skipAttributes();
+        }
+
+        int attributeCount = u2();
+        for (int a = 0; a < attributeCount; a++) {
+            String attributeName = utf8[u2()];
+            int length = buffer.getInt();
+            if ("InnerClasses".equals(attributeName)) {
+                int classes = u2();
+                for (int c = 0; c < classes; c++) {
+                    int innerIndex = u2();
+                    int outerIndex = u2();
+                    int simpleNameIndex = u2();
+                    int access = u2();
+                    classFile.innerClasses.add(new ClassFile.InnerClassInfo(className(innerIndex),
+                            outerIndex == 0 ? null : className(outerIndex),
+                            simpleNameIndex == 0 ? null : utf8[simpleNameIndex], access));
+                }
+            } else {
+                skip(length);
+            }
+        }
+        return classFile;
+    }
+
+    private void readConstantPool() {
+        int count = u2();
+        utf8 = new String[count];
+        classNameIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = buffer.get() & 0xFF;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = readModifiedUtf8(u2());
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndex[i] = u2();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skip(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skip(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skip(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    skip(8);
+                    i++; // 8-byte constants take two slots
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+    }
+
+    private void skipAttributes() {
+        int attributeCount = u2();
+        for (int a = 0; a < attributeCount; a++) {
+            skip(2);
+            skip(buffer.getInt());
+        }
+    }
+
+    // Binary name (com.acme.Outer$Inner) of a CONSTANT_Class entry
+    private String className(int index) {
+        return utf8[classNameIndex[index]].replace('/', '.');
+    }
+
+    private int u2() {
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    private void skip(int length) {
+        buffer.position(buffer.position() + length);
+    }
+
+    // Class files store strings in "modified UTF-8" (JVMS 4.4.7)
+    private String readModifiedUtf8(int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            int b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+            } else {
+                int b2 = buffer.get() & 0x3F;
+                int b3 = buffer.get() & 0x3F;
+                chars[count++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | b3);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,383 @@
+package fr.bl.pojo2proto.scan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import fr.bl.pojo2proto.ClassMetadata;
+import fr.bl.pojo2proto.ClassMetadataCache;
+import fr.bl.pojo2proto.ClassResolver;
+import fr.bl.pojo2proto.FieldMetadata;
+import fr.bl.pojo2proto.ReflectionClassResolver;
+import fr.bl.pojo2proto.SubtypeResolver;
+import fr.bl.pojo2proto.TypeRef;
+
+// Discovers DTOs from class directories and JARs by parsing their class files: the classes are never
+// loaded, linked or initialized, so their runtime dependencies do not need to be available.
+// JDK types (java.*, javax.*) met along the way are still resolved through reflection, without
+// initialization. Types found nowhere are left unresolved and simply not expanded.
+public class ClassPathScanner implements ClassResolver, Closeable {
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String MODULE_INFO = "module-info";
+    private static final String PACKAGE_INFO = "package-info";
+    private static final int FIELD_MODIFIERS = 0x00DF; // public .. transient, same bits as java.lang.reflect.Modifier
+    private static final int CLASS_MODIFIERS = Modifier.PUBLIC | Modifier.PRIVATE | Modifier.PROTECTED
+            | Modifier.STATIC | Modifier.FINAL | Modifier.INTERFACE | Modifier.ABSTRACT;
+
+    private final boolean memoryMapped;
+    private final List<String> packageFilters;
+    private final Map<String, Location> locations = new TreeMap<>();
+    private final List<ZipFile> jars = new ArrayList<>();
+    private final Map<String, ClassFile> classFiles = new ConcurrentHashMap<>();
+    private final Map<String, Optional<ClassMetadata>> metadata = new ConcurrentHashMap<>();
+    private final Collection<String> warnings = new ConcurrentSkipListSet<>();
+    // Direct subclasses and implementations of each super type, among the candidate roots; built on first use
+    // (threads racing on it build the same index)
+    private volatile Map<String, List<String>> directSubtypes;
+
+    // Where a class file lives: a file of an exploded directory or an entry of a JAR
+    private static final class Location {
+        final Path file;
+        final ZipFile jar;
+        final ZipEntry entry;
+
+        Location(Path file, ZipFile jar, ZipEntry entry) {
+            this.file = file;
+            this.jar = jar;
+            this.entry = entry;
+        }
+    }
+
+    // classPath: class directories and/or JARs; packageFilters: package prefixes of the roots
+    // (empty = every class); memoryMapped: map directory class files instead of reading them
+    public ClassPathScanner(List<Path> classPath, List<String> packageFilters, boolean memoryMapped) throws IOException {
+        this.memoryMapped = memoryMapped;
+        this.packageFilters = new ArrayList<>(packageFilters);
+        for (Path entry : classPath) {
+            if (Files.isDirectory(entry)) {
+                indexDirectory(entry);
+            } else if (Files.isRegularFile(entry)) {
+                indexJar(entry);
+            } else {
+                throw new IOException("Class path entry not found: " + entry);
+            }
+        }
+    }
+
+    private void indexDirectory(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(file -> file.toString().endsWith(CLASS_EXTENSION)).forEach(file -> {
+                String relative = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                locations.putIfAbsent(toBinaryName(relative), new Location(file, null, null));
+            });
+        }
+    }
+
+    private void indexJar(Path path) throws IOException {
+        ZipFile jar = new ZipFile(path.toFile());
+        jars.add(jar);
+        for (ZipEntry entry : Collections.list(jar.entries())) {
+            // Multi-release entries (META-INF/versions/..) are ignored, the base version is used
+            if (!entry.isDirectory() && entry.getName().endsWith(CLASS_EXTENSION)
+                    && !entry.getName().startsWith("META-INF/")) {
+                locations.putIfAbsent(toBinaryName(entry.getName()), new Location(null, jar, entry));
+            }
+        }
+    }
+
+    private static String toBinaryName(String classFilePath) {
+        return classFilePath.substring(0, classFilePath.length() - CLASS_EXTENSION.length()).replace('/', '.');
+    }
+
+    // Scanned classes matching the package filters, sorted by name; anonymous and local classes excluded
+    public List<TypeRef> getRoots() {
+        List<TypeRef> roots = new ArrayList<>();
+        for (String name : locations.keySet()) {
+            if (isCandidateRoot(name)) {
+                roots.add(TypeRef.ofClass(name));
+            }
+        }
+        return roots;
+    }
+
+    private boolean isCandidateRoot(String name) {
+        String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        if (simpleName.equals(MODULE_INFO) || simpleName.equals(PACKAGE_INFO)) {
+            return false;
+        }
+        for (String segment : simpleName.split("\\$")) {
+            if (segment.isEmpty() || Character.isDigit(segment.charAt(0))) {
+                return false;
+            }
+        }
+        if (packageFilters.isEmpty()) {
+            return true;
+        }
+        String packageName = name.lastIndexOf('.') < 0 ? "" : name.substring(0, name.lastIndexOf('.'));
+        for (String filter : packageFilters) {
+            if (packageName.equals(filter) || packageName.startsWith(filter + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getIndexedClassCount() {
+        return locations.size();
+    }
+
+    @Override
+    public ClassMetadata resolve(TypeRef type) {
+        if (!type.isClass()) {
+            return null;
+        }
+        return metadataOf(type.getName());
+    }
+
+    @Override
+    public boolean isAssignableTo(TypeRef type, Class<?> jdkType) {
+        return type.isClass() && isAssignableTo(type.getName(), jdkType);
+    }
+
+    private boolean isAssignableTo(String name, Class<?> jdkType) {
+        if (name.equals(jdkType.getName())) {
+            return true;
+        }
+        ClassFile classFile = classFile(name);
+        if (classFile == null) {
+            Class<?> jdkClass = ReflectionClassResolver.loadJdkClass(name);
+            return jdkClass != null && jdkType.isAssignableFrom(jdkClass);
+        }
+        if (classFile.superName != null && isAssignableTo(classFile.superName, jdkType)) {
+            return true;
+        }
+        for (String interfaceName : classFile.interfaces) {
+            if (isAssignableTo(interfaceName, jdkType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ClassMetadata metadataOf(String name) {
+        Optional<ClassMetadata> cached = metadata.get(name);
+        if (cached == null) {
+            // Not computeIfAbsent: building a class resolves its super classes recursively
+            cached = Optional.ofNullable(buildMetadata(name));
+            Optional<ClassMetadata> raced = metadata.putIfAbsent(name, cached);
+            if (raced != null) {
+                cached = raced;
+            }
+        }
+        return cached.orElse(null);
+    }
+
+    private ClassMetadata buildMetadata(String name) {
+        ClassFile classFile = classFile(name);
+        if (classFile == null) {
+            Class<?> jdkClass = ReflectionClassResolver.loadJdkClass(name);
+            return jdkClass == null ? null : ClassMetadataCache.get(jdkClass);
+        }
+
+        TypeRef type = TypeRef.ofClass(name);
+        List<FieldMetadata> fields = new ArrayList<>();
+        List<String> enumConstants = new ArrayList<>();
+        for (ClassFile.FieldInfo field : classFile.fields) {
+            if ((field.access & ClassFile.ACC_ENUM) != 0) {
+                enumConstants.add(field.name);
+            }
+            if ((field.access & (ClassFile.ACC_SYNTHETIC | ClassFile.ACC_STATIC)) != 0) {
+                continue;
+            }
+            String signature = field.signature != null ? field.signature : field.descriptor;
+            fields.add(new FieldMetadata(field.name, field.access & FIELD_MODIFIERS, SignatureParser.parse(signature),
+                    type, null));
+        }
+        // Inherited fields come after the declared ones, as with reflection
+        if (classFile.superName != null && !classFile.superName.equals(Object.class.getName())) {
+            ClassMetadata superMetadata = metadataOf(classFile.superName);
+            if (superMetadata != null) {
+                fields.addAll(superMetadata.getFields());
+            }
+        }
+
+        List<TypeRef> innerClasses = new ArrayList<>();
+        for (ClassFile.InnerClassInfo inner : classFile.innerClasses) {
+            if (name.equals(inner.outerName) && inner.simpleName != null
+                    && (inner.access & ClassFile.ACC_PRIVATE) == 0) {
+                innerClasses.add(TypeRef.ofClass(inner.name));
+            }
+        }
+        Set<String> methods = new TreeSet<>();
+        collectMethods(name, getPackage(name), methods);
+        return new ClassMetadata(type, classFile.getDeclaredAccess() & CLASS_MODIFIERS, classFile.isEnum(), fields,
+                innerClasses, enumConstants, methods, hasNoArgConstructor(classFile));
+    }
+
+    // Instance methods of a class and its super types that code of packageName can call: public ones,
+    // and non-private ones declared in that package
+    private void collectMethods(String name, String packageName, Set<String> methods) {
+        ClassFile classFile = classFile(name);
+        if (classFile == null) {
+            Class<?> jdkClass = ReflectionClassResolver.loadJdkClass(name);
+            if (jdkClass != null) {
+                methods.addAll(ClassMetadata.getPublicMethods(jdkClass));
+            }
+            return;
+        }
+        boolean samePackage = getPackage(name).equals(packageName);
+        for (ClassFile.MethodInfo method : classFile.methods) {
+            if (method.name.startsWith("<") || (method.access & (ClassFile.ACC_STATIC | ClassFile.ACC_SYNTHETIC)) != 0) {
+                continue;
+            }
+            if ((method.access & ClassFile.ACC_PUBLIC) != 0
+                    || (samePackage && (method.access & ClassFile.ACC_PRIVATE) == 0)) {
+                methods.add(ClassMetadata.getMethodKey(method.name, method.getParameterCount()));
+            }
+        }
+        if (classFile.superName != null) {
+            collectMethods(classFile.superName, packageName, methods);
+        }
+        for (String interfaceName : classFile.interfaces) {
+            collectMethods(interfaceName, packageName, methods);
+        }
+    }
+
+    // Constructors of non-static inner classes take the outer instance, they never match ()V
+    private static boolean hasNoArgConstructor(ClassFile classFile) {
+        if ((classFile.access & (ClassFile.ACC_INTERFACE | ClassFile.ACC_ABSTRACT)) != 0 || classFile.isEnum()) {
+            return false;
+        }
+        for (ClassFile.MethodInfo method : classFile.methods) {
+            if (method.name.equals("<init>") && method.descriptor.equals("()V")
+                    && (method.access & ClassFile.ACC_PRIVATE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getPackage(String name) {
+        int lastDot = name.lastIndexOf('.');
+        return lastDot < 0 ? "" : name.substring(0, lastDot);
+    }
+
+    @Override
+    public Collection<String> getWarnings() {
+        return new ArrayList<>(warnings);
+    }
+
+    private ClassFile classFile(String name) {
+        ClassFile classFile = classFiles.get(name);
+        if (classFile != null) {
+            return classFile;
+        }
+        Location location = locations.get(name);
+        if (location == null) {
+            return null;
+        }
+        try {
+            classFile = ClassFileReader.read(readBytes(location));
+        } catch (IOException | RuntimeException e) {
+            warnings.add("Skipping unreadable class file " + name + ": " + e.getMessage());
+            return null;
+        }
+        ClassFile raced = classFiles.putIfAbsent(name, classFile);
+        return raced != null ? raced : classFile;
+    }
+
+    private ByteBuffer readBytes(Location location) throws IOException {
+        if (location.file != null) {
+            if (!memoryMapped) {
+                return ByteBuffer.wrap(Files.readAllBytes(location.file));
+            }
+            try (FileChannel channel = FileChannel.open(location.file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        try (InputStream in = location.jar.getInputStream(location.entry)) {
+            return ByteBuffer.wrap(in.readAllBytes());
+        }
+    }
+
+    // Subtypes among the scanned classes matching the package filters, read from their class files
+    // (super class and interfaces), for GeneratorOptions.setSubtypeResolver. Object gets none
+    public SubtypeResolver getSubtypeResolver() {
+        return (field, type) -> {
+            List<TypeRef> subtypes = new ArrayList<>();
+            if (!type.getName().equals(Object.class.getName())) {
+                List<String> direct = getDirectSubtypes().get(type.getName());
+                if (direct != null) {
+                    for (String subtype : direct) {
+                        subtypes.add(TypeRef.ofClass(subtype));
+                    }
+                }
+            }
+            return subtypes;
+        };
+    }
+
+    // Abstract subtypes are listed too: discovery asks for their own subtypes in turn
+    private Map<String, List<String>> getDirectSubtypes() {
+        Map<String, List<String>> index = directSubtypes;
+        if (index == null) {
+            index = new TreeMap<>();
+            for (TypeRef root : getRoots()) {
+                ClassFile classFile = classFile(root.getName());
+                if (classFile == null) {
+                    continue;
+                }
+                List<String> superTypes = new ArrayList<>(classFile.interfaces);
+                if (classFile.superName != null) {
+                    superTypes.add(classFile.superName);
+                }
+                for (String superType : superTypes) {
+                    index.computeIfAbsent(superType, name -> new ArrayList<>()).add(root.getName());
+                }
+            }
+            directSubtypes = index;
+        }
+        return index;
+    }
+
+    // Scanned class names, sorted
+    public Collection<String> getClassNames() {
+        return Collections.unmodifiableSet(locations.keySet());
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ZipFile jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        jars.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fr.bl.pojo2proto.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.bl.pojo2proto.TypeRef;
+
+// Turns field descriptors (Ljava/util/List;) and generic field signatures
+// (Ljava/util/List<Lcom/acme/Foo;>;) into TypeRefs
+final class SignatureParser {
+    private final String signature;
+    private int position;
+
+    private SignatureParser(String signature) {
+        this.signature = signature;
+    }
+
+    static TypeRef parse(String signature) {
+        return new SignatureParser(signature).parseType();
+    }
+
+    private TypeRef parseType() {
+        char c = signature.charAt(position++);
+        switch (c) {
+            case 'B': return TypeRef.ofPrimitive("byte");
+            case 'C': return TypeRef.ofPrimitive("char");
+            case 'D': return TypeRef.ofPrimitive("double");
+            case 'F': return TypeRef.ofPrimitive("float");
+            case 'I': return TypeRef.ofPrimitive("int");
+            case 'J': return TypeRef.ofPrimitive("long");
+            case 'S': return TypeRef.ofPrimitive("short");
+            case 'Z': return TypeRef.ofPrimitive("boolean");
+            case 'V': return TypeRef.ofPrimitive("void");
+            case '[': return TypeRef.arrayOf(parseType());
+            case 'T': {
+                int end = signature.indexOf(';', position);
+                String name = signature.substring(position, end);
+                position = end + 1;
+                return TypeRef.variable(name);
+            }
+            case 'L': return parseClassType();
+            default:
+                throw new IllegalArgumentException("Invalid signature " + signature + " at " + (position - 1));
+        }
+    }
+
+    // L pkg/Outer<args> . Inner<args> ;  -> pkg.Outer$Inner with the arguments of the last segment
+    private TypeRef parseClassType() {
+        StringBuilder name = new StringBuilder();
+        List<TypeRef> arguments = new ArrayList<>();
+        while (true) {
+            char c = signature.charAt(position++);
+            if (c == ';') {
+                return TypeRef.ofClass(name.toString(), arguments);
+            } else if (c == '<') {
+                arguments = parseArguments();
+            } else if (c == '.') {
+                name.append('$');
+                arguments = new ArrayList<>();
+            } else {
+                name.append(c == '/' ? '.' : c);
+            }
+        }
+    }
+
+    private List<TypeRef> parseArguments() {
+        List<TypeRef> arguments = new ArrayList<>();
+        while (signature.charAt(position) != '>') {
+            char c = signature.charAt(position);
+            if (c == '*') {
+                position++;
+                arguments.add(TypeRef.wildcard());
+            } else if (c == '+' || c == '-') {
+                // Bounded wildcards: the bound is parsed but, as with reflection, only the wildcard is kept
+                position++;
+                parseType();
+                arguments.add(TypeRef.wildcard());
+            } else {
+                arguments.add(parseType());
+            }
+        }
+        position++;
+        return arguments;
+    }
+}
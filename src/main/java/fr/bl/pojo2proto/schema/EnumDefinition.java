@@ -0,0 +1,38 @@
+package fr.bl.pojo2proto.schema;
+
+import java.util.Collections;
+import java.util.List;
+
+// A proto enum generated from a Java enum
+public final class EnumDefinition {
+    private final String javaName;
+    private final String name;
+    private final List<String> constants;
+    private final String fingerprint;
+
+    public EnumDefinition(String javaName, String name, List<String> constants, String fingerprint) {
+        this.javaName = javaName;
+        this.name = name;
+        this.constants = Collections.unmodifiableList(constants);
+        this.fingerprint = fingerprint;
+    }
+
+    public String getJavaName() {
+        return javaName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Constant names in ordinal order
+    public List<String> getConstants() {
+        return constants;
+    }
+
+    // Structural fingerprint of the source enum: a FragmentStore reuses the rendered enum while it is
+    // unchanged
+    public String getFingerprint() {
+        return fingerprint;
+    }
+}
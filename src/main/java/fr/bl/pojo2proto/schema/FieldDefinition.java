@@ -0,0 +1,61 @@
+package fr.bl.pojo2proto.schema;
+
+// One field of a message. For maps, type is the value type and keyType the key type.
+public final class FieldDefinition {
+    private final String name;
+    private final int number;
+    private final FieldLabel label;
+    private final FieldKind kind;
+    private final String type;
+    private final String keyType;
+    private final String javaType;
+    private final String referencedType;
+
+    public FieldDefinition(String name, int number, FieldLabel label, FieldKind kind, String type,
+                           String keyType, String javaType, String referencedType) {
+        this.name = name;
+        this.number = number;
+        this.label = label;
+        this.kind = kind;
+        this.type = type;
+        this.keyType = keyType;
+        this.javaType = javaType;
+        this.referencedType = referencedType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public FieldLabel getLabel() {
+        return label;
+    }
+
+    public FieldKind getKind() {
+        return kind;
+    }
+
+    // Proto type of the field (of the map value for map fields)
+    public String getType() {
+        return type;
+    }
+
+    // Proto type of the map key, null for non-map fields
+    public String getKeyType() {
+        return keyType;
+    }
+
+    // Declared Java type, including generic arguments
+    public String getJavaType() {
+        return javaType;
+    }
+
+    // Java class name of the message or enum this field points to, null for scalars and Any
+    public String getReferencedType() {
+        return referencedType;
+    }
+}
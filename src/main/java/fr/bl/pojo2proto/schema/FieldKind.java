@@ -0,0 +1,9 @@
+package fr.bl.pojo2proto.schema;
+
+// What the (element) type of a field resolves to
+public enum FieldKind {
+    SCALAR,
+    ENUM,
+    MESSAGE,
+    ANY
+}
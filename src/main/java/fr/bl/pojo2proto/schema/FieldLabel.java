@@ -0,0 +1,18 @@
+package fr.bl.pojo2proto.schema;
+
+// How a field is declared in the proto message
+public enum FieldLabel {
+    OPTIONAL("optional"),
+    REPEATED("repeated"),
+    MAP("map");
+
+    private final String keyword;
+
+    FieldLabel(String keyword) {
+        this.keyword = keyword;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+}
@@ -0,0 +1,81 @@
+package fr.bl.pojo2proto.schema;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// A proto message. Top-level messages map a Java class; nested ones (javaName == null)
+// are helper messages such as the rows of multi-dimensional arrays and the oneof wrappers of
+// polymorphic fields, whose fields all belong to one oneof.
+public final class MessageDefinition {
+    private final String javaName;
+    private final String name;
+    private final List<FieldDefinition> fields;
+    private final List<MessageDefinition> nestedMessages;
+    private final Set<String> references;
+    private final String fingerprint;
+    private final Map<String, Integer> reserved;
+    private final String oneof;
+
+    public MessageDefinition(String javaName, String name, List<FieldDefinition> fields,
+                             List<MessageDefinition> nestedMessages, Set<String> references, String fingerprint) {
+        this(javaName, name, fields, nestedMessages, references, fingerprint, Collections.<String, Integer>emptyMap());
+    }
+
+    public MessageDefinition(String javaName, String name, List<FieldDefinition> fields,
+                             List<MessageDefinition> nestedMessages, Set<String> references, String fingerprint,
+                             Map<String, Integer> reserved) {
+        this(javaName, name, fields, nestedMessages, references, fingerprint, reserved, null);
+    }
+
+    public MessageDefinition(String javaName, String name, List<FieldDefinition> fields,
+                             List<MessageDefinition> nestedMessages, Set<String> references, String fingerprint,
+                             Map<String, Integer> reserved, String oneof) {
+        this.javaName = javaName;
+        this.name = name;
+        this.fields = Collections.unmodifiableList(fields);
+        this.nestedMessages = Collections.unmodifiableList(nestedMessages);
+        this.references = Collections.unmodifiableSet(references);
+        this.fingerprint = fingerprint;
+        this.reserved = Collections.unmodifiableMap(reserved);
+        this.oneof = oneof;
+    }
+
+    public String getJavaName() {
+        return javaName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<FieldDefinition> getFields() {
+        return fields;
+    }
+
+    public List<MessageDefinition> getNestedMessages() {
+        return nestedMessages;
+    }
+
+    // Java class names of every type this class leads discovery to (field types and inner classes)
+    public Set<String> getReferences() {
+        return references;
+    }
+
+    // Structural fingerprint of the source class (null for nested helper messages): a FragmentStore
+    // reuses the rendered message while it is unchanged
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    // Numbers (and names) of deleted fields, which must not be reused
+    public Map<String, Integer> getReserved() {
+        return reserved;
+    }
+
+    // Name of the oneof holding every field, null when the fields are plain fields
+    public String getOneof() {
+        return oneof;
+    }
+}
@@ -0,0 +1,63 @@
+package fr.bl.pojo2proto.schema;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable result of type discovery: every enum and message reachable from the roots,
+// in discovery order. Emitters only read this model, they never go back to reflection.
+public final class SchemaModel {
+    private final List<EnumDefinition> enums;
+    private final List<MessageDefinition> messages;
+    private final List<MessageDefinition> sharedMessages;
+    private final Map<String, EnumDefinition> enumsByJavaName = new LinkedHashMap<>();
+    private final Map<String, MessageDefinition> messagesByJavaName = new LinkedHashMap<>();
+    private final Map<String, MessageDefinition> sharedMessagesByName = new LinkedHashMap<>();
+
+    public SchemaModel(List<EnumDefinition> enums, List<MessageDefinition> messages) {
+        this(enums, messages, Collections.<MessageDefinition>emptyList());
+    }
+
+    public SchemaModel(List<EnumDefinition> enums, List<MessageDefinition> messages,
+                       List<MessageDefinition> sharedMessages) {
+        this.enums = Collections.unmodifiableList(enums);
+        this.messages = Collections.unmodifiableList(messages);
+        this.sharedMessages = Collections.unmodifiableList(sharedMessages);
+        for (EnumDefinition enumDefinition : enums) {
+            enumsByJavaName.put(enumDefinition.getJavaName(), enumDefinition);
+        }
+        for (MessageDefinition message : messages) {
+            messagesByJavaName.put(message.getJavaName(), message);
+        }
+        for (MessageDefinition message : sharedMessages) {
+            sharedMessagesByName.put(message.getName(), message);
+        }
+    }
+
+    public List<EnumDefinition> getEnums() {
+        return enums;
+    }
+
+    public List<MessageDefinition> getMessages() {
+        return messages;
+    }
+
+    public EnumDefinition getEnum(String javaName) {
+        return enumsByJavaName.get(javaName);
+    }
+
+    public MessageDefinition getMessage(String javaName) {
+        return messagesByJavaName.get(javaName);
+    }
+
+    // Top-level helper messages without a Java class, used by fields of any message (e.g. the
+    // FlatArray_ messages of flattened arrays), sorted by name. They only hold scalars.
+    public List<MessageDefinition> getSharedMessages() {
+        return sharedMessages;
+    }
+
+    public MessageDefinition getSharedMessage(String name) {
+        return sharedMessagesByName.get(name);
+    }
+}
@@ -0,0 +1,428 @@
+package fr.bl.pojo2proto.source;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.nodeTypes.NodeWithModifiers;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.types.ResolvedReferenceType;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import fr.bl.pojo2proto.ClassMetadata;
+import fr.bl.pojo2proto.ClassMetadataCache;
+import fr.bl.pojo2proto.ClassResolver;
+import fr.bl.pojo2proto.FieldMetadata;
+import fr.bl.pojo2proto.ReflectionClassResolver;
+import fr.bl.pojo2proto.TypeRef;
+
+// Discovers DTOs straight from .java source trees, so schemas can be generated before compilation.
+// Files are parsed in parallel; field types are then resolved with the JavaParser symbol solver
+// (source roots + JDK). The symbol solver is not thread-safe, so resolution is serialized, but
+// each class is resolved only once.
+public class SourceTreeScanner implements ClassResolver {
+    private static final String JAVA_EXTENSION = ".java";
+
+    private final List<String> packageFilters;
+    private final ParserConfiguration configuration;
+    private final Map<String, TypeDeclaration<?>> declarations = new ConcurrentHashMap<>();
+    private final Map<String, Optional<ClassMetadata>> metadata = new ConcurrentHashMap<>();
+    private final Collection<String> warnings = new ConcurrentSkipListSet<>();
+    private final Object resolutionLock = new Object();
+
+    // sourceRoots: roots of package hierarchies (e.g. src/main/java); packageFilters: package prefixes
+    // of the roots (empty = every type); parallelism: number of parsing threads
+    public SourceTreeScanner(List<Path> sourceRoots, List<String> packageFilters, int parallelism) throws IOException {
+        this.packageFilters = new ArrayList<>(packageFilters);
+
+        CombinedTypeSolver typeSolver = new CombinedTypeSolver(new ReflectionTypeSolver());
+        for (Path root : sourceRoots) {
+            typeSolver.add(new JavaParserTypeSolver(root));
+        }
+        this.configuration = new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)
+                .setSymbolResolver(new JavaSymbolSolver(typeSolver));
+
+        List<Path> files = new ArrayList<>();
+        for (Path root : sourceRoots) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                files.addAll(walk.filter(file -> file.toString().endsWith(JAVA_EXTENSION)).collect(Collectors.toList()));
+            }
+        }
+        parseAll(files, Math.max(1, parallelism));
+    }
+
+    private void parseAll(List<Path> files, int parallelism) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> {
+                    parse(file);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing sources", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error parsing sources", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Collection<String> getWarnings() {
+        return new ArrayList<>(warnings);
+    }
+
+    // One parser per file: JavaParser instances are not thread-safe
+    private void parse(Path file) throws IOException {
+        ParseResult<CompilationUnit> result = new JavaParser(configuration).parse(file);
+        if (!result.isSuccessful() || !result.getResult().isPresent()) {
+            warnings.add("Skipping unparsable source " + file + ": " + result.getProblems());
+            return;
+        }
+        CompilationUnit unit = result.getResult().get();
+        String packageName = unit.getPackageDeclaration().map(declaration -> declaration.getNameAsString()).orElse("");
+        for (TypeDeclaration<?> type : unit.getTypes()) {
+            index(packageName.isEmpty() ? type.getNameAsString() : packageName + "." + type.getNameAsString(), type);
+        }
+    }
+
+    private void index(String binaryName, TypeDeclaration<?> type) {
+        declarations.putIfAbsent(binaryName, type);
+        for (BodyDeclaration<?> member : type.getMembers()) {
+            if (member instanceof TypeDeclaration) {
+                TypeDeclaration<?> nested = (TypeDeclaration<?>) member;
+                index(binaryName + "$" + nested.getNameAsString(), nested);
+            }
+        }
+    }
+
+    // Parsed types matching the package filters, sorted by name
+    public List<TypeRef> getRoots() {
+        List<TypeRef> roots = new ArrayList<>();
+        for (String name : new TreeMap<>(declarations).keySet()) {
+            if (matchesFilters(name)) {
+                roots.add(TypeRef.ofClass(name));
+            }
+        }
+        return roots;
+    }
+
+    private boolean matchesFilters(String name) {
+        if (packageFilters.isEmpty()) {
+            return true;
+        }
+        String packageName = name.lastIndexOf('.') < 0 ? "" : name.substring(0, name.lastIndexOf('.'));
+        for (String filter : packageFilters) {
+            if (packageName.equals(filter) || packageName.startsWith(filter + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public ClassMetadata resolve(TypeRef type) {
+        if (!type.isClass()) {
+            return null;
+        }
+        return metadataOf(type.getName());
+    }
+
+    @Override
+    public boolean isAssignableTo(TypeRef type, Class<?> jdkType) {
+        if (!type.isClass()) {
+            return false;
+        }
+        if (type.getName().equals(jdkType.getName())) {
+            return true;
+        }
+        TypeDeclaration<?> declaration = declarations.get(type.getName());
+        if (declaration == null) {
+            Class<?> jdkClass = ReflectionClassResolver.loadJdkClass(type.getName());
+            return jdkClass != null && jdkType.isAssignableFrom(jdkClass);
+        }
+        synchronized (resolutionLock) {
+            try {
+                for (ResolvedReferenceType ancestor : declaration.resolve().getAllAncestors()) {
+                    if (ancestor.getQualifiedName().equals(jdkType.getCanonicalName())) {
+                        return true;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Unresolvable ancestors (missing dependencies) are treated as unrelated
+            }
+            return false;
+        }
+    }
+
+    private ClassMetadata metadataOf(String name) {
+        Optional<ClassMetadata> cached = metadata.get(name);
+        if (cached == null) {
+            cached = Optional.ofNullable(buildMetadata(name));
+            Optional<ClassMetadata> raced = metadata.putIfAbsent(name, cached);
+            if (raced != null) {
+                cached = raced;
+            }
+        }
+        return cached.orElse(null);
+    }
+
+    private ClassMetadata buildMetadata(String name) {
+        TypeDeclaration<?> declaration = declarations.get(name);
+        if (declaration == null) {
+            Class<?> jdkClass = ReflectionClassResolver.loadJdkClass(name);
+            return jdkClass == null ? null : ClassMetadataCache.get(jdkClass);
+        }
+
+        synchronized (resolutionLock) {
+            TypeRef type = TypeRef.ofClass(name);
+            boolean isInterface = declaration.isClassOrInterfaceDeclaration()
+                    && declaration.asClassOrInterfaceDeclaration().isInterface();
+            List<FieldMetadata> fields = new ArrayList<>();
+            List<String> enumConstants = new ArrayList<>();
+
+            if (declaration.isEnumDeclaration()) {
+                for (EnumConstantDeclaration constant : declaration.asEnumDeclaration().getEntries()) {
+                    enumConstants.add(constant.getNameAsString());
+                }
+            }
+            if (declaration.isRecordDeclaration()) {
+                // Record components are private final fields
+                RecordDeclaration record = declaration.asRecordDeclaration();
+                for (Parameter component : record.getParameters()) {
+                    fields.add(new FieldMetadata(component.getNameAsString(), Modifier.PRIVATE | Modifier.FINAL,
+                            toTypeRef(component.getType()), type, null));
+                }
+            }
+            if (!isInterface) {
+                for (FieldDeclaration field : declaration.getFields()) {
+                    if (field.isStatic()) {
+                        continue;
+                    }
+                    for (VariableDeclarator variable : field.getVariables()) {
+                        fields.add(new FieldMetadata(variable.getNameAsString(), toModifiers(field),
+                                toTypeRef(variable.getType()), type, null));
+                    }
+                }
+            }
+
+            // Inherited fields come after the declared ones, as with reflection
+            if (declaration.isClassOrInterfaceDeclaration() && !isInterface) {
+                ClassOrInterfaceDeclaration classDeclaration = declaration.asClassOrInterfaceDeclaration();
+                if (!classDeclaration.getExtendedTypes().isEmpty()) {
+                    TypeRef superType = toTypeRef(classDeclaration.getExtendedTypes().get(0));
+                    ClassMetadata superMetadata = superType.isClass() ? metadataOf(superType.getName()) : null;
+                    if (superMetadata != null) {
+                        fields.addAll(superMetadata.getFields());
+                    }
+                }
+            }
+
+            List<TypeRef> innerClasses = new ArrayList<>();
+            for (BodyDeclaration<?> member : declaration.getMembers()) {
+                if (member instanceof TypeDeclaration && !((TypeDeclaration<?>) member).isPrivate()) {
+                    innerClasses.add(TypeRef.ofClass(name + "$" + ((TypeDeclaration<?>) member).getNameAsString()));
+                }
+            }
+
+            int modifiers = toModifiers(declaration);
+            if (isInterface) {
+                modifiers |= Modifier.INTERFACE | Modifier.ABSTRACT;
+            }
+            Set<String> methods = new TreeSet<>();
+            collectMethods(name, getPackage(name), methods);
+            return new ClassMetadata(type, modifiers, declaration.isEnumDeclaration(), fields, innerClasses,
+                    enumConstants, methods, hasNoArgConstructor(declaration));
+        }
+    }
+
+    // Instance methods of a type and its super types that code of packageName can call: public ones
+    // (interface methods are implicitly public), and non-private ones declared in that package
+    private void collectMethods(String name, String packageName, Set<String> methods) {
+        TypeDeclaration<?> declaration = declarations.get(name);
+        if (declaration == null) {
+            Class<?> jdkClass = ReflectionClassResolver.loadJdkClass(name);
+            if (jdkClass != null) {
+                methods.addAll(ClassMetadata.getPublicMethods(jdkClass));
+            }
+            return;
+        }
+        boolean isInterface = declaration.isClassOrInterfaceDeclaration()
+                && declaration.asClassOrInterfaceDeclaration().isInterface();
+        boolean samePackage = getPackage(name).equals(packageName);
+        for (MethodDeclaration method : declaration.getMethods()) {
+            if (method.isStatic() || method.isPrivate()) {
+                continue;
+            }
+            if (method.isPublic() || isInterface || samePackage) {
+                methods.add(ClassMetadata.getMethodKey(method.getNameAsString(), method.getParameters().size()));
+            }
+        }
+        if (declaration.isClassOrInterfaceDeclaration()) {
+            ClassOrInterfaceDeclaration classDeclaration = declaration.asClassOrInterfaceDeclaration();
+            List<Type> superTypes = new ArrayList<>(classDeclaration.getExtendedTypes());
+            superTypes.addAll(classDeclaration.getImplementedTypes());
+            for (Type superType : superTypes) {
+                TypeRef superRef = toTypeRef(superType);
+                if (superRef.isClass()) {
+                    collectMethods(superRef.getName(), packageName, methods);
+                }
+            }
+        } else {
+            // Enums and records extend JDK classes
+            methods.addAll(ClassMetadata.getPublicMethods(declaration.isEnumDeclaration() ? Enum.class : Record.class));
+        }
+    }
+
+    // Classes without constructors have the implicit one; non-static inner classes need their outer instance
+    private static boolean hasNoArgConstructor(TypeDeclaration<?> declaration) {
+        if (!declaration.isClassOrInterfaceDeclaration()) {
+            return false;
+        }
+        ClassOrInterfaceDeclaration classDeclaration = declaration.asClassOrInterfaceDeclaration();
+        if (classDeclaration.isInterface() || classDeclaration.isAbstract()
+                || (classDeclaration.isNestedType() && !classDeclaration.isStatic() && !isInInterface(classDeclaration))) {
+            return false;
+        }
+        if (classDeclaration.getConstructors().isEmpty()) {
+            return true;
+        }
+        for (ConstructorDeclaration constructor : classDeclaration.getConstructors()) {
+            if (constructor.getParameters().isEmpty() && !constructor.isPrivate()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Member classes of interfaces are implicitly static
+    private static boolean isInInterface(TypeDeclaration<?> declaration) {
+        return declaration.getParentNode()
+                .filter(parent -> parent instanceof ClassOrInterfaceDeclaration
+                        && ((ClassOrInterfaceDeclaration) parent).isInterface())
+                .isPresent();
+    }
+
+    private static String getPackage(String name) {
+        int lastDot = name.lastIndexOf('.');
+        return lastDot < 0 ? "" : name.substring(0, lastDot);
+    }
+
+    private static int toModifiers(NodeWithModifiers<?> node) {
+        int modifiers = 0;
+        for (com.github.javaparser.ast.Modifier modifier : node.getModifiers()) {
+            switch (modifier.getKeyword()) {
+                case PUBLIC: modifiers |= Modifier.PUBLIC; break;
+                case PROTECTED: modifiers |= Modifier.PROTECTED; break;
+                case PRIVATE: modifiers |= Modifier.PRIVATE; break;
+                case STATIC: modifiers |= Modifier.STATIC; break;
+                case FINAL: modifiers |= Modifier.FINAL; break;
+                case ABSTRACT: modifiers |= Modifier.ABSTRACT; break;
+                case TRANSIENT: modifiers |= Modifier.TRANSIENT; break;
+                case VOLATILE: modifiers |= Modifier.VOLATILE; break;
+                default: break;
+            }
+        }
+        return modifiers;
+    }
+
+    // Resolves a source type with the symbol solver; unresolvable types keep their written name
+    private TypeRef toTypeRef(Type type) {
+        try {
+            return toTypeRef(type.resolve());
+        } catch (RuntimeException e) {
+            warnings.add("Unresolved type " + type + ": " + e.getMessage());
+            return TypeRef.ofClass(type.asString());
+        }
+    }
+
+    private static TypeRef toTypeRef(ResolvedType type) {
+        if (type.isPrimitive()) {
+            return TypeRef.ofPrimitive(type.asPrimitive().describe());
+        }
+        if (type.isArray()) {
+            return TypeRef.arrayOf(toTypeRef(type.asArrayType().getComponentType()));
+        }
+        if (type.isWildcard()) {
+            return TypeRef.wildcard();
+        }
+        if (type.isTypeVariable()) {
+            return TypeRef.variable(type.asTypeParameter().getName());
+        }
+        if (type.isReferenceType()) {
+            ResolvedReferenceType reference = type.asReferenceType();
+            List<TypeRef> arguments = new ArrayList<>();
+            for (ResolvedType argument : reference.typeParametersValues()) {
+                arguments.add(toTypeRef(argument));
+            }
+            return TypeRef.ofClass(binaryName(reference), arguments);
+        }
+        throw new IllegalArgumentException("Unsupported type " + type.describe());
+    }
+
+    // com.acme.Outer.Inner -> com.acme.Outer$Inner
+    private static String binaryName(ResolvedReferenceType reference) {
+        Optional<ResolvedReferenceTypeDeclaration> declaration = reference.getTypeDeclaration();
+        if (!declaration.isPresent()) {
+            return reference.getQualifiedName();
+        }
+        String packageName = declaration.get().getPackageName();
+        String className = declaration.get().getClassName().replace('.', '$');
+        return packageName.isEmpty() ? className : packageName + "." + className;
+    }
+
+    // Parsed type names, sorted
+    public List<String> getTypeNames() {
+        List<String> names = new ArrayList<>(declarations.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,145 @@
+package fr.bl.pojo2proto.wire;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import fr.bl.pojo2proto.TypeAdapter;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+
+// A value of a class with a TypeAdapter: converted once per encoding by the sizing pass (the
+// converted value is kept in the SizeTable for the writing pass), then encoded as its scalar or as
+// its message of scalars. Decoded message fields missing from the payload get their proto3 default.
+final class AdaptedCodec extends ValueCodec {
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final TypeAdapter adapter;
+    // Scalar representation; null for a message
+    private final ValueCodec scalar;
+    // Message representation: codec, tag and default value of field number i + 1
+    private final ValueCodec[] fields;
+    private final int[] tags;
+    private final Object[] defaults;
+
+    // protoType: the scalar type of the field, which the ScalarTypeSelector may have changed
+    AdaptedCodec(TypeAdapter adapter, String protoType) {
+        super(adapter.isMessage() ? WireFormat.LEN : scalarCodec(protoType).getWireType());
+        this.adapter = adapter;
+        if (!adapter.isMessage()) {
+            this.scalar = scalarCodec(protoType);
+            this.fields = null;
+            this.tags = null;
+            this.defaults = null;
+            return;
+        }
+        List<FieldDefinition> definitions = adapter.getFields();
+        this.scalar = null;
+        this.fields = new ValueCodec[definitions.size()];
+        this.tags = new int[definitions.size()];
+        this.defaults = new Object[definitions.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = scalarCodec(definitions.get(i).getType());
+            tags[i] = WireFormat.tag(i + 1, fields[i].getWireType());
+            defaults[i] = defaultValue(definitions.get(i).getType());
+        }
+    }
+
+    // Codec of a proto scalar, over the Java type adapters exchange it as (see TypeAdapter)
+    private static ValueCodec scalarCodec(String protoType) {
+        switch (protoType) {
+            case "string":
+                return new StringCodec();
+            case "bytes":
+                return new BinaryCodec(byte[].class);
+            default:
+                ScalarEncoding encoding = ScalarEncoding.of(protoType);
+                if (encoding == null) {
+                    throw new RuntimeException("Unsupported proto scalar type " + protoType);
+                }
+                return new ScalarCodec(encoding, JavaScalar.of(defaultValue(protoType).getClass()), null);
+        }
+    }
+
+    private static Object defaultValue(String protoType) {
+        switch (protoType) {
+            case "string":
+                return "";
+            case "bytes":
+                return NO_BYTES;
+            case "double":
+                return 0d;
+            case "float":
+                return 0f;
+            case "bool":
+                return false;
+            case "int64":
+            case "uint64":
+            case "sint64":
+            case "fixed64":
+            case "sfixed64":
+                return 0L;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    int size(Object value, SizeTable sizes) {
+        Object proto = adapter.toProto(value);
+        sizes.addValue(proto);
+        if (scalar != null) {
+            return scalar.size(proto, sizes);
+        }
+        Object[] parts = (Object[]) proto;
+        int slot = sizes.reserve();
+        int bodySize = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (parts[i] != null) {
+                bodySize += WireFormat.varintSize(tags[i]) + fields[i].size(parts[i], sizes);
+            }
+        }
+        sizes.set(slot, bodySize);
+        return WireFormat.varintSize(bodySize) + bodySize;
+    }
+
+    @Override
+    void write(Object value, ByteBuffer out, SizeTable sizes) {
+        Object proto = sizes.nextValue();
+        if (scalar != null) {
+            scalar.write(proto, out, sizes);
+            return;
+        }
+        Object[] parts = (Object[]) proto;
+        WireFormat.writeVarint(out, sizes.next());
+        for (int i = 0; i < fields.length; i++) {
+            if (parts[i] != null) {
+                WireFormat.writeVarint(out, tags[i]);
+                fields[i].write(parts[i], out, sizes);
+            }
+        }
+    }
+
+    @Override
+    Object read(ByteBuffer in) {
+        if (scalar != null) {
+            return adapter.fromProto(scalar.read(in));
+        }
+        int length = (int) WireFormat.readVarint(in);
+        int end = in.position() + length;
+        Object[] parts = new Object[fields.length];
+        while (in.position() < end) {
+            int tag = (int) WireFormat.readVarint(in);
+            int index = (tag >>> 3) - 1;
+            if (index >= 0 && index < fields.length && tag == tags[index]) {
+                parts[index] = fields[index].read(in);
+            } else {
+                WireFormat.skipField(in, tag & 7);
+            }
+        }
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] == null) {
+                parts[i] = defaults[i];
+            }
+        }
+        return adapter.fromProto(parts);
+    }
+}
@@ -0,0 +1,376 @@
+package fr.bl.pojo2proto.wire;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Encodes one field of a message, reading and writing the Java field through method handles.
+// Repeated and map fields accumulate their values in a "pending" slot while a message is decoded
+// and store them once the whole message is read (finish).
+abstract class FieldCodec {
+    final int number;
+    // Index in the pending array of the message being decoded, -1 when the field needs none
+    int pendingIndex = -1;
+
+    FieldCodec(int number) {
+        this.number = number;
+    }
+
+    abstract int size(Object message, SizeTable sizes);
+
+    abstract void write(Object message, ByteBuffer out, SizeTable sizes);
+
+    abstract void read(Object message, ByteBuffer in, int wireType, Object[] pending);
+
+    void finish(Object message, Object[] pending) {
+    }
+
+    static Object get(MethodHandle getter, Object message) {
+        try {
+            return (Object) getter.invokeExact(message);
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot read field of " + message.getClass().getName(), e);
+        }
+    }
+
+    static void set(MethodHandle setter, Object message, Object value) {
+        if (setter == null) {
+            return;
+        }
+        try {
+            setter.invokeExact(message, value);
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot write field of " + message.getClass().getName(), e);
+        }
+    }
+
+    static Object newInstance(MethodHandle constructor) {
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot instantiate " + constructor.type().returnType().getName(), e);
+        }
+    }
+
+    // Reference-typed field holding one value; null values are not written
+    static final class ValueField extends FieldCodec {
+        private final int tag;
+        private final ValueCodec codec;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        // getter: (Object)Object; setter: (Object,Object)void, null for final fields
+        ValueField(int number, ValueCodec codec, MethodHandle getter, MethodHandle setter) {
+            super(number);
+            this.tag = WireFormat.tag(number, codec.getWireType());
+            this.codec = codec;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        int size(Object message, SizeTable sizes) {
+            Object value = get(getter, message);
+            return value == null ? 0 : WireFormat.varintSize(tag) + codec.size(value, sizes);
+        }
+
+        @Override
+        void write(Object message, ByteBuffer out, SizeTable sizes) {
+            Object value = get(getter, message);
+            if (value != null) {
+                WireFormat.writeVarint(out, tag);
+                codec.write(value, out, sizes);
+            }
+        }
+
+        @Override
+        void read(Object message, ByteBuffer in, int wireType, Object[] pending) {
+            set(setter, message, codec.read(in));
+        }
+    }
+
+    // Primitive field, always written. Handles are adapted to move the encoding bits as a long, so
+    // values are never boxed.
+    static final class PrimitiveField extends FieldCodec {
+        private static final MethodHandle FLOAT_BITS = converter("floatBits", long.class, float.class);
+        private static final MethodHandle DOUBLE_BITS = converter("doubleBits", long.class, double.class);
+        private static final MethodHandle BOOLEAN_BITS = converter("booleanBits", long.class, boolean.class);
+        private static final MethodHandle BITS_FLOAT = converter("bitsToFloat", float.class, long.class);
+        private static final MethodHandle BITS_DOUBLE = converter("bitsToDouble", double.class, long.class);
+        private static final MethodHandle BITS_BOOLEAN = converter("bitsToBoolean", boolean.class, long.class);
+
+        private final int tag;
+        private final int tagSize;
+        private final ScalarEncoding encoding;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        // getter/setter: unreflected handles of the field, setter null for final fields
+        PrimitiveField(int number, ScalarEncoding encoding, MethodHandle getter, MethodHandle setter) {
+            super(number);
+            this.tag = WireFormat.tag(number, encoding.getWireType());
+            this.tagSize = WireFormat.varintSize(tag);
+            this.encoding = encoding;
+            Class<?> type = getter.type().returnType();
+            this.getter = adaptGetter(getter, type);
+            this.setter = setter == null ? null : adaptSetter(setter, type);
+        }
+
+        private static MethodHandle converter(String name, Class<?> returnType, Class<?> parameterType) {
+            try {
+                return MethodHandles.lookup().findStatic(PrimitiveField.class, name,
+                        MethodType.methodType(returnType, parameterType));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Missing converter " + name, e);
+            }
+        }
+
+        // (Object)long
+        private static MethodHandle adaptGetter(MethodHandle getter, Class<?> type) {
+            if (type == float.class) {
+                getter = MethodHandles.filterReturnValue(getter, FLOAT_BITS);
+            } else if (type == double.class) {
+                getter = MethodHandles.filterReturnValue(getter, DOUBLE_BITS);
+            } else if (type == boolean.class) {
+                getter = MethodHandles.filterReturnValue(getter, BOOLEAN_BITS);
+            }
+            return getter.asType(MethodType.methodType(long.class, Object.class));
+        }
+
+        // (Object,long)void
+        private static MethodHandle adaptSetter(MethodHandle setter, Class<?> type) {
+            if (type == float.class) {
+                setter = MethodHandles.filterArguments(setter, 1, BITS_FLOAT);
+            } else if (type == double.class) {
+                setter = MethodHandles.filterArguments(setter, 1, BITS_DOUBLE);
+            } else if (type == boolean.class) {
+                setter = MethodHandles.filterArguments(setter, 1, BITS_BOOLEAN);
+            }
+            // Narrowing long -> int/short/char
+            return MethodHandles.explicitCastArguments(setter,
+                    MethodType.methodType(void.class, Object.class, long.class));
+        }
+
+        private static long floatBits(float value) {
+            return Float.floatToRawIntBits(value);
+        }
+
+        private static long doubleBits(double value) {
+            return Double.doubleToRawLongBits(value);
+        }
+
+        private static long booleanBits(boolean value) {
+            return value ? 1 : 0;
+        }
+
+        private static float bitsToFloat(long bits) {
+            return Float.intBitsToFloat((int) bits);
+        }
+
+        private static double bitsToDouble(long bits) {
+            return Double.longBitsToDouble(bits);
+        }
+
+        private static boolean bitsToBoolean(long bits) {
+            return bits != 0;
+        }
+
+        private long bits(Object message) {
+            try {
+                return (long) getter.invokeExact(message);
+            } catch (Throwable e) {
+                throw new RuntimeException("Cannot read field of " + message.getClass().getName(), e);
+            }
+        }
+
+        @Override
+        int size(Object message, SizeTable sizes) {
+            return tagSize + encoding.size(bits(message));
+        }
+
+        @Override
+        void write(Object message, ByteBuffer out, SizeTable sizes) {
+            WireFormat.writeVarint(out, tag);
+            encoding.write(out, bits(message));
+        }
+
+        @Override
+        void read(Object message, ByteBuffer in, int wireType, Object[] pending) {
+            long bits = encoding.read(in);
+            if (setter == null) {
+                return;
+            }
+            try {
+                setter.invokeExact(message, bits);
+            } catch (Throwable e) {
+                throw new RuntimeException("Cannot write field of " + message.getClass().getName(), e);
+            }
+        }
+    }
+
+    // Collection or array field
+    static final class RepeatedField extends FieldCodec {
+        private final RepeatedValues values;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final MethodHandle collectionConstructor;
+
+        // collectionConstructor: ()Object constructor of the collection, null for arrays
+        RepeatedField(int number, RepeatedValues values, MethodHandle getter, MethodHandle setter,
+                      MethodHandle collectionConstructor) {
+            super(number);
+            this.values = values;
+            this.getter = getter;
+            this.setter = setter;
+            this.collectionConstructor = collectionConstructor;
+        }
+
+        @Override
+        int size(Object message, SizeTable sizes) {
+            Object container = get(getter, message);
+            return container == null ? 0 : values.size(container, sizes);
+        }
+
+        @Override
+        void write(Object message, ByteBuffer out, SizeTable sizes) {
+            Object container = get(getter, message);
+            if (container != null) {
+                values.write(container, out, sizes);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void read(Object message, ByteBuffer in, int wireType, Object[] pending) {
+            Object container = pending[pendingIndex];
+            if (container == null) {
+                if (values.isPrimitiveArray()) {
+                    container = new RepeatedValues.PrimitiveRun();
+                } else {
+                    container = collectionConstructor != null ? newInstance(collectionConstructor) : new ArrayList<>();
+                }
+                pending[pendingIndex] = container;
+            }
+            if (container instanceof RepeatedValues.PrimitiveRun) {
+                values.read(in, wireType, (RepeatedValues.PrimitiveRun) container);
+            } else {
+                values.read(in, wireType, (Collection<Object>) container);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void finish(Object message, Object[] pending) {
+            Object container = pending[pendingIndex];
+            if (container instanceof RepeatedValues.PrimitiveRun) {
+                set(setter, message, values.toArray((RepeatedValues.PrimitiveRun) container));
+            } else if (container != null) {
+                set(setter, message, collectionConstructor != null ? container
+                        : values.toArray((List<Object>) container));
+            }
+        }
+    }
+
+    // Map field: one length-delimited entry { key = 1; value = 2 } per non-null key and value
+    static final class MapField extends FieldCodec {
+        private final int tag;
+        private final int tagSize;
+        private final ValueCodec keyCodec;
+        private final ValueCodec valueCodec;
+        private final int keyTag;
+        private final int valueTag;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final MethodHandle mapConstructor;
+
+        MapField(int number, ValueCodec keyCodec, ValueCodec valueCodec, MethodHandle getter, MethodHandle setter,
+                 MethodHandle mapConstructor) {
+            super(number);
+            this.tag = WireFormat.tag(number, WireFormat.LEN);
+            this.tagSize = WireFormat.varintSize(tag);
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.keyTag = WireFormat.tag(1, keyCodec.getWireType());
+            this.valueTag = WireFormat.tag(2, valueCodec.getWireType());
+            this.getter = getter;
+            this.setter = setter;
+            this.mapConstructor = mapConstructor;
+        }
+
+        @Override
+        int size(Object message, SizeTable sizes) {
+            Map<?, ?> map = (Map<?, ?>) get(getter, message);
+            if (map == null) {
+                return 0;
+            }
+            int size = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                int slot = sizes.reserve();
+                // Both entry tags are single-byte
+                int entrySize = 2 + keyCodec.size(entry.getKey(), sizes) + valueCodec.size(entry.getValue(), sizes);
+                sizes.set(slot, entrySize);
+                size += tagSize + WireFormat.varintSize(entrySize) + entrySize;
+            }
+            return size;
+        }
+
+        @Override
+        void write(Object message, ByteBuffer out, SizeTable sizes) {
+            Map<?, ?> map = (Map<?, ?>) get(getter, message);
+            if (map == null) {
+                return;
+            }
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                WireFormat.writeVarint(out, tag);
+                WireFormat.writeVarint(out, sizes.next());
+                out.put((byte) keyTag);
+                keyCodec.write(entry.getKey(), out, sizes);
+                out.put((byte) valueTag);
+                valueCodec.write(entry.getValue(), out, sizes);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void read(Object message, ByteBuffer in, int wireType, Object[] pending) {
+            Map<Object, Object> map = (Map<Object, Object>) pending[pendingIndex];
+            if (map == null) {
+                map = (Map<Object, Object>) newInstance(mapConstructor);
+                pending[pendingIndex] = map;
+            }
+            int length = (int) WireFormat.readVarint(in);
+            int end = in.position() + length;
+            Object key = null;
+            Object value = null;
+            while (in.position() < end) {
+                int entryTag = (int) WireFormat.readVarint(in);
+                if (entryTag == keyTag) {
+                    key = keyCodec.read(in);
+                } else if (entryTag == valueTag) {
+                    value = valueCodec.read(in);
+                } else {
+                    WireFormat.skipField(in, entryTag & 7);
+                }
+            }
+            map.put(key, value);
+        }
+
+        @Override
+        void finish(Object message, Object[] pending) {
+            if (pending[pendingIndex] != null) {
+                set(setter, message, pending[pendingIndex]);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package fr.bl.pojo2proto.wire;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+
+// A rectangular multi-dimensional primitive array (int[][], double[][][], ...) as a shared
+// FlatArray_ message { repeated uint32 dimensions = 1; repeated <type> values = 2; }: the size of each
+// dimension, then every value in row-major order as one packed run, the innermost rows copied in bulk
+// when they can be (see RepeatedValues). Jagged arrays and null rows cannot be encoded.
+final class FlatArrayCodec extends ValueCodec {
+    private static final int DIMENSIONS = 1;
+    private static final int VALUES = 2;
+    private static final int DIMENSIONS_TAG = WireFormat.tag(DIMENSIONS, WireFormat.LEN);
+    private static final int VALUES_TAG = WireFormat.tag(VALUES, WireFormat.LEN);
+
+    private final Class<?> arrayType;
+    private final Class<?> leafType;
+    private final int rank;
+    private final RepeatedValues dimensions;
+    private final RepeatedValues values;
+
+    // leaf: codec of the values; arrayType: the Java array type of the field, e.g. double[][][]
+    FlatArrayCodec(ValueCodec.ScalarCodec leaf, Class<?> arrayType) {
+        super(WireFormat.LEN);
+        Class<?> component = arrayType;
+        int dimensionCount = 0;
+        while (component.isArray()) {
+            component = component.getComponentType();
+            dimensionCount++;
+        }
+        this.arrayType = arrayType;
+        this.leafType = component;
+        this.rank = dimensionCount;
+        this.dimensions = new RepeatedValues(DIMENSIONS,
+                new ValueCodec.ScalarCodec(ScalarEncoding.UINT32, ValueCodec.JavaScalar.INT, null), int.class);
+        this.values = new RepeatedValues(VALUES, leaf, leafType);
+    }
+
+    // The body size and the values payload are kept in the size table
+    @Override
+    int size(Object value, SizeTable sizes) {
+        int bodySlot = sizes.reserve();
+        int valuesSlot = sizes.reserve();
+        int[] shape = shape(value);
+        int valuesPayload = valuesPayload(value, 0, shape);
+        int dimensionsPayload = dimensions.packedSize(shape);
+        int bodySize = WireFormat.varintSize(DIMENSIONS_TAG) + WireFormat.varintSize(dimensionsPayload)
+                + dimensionsPayload;
+        if (valuesPayload > 0) {
+            bodySize += WireFormat.varintSize(VALUES_TAG) + WireFormat.varintSize(valuesPayload) + valuesPayload;
+        }
+        sizes.set(bodySlot, bodySize);
+        sizes.set(valuesSlot, valuesPayload);
+        return WireFormat.varintSize(bodySize) + bodySize;
+    }
+
+    @Override
+    void write(Object value, ByteBuffer out, SizeTable sizes) {
+        WireFormat.writeVarint(out, sizes.next());
+        int valuesPayload = sizes.next();
+        int[] shape = shape(value);
+        WireFormat.writeVarint(out, DIMENSIONS_TAG);
+        WireFormat.writeVarint(out, dimensions.packedSize(shape));
+        dimensions.writePacked(shape, out);
+        if (valuesPayload > 0) {
+            WireFormat.writeVarint(out, VALUES_TAG);
+            WireFormat.writeVarint(out, valuesPayload);
+            writeValues(value, 0, out);
+        }
+    }
+
+    // Sizes of the dimensions, read along the first rows; an empty dimension hides the next ones
+    private int[] shape(Object array) {
+        int[] shape = new int[rank];
+        Object row = array;
+        for (int depth = 0; depth < rank && row != null; depth++) {
+            shape[depth] = Array.getLength(row);
+            row = shape[depth] > 0 && depth < rank - 1 ? ((Object[]) row)[0] : null;
+        }
+        return shape;
+    }
+
+    // Checks that every row has the size of its dimension while summing the payloads of the innermost rows
+    private int valuesPayload(Object array, int depth, int[] shape) {
+        if (array == null || Array.getLength(array) != shape[depth]) {
+            throw new RuntimeException("Cannot flatten a jagged " + arrayType.getSimpleName()
+                    + " or one with null rows");
+        }
+        if (depth == rank - 1) {
+            return values.packedSize(array);
+        }
+        int payload = 0;
+        for (Object row : (Object[]) array) {
+            payload += valuesPayload(row, depth + 1, shape);
+        }
+        return payload;
+    }
+
+    private void writeValues(Object array, int depth, ByteBuffer out) {
+        if (depth == rank - 1) {
+            values.writePacked(array, out);
+            return;
+        }
+        for (Object row : (Object[]) array) {
+            writeValues(row, depth + 1, out);
+        }
+    }
+
+    @Override
+    Object read(ByteBuffer in) {
+        int length = (int) WireFormat.readVarint(in);
+        int end = in.position() + length;
+        RepeatedValues.PrimitiveRun shape = new RepeatedValues.PrimitiveRun();
+        RepeatedValues.PrimitiveRun flat = new RepeatedValues.PrimitiveRun();
+        while (in.position() < end) {
+            int tag = (int) WireFormat.readVarint(in);
+            if (tag >>> 3 == DIMENSIONS) {
+                dimensions.read(in, tag & 7, shape);
+            } else if (tag >>> 3 == VALUES) {
+                values.read(in, tag & 7, flat);
+            } else {
+                WireFormat.skipField(in, tag & 7);
+            }
+        }
+
+        int[] dimensionSizes = (int[]) dimensions.toArray(shape);
+        long expected = dimensionSizes.length == rank ? 1 : -1;
+        for (int i = 0; i < dimensionSizes.length && expected >= 0; i++) {
+            expected = dimensionSizes[i] < 0 ? -1 : expected * dimensionSizes[i];
+        }
+        if (expected != flat.count) {
+            throw new RuntimeException("Cannot decode " + arrayType.getSimpleName() + ": "
+                    + dimensionSizes.length + " dimensions and " + flat.count + " values do not match");
+        }
+        Object array = Array.newInstance(leafType, dimensionSizes);
+        if (flat.count > 0) {
+            fill(array, 0, flat.array, 0);
+        }
+        return array;
+    }
+
+    // Copies the flat values into the innermost rows, one System.arraycopy per row; returns the next offset
+    private int fill(Object array, int depth, Object flat, int offset) {
+        if (depth == rank - 1) {
+            int length = Array.getLength(array);
+            System.arraycopy(flat, offset, array, 0, length);
+            return offset + length;
+        }
+        for (Object row : (Object[]) array) {
+            offset = fill(row, depth + 1, flat, offset);
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,103 @@
+package fr.bl.pojo2proto.wire;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Codec of a message class. Codecs are created first and given their fields afterwards (init), so
+// that cyclic class graphs can be compiled.
+final class MessageCodec extends ValueCodec {
+    private final Class<?> type;
+    private final MethodHandle constructor;
+    private FieldCodec[] fields;
+    private FieldCodec[] fieldsByNumber;
+    private int pendingCount;
+
+    // constructor: ()Object no-arg constructor, null when the class has none (it can only be encoded)
+    MessageCodec(Class<?> type, MethodHandle constructor) {
+        super(WireFormat.LEN);
+        this.type = type;
+        this.constructor = constructor;
+    }
+
+    void init(List<FieldCodec> fieldCodecs) {
+        int maxNumber = 0;
+        for (FieldCodec field : fieldCodecs) {
+            maxNumber = Math.max(maxNumber, field.number);
+        }
+        fields = fieldCodecs.toArray(new FieldCodec[0]);
+        fieldsByNumber = new FieldCodec[maxNumber + 1];
+        for (FieldCodec field : fields) {
+            fieldsByNumber[field.number] = field;
+            if (field instanceof FieldCodec.RepeatedField || field instanceof FieldCodec.MapField) {
+                field.pendingIndex = pendingCount++;
+            }
+        }
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    @Override
+    int size(Object value, SizeTable sizes) {
+        int slot = sizes.reserve();
+        int bodySize = bodySize(value, sizes);
+        sizes.set(slot, bodySize);
+        return WireFormat.varintSize(bodySize) + bodySize;
+    }
+
+    int bodySize(Object message, SizeTable sizes) {
+        int size = 0;
+        for (FieldCodec field : fields) {
+            size += field.size(message, sizes);
+        }
+        return size;
+    }
+
+    @Override
+    void write(Object value, ByteBuffer out, SizeTable sizes) {
+        WireFormat.writeVarint(out, sizes.next());
+        writeBody(value, out, sizes);
+    }
+
+    void writeBody(Object message, ByteBuffer out, SizeTable sizes) {
+        for (FieldCodec field : fields) {
+            field.write(message, out, sizes);
+        }
+    }
+
+    @Override
+    Object read(ByteBuffer in) {
+        int length = (int) WireFormat.readVarint(in);
+        return readBody(in, in.position() + length);
+    }
+
+    // Reads the fields up to end; unknown fields are skipped
+    Object readBody(ByteBuffer in, int end) {
+        if (constructor == null) {
+            throw new RuntimeException("Cannot decode " + type.getName() + ": no no-arg constructor");
+        }
+        Object message = FieldCodec.newInstance(constructor);
+        Object[] pending = pendingCount == 0 ? null : new Object[pendingCount];
+        while (in.position() < end) {
+            int tag = (int) WireFormat.readVarint(in);
+            int number = tag >>> 3;
+            int wireType = tag & 7;
+            FieldCodec field = number < fieldsByNumber.length ? fieldsByNumber[number] : null;
+            if (field == null) {
+                WireFormat.skipField(in, wireType);
+            } else {
+                field.read(message, in, wireType, pending);
+            }
+        }
+        if (pending != null) {
+            for (FieldCodec field : fields) {
+                if (field.pendingIndex >= 0) {
+                    field.finish(message, pending);
+                }
+            }
+        }
+        return message;
+    }
+}
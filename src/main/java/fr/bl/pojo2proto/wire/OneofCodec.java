@@ -0,0 +1,88 @@
+package fr.bl.pojo2proto.wire;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A value of a polymorphic field, i.e. a Oneof_ wrapper message { oneof value { ... } } holding one
+// field per subtype. A value is written as the field of its class, or of its nearest superclass with
+// one (anonymous subclasses...); values of other classes cannot be encoded. Read back as the value of
+// the last subtype field of the payload, null when it has none (e.g. a subtype this side does not know).
+final class OneofCodec extends ValueCodec {
+    private final String name;
+    private final Map<Class<?>, Variant> byClass = new HashMap<>();
+    private final Variant[] byNumber;
+
+    private static final class Variant {
+        final int tag;
+        final ValueCodec codec;
+
+        Variant(int tag, ValueCodec codec) {
+            this.tag = tag;
+            this.codec = codec;
+        }
+    }
+
+    // name: the wrapper message, for error messages; types, numbers and codecs: one entry per subtype
+    OneofCodec(String name, List<Class<?>> types, List<Integer> numbers, List<ValueCodec> codecs) {
+        super(WireFormat.LEN);
+        this.name = name;
+        int maxNumber = 0;
+        for (int number : numbers) {
+            maxNumber = Math.max(maxNumber, number);
+        }
+        byNumber = new Variant[maxNumber + 1];
+        for (int i = 0; i < types.size(); i++) {
+            ValueCodec codec = codecs.get(i);
+            Variant variant = new Variant(WireFormat.tag(numbers.get(i), codec.getWireType()), codec);
+            byClass.put(types.get(i), variant);
+            byNumber[numbers.get(i)] = variant;
+        }
+    }
+
+    private Variant variantOf(Object value) {
+        for (Class<?> type = value.getClass(); type != null; type = type.getSuperclass()) {
+            Variant variant = byClass.get(type);
+            if (variant != null) {
+                return variant;
+            }
+        }
+        throw new RuntimeException("No subtype field in " + name + " for " + value.getClass().getName());
+    }
+
+    @Override
+    int size(Object value, SizeTable sizes) {
+        Variant variant = variantOf(value);
+        int slot = sizes.reserve();
+        int bodySize = WireFormat.varintSize(variant.tag) + variant.codec.size(value, sizes);
+        sizes.set(slot, bodySize);
+        return WireFormat.varintSize(bodySize) + bodySize;
+    }
+
+    @Override
+    void write(Object value, ByteBuffer out, SizeTable sizes) {
+        Variant variant = variantOf(value);
+        WireFormat.writeVarint(out, sizes.next());
+        WireFormat.writeVarint(out, variant.tag);
+        variant.codec.write(value, out, sizes);
+    }
+
+    @Override
+    Object read(ByteBuffer in) {
+        int length = (int) WireFormat.readVarint(in);
+        int end = in.position() + length;
+        Object value = null;
+        while (in.position() < end) {
+            int tag = (int) WireFormat.readVarint(in);
+            int number = tag >>> 3;
+            Variant variant = number < byNumber.length ? byNumber[number] : null;
+            if (variant != null && variant.tag == tag) {
+                value = variant.codec.read(in);
+            } else {
+                WireFormat.skipField(in, tag & 7);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,331 @@
+package fr.bl.pojo2proto.wire;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+// The values of one repeated field, held by a Collection or an array. Packable elements are written
+// packed (one length-delimited run), others one tagged value per element; null elements are skipped
+// unless the element codec accepts them. Primitive arrays are written and read without boxing, and
+// fixed-width ones (double[], float[], fixed int[]/long[]) copied in bulk through view buffers.
+final class RepeatedValues {
+    // Primitive array being decoded: values are appended at count, the array grows as needed
+    static final class PrimitiveRun {
+        Object array;
+        int count;
+    }
+
+    private final ValueCodec element;
+    private final ValueCodec.ScalarCodec scalar;
+    private final boolean packed;
+    private final int tag;
+    private final int tagSize;
+    private final Class<?> arrayComponent;
+
+    // arrayComponent: component type when the values are held by an array, null for collections
+    RepeatedValues(int number, ValueCodec element, Class<?> arrayComponent) {
+        this.element = element;
+        this.scalar = element instanceof ValueCodec.ScalarCodec ? (ValueCodec.ScalarCodec) element : null;
+        this.packed = element.isPackable();
+        this.tag = WireFormat.tag(number, packed ? WireFormat.LEN : element.getWireType());
+        this.tagSize = WireFormat.varintSize(tag);
+        this.arrayComponent = arrayComponent;
+    }
+
+    // True when the values are held by a primitive array, decoded through a PrimitiveRun
+    boolean isPrimitiveArray() {
+        return arrayComponent != null && arrayComponent.isPrimitive() && scalar != null;
+    }
+
+    int size(Object container, SizeTable sizes) {
+        int count = count(container);
+        if (count == 0) {
+            return 0;
+        }
+        if (!packed) {
+            return payload(container, count, sizes, tagSize);
+        }
+        int slot = sizes.reserve();
+        int payload = payload(container, count, sizes, 0);
+        sizes.set(slot, payload);
+        return tagSize + WireFormat.varintSize(payload) + payload;
+    }
+
+    void write(Object container, ByteBuffer out, SizeTable sizes) {
+        int count = count(container);
+        if (count == 0) {
+            return;
+        }
+        if (packed) {
+            WireFormat.writeVarint(out, tag);
+            WireFormat.writeVarint(out, sizes.next());
+        }
+        if (packed && writeBulk(container, count, out)) {
+            return;
+        }
+        int elementTag = packed ? -1 : tag;
+        if (container.getClass().isArray()) {
+            if (container instanceof Object[]) {
+                for (Object value : (Object[]) container) {
+                    writeElement(value, out, sizes, elementTag);
+                }
+            } else if (scalar != null) {
+                for (int i = 0; i < count; i++) {
+                    scalar.getEncoding().write(out, bits(container, i));
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    writeElement(Array.get(container, i), out, sizes, elementTag);
+                }
+            }
+        } else if (container instanceof List && container instanceof RandomAccess) {
+            List<?> list = (List<?>) container;
+            for (int i = 0; i < count; i++) {
+                writeElement(list.get(i), out, sizes, elementTag);
+            }
+        } else {
+            for (Object value : (Collection<?>) container) {
+                writeElement(value, out, sizes, elementTag);
+            }
+        }
+    }
+
+    // Packed payload of a primitive array, without tag nor length: flattened arrays concatenate the
+    // payloads of their innermost rows into one run
+    int packedSize(Object array) {
+        return payload(array, Array.getLength(array), null, 0);
+    }
+
+    void writePacked(Object array, ByteBuffer out) {
+        int count = Array.getLength(array);
+        if (!writeBulk(array, count, out)) {
+            for (int i = 0; i < count; i++) {
+                scalar.getEncoding().write(out, bits(array, i));
+            }
+        }
+    }
+
+    // Copies a fixed-width primitive array at once; false when the array needs per-value encoding
+    private boolean writeBulk(Object container, int count, ByteBuffer out) {
+        if (scalar == null || !isBulkCopyable(container)) {
+            return false;
+        }
+        int start = out.position();
+        if (container instanceof double[]) {
+            out.asDoubleBuffer().put((double[]) container);
+        } else if (container instanceof float[]) {
+            out.asFloatBuffer().put((float[]) container);
+        } else if (container instanceof long[]) {
+            out.asLongBuffer().put((long[]) container);
+        } else {
+            out.asIntBuffer().put((int[]) container);
+        }
+        // View buffers do not move the position of the buffer they were created from
+        out.position(start + count * scalar.getEncoding().getFixedSize());
+        return true;
+    }
+
+    // Java arrays whose memory layout (little-endian) is the packed encoding of their field
+    private boolean isBulkCopyable(Object array) {
+        int fixedSize = scalar.getEncoding().getFixedSize();
+        if (fixedSize == 8) {
+            return array instanceof double[] || array instanceof long[];
+        }
+        return fixedSize == 4 && (array instanceof float[] || array instanceof int[]);
+    }
+
+    private void writeElement(Object value, ByteBuffer out, SizeTable sizes, int elementTag) {
+        if (value == null && !element.acceptsNull()) {
+            return;
+        }
+        if (elementTag >= 0) {
+            WireFormat.writeVarint(out, elementTag);
+        }
+        element.write(value, out, sizes);
+    }
+
+    // Sum of the element sizes, each with extraPerElement added (the tag when not packed)
+    private int payload(Object container, int count, SizeTable sizes, int extraPerElement) {
+        int payload = 0;
+        if (container.getClass().isArray()) {
+            if (container instanceof Object[]) {
+                for (Object value : (Object[]) container) {
+                    payload += elementSize(value, sizes, extraPerElement);
+                }
+            } else if (scalar != null && scalar.getEncoding().getFixedSize() > 0) {
+                payload = count * (extraPerElement + scalar.getEncoding().getFixedSize());
+            } else if (scalar != null) {
+                for (int i = 0; i < count; i++) {
+                    payload += extraPerElement + scalar.getEncoding().size(bits(container, i));
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    payload += elementSize(Array.get(container, i), sizes, extraPerElement);
+                }
+            }
+        } else if (container instanceof List && container instanceof RandomAccess) {
+            List<?> list = (List<?>) container;
+            for (int i = 0; i < count; i++) {
+                payload += elementSize(list.get(i), sizes, extraPerElement);
+            }
+        } else {
+            for (Object value : (Collection<?>) container) {
+                payload += elementSize(value, sizes, extraPerElement);
+            }
+        }
+        return payload;
+    }
+
+    private int elementSize(Object value, SizeTable sizes, int extraPerElement) {
+        if (value == null && !element.acceptsNull()) {
+            return 0;
+        }
+        return extraPerElement + element.size(value, sizes);
+    }
+
+    // Reads one occurrence of the field: a packed run or a single element
+    void read(ByteBuffer in, int wireType, Collection<Object> into) {
+        if (wireType == WireFormat.LEN && packed) {
+            int length = (int) WireFormat.readVarint(in);
+            int end = in.position() + length;
+            while (in.position() < end) {
+                into.add(element.read(in));
+            }
+        } else {
+            into.add(element.read(in));
+        }
+    }
+
+    // Reads one occurrence of a primitive array field into run, without boxing
+    void read(ByteBuffer in, int wireType, PrimitiveRun run) {
+        ScalarEncoding encoding = scalar.getEncoding();
+        if (wireType != WireFormat.LEN || !packed) {
+            grow(run, 1);
+            setBits(run.array, run.count++, encoding.read(in));
+            return;
+        }
+        int length = (int) WireFormat.readVarint(in);
+        int end = in.position() + length;
+        if (encoding.getFixedSize() > 0) {
+            int values = length / encoding.getFixedSize();
+            grow(run, values);
+            if (isBulkCopyable(run.array)) {
+                readBulk(in, run, values);
+                in.position(end);
+                return;
+            }
+        }
+        while (in.position() < end) {
+            grow(run, 1);
+            setBits(run.array, run.count++, encoding.read(in));
+        }
+    }
+
+    private static void readBulk(ByteBuffer in, PrimitiveRun run, int values) {
+        if (run.array instanceof double[]) {
+            in.asDoubleBuffer().get((double[]) run.array, run.count, values);
+        } else if (run.array instanceof float[]) {
+            in.asFloatBuffer().get((float[]) run.array, run.count, values);
+        } else if (run.array instanceof long[]) {
+            in.asLongBuffer().get((long[]) run.array, run.count, values);
+        } else {
+            in.asIntBuffer().get((int[]) run.array, run.count, values);
+        }
+        run.count += values;
+    }
+
+    // Makes room for more values, doubling the capacity like an ArrayList
+    private void grow(PrimitiveRun run, int more) {
+        int capacity = run.array == null ? 0 : Array.getLength(run.array);
+        if (run.count + more <= capacity) {
+            return;
+        }
+        Object grown = Array.newInstance(arrayComponent, Math.max(run.count + more, capacity * 2));
+        if (run.array != null) {
+            System.arraycopy(run.array, 0, grown, 0, run.count);
+        }
+        run.array = grown;
+    }
+
+    // Array of exactly the decoded values
+    Object toArray(PrimitiveRun run) {
+        if (run.array != null && Array.getLength(run.array) == run.count) {
+            return run.array;
+        }
+        Object array = Array.newInstance(arrayComponent, run.count);
+        if (run.count > 0) {
+            System.arraycopy(run.array, 0, array, 0, run.count);
+        }
+        return array;
+    }
+
+    // Array holding the decoded values, for array-backed fields
+    Object toArray(List<Object> values) {
+        Object array = Array.newInstance(arrayComponent, values.size());
+        if (array instanceof Object[]) {
+            return values.toArray((Object[]) array);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            Array.set(array, i, values.get(i));
+        }
+        return array;
+    }
+
+    private static int count(Object container) {
+        if (container instanceof Collection) {
+            return ((Collection<?>) container).size();
+        }
+        if (container instanceof Object[]) {
+            return ((Object[]) container).length;
+        }
+        return Array.getLength(container);
+    }
+
+    private static void setBits(Object array, int index, long bits) {
+        if (array instanceof int[]) {
+            ((int[]) array)[index] = (int) bits;
+        } else if (array instanceof long[]) {
+            ((long[]) array)[index] = bits;
+        } else if (array instanceof double[]) {
+            ((double[]) array)[index] = Double.longBitsToDouble(bits);
+        } else if (array instanceof float[]) {
+            ((float[]) array)[index] = Float.intBitsToFloat((int) bits);
+        } else if (array instanceof boolean[]) {
+            ((boolean[]) array)[index] = bits != 0;
+        } else if (array instanceof short[]) {
+            ((short[]) array)[index] = (short) bits;
+        } else if (array instanceof char[]) {
+            ((char[]) array)[index] = (char) bits;
+        } else {
+            throw new RuntimeException("Unsupported primitive array " + array.getClass().getName());
+        }
+    }
+
+    // Encoding bits of a primitive array element
+    private static long bits(Object array, int index) {
+        if (array instanceof int[]) {
+            return ((int[]) array)[index];
+        }
+        if (array instanceof long[]) {
+            return ((long[]) array)[index];
+        }
+        if (array instanceof double[]) {
+            return Double.doubleToRawLongBits(((double[]) array)[index]);
+        }
+        if (array instanceof float[]) {
+            return Float.floatToRawIntBits(((float[]) array)[index]);
+        }
+        if (array instanceof boolean[]) {
+            return ((boolean[]) array)[index] ? 1 : 0;
+        }
+        if (array instanceof short[]) {
+            return ((short[]) array)[index];
+        }
+        if (array instanceof char[]) {
+            return ((char[]) array)[index];
+        }
+        throw new RuntimeException("Unsupported primitive array " + array.getClass().getName());
+    }
+}
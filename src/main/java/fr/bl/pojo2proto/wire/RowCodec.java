@@ -0,0 +1,68 @@
+package fr.bl.pojo2proto.wire;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// One row of a multi-dimensional array, i.e. an Array_ message { repeated items = 1; }. A null row is
+// written as an empty message.
+final class RowCodec extends ValueCodec {
+    private static final int ITEMS = 1;
+
+    private final RepeatedValues items;
+
+    // rowType: the Java array type of the row, e.g. int[] for the rows of an int[][]
+    RowCodec(ValueCodec element, Class<?> rowType) {
+        super(WireFormat.LEN);
+        this.items = new RepeatedValues(ITEMS, element, rowType.getComponentType());
+    }
+
+    @Override
+    boolean acceptsNull() {
+        return true;
+    }
+
+    @Override
+    int size(Object value, SizeTable sizes) {
+        int slot = sizes.reserve();
+        int bodySize = value == null ? 0 : items.size(value, sizes);
+        sizes.set(slot, bodySize);
+        return WireFormat.varintSize(bodySize) + bodySize;
+    }
+
+    @Override
+    void write(Object value, ByteBuffer out, SizeTable sizes) {
+        WireFormat.writeVarint(out, sizes.next());
+        if (value != null) {
+            items.write(value, out, sizes);
+        }
+    }
+
+    @Override
+    Object read(ByteBuffer in) {
+        int length = (int) WireFormat.readVarint(in);
+        int end = in.position() + length;
+        if (items.isPrimitiveArray()) {
+            RepeatedValues.PrimitiveRun run = new RepeatedValues.PrimitiveRun();
+            while (in.position() < end) {
+                int tag = (int) WireFormat.readVarint(in);
+                if (tag >>> 3 == ITEMS) {
+                    items.read(in, tag & 7, run);
+                } else {
+                    WireFormat.skipField(in, tag & 7);
+                }
+            }
+            return items.toArray(run);
+        }
+        List<Object> values = new ArrayList<>();
+        while (in.position() < end) {
+            int tag = (int) WireFormat.readVarint(in);
+            if (tag >>> 3 == ITEMS) {
+                items.read(in, tag & 7, values);
+            } else {
+                WireFormat.skipField(in, tag & 7);
+            }
+        }
+        return items.toArray(values);
+    }
+}
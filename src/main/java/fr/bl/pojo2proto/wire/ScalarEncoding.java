@@ -0,0 +1,169 @@
+package fr.bl.pojo2proto.wire;
+
+import java.nio.ByteBuffer;
+
+// Wire encoding of each proto scalar type. Values travel as raw 64-bit "bits": the integer value
+// (sign-extended for 32-bit types), IEEE bits for double/float, 0/1 for bool.
+enum ScalarEncoding {
+    INT32(WireFormat.VARINT) {
+        int size(long bits) {
+            return WireFormat.varintSize((int) bits);
+        }
+
+        void write(ByteBuffer out, long bits) {
+            WireFormat.writeVarint(out, (int) bits);
+        }
+
+        long read(ByteBuffer in) {
+            return (int) WireFormat.readVarint(in);
+        }
+    },
+    UINT32(WireFormat.VARINT) {
+        int size(long bits) {
+            return WireFormat.varintSize(bits & 0xFFFFFFFFL);
+        }
+
+        void write(ByteBuffer out, long bits) {
+            WireFormat.writeVarint(out, bits & 0xFFFFFFFFL);
+        }
+
+        long read(ByteBuffer in) {
+            return (int) WireFormat.readVarint(in);
+        }
+    },
+    SINT32(WireFormat.VARINT) {
+        int size(long bits) {
+            return WireFormat.varintSize(WireFormat.zigZag32((int) bits));
+        }
+
+        void write(ByteBuffer out, long bits) {
+            WireFormat.writeVarint(out, WireFormat.zigZag32((int) bits));
+        }
+
+        long read(ByteBuffer in) {
+            return WireFormat.unZigZag32((int) WireFormat.readVarint(in));
+        }
+    },
+    FIXED32(WireFormat.FIXED32) {
+        int size(long bits) {
+            return 4;
+        }
+
+        void write(ByteBuffer out, long bits) {
+            out.putInt((int) bits);
+        }
+
+        long read(ByteBuffer in) {
+            return in.getInt();
+        }
+    },
+    INT64(WireFormat.VARINT) {
+        int size(long bits) {
+            return WireFormat.varintSize(bits);
+        }
+
+        void write(ByteBuffer out, long bits) {
+            WireFormat.writeVarint(out, bits);
+        }
+
+        long read(ByteBuffer in) {
+            return WireFormat.readVarint(in);
+        }
+    },
+    SINT64(WireFormat.VARINT) {
+        int size(long bits) {
+            return WireFormat.varintSize(WireFormat.zigZag64(bits));
+        }
+
+        void write(ByteBuffer out, long bits) {
+            WireFormat.writeVarint(out, WireFormat.zigZag64(bits));
+        }
+
+        long read(ByteBuffer in) {
+            return WireFormat.unZigZag64(WireFormat.readVarint(in));
+        }
+    },
+    FIXED64(WireFormat.FIXED64) {
+        int size(long bits) {
+            return 8;
+        }
+
+        void write(ByteBuffer out, long bits) {
+            out.putLong(bits);
+        }
+
+        long read(ByteBuffer in) {
+            return in.getLong();
+        }
+    },
+    BOOL(WireFormat.VARINT) {
+        int size(long bits) {
+            return 1;
+        }
+
+        void write(ByteBuffer out, long bits) {
+            out.put(bits != 0 ? (byte) 1 : (byte) 0);
+        }
+
+        long read(ByteBuffer in) {
+            return WireFormat.readVarint(in) != 0 ? 1 : 0;
+        }
+    };
+
+    private final int wireType;
+
+    ScalarEncoding(int wireType) {
+        this.wireType = wireType;
+    }
+
+    int getWireType() {
+        return wireType;
+    }
+
+    // Bytes per value of the fixed-width encodings, 0 for varints
+    int getFixedSize() {
+        switch (wireType) {
+            case WireFormat.FIXED32:
+                return 4;
+            case WireFormat.FIXED64:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    abstract int size(long bits);
+
+    abstract void write(ByteBuffer out, long bits);
+
+    abstract long read(ByteBuffer in);
+
+    // Encoding of a proto scalar type name, null for string/bytes (length-delimited)
+    static ScalarEncoding of(String protoType) {
+        switch (protoType) {
+            case "int32":
+                return INT32;
+            case "uint32":
+                return UINT32;
+            case "sint32":
+                return SINT32;
+            case "fixed32":
+            case "sfixed32":
+            case "float":
+                return FIXED32;
+            case "int64":
+            case "uint64":
+                return INT64;
+            case "sint64":
+                return SINT64;
+            case "fixed64":
+            case "sfixed64":
+            case "double":
+                return FIXED64;
+            case "bool":
+                return BOOL;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package fr.bl.pojo2proto.wire;
+
+import java.util.Arrays;
+
+// Lengths computed by the sizing pass, in traversal order, read back in the same order by the
+// writing pass: every length-delimited value is measured once. Values converted by type adapters
+// are kept the same way, so each is converted once. Reused across messages.
+final class SizeTable {
+    private int[] sizes = new int[64];
+    private int count;
+    private int cursor;
+    private Object[] values = new Object[16];
+    private int valueCount;
+    private int valueCursor;
+
+    int reserve() {
+        if (count == sizes.length) {
+            int[] grown = new int[sizes.length * 2];
+            System.arraycopy(sizes, 0, grown, 0, count);
+            sizes = grown;
+        }
+        return count++;
+    }
+
+    void set(int slot, int size) {
+        sizes[slot] = size;
+    }
+
+    int next() {
+        return sizes[cursor++];
+    }
+
+    void addValue(Object value) {
+        if (valueCount == values.length) {
+            Object[] grown = new Object[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, valueCount);
+            values = grown;
+        }
+        values[valueCount++] = value;
+    }
+
+    Object nextValue() {
+        return values[valueCursor++];
+    }
+
+    // Releases the converted values of the previous message
+    void clear() {
+        count = 0;
+        cursor = 0;
+        Arrays.fill(values, 0, valueCount, null);
+        valueCount = 0;
+        valueCursor = 0;
+    }
+}
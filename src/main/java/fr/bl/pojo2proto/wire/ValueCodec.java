@@ -0,0 +1,288 @@
+package fr.bl.pojo2proto.wire;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Date;
+
+// Encodes one value (a field value, a repeated element, a map key or value). The sizing pass
+// (size) and the writing pass (write) must visit values in the same order, see SizeTable.
+abstract class ValueCodec {
+    private final int wireType;
+
+    ValueCodec(int wireType) {
+        this.wireType = wireType;
+    }
+
+    int getWireType() {
+        return wireType;
+    }
+
+    // Non length-delimited values can be packed in repeated fields
+    boolean isPackable() {
+        return wireType != WireFormat.LEN;
+    }
+
+    // Null values are skipped in repeated fields, except by codecs that encode them (empty array rows)
+    boolean acceptsNull() {
+        return false;
+    }
+
+    // Encoded size, length prefix included for length-delimited values
+    abstract int size(Object value, SizeTable sizes);
+
+    abstract void write(Object value, ByteBuffer out, SizeTable sizes);
+
+    // Reads one value, length prefix included for length-delimited values
+    abstract Object read(ByteBuffer in);
+
+    // Java side of a scalar: how a field value converts to and from the encoding bits
+    enum JavaScalar {
+        INT, SHORT, CHAR, LONG, FLOAT, DOUBLE, BOOLEAN, DATE;
+
+        static JavaScalar of(Class<?> type) {
+            if (type == int.class || type == Integer.class) {
+                return INT;
+            }
+            if (type == short.class || type == Short.class) {
+                return SHORT;
+            }
+            if (type == char.class || type == Character.class) {
+                return CHAR;
+            }
+            if (type == long.class || type == Long.class) {
+                return LONG;
+            }
+            if (type == float.class || type == Float.class) {
+                return FLOAT;
+            }
+            if (type == double.class || type == Double.class) {
+                return DOUBLE;
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return BOOLEAN;
+            }
+            if (Date.class.isAssignableFrom(type)) {
+                return DATE;
+            }
+            throw new RuntimeException("Unsupported scalar type " + type.getName());
+        }
+
+        long toBits(Object value) {
+            switch (this) {
+                case INT:
+                    return (Integer) value;
+                case SHORT:
+                    return (Short) value;
+                case CHAR:
+                    return (Character) value;
+                case LONG:
+                    return (Long) value;
+                case FLOAT:
+                    return Float.floatToRawIntBits((Float) value);
+                case DOUBLE:
+                    return Double.doubleToRawLongBits((Double) value);
+                case BOOLEAN:
+                    return (Boolean) value ? 1 : 0;
+                default:
+                    return ((Date) value).getTime();
+            }
+        }
+    }
+
+    // Numbers, booleans and Dates
+    static final class ScalarCodec extends ValueCodec {
+        private final ScalarEncoding encoding;
+        private final JavaScalar javaScalar;
+        private final MethodHandle dateConstructor;
+
+        // dateConstructor: (long) constructor of the Date class, for DATE only
+        ScalarCodec(ScalarEncoding encoding, JavaScalar javaScalar, MethodHandle dateConstructor) {
+            super(encoding.getWireType());
+            this.encoding = encoding;
+            this.javaScalar = javaScalar;
+            this.dateConstructor = dateConstructor;
+        }
+
+        ScalarEncoding getEncoding() {
+            return encoding;
+        }
+
+        JavaScalar getJavaScalar() {
+            return javaScalar;
+        }
+
+        @Override
+        int size(Object value, SizeTable sizes) {
+            return encoding.size(javaScalar.toBits(value));
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out, SizeTable sizes) {
+            encoding.write(out, javaScalar.toBits(value));
+        }
+
+        @Override
+        Object read(ByteBuffer in) {
+            return fromBits(encoding.read(in));
+        }
+
+        Object fromBits(long bits) {
+            switch (javaScalar) {
+                case INT:
+                    return (int) bits;
+                case SHORT:
+                    return (short) bits;
+                case CHAR:
+                    return (char) bits;
+                case LONG:
+                    return bits;
+                case FLOAT:
+                    return Float.intBitsToFloat((int) bits);
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits);
+                case BOOLEAN:
+                    return bits != 0;
+                default:
+                    try {
+                        return dateConstructor.invoke(bits);
+                    } catch (Throwable e) {
+                        throw new RuntimeException("Cannot create date from " + bits, e);
+                    }
+            }
+        }
+    }
+
+    static final class StringCodec extends ValueCodec {
+        StringCodec() {
+            super(WireFormat.LEN);
+        }
+
+        // The UTF-8 length is kept in the size table so the string is scanned once for sizing
+        @Override
+        int size(Object value, SizeTable sizes) {
+            int slot = sizes.reserve();
+            int length = WireFormat.utf8Length((String) value);
+            sizes.set(slot, length);
+            return WireFormat.varintSize(length) + length;
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out, SizeTable sizes) {
+            WireFormat.writeVarint(out, sizes.next());
+            WireFormat.writeUtf8(out, (String) value);
+        }
+
+        @Override
+        Object read(ByteBuffer in) {
+            return WireFormat.readUtf8(in, (int) WireFormat.readVarint(in));
+        }
+    }
+
+    // byte/Byte, mapped to a one-byte bytes value
+    static final class ByteCodec extends ValueCodec {
+        ByteCodec() {
+            super(WireFormat.LEN);
+        }
+
+        @Override
+        int size(Object value, SizeTable sizes) {
+            return 2;
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out, SizeTable sizes) {
+            out.put((byte) 1);
+            out.put((Byte) value);
+        }
+
+        @Override
+        Object read(ByteBuffer in) {
+            int length = (int) WireFormat.readVarint(in);
+            byte value = length == 0 ? 0 : in.get(in.position());
+            in.position(in.position() + length);
+            return value;
+        }
+    }
+
+    // byte[], ByteBuffer (its remaining bytes, the buffer is left untouched) and char[] (UTF-8), as one
+    // bytes value copied in bulk; see BinaryTypes
+    static final class BinaryCodec extends ValueCodec {
+        private final Class<?> javaType;
+
+        BinaryCodec(Class<?> javaType) {
+            super(WireFormat.LEN);
+            this.javaType = javaType;
+        }
+
+        // Like strings, the UTF-8 length of a char[] is kept in the size table
+        @Override
+        int size(Object value, SizeTable sizes) {
+            int length;
+            if (value instanceof byte[]) {
+                length = ((byte[]) value).length;
+            } else if (value instanceof ByteBuffer) {
+                length = ((ByteBuffer) value).remaining();
+            } else {
+                int slot = sizes.reserve();
+                length = WireFormat.utf8Length(CharBuffer.wrap((char[]) value));
+                sizes.set(slot, length);
+            }
+            return WireFormat.varintSize(length) + length;
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out, SizeTable sizes) {
+            if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                WireFormat.writeVarint(out, bytes.length);
+                out.put(bytes);
+            } else if (value instanceof ByteBuffer) {
+                ByteBuffer buffer = (ByteBuffer) value;
+                WireFormat.writeVarint(out, buffer.remaining());
+                out.put(buffer.duplicate());
+            } else {
+                WireFormat.writeVarint(out, sizes.next());
+                WireFormat.writeUtf8(out, CharBuffer.wrap((char[]) value));
+            }
+        }
+
+        @Override
+        Object read(ByteBuffer in) {
+            int length = (int) WireFormat.readVarint(in);
+            if (javaType == char[].class) {
+                return WireFormat.readUtf8(in, length).toCharArray();
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return javaType == ByteBuffer.class ? ByteBuffer.wrap(bytes) : bytes;
+        }
+    }
+
+    // Enum constants are numbered by ordinal, as in the generated proto enum
+    static final class EnumCodec extends ValueCodec {
+        private final Object[] constants;
+
+        EnumCodec(Class<?> enumType) {
+            super(WireFormat.VARINT);
+            this.constants = enumType.getEnumConstants();
+        }
+
+        @Override
+        int size(Object value, SizeTable sizes) {
+            return WireFormat.varintSize(((Enum<?>) value).ordinal());
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out, SizeTable sizes) {
+            WireFormat.writeVarint(out, ((Enum<?>) value).ordinal());
+        }
+
+        // Unknown numbers decode to null
+        @Override
+        Object read(ByteBuffer in) {
+            long number = WireFormat.readVarint(in);
+            return number >= 0 && number < constants.length ? constants[(int) number] : null;
+        }
+    }
+}
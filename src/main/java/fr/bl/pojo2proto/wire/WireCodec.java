@@ -0,0 +1,416 @@
+package fr.bl.pojo2proto.wire;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import fr.bl.pojo2proto.BinaryTypes;
+import fr.bl.pojo2proto.ClassMetadata;
+import fr.bl.pojo2proto.CollectionTypes;
+import fr.bl.pojo2proto.FieldMetadata;
+import fr.bl.pojo2proto.GenerationListener;
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.ReflectionClassResolver;
+import fr.bl.pojo2proto.TypeAdapter;
+import fr.bl.pojo2proto.TypeAdapterRegistry;
+import fr.bl.pojo2proto.TypeRef;
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.FieldKind;
+import fr.bl.pojo2proto.schema.FieldLabel;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Encodes DTOs straight to the protobuf wire format of the schema generated for them, and decodes
+// them back, without protoc-generated classes or intermediate message objects. The codec is compiled
+// once per SchemaModel into method handles over the DTO fields; it is immutable and thread-safe,
+// encoders are not (see WireEncoder). Fields mapped to google.protobuf.Any are neither written nor
+// read, final fields are written but not read back, and JDK classes are not encoded as messages:
+// classes with a TypeAdapter are encoded as the adapter converts them, Optional fields as their value,
+// polymorphic fields as the oneof wrapper field of their class (see SubtypeResolver).
+public final class WireCodec {
+    private final Map<Class<?>, MessageCodec> messages;
+
+    private WireCodec(Map<Class<?>, MessageCodec> messages) {
+        this.messages = messages;
+    }
+
+    // Compiles the codecs of every message of the model whose class can be loaded
+    public static WireCodec compile(SchemaModel model) {
+        return compile(model, TypeAdapterRegistry.builtIn());
+    }
+
+    // adapters: the registry of the GeneratorOptions the model was discovered with
+    public static WireCodec compile(SchemaModel model, TypeAdapterRegistry adapters) {
+        return new Compiler(model, adapters, GenerationListener.NONE).compile();
+    }
+
+    // options: the GeneratorOptions the model was discovered with; messages whose class cannot be
+    // loaded are reported to their listener
+    public static WireCodec compile(SchemaModel model, GeneratorOptions options) {
+        return new Compiler(model, options.getTypeAdapters(), options.getListener()).compile();
+    }
+
+    public WireEncoder newEncoder() {
+        return newEncoder(false);
+    }
+
+    // direct: encode into a direct buffer, e.g. to hand the bytes to a channel without a copy
+    public WireEncoder newEncoder(boolean direct) {
+        return new WireEncoder(this, direct);
+    }
+
+    // Decodes a message from the remaining bytes of the buffer, which is left at its limit
+    public <T> T decode(Class<T> type, ByteBuffer in) {
+        MessageCodec codec = codecOf(type);
+        ByteOrder order = in.order();
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return type.cast(codec.readBody(in, in.limit()));
+        } finally {
+            in.order(order);
+        }
+    }
+
+    public boolean canEncode(Class<?> type) {
+        return messages.containsKey(type);
+    }
+
+    MessageCodec codecOf(Class<?> type) {
+        MessageCodec codec = messages.get(type);
+        if (codec == null) {
+            throw new RuntimeException("No message compiled for " + type.getName());
+        }
+        return codec;
+    }
+
+    private static final class Compiler {
+        private static final MethodHandle OPTIONAL_VALUE = optionalHandle("optionalValue");
+        private static final MethodHandle OPTIONAL_OF = optionalHandle("optionalOf");
+
+        private final SchemaModel model;
+        private final TypeAdapterRegistry adapters;
+        private final GenerationListener listener;
+        private final Map<String, MessageCodec> messages = new LinkedHashMap<>();
+        private final Map<String, EnumDefinition> enums = new HashMap<>();
+        private final ValueCodec stringCodec = new ValueCodec.StringCodec();
+        private final ValueCodec byteCodec = new ValueCodec.ByteCodec();
+
+        Compiler(SchemaModel model, TypeAdapterRegistry adapters, GenerationListener listener) {
+            this.model = model;
+            this.adapters = adapters;
+            this.listener = listener;
+            for (EnumDefinition enumDefinition : model.getEnums()) {
+                enums.put(enumDefinition.getJavaName(), enumDefinition);
+            }
+        }
+
+        WireCodec compile() {
+            // Codecs first, fields second: fields may point to any message, cycles included
+            Map<MessageDefinition, ClassMetadata> compiled = new LinkedHashMap<>();
+            for (MessageDefinition message : model.getMessages()) {
+                String javaName = message.getJavaName();
+                if (javaName.startsWith("java.") || javaName.startsWith("javax.")) {
+                    continue;
+                }
+                ClassMetadata metadata = ReflectionClassResolver.INSTANCE.resolve(TypeRef.ofClass(javaName));
+                if (metadata == null) {
+                    listener.onWarning("Cannot load " + javaName + ", it will not be encoded");
+                    continue;
+                }
+                messages.put(javaName, new MessageCodec(metadata.getJavaClass(), constructor(metadata)));
+                compiled.put(message, metadata);
+            }
+
+            Map<Class<?>, MessageCodec> byClass = new HashMap<>();
+            for (Map.Entry<MessageDefinition, ClassMetadata> entry : compiled.entrySet()) {
+                MessageCodec codec = messages.get(entry.getKey().getJavaName());
+                codec.init(fields(entry.getKey(), entry.getValue()));
+                byClass.put(codec.getType(), codec);
+            }
+            return new WireCodec(byClass);
+        }
+
+        private static MethodHandle constructor(ClassMetadata metadata) {
+            Class<?> type = metadata.getJavaClass();
+            if (metadata.isAbstract() || type.isInterface()) {
+                return null;
+            }
+            try {
+                MethodHandle constructor = lookup(type).findConstructor(type, MethodType.methodType(void.class));
+                return constructor.asType(MethodType.methodType(Object.class));
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        private static MethodHandles.Lookup lookup(Class<?> type) throws IllegalAccessException {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        }
+
+        private List<FieldCodec> fields(MessageDefinition message, ClassMetadata metadata) {
+            Map<String, Field> javaFields = new HashMap<>();
+            for (FieldMetadata field : metadata.getFields()) {
+                if (field.getField() != null) {
+                    javaFields.putIfAbsent(field.getName(), field.getField());
+                }
+            }
+            Map<String, MessageDefinition> rows = new HashMap<>();
+            collectRows(message.getNestedMessages(), rows);
+
+            List<FieldCodec> fields = new ArrayList<>();
+            for (FieldDefinition definition : message.getFields()) {
+                Field javaField = javaFields.get(definition.getName());
+                if (javaField == null || definition.getKind() == FieldKind.ANY) {
+                    continue;
+                }
+                try {
+                    FieldCodec field = field(definition, javaField, rows);
+                    if (field != null) {
+                        fields.add(field);
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Cannot access " + javaField, e);
+                }
+            }
+            return fields;
+        }
+
+        private static void collectRows(List<MessageDefinition> nestedMessages, Map<String, MessageDefinition> rows) {
+            for (MessageDefinition nested : nestedMessages) {
+                rows.put(nested.getName(), nested);
+                collectRows(nested.getNestedMessages(), rows);
+            }
+        }
+
+        private FieldCodec field(FieldDefinition definition, Field javaField, Map<String, MessageDefinition> rows)
+                throws IllegalAccessException {
+            MethodHandles.Lookup lookup = lookup(javaField.getDeclaringClass());
+            MethodHandle getter = lookup.unreflectGetter(javaField);
+            MethodHandle setter = Modifier.isFinal(javaField.getModifiers()) ? null : lookup.unreflectSetter(javaField);
+            Class<?> type = javaField.getType();
+
+            if (definition.getLabel() == FieldLabel.OPTIONAL && type.isPrimitive()) {
+                ScalarEncoding encoding = ScalarEncoding.of(definition.getType());
+                if (encoding != null) {
+                    return new FieldCodec.PrimitiveField(definition.getNumber(), encoding, getter, setter);
+                }
+            }
+            MethodHandle objectGetter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            MethodHandle objectSetter = setter == null ? null
+                    : setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+            switch (definition.getLabel()) {
+                case OPTIONAL: {
+                    MessageDefinition flatArray = model.getSharedMessage(definition.getType());
+                    if (flatArray != null && type.isArray()) {
+                        return flatArrayField(definition, flatArray, type, objectGetter, objectSetter);
+                    }
+                    if (type == Optional.class) {
+                        ValueCodec codec = elementCodec(definition, typeArgument(javaField, 0), rows);
+                        return codec == null ? null : new FieldCodec.ValueField(definition.getNumber(), codec,
+                                MethodHandles.filterReturnValue(objectGetter, OPTIONAL_VALUE),
+                                objectSetter == null ? null
+                                        : MethodHandles.filterArguments(objectSetter, 1, OPTIONAL_OF));
+                    }
+                    ValueCodec codec = elementCodec(definition, type, rows);
+                    return codec == null ? null
+                            : new FieldCodec.ValueField(definition.getNumber(), codec, objectGetter, objectSetter);
+                }
+                case REPEATED: {
+                    if (type.isArray()) {
+                        Class<?> component = type.getComponentType();
+                        MessageDefinition row = rows.get(definition.getType());
+                        ValueCodec element = row != null && row.getOneof() == null ? rowCodec(row, component, rows)
+                                : elementCodec(definition, component, rows);
+                        return element == null ? null : new FieldCodec.RepeatedField(definition.getNumber(),
+                                new RepeatedValues(definition.getNumber(), element, component), objectGetter,
+                                objectSetter, null);
+                    }
+                    ValueCodec element = elementCodec(definition, typeArgument(javaField, 0), rows);
+                    if (element == null) {
+                        return null;
+                    }
+                    MethodHandle collectionConstructor = collectionConstructor(type);
+                    return new FieldCodec.RepeatedField(definition.getNumber(),
+                            new RepeatedValues(definition.getNumber(), element, null), objectGetter,
+                            collectionConstructor != null ? objectSetter : null,
+                            collectionConstructor != null ? collectionConstructor : collectionConstructor(List.class));
+                }
+                default: {
+                    Class<?> keyType = typeArgument(javaField, 0);
+                    ValueCodec key = valueCodec(kindOf(keyType), definition.getKeyType(), keyType.getName(), keyType);
+                    ValueCodec value = elementCodec(definition, typeArgument(javaField, 1), rows);
+                    if (key == null || value == null) {
+                        return null;
+                    }
+                    MethodHandle mapConstructor = collectionConstructor(type);
+                    return new FieldCodec.MapField(definition.getNumber(), key, value, objectGetter,
+                            mapConstructor != null ? objectSetter : null,
+                            mapConstructor != null ? mapConstructor : collectionConstructor(Map.class));
+                }
+            }
+        }
+
+        private FieldKind kindOf(Class<?> type) {
+            if (type.isEnum()) {
+                return FieldKind.ENUM;
+            }
+            return messages.containsKey(type.getName()) ? FieldKind.MESSAGE : FieldKind.SCALAR;
+        }
+
+        // Codec of the values of a field (its elements, map values...): its oneof wrapper, or valueCodec
+        private ValueCodec elementCodec(FieldDefinition definition, Class<?> javaType,
+                                        Map<String, MessageDefinition> rows) {
+            MessageDefinition wrapper = rows.get(definition.getType());
+            if (wrapper != null && wrapper.getOneof() != null) {
+                return oneofCodec(wrapper);
+            }
+            return valueCodec(definition.getKind(), definition.getType(), definition.getReferencedType(), javaType);
+        }
+
+        // Subtypes that cannot be loaded or encoded are left out: their values cannot be written, and
+        // are read as null
+        private ValueCodec oneofCodec(MessageDefinition wrapper) {
+            List<Class<?>> types = new ArrayList<>();
+            List<Integer> numbers = new ArrayList<>();
+            List<ValueCodec> codecs = new ArrayList<>();
+            for (FieldDefinition variant : wrapper.getFields()) {
+                ClassMetadata metadata = ReflectionClassResolver.INSTANCE.resolve(
+                        TypeRef.ofClass(variant.getReferencedType()));
+                ValueCodec codec = metadata == null ? null : valueCodec(variant.getKind(), variant.getType(),
+                        variant.getReferencedType(), metadata.getJavaClass());
+                if (codec != null) {
+                    types.add(metadata.getJavaClass());
+                    numbers.add(variant.getNumber());
+                    codecs.add(codec);
+                }
+            }
+            return new OneofCodec(wrapper.getName(), types, numbers, codecs);
+        }
+
+        // Codec of a single value, null when it cannot be encoded
+        private ValueCodec valueCodec(FieldKind kind, String protoType, String referencedType, Class<?> javaType) {
+            TypeAdapter adapter = adapters.get(javaType.getName());
+            if (adapter != null && kind != FieldKind.ANY) {
+                return new AdaptedCodec(adapter, protoType);
+            }
+            switch (kind) {
+                case SCALAR:
+                    if (protoType.equals("string")) {
+                        return javaType == String.class ? stringCodec : null;
+                    }
+                    if (protoType.equals("bytes")) {
+                        if (BinaryTypes.isBinary(javaType)) {
+                            return new ValueCodec.BinaryCodec(javaType);
+                        }
+                        return javaType == byte.class || javaType == Byte.class ? byteCodec : null;
+                    }
+                    ScalarEncoding encoding = ScalarEncoding.of(protoType);
+                    return encoding == null ? null : scalarCodec(encoding, javaType);
+                case ENUM:
+                    return javaType.isEnum() && enums.containsKey(referencedType)
+                            ? new ValueCodec.EnumCodec(javaType) : null;
+                case MESSAGE:
+                    return messages.get(referencedType);
+                default:
+                    return null;
+            }
+        }
+
+        private static ValueCodec scalarCodec(ScalarEncoding encoding, Class<?> javaType) {
+            ValueCodec.JavaScalar javaScalar = ValueCodec.JavaScalar.of(javaType);
+            MethodHandle dateConstructor = null;
+            if (javaScalar == ValueCodec.JavaScalar.DATE) {
+                try {
+                    dateConstructor = MethodHandles.publicLookup()
+                            .findConstructor(javaType, MethodType.methodType(void.class, long.class))
+                            .asType(MethodType.methodType(Object.class, long.class));
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException("No (long) constructor in " + javaType.getName(), e);
+                }
+            }
+            return new ValueCodec.ScalarCodec(encoding, javaScalar, dateConstructor);
+        }
+
+        // Rectangular primitive array flattened into a FlatArray_ message, see FlatArrayCodec
+        private static FieldCodec flatArrayField(FieldDefinition definition, MessageDefinition flatArray,
+                                                 Class<?> arrayType, MethodHandle getter, MethodHandle setter) {
+            ScalarEncoding encoding = ScalarEncoding.of(flatArray.getFields().get(1).getType());
+            Class<?> leafType = arrayType;
+            while (leafType.isArray()) {
+                leafType = leafType.getComponentType();
+            }
+            if (encoding == null || !leafType.isPrimitive()) {
+                return null;
+            }
+            ValueCodec.ScalarCodec leaf = (ValueCodec.ScalarCodec) scalarCodec(encoding, leafType);
+            return new FieldCodec.ValueField(definition.getNumber(), new FlatArrayCodec(leaf, arrayType), getter,
+                    setter);
+        }
+
+        // Row message of an array: rowType is the Java array one row stands for
+        private ValueCodec rowCodec(MessageDefinition row, Class<?> rowType, Map<String, MessageDefinition> rows) {
+            FieldDefinition items = row.getFields().get(0);
+            Class<?> component = rowType.getComponentType();
+            MessageDefinition nestedRow = rows.get(items.getType());
+            ValueCodec element = nestedRow != null ? rowCodec(nestedRow, component, rows)
+                    : valueCodec(items.getKind(), items.getType(), items.getReferencedType(), component);
+            return element == null ? null : new RowCodec(element, rowType);
+        }
+
+        // An Optional field is written as its value, absent when empty or null, and read back wrapped
+        static Object optionalValue(Object optional) {
+            return optional == null ? null : ((Optional<?>) optional).orElse(null);
+        }
+
+        static Object optionalOf(Object value) {
+            return Optional.ofNullable(value);
+        }
+
+        private static MethodHandle optionalHandle(String name) {
+            try {
+                return MethodHandles.lookup().findStatic(Compiler.class, name,
+                        MethodType.methodType(Object.class, Object.class));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Cannot find " + name, e);
+            }
+        }
+
+        private static Class<?> typeArgument(Field field, int index) {
+            Type type = field.getGenericType();
+            if (!(type instanceof ParameterizedType)) {
+                return Object.class;
+            }
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[index];
+            if (argument instanceof ParameterizedType) {
+                argument = ((ParameterizedType) argument).getRawType();
+            }
+            return argument instanceof Class ? (Class<?>) argument : Object.class;
+        }
+
+        // ()Object constructor of the collection or map to create for a declared type, null if none
+        private static MethodHandle collectionConstructor(Class<?> declaredType) {
+            try {
+                Class<?> implementation = Class.forName(CollectionTypes.getImplementation(declaredType.getName()),
+                        false, declaredType.getClassLoader());
+                return MethodHandles.publicLookup().findConstructor(implementation,
+                        MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+}
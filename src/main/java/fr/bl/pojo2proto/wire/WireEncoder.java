@@ -0,0 +1,70 @@
+package fr.bl.pojo2proto.wire;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Encodes messages with a WireCodec in two passes: the first computes every length prefix into a
+// reusable size table, the second writes the bytes exactly once. Encoders keep their buffers between
+// calls and are not thread-safe: use one per thread.
+public final class WireEncoder {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final WireCodec codec;
+    private final boolean direct;
+    private final SizeTable sizes = new SizeTable();
+    private ByteBuffer buffer;
+
+    WireEncoder(WireCodec codec, boolean direct) {
+        this.codec = codec;
+        this.direct = direct;
+    }
+
+    // Encoded size of a message
+    public int sizeOf(Object message) {
+        sizes.clear();
+        return codec.codecOf(message.getClass()).bodySize(message, sizes);
+    }
+
+    // Encodes into the encoder's own buffer, returned ready to be read; it is overwritten by the next call
+    public ByteBuffer encode(Object message) {
+        MessageCodec messageCodec = codec.codecOf(message.getClass());
+        sizes.clear();
+        int size = messageCodec.bodySize(message, sizes);
+        if (buffer == null || buffer.capacity() < size) {
+            int capacity = Math.max(size, buffer == null ? INITIAL_CAPACITY : buffer.capacity() * 2);
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        messageCodec.writeBody(message, buffer, sizes);
+        buffer.flip();
+        return buffer;
+    }
+
+    // Encodes at the position of the target buffer and returns the number of bytes written; throws
+    // BufferOverflowException, before writing anything, when the buffer has not enough room
+    public int encode(Object message, ByteBuffer target) {
+        MessageCodec messageCodec = codec.codecOf(message.getClass());
+        sizes.clear();
+        int size = messageCodec.bodySize(message, sizes);
+        if (target.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        ByteOrder order = target.order();
+        target.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            messageCodec.writeBody(message, target, sizes);
+        } finally {
+            target.order(order);
+        }
+        return size;
+    }
+
+    public byte[] toByteArray(Object message) {
+        ByteBuffer encoded = encode(message);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+}
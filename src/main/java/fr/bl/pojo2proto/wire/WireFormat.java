@@ -0,0 +1,143 @@
+package fr.bl.pojo2proto.wire;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Protobuf wire format primitives over ByteBuffers (little-endian order expected for fixed values)
+final class WireFormat {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LEN = 2;
+    static final int FIXED32 = 5;
+
+    private WireFormat() {
+    }
+
+    static int tag(int number, int wireType) {
+        return number << 3 | wireType;
+    }
+
+    static int varintSize(long value) {
+        return value == 0 ? 1 : (63 - Long.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+
+    static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new RuntimeException("Malformed varint at position " + in.position());
+    }
+
+    static long zigZag32(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    static int unZigZag32(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long zigZag64(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag64(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Encoded length of the string, computed without encoding it; unpaired surrogates count as '?'
+    static int utf8Length(CharSequence value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    // replaced by '?'
+                } else {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // Encodes straight into the buffer, no intermediate byte[]
+    static void writeUtf8(ByteBuffer out, CharSequence value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >>> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >>> 18)));
+                out.put((byte) (0x80 | ((codePoint >>> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >>> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | (c >>> 12)));
+                out.put((byte) (0x80 | ((c >>> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    static String readUtf8(ByteBuffer in, int length) {
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(in.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+
+    // Skips a field of an unknown (or unmapped, e.g. Any) number
+    static void skipField(ByteBuffer in, int wireType) {
+        switch (wireType) {
+            case VARINT:
+                readVarint(in);
+                break;
+            case FIXED64:
+                in.position(in.position() + 8);
+                break;
+            case LEN:
+                int length = (int) readVarint(in);
+                in.position(in.position() + length);
+                break;
+            case FIXED32:
+                in.position(in.position() + 4);
+                break;
+            default:
+                throw new RuntimeException("Unsupported wire type " + wireType + " at position " + in.position());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package fr.bl.pojo2proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.bl.pojo2proto.schema.FieldDefinition;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Field numbers across runs: every run loads the registry file written by the previous one, so the
+// numbers must survive a save and a load whatever the order the fields are listed in.
+public class FieldNumberRegistryTest {
+    private static final String ORDER = "com.acme.Order";
+    private static final Map<String, Long> NO_HEAT = Collections.emptyMap();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class Item {
+        public String name;
+        public int count;
+    }
+
+    @Test
+    public void numbersAreStableAcrossRuns() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("field-numbers.properties");
+        FieldNumberRegistry first = FieldNumberRegistry.load(file);
+        Map<String, Integer> before = first.assign(ORDER, Arrays.asList("id", "customer", "total"), NO_HEAT);
+        first.save();
+
+        // The next run lists the fields in another order, e.g. as the class file does
+        FieldNumberRegistry second = FieldNumberRegistry.load(file);
+        Map<String, Integer> after = second.assign(ORDER, Arrays.asList("total", "id", "customer"), NO_HEAT);
+        assertEquals(before, after);
+        assertEquals(Integer.valueOf(1), after.get("id"));
+        assertEquals(Integer.valueOf(2), after.get("customer"));
+        assertEquals(Integer.valueOf(3), after.get("total"));
+    }
+
+    @Test
+    public void removedFieldsAreReservedUntilTheyComeBack() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("field-numbers.properties");
+        FieldNumberRegistry first = FieldNumberRegistry.load(file);
+        first.assign(ORDER, Arrays.asList("id", "legacyCode", "total"), NO_HEAT);
+        first.save();
+
+        FieldNumberRegistry second = FieldNumberRegistry.load(file);
+        Map<String, Integer> numbers = second.assign(ORDER, Arrays.asList("id", "total"), NO_HEAT);
+        second.save();
+        assertEquals(Collections.singletonMap("legacyCode", 2), second.getReserved(ORDER));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(lines.contains(ORDER + ".legacyCode=reserved:2"));
+        assertEquals(Integer.valueOf(3), numbers.get("total"));
+
+        // A new field never takes a reserved number, the removed field gets its own back
+        FieldNumberRegistry third = FieldNumberRegistry.load(file);
+        numbers = third.assign(ORDER, Arrays.asList("id", "total", "currency"), NO_HEAT);
+        assertEquals(Integer.valueOf(4), numbers.get("currency"));
+        numbers = third.assign(ORDER, Arrays.asList("id", "legacyCode", "total", "currency"), NO_HEAT);
+        assertEquals(Integer.valueOf(2), numbers.get("legacyCode"));
+        assertTrue(third.getReserved(ORDER).isEmpty());
+    }
+
+    @Test
+    public void hotFieldsTakeTheSmallestFreeNumbers() {
+        FieldNumberRegistry registry = FieldNumberRegistry.inMemory();
+        registry.assign(ORDER, Arrays.asList("id", "total"), NO_HEAT);
+
+        Map<String, Long> heat = new HashMap<>();
+        heat.put("status", 100L);
+        heat.put("total", 1000L);
+        Map<String, Integer> numbers = registry.assign(ORDER, Arrays.asList("id", "total", "notes", "status"), heat);
+        // Existing fields are never renumbered, however hot
+        assertEquals(Integer.valueOf(1), numbers.get("id"));
+        assertEquals(Integer.valueOf(2), numbers.get("total"));
+        assertEquals(Integer.valueOf(3), numbers.get("status"));
+        assertEquals(Integer.valueOf(4), numbers.get("notes"));
+    }
+
+    @Test
+    public void invalidFileIsAnError() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("field-numbers.properties");
+        Files.write(file, (ORDER + ".id=first\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            FieldNumberRegistry.load(file);
+            fail("Invalid entry accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Invalid field number entry " + ORDER + ".id=first"));
+        }
+    }
+
+    @Test
+    public void generationReservesNumbersOfRemovedFields() throws IOException {
+        // As left by a run where Item still had a legacyCode field
+        Path file = folder.getRoot().toPath().resolve("field-numbers.properties");
+        String item = Item.class.getName();
+        Files.write(file, (item + ".legacyCode=1\n" + item + ".name=2\n").getBytes(StandardCharsets.UTF_8));
+
+        GeneratorOptions options = new GeneratorOptions().setFieldNumberRegistry(FieldNumberRegistry.load(file));
+        JavaToProto jpt = new JavaToProto(Collections.<Class<?>>singleton(Item.class), options);
+        SchemaModel schema = jpt.getSchema();
+        MessageDefinition message = schema.getMessage(item);
+        Map<String, Integer> numbers = new HashMap<>();
+        for (FieldDefinition field : message.getFields()) {
+            numbers.put(field.getName(), field.getNumber());
+        }
+        assertEquals(Integer.valueOf(2), numbers.get("name"));
+        assertEquals(Integer.valueOf(3), numbers.get("count"));
+        assertFalse(numbers.containsValue(1));
+        assertEquals(Collections.singletonMap("legacyCode", 1), message.getReserved());
+        assertTrue(jpt.toString().contains("reserved 1;"));
+
+        // Saved by the discovery, before anything is written
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(lines.contains(item + ".legacyCode=reserved:1"));
+        assertTrue(lines.contains(item + ".count=3"));
+    }
+}
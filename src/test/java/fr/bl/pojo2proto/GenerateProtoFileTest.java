@@ -0,0 +1,63 @@
+package fr.bl.pojo2proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Argument checks of the command line, made before anything is written
+public class GenerateProtoFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void singleFileMappersNeedJavaPackage() throws IOException {
+        Path baseDir = folder.getRoot().toPath();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertFalse(generate(baseDir, err, "--mappers"));
+        assertTrue(err.toString(StandardCharsets.UTF_8.name()).contains("--java-package="));
+        assertNothingWritten(baseDir);
+    }
+
+    @Test
+    public void invalidJavaPackageIsAnError() throws IOException {
+        Path baseDir = folder.getRoot().toPath();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertFalse(generate(baseDir, err, "--mappers", "--java-package=original.class.package.here"));
+        assertTrue(err.toString(StandardCharsets.UTF_8.name()).contains("Invalid Java package"));
+        assertNothingWritten(baseDir);
+    }
+
+    @Test
+    public void singleFileUsesJavaPackage() throws IOException {
+        Path baseDir = folder.getRoot().toPath();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertTrue(generate(baseDir, err, "--java-package=com.acme.proto"));
+        String proto = new String(Files.readAllBytes(baseDir.resolve("src/main/proto/K.proto")),
+                StandardCharsets.UTF_8);
+        assertTrue(proto.contains("option java_package = \"com.acme.proto\";"));
+    }
+
+    private static boolean generate(Path baseDir, ByteArrayOutputStream err, String... args) {
+        PrintStream errStream = new PrintStream(err, true);
+        return GenerateProtoFile.generate(baseDir, args, WarmResolvers.cold(),
+                new PrintStream(new ByteArrayOutputStream()), errStream);
+    }
+
+    private static void assertNothingWritten(Path baseDir) throws IOException {
+        try (Stream<Path> files = Files.list(baseDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
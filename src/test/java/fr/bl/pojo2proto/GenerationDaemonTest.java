@@ -0,0 +1,108 @@
+package fr.bl.pojo2proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Socket requests write under a directory of the client's choosing, so only a client that can read
+// the token file (the daemon's owner) may send them
+public class GenerationDaemonTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 30_000)
+    public void socketRequestsNeedTheToken() throws Exception {
+        Path tokenFile = folder.getRoot().toPath().resolve("run/daemon.token");
+        Path workDir = folder.newFolder("work").toPath();
+        GenerationDaemon daemon = new GenerationDaemon(1);
+        Thread server = new Thread(() -> {
+            try {
+                daemon.serve(0, tokenFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+        try {
+            while (daemon.getPort() < 0) {
+                Thread.sleep(10);
+            }
+            String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8);
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)));
+            }
+
+            // No token, a wrong one: nothing runs and the connection is closed
+            try (Connection client = new Connection(daemon.getPort())) {
+                client.send("1\t" + workDir + "\t--per-package");
+                assertEquals("unauthorized", client.read());
+                assertNull(client.read());
+            }
+            try (Connection client = new Connection(daemon.getPort())) {
+                client.send(token.substring(1) + "x\tstats");
+                assertEquals("unauthorized", client.read());
+                assertNull(client.read());
+            }
+            assertFalse(Files.exists(workDir.resolve("src")));
+
+            try (Connection client = new Connection(daemon.getPort())) {
+                client.send(token + "\tstats");
+                assertEquals("Daemon stats", client.read());
+                assertTrue(client.read().startsWith("  requests: 0 "));
+                client.send(token + "\tshutdown");
+                String line;
+                while (!"shutdown".equals(line = client.read())) {
+                    assertTrue(line != null);
+                }
+            }
+            server.join();
+        } finally {
+            daemon.close();
+        }
+        assertFalse(Files.exists(tokenFile));
+    }
+
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final Writer writer;
+        private final BufferedReader reader;
+
+        Connection(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String line) throws IOException {
+            writer.write(line + "\n");
+            writer.flush();
+        }
+
+        String read() throws IOException {
+            return reader.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
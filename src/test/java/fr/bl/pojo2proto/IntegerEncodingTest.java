@@ -0,0 +1,46 @@
+package fr.bl.pojo2proto;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.google.protobuf.CodedOutputStream;
+
+// The sizes the scalar type selection is based on must be the ones protobuf-java writes
+public class IntegerEncodingTest {
+    private static final long[] VALUES = {
+        0, 1, -1, 63, 64, -64, -65, 127, 128, -128, 16383, 16384, -8192, -8193,
+        (1L << 21) - 1, 1L << 21, (1L << 28) - 1, 1L << 28,
+        Short.MIN_VALUE, Short.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE,
+        1L << 35, -(1L << 35), (1L << 56) - 1, 1L << 56, 1L << 62, -(1L << 62),
+        Long.MIN_VALUE, Long.MAX_VALUE
+    };
+
+    @Test
+    public void sizesOf32BitValues() {
+        for (long value : VALUES) {
+            int narrow = (int) value;
+            assertSize(CodedOutputStream.computeInt32SizeNoTag(narrow), IntegerEncoding.VARINT, narrow, false);
+            assertSize(CodedOutputStream.computeUInt32SizeNoTag(narrow), IntegerEncoding.UNSIGNED, narrow, false);
+            assertSize(CodedOutputStream.computeSInt32SizeNoTag(narrow), IntegerEncoding.ZIGZAG, narrow, false);
+            assertSize(CodedOutputStream.computeSFixed32SizeNoTag(narrow), IntegerEncoding.SIGNED_FIXED, narrow,
+                    false);
+            assertSize(CodedOutputStream.computeFixed32SizeNoTag(narrow), IntegerEncoding.FIXED, narrow, false);
+        }
+    }
+
+    @Test
+    public void sizesOf64BitValues() {
+        for (long value : VALUES) {
+            assertSize(CodedOutputStream.computeInt64SizeNoTag(value), IntegerEncoding.VARINT, value, true);
+            assertSize(CodedOutputStream.computeUInt64SizeNoTag(value), IntegerEncoding.UNSIGNED, value, true);
+            assertSize(CodedOutputStream.computeSInt64SizeNoTag(value), IntegerEncoding.ZIGZAG, value, true);
+            assertSize(CodedOutputStream.computeSFixed64SizeNoTag(value), IntegerEncoding.SIGNED_FIXED, value, true);
+            assertSize(CodedOutputStream.computeFixed64SizeNoTag(value), IntegerEncoding.FIXED, value, true);
+        }
+    }
+
+    private static void assertSize(int expected, IntegerEncoding encoding, long value, boolean wide) {
+        assertEquals(encoding.getProtoType(wide) + " " + value, expected, encoding.size(value, wide));
+    }
+}
@@ -0,0 +1,135 @@
+package fr.bl.pojo2proto;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import fr.bl.pojo2proto.schema.EnumDefinition;
+import fr.bl.pojo2proto.schema.MessageDefinition;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Parallel discovery must give the same schema as sequential discovery, byte for byte, whatever order
+// the threads describe the classes in: the graph below has cycles, and diamonds reached from several
+// roots and fields at once.
+public class ParallelDiscoveryTest {
+    private static final int RUNS = 20;
+
+    public enum Status {
+        NEW, ACTIVE, CLOSED
+    }
+
+    public enum Kind {
+        HOME, WORK
+    }
+
+    public static class Customer {
+        public long id;
+        public Address home;
+        public Address work;
+        public List<Order> orders;
+        public Customer referrer;
+    }
+
+    public static class Order {
+        public long id;
+        public Customer customer;
+        public List<Line> lines;
+        public Map<String, Product> products;
+        public Status status;
+        public Address shipping;
+    }
+
+    public static class Line {
+        public Product product;
+        public int quantity;
+        public Order order;
+    }
+
+    public static class Product {
+        public String sku;
+        public Price price;
+        public List<Product> related;
+        public Category category;
+    }
+
+    public static class Category {
+        public String name;
+        public Category parent;
+        public List<Product> featured;
+    }
+
+    public static class Price {
+        public long cents;
+        public String currency;
+    }
+
+    public static class Address {
+        public String street;
+        public Kind kind;
+        public Country country;
+    }
+
+    public static class Country {
+        public String code;
+        public Price vatThreshold;
+        public Status status;
+    }
+
+    @Test
+    public void parallelOutputIsByteIdenticalToSequential() {
+        Set<Class<?>> roots = new HashSet<>(Arrays.<Class<?>>asList(Customer.class, Order.class, Product.class,
+                Category.class));
+        JavaToProto sequential = new JavaToProto(roots, new GeneratorOptions().setParallelism(1));
+        String expected = sequential.toString();
+        List<String> expectedOrder = definitionOrder(sequential.getSchema());
+        // Every class of the graph is reached
+        assertEquals(10, sequential.getSchema().getEnums().size() + sequential.getSchema().getMessages().size());
+
+        for (int parallelism : new int[] {2, 4, 8}) {
+            for (int run = 0; run < RUNS; run++) {
+                JavaToProto parallel = new JavaToProto(roots, new GeneratorOptions().setParallelism(parallelism));
+                assertEquals("parallelism " + parallelism, expected, parallel.toString());
+                assertEquals("parallelism " + parallelism, expectedOrder, definitionOrder(parallel.getSchema()));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            JavaToProto pooled = new JavaToProto(roots, new GeneratorOptions().setDiscoveryPool(pool));
+            assertEquals("caller-owned pool", expected, pooled.toString());
+            assertEquals("caller-owned pool", expectedOrder, definitionOrder(pooled.getSchema()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Enums then messages, nested messages included, in model order
+    private static List<String> definitionOrder(SchemaModel model) {
+        List<String> order = new ArrayList<>();
+        for (EnumDefinition enumDefinition : model.getEnums()) {
+            order.add(enumDefinition.getJavaName());
+        }
+        for (MessageDefinition message : model.getMessages()) {
+            addMessage(order, message);
+        }
+        for (MessageDefinition message : model.getSharedMessages()) {
+            addMessage(order, message);
+        }
+        return order;
+    }
+
+    private static void addMessage(List<String> order, MessageDefinition message) {
+        order.add(message.getJavaName() + " " + message.getName());
+        for (MessageDefinition nested : message.getNestedMessages()) {
+            addMessage(order, nested);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package fr.bl.pojo2proto.mapper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.JavaToProto;
+import fr.bl.pojo2proto.ProtoSubtypes;
+import fr.bl.pojo2proto.SubtypeResolver;
+
+// The generated mappers are compiled against the classes protoc generates from the generated .proto
+// files, then run: the build provides protoc (see the pom), the tests are skipped without it.
+public class MapperGeneratorTest {
+    private static final String PROTOC = System.getProperty("protoc");
+    private static final String JAVA_PACKAGE = "fr.bl.pojo2proto.mapper.proto";
+    private static final String[] WELL_KNOWN_PROTOS = {
+        "any.proto", "descriptor.proto", "duration.proto", "timestamp.proto", "wrappers.proto"
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public enum Status {
+        OPEN, PAID, SHIPPED
+    }
+
+    public static class Line {
+        private String sku;
+        private int quantity;
+
+        public String getSku() {
+            return sku;
+        }
+
+        public void setSku(String sku) {
+            this.sku = sku;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    // No no-argument constructor: written to proto, never read back
+    public static class Reference {
+        private final String code;
+
+        public Reference(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    @ProtoSubtypes({Circle.class, Square.class})
+    public abstract static class Shape {
+        public String label;
+    }
+
+    public static class Circle extends Shape {
+        public double radius;
+    }
+
+    public static class Square extends Shape {
+        public double side;
+    }
+
+    public static class Order {
+        public long id;
+        private boolean paid;
+        public Status status;
+        public String note;
+        public List<Line> lines;
+        public Map<String, Integer> counts;
+        public Set<String> tags;
+        public Optional<String> coupon;
+        public byte[] payload;
+        public double[] weights;
+        public int[][] grid;
+        public Instant created;
+        public Reference reference;
+        public final String origin = "web";
+        // Neither public nor with accessors
+        String internal;
+        int[][] cube;
+        public Shape shape;
+        // Read only
+        private long[][] history;
+        private Shape outline;
+
+        public boolean isPaid() {
+            return paid;
+        }
+
+        public void setPaid(boolean paid) {
+            this.paid = paid;
+        }
+
+        public long[][] getHistory() {
+            return history;
+        }
+
+        public Shape getOutline() {
+            return outline;
+        }
+    }
+
+    @Test
+    public void mappersCompileAgainstProtocClasses() throws Exception {
+        Path work = folder.getRoot().toPath();
+        JavaToProto jpt = new JavaToProto(Collections.<Class<?>>singleton(Order.class),
+                options().setJavaPackage(JAVA_PACKAGE));
+        Path protoDir = Files.createDirectories(work.resolve("proto"));
+        Path protoFile = protoDir.resolve("order.proto");
+        Files.write(protoFile, jpt.toString().getBytes(StandardCharsets.UTF_8));
+        List<Path> mappers = jpt.writeMappers(work.resolve("mappers"), JAVA_PACKAGE);
+
+        ClassLoader loader = compile(work, Collections.singletonList(protoFile), mappers);
+        roundTrip(loader);
+    }
+
+    @Test
+    public void flatArrayMappersCompileAgainstProtocClasses() throws Exception {
+        Path work = folder.getRoot().toPath();
+        JavaToProto jpt = new JavaToProto(Collections.<Class<?>>singleton(Order.class),
+                options().setJavaPackage(JAVA_PACKAGE).setFlattenArrays(true));
+        Path protoDir = Files.createDirectories(work.resolve("proto"));
+        Path protoFile = protoDir.resolve("order.proto");
+        Files.write(protoFile, jpt.toString().getBytes(StandardCharsets.UTF_8));
+        List<Path> mappers = jpt.writeMappers(work.resolve("mappers"), JAVA_PACKAGE);
+
+        ClassLoader loader = compile(work, Collections.singletonList(protoFile), mappers);
+        roundTrip(loader);
+    }
+
+    // Helpers of fields that are not mapped, or only one way, are not written
+    @Test
+    public void onlyUsedHelpersAreWritten() throws IOException {
+        String rows = orderMapperSource(false);
+        assertTrue(rows.contains(" toArray_Order_grid(") && rows.contains(" fromArray_Order_grid("));
+        assertTrue(rows.contains(" toArray_Order_history("));
+        assertFalse(rows.contains(" fromArray_Order_history("));
+        assertFalse(rows.contains("Array_Order_cube"));
+        assertTrue(rows.contains(" toOneof_Order_shape(") && rows.contains(" fromOneof_Order_shape("));
+        assertTrue(rows.contains(" toOneof_Order_outline("));
+        assertFalse(rows.contains(" fromOneof_Order_outline("));
+
+        String flat = orderMapperSource(true);
+        assertTrue(flat.contains(" toFlatGrid(") && flat.contains(" fromFlatGrid("));
+        assertTrue(flat.contains(" toFlatHistory("));
+        assertFalse(flat.contains(" fromFlatHistory("));
+        assertFalse(flat.contains("FlatCube"));
+    }
+
+    private static GeneratorOptions options() {
+        return new GeneratorOptions().setSubtypeResolver(SubtypeResolver.ANNOTATIONS);
+    }
+
+    private String orderMapperSource(boolean flattenArrays) throws IOException {
+        JavaToProto jpt = new JavaToProto(Collections.<Class<?>>singleton(Order.class),
+                options().setFlattenArrays(flattenArrays));
+        Path sourceDir = folder.newFolder().toPath();
+        jpt.writeMappers(sourceDir, JAVA_PACKAGE);
+        Path mapper = sourceDir.resolve(MapperGenerator.getMapperClassName(Order.class.getName()).replace('.', '/')
+                + ".java");
+        return new String(Files.readAllBytes(mapper), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void perPackageMappersCompileAgainstProtocClasses() throws Exception {
+        Path work = folder.getRoot().toPath();
+        JavaToProto jpt = new JavaToProto(Collections.<Class<?>>singleton(Order.class), options());
+        List<Path> protoFiles = jpt.writePerPackage(work.resolve("proto"));
+        List<Path> mappers = jpt.writePerPackageMappers(work.resolve("mappers"));
+
+        ClassLoader loader = compile(work, protoFiles, mappers);
+        roundTrip(loader);
+    }
+
+    private void roundTrip(ClassLoader loader) throws Exception {
+        Order order = new Order();
+        order.id = 42;
+        order.setPaid(true);
+        order.status = Status.SHIPPED;
+        order.note = "leave at the door";
+        Line line = new Line();
+        line.setSku("A-1");
+        line.setQuantity(3);
+        order.lines = Arrays.asList(line);
+        order.counts = new LinkedHashMap<>();
+        order.counts.put("boxes", 2);
+        order.tags = new LinkedHashSet<>(Arrays.asList("gift", "fragile"));
+        order.coupon = Optional.of("WELCOME");
+        order.payload = new byte[] {1, 2, 3};
+        order.weights = new double[] {0.5, 1.5};
+        order.grid = new int[][] {{1, 2}, {3, 4}};
+        order.created = Instant.ofEpochSecond(1700000000L, 123);
+        order.reference = new Reference("R-7");
+        order.internal = "not mapped";
+        order.cube = new int[][] {{5}};
+        order.history = new long[][] {{6, 7}};
+        Circle circle = new Circle();
+        circle.label = "round";
+        circle.radius = 2.5;
+        order.shape = circle;
+        order.outline = new Square();
+
+        Class<?> mapper = loader.loadClass(MapperGenerator.getMapperClassName(Order.class.getName()));
+        Object proto = invoke(mapper, "toProto", order);
+        Order copy = (Order) invoke(mapper, "fromProto", proto);
+        assertEquals(order.id, copy.id);
+        assertTrue(copy.isPaid());
+        assertEquals(order.status, copy.status);
+        assertEquals(order.note, copy.note);
+        assertEquals(1, copy.lines.size());
+        assertEquals("A-1", copy.lines.get(0).getSku());
+        assertEquals(3, copy.lines.get(0).getQuantity());
+        assertEquals(order.counts, copy.counts);
+        assertEquals(order.tags, copy.tags);
+        assertEquals(order.coupon, copy.coupon);
+        assertArrayEquals(order.payload, copy.payload);
+        assertArrayEquals(order.weights, copy.weights, 0);
+        assertArrayEquals(order.grid, copy.grid);
+        assertEquals(order.created, copy.created);
+        assertNull(copy.reference);
+        assertNull(copy.internal);
+        assertNull(copy.cube);
+        assertNull(copy.getHistory());
+        assertEquals("round", copy.shape.label);
+        assertEquals(2.5, ((Circle) copy.shape).radius, 0);
+        assertNull(copy.getOutline());
+
+        Class<?> referenceMapper = loader.loadClass(MapperGenerator.getMapperClassName(Reference.class.getName()));
+        Object referenceProto = invoke(referenceMapper, "toProto", order.reference);
+        try {
+            invoke(referenceMapper, "fromProto", referenceProto);
+            fail("Reference created without constructor");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("no accessible no-argument constructor"));
+        }
+    }
+
+    private static Object invoke(Class<?> mapper, String name, Object argument) throws Exception {
+        for (Method method : mapper.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes()[0].isInstance(argument)) {
+                try {
+                    return method.invoke(null, argument);
+                } catch (InvocationTargetException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        }
+        throw new AssertionError("No " + name + " for " + argument.getClass().getName() + " in " + mapper.getName());
+    }
+
+    // Runs protoc on the files, compiles its output with the mappers and loads the result
+    private ClassLoader compile(Path work, List<Path> protoFiles, List<Path> mappers) throws Exception {
+        assumeTrue("protoc not provided (-Dprotoc=...)", PROTOC != null && new File(PROTOC).isFile());
+        new File(PROTOC).setExecutable(true);
+        Path protoDir = protoFiles.get(0).getParent();
+        Path includes = Files.createDirectories(work.resolve("includes"));
+        copyResource("protogen/options.proto", includes);
+        for (String wellKnown : WELL_KNOWN_PROTOS) {
+            copyResource("google/protobuf/" + wellKnown, includes);
+        }
+
+        Path generated = Files.createDirectories(work.resolve("generated"));
+        List<String> protoc = new ArrayList<>(Arrays.asList(PROTOC, "--java_out=" + generated,
+                "-I" + protoDir, "-I" + includes, includes.resolve("protogen/options.proto").toString()));
+        for (Path protoFile : protoFiles) {
+            protoc.add(protoFile.toString());
+        }
+        Process process = new ProcessBuilder(protoc).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals("protoc failed:\n" + output, 0, process.waitFor());
+
+        List<String> javac = new ArrayList<>(Arrays.asList("-d", Files.createDirectories(work.resolve("classes"))
+                .toString(), "-classpath", System.getProperty("java.class.path"), "-nowarn"));
+        try (Stream<Path> sources = Files.walk(generated)) {
+            javac.addAll(sources.filter(path -> path.toString().endsWith(".java")).map(Path::toString)
+                    .collect(Collectors.toList()));
+        }
+        for (Path mapper : mappers) {
+            javac.add(mapper.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = compiler.run(null, errors, errors, javac.toArray(new String[0]));
+        assertEquals("Generated sources do not compile:\n" + errors.toString(StandardCharsets.UTF_8.name()),
+                0, status);
+        return new URLClassLoader(new URL[] {work.resolve("classes").toUri().toURL()},
+                getClass().getClassLoader());
+    }
+
+    private static void copyResource(String name, Path root) throws IOException {
+        Path target = root.resolve(Paths.get(name));
+        Files.createDirectories(target.getParent());
+        try (InputStream in = MapperGeneratorTest.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + name);
+            }
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package fr.bl.pojo2proto.wire;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import fr.bl.pojo2proto.GeneratorOptions;
+import fr.bl.pojo2proto.IntegerEncoding;
+import fr.bl.pojo2proto.JavaToProto;
+import fr.bl.pojo2proto.ProtoEncoding;
+import fr.bl.pojo2proto.ProtoSubtypes;
+import fr.bl.pojo2proto.ScalarTypeSelector;
+import fr.bl.pojo2proto.SubtypeResolver;
+import fr.bl.pojo2proto.descriptor.DescriptorBuilder;
+import fr.bl.pojo2proto.schema.SchemaModel;
+
+// Round trips between WireCodec and protobuf-java: what the codec writes must parse as the
+// DynamicMessage of the descriptor DescriptorBuilder gives for the same schema, with no unknown field,
+// and what protobuf-java writes for that message must decode back to the same values.
+public class WireCodecTest {
+    private static final String FILE_NAME = "wire_codec_test.proto";
+
+    public static class Scalars {
+        public int int32;
+        public long int64;
+        public short int16;
+        public byte int8;
+        public char character;
+        public float single;
+        public double real;
+        public boolean flag;
+        public String text;
+        public Integer boxed;
+        @ProtoEncoding(IntegerEncoding.VARINT)
+        public int varint32;
+        @ProtoEncoding(IntegerEncoding.VARINT)
+        public long varint64;
+        @ProtoEncoding(IntegerEncoding.UNSIGNED)
+        public int unsigned32;
+        @ProtoEncoding(IntegerEncoding.UNSIGNED)
+        public long unsigned64;
+        @ProtoEncoding(IntegerEncoding.SIGNED_FIXED)
+        public int signedFixed32;
+        @ProtoEncoding(IntegerEncoding.FIXED)
+        public long fixed64;
+    }
+
+    public static class Repeated {
+        public int[] ints;
+        public long[] longs;
+        public double[] doubles;
+        public boolean[] flags;
+        public List<Integer> boxed;
+        @ProtoEncoding(IntegerEncoding.FIXED)
+        public int[] fixed;
+        public List<String> texts;
+    }
+
+    public static class Child {
+        public int id;
+        public String name;
+    }
+
+    public static class Nested {
+        public Child child;
+        public List<Child> children;
+        public Child[][] grid;
+        public Map<String, Integer> counts;
+        public Map<Long, String> names;
+        public Map<String, Child> childrenByName;
+    }
+
+    @ProtoSubtypes({Circle.class, Square.class})
+    public abstract static class Shape {
+        public String label;
+    }
+
+    public static class Circle extends Shape {
+        public double radius;
+    }
+
+    public static class Square extends Shape {
+        public int side;
+    }
+
+    public static class Drawing {
+        public Shape main;
+        public List<Shape> shapes;
+        public Map<String, Shape> shapesByName;
+    }
+
+    public static class Matrices {
+        public int[][] ints;
+        public double[][][] cube;
+        public long[][] empty;
+    }
+
+    @Test
+    public void scalarsAtBoundaries() throws InvalidProtocolBufferException {
+        GeneratorOptions options = new GeneratorOptions().setScalarTypeSelector(ScalarTypeSelector.ANNOTATIONS);
+        for (int sample = 0; sample < 4; sample++) {
+            Scalars scalars = new Scalars();
+            scalars.int32 = pick(sample, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0);
+            scalars.int64 = pick(sample, Long.MIN_VALUE, Long.MAX_VALUE, -1L, 0L);
+            scalars.int16 = pick(sample, Short.MIN_VALUE, Short.MAX_VALUE, (short) -1, (short) 0);
+            scalars.int8 = pick(sample, Byte.MIN_VALUE, Byte.MAX_VALUE, (byte) -1, (byte) 0);
+            scalars.character = pick(sample, Character.MIN_VALUE, Character.MAX_VALUE, 'é', 'a');
+            scalars.single = pick(sample, -Float.MAX_VALUE, Float.MIN_VALUE, Float.NEGATIVE_INFINITY, -0.0f);
+            scalars.real = pick(sample, -Double.MAX_VALUE, Double.MIN_VALUE, Double.POSITIVE_INFINITY, 0.0);
+            scalars.flag = sample % 2 == 0;
+            scalars.text = pick(sample, "", "été 😀", null, "plain");
+            scalars.boxed = pick(sample, Integer.MIN_VALUE, null, -1, 0);
+            scalars.varint32 = pick(sample, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0);
+            scalars.varint64 = pick(sample, Long.MIN_VALUE, Long.MAX_VALUE, -1L, 0L);
+            scalars.unsigned32 = pick(sample, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0);
+            scalars.unsigned64 = pick(sample, Long.MIN_VALUE, Long.MAX_VALUE, -1L, 0L);
+            scalars.signedFixed32 = pick(sample, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0);
+            scalars.fixed64 = pick(sample, Long.MIN_VALUE, Long.MAX_VALUE, -1L, 0L);
+
+            DynamicMessage parsed = roundTrip(scalars, options);
+            assertEquals(scalars.int32, parsed.getField(field(parsed, "int32")));
+            assertEquals(scalars.int64, parsed.getField(field(parsed, "int64")));
+            assertEquals(scalars.varint32, parsed.getField(field(parsed, "varint32")));
+            assertEquals(scalars.unsigned64, parsed.getField(field(parsed, "unsigned64")));
+            assertEquals(scalars.signedFixed32, parsed.getField(field(parsed, "signedFixed32")));
+            assertEquals(scalars.fixed64, parsed.getField(field(parsed, "fixed64")));
+            assertEquals(scalars.real, (Double) parsed.getField(field(parsed, "real")), 0.0);
+            assertEquals(scalars.text != null, parsed.hasField(field(parsed, "text")));
+            assertEquals(scalars.boxed != null, parsed.hasField(field(parsed, "boxed")));
+        }
+    }
+
+    @Test
+    public void packedRepeatedFields() throws InvalidProtocolBufferException {
+        Repeated repeated = new Repeated();
+        repeated.ints = new int[] {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+        repeated.longs = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
+        repeated.doubles = new double[] {-0.5, 0, Double.MAX_VALUE};
+        repeated.flags = new boolean[] {true, false, true};
+        repeated.boxed = Arrays.asList(7, -7, 300);
+        repeated.fixed = new int[] {-1, 1};
+        repeated.texts = Arrays.asList("a", "", "b");
+        GeneratorOptions options = new GeneratorOptions().setScalarTypeSelector(ScalarTypeSelector.ANNOTATIONS);
+
+        DynamicMessage parsed = roundTrip(repeated, options);
+        assertEquals(5, parsed.getRepeatedFieldCount(field(parsed, "ints")));
+        assertEquals(Integer.MIN_VALUE, parsed.getRepeatedField(field(parsed, "ints"), 0));
+        assertTrue(field(parsed, "ints").isPacked());
+        // protobuf-java writes numeric repeated fields packed: the same bytes mean the codec did too
+        assertArrayEquals(parsed.toByteArray(), encode(repeated, options));
+
+        Repeated empty = new Repeated();
+        empty.ints = new int[0];
+        empty.boxed = new ArrayList<>();
+        DynamicMessage parsedEmpty = roundTrip(empty, options);
+        assertEquals(0, parsedEmpty.getRepeatedFieldCount(field(parsedEmpty, "ints")));
+    }
+
+    @Test
+    public void nestedMessagesAndMaps() throws InvalidProtocolBufferException {
+        Nested nested = new Nested();
+        nested.child = child(1, "one");
+        nested.children = Arrays.asList(child(2, "two"), child(3, null));
+        nested.grid = new Child[][] {{child(4, "four")}, {}, {child(5, "five"), child(6, "six")}};
+        nested.counts = new LinkedHashMap<>();
+        nested.counts.put("a", 1);
+        nested.counts.put("", Integer.MIN_VALUE);
+        nested.names = new HashMap<>();
+        nested.names.put(Long.MAX_VALUE, "max");
+        nested.names.put(-1L, "");
+        nested.childrenByName = Collections.singletonMap("seven", child(7, "seven"));
+
+        DynamicMessage parsed = roundTrip(nested, new GeneratorOptions());
+        DynamicMessage child = (DynamicMessage) parsed.getField(field(parsed, "child"));
+        assertEquals(1, child.getField(field(child, "id")));
+        assertEquals(2, parsed.getRepeatedFieldCount(field(parsed, "children")));
+        assertEquals(3, parsed.getRepeatedFieldCount(field(parsed, "grid")));
+        assertEquals(2, parsed.getRepeatedFieldCount(field(parsed, "counts")));
+        assertEquals(2, parsed.getRepeatedFieldCount(field(parsed, "names")));
+        assertEquals(1, parsed.getRepeatedFieldCount(field(parsed, "childrenByName")));
+    }
+
+    @Test
+    public void oneofsOfSubtypes() throws InvalidProtocolBufferException {
+        Circle circle = new Circle();
+        circle.label = "circle";
+        circle.radius = 1.5;
+        Square square = new Square();
+        square.side = -3;
+        Drawing drawing = new Drawing();
+        drawing.main = circle;
+        drawing.shapes = Arrays.asList(square, circle);
+        drawing.shapesByName = Collections.<String, Shape>singletonMap("square", square);
+        GeneratorOptions options = new GeneratorOptions().setSubtypeResolver(SubtypeResolver.ANNOTATIONS);
+
+        DynamicMessage parsed = roundTrip(drawing, options);
+        DynamicMessage main = (DynamicMessage) parsed.getField(field(parsed, "main"));
+        assertEquals(1, main.getAllFields().size());
+        assertEquals("circle", main.getOneofFieldDescriptor(main.getDescriptorForType().getOneofs().get(0)).getName());
+
+        Drawing decoded = decode(drawing, options, parsed.toByteArray());
+        assertEquals(Circle.class, decoded.main.getClass());
+        assertEquals(1.5, ((Circle) decoded.main).radius, 0.0);
+        assertEquals(Square.class, decoded.shapes.get(0).getClass());
+        assertEquals(-3, ((Square) decoded.shapesByName.get("square")).side);
+    }
+
+    @Test
+    public void flatArrays() throws InvalidProtocolBufferException {
+        Matrices matrices = new Matrices();
+        matrices.ints = new int[][] {{1, -2, 3}, {Integer.MIN_VALUE, 0, Integer.MAX_VALUE}};
+        matrices.cube = new double[2][3][4];
+        matrices.cube[1][2][3] = -1.25;
+        matrices.empty = new long[0][];
+        GeneratorOptions options = new GeneratorOptions().setFlattenArrays(true);
+
+        DynamicMessage parsed = roundTrip(matrices, options);
+        DynamicMessage ints = (DynamicMessage) parsed.getField(field(parsed, "ints"));
+        assertEquals(Arrays.asList(2, 3), ints.getField(field(ints, "dimensions")));
+        assertEquals(6, ints.getRepeatedFieldCount(field(ints, "values")));
+
+        Matrices decoded = decode(matrices, options, parsed.toByteArray());
+        assertArrayEquals(matrices.ints, decoded.ints);
+        assertEquals(-1.25, decoded.cube[1][2][3], 0.0);
+        assertEquals(0, decoded.empty.length);
+    }
+
+    // Parses what the codec writes with protobuf-java, then checks that the codec decodes what
+    // protobuf-java writes for that message into a value that encodes to the same message
+    private static DynamicMessage roundTrip(Object value, GeneratorOptions options)
+            throws InvalidProtocolBufferException {
+        Descriptor descriptor = descriptorOf(value.getClass(), options);
+        DynamicMessage parsed = DynamicMessage.parseFrom(descriptor, encode(value, options));
+        assertTrue("Unknown fields: " + parsed.getUnknownFields(), parsed.getUnknownFields().asMap().isEmpty());
+
+        Object decoded = decode(value, options, parsed.toByteArray());
+        assertEquals(parsed, DynamicMessage.parseFrom(descriptor, encode(decoded, options)));
+        return parsed;
+    }
+
+    private static byte[] encode(Object value, GeneratorOptions options) {
+        return codecOf(value.getClass(), options).newEncoder().toByteArray(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T decode(T value, GeneratorOptions options, byte[] bytes) {
+        return (T) codecOf(value.getClass(), options).decode(value.getClass(), ByteBuffer.wrap(bytes));
+    }
+
+    private static WireCodec codecOf(Class<?> type, GeneratorOptions options) {
+        return WireCodec.compile(new JavaToProto(Collections.<Class<?>>singleton(type), options).getSchema(),
+                options);
+    }
+
+    private static Descriptor descriptorOf(Class<?> type, GeneratorOptions options) {
+        JavaToProto jpt = new JavaToProto(Collections.<Class<?>>singleton(type), options);
+        SchemaModel schema = jpt.getSchema();
+        for (FileDescriptor file : DescriptorBuilder.link(jpt.toDescriptorSet(FILE_NAME))) {
+            if (file.getName().equals(FILE_NAME)) {
+                return file.findMessageTypeByName(schema.getMessage(type.getName()).getName());
+            }
+        }
+        throw new AssertionError("No " + FILE_NAME + " in the descriptor set");
+    }
+
+    private static FieldDescriptor field(DynamicMessage message, String name) {
+        return message.getDescriptorForType().findFieldByName(name);
+    }
+
+    private static Child child(int id, String name) {
+        Child child = new Child();
+        child.id = id;
+        child.name = name;
+        return child;
+    }
+
+    @SafeVarargs
+    private static <T> T pick(int sample, T... values) {
+        return values[sample];
+    }
+}